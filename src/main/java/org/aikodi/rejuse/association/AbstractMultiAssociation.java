@@ -1,10 +1,168 @@
 package org.aikodi.rejuse.association;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
 
 public abstract class AbstractMultiAssociation<FROM,TO> extends Association<FROM,TO> {
 
 	public AbstractMultiAssociation(FROM object) {
 		super(object);
 	}
-	
+
+  /**
+   * Connect this association end to all given association ends.
+   *
+   * The locks are checked before anything is modified, including the locks of
+   * the association ends from which the given association ends are disconnected.
+   * The cache of this association end is flushed once, and the listeners of this
+   * association end receive a single {@link AssociationListener#notifyElementsAdded(List)}
+   * event. The association ends on the other side still send their own events.
+   *
+   * @param elements The association ends to be connected. Null elements and
+   *                 elements that are already connected are ignored.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre elements != null;
+   @
+   @ post (\forall Association a; elements.contains(a) && a != null; contains(a));
+   @*/
+	public void addAll(Collection<? extends Association<? extends TO,? super FROM>> elements) {
+		checkLock();
+		for(Association<? extends TO,? super FROM> element: elements) {
+			if(element != null) {
+				checkLock(element);
+				// Does nothing if the element is already connected to this association end.
+				element.checkRegisterLocks(this);
+			}
+		}
+		List<TO> added = new ArrayList<>(elements.size());
+		for(Association<? extends TO,? super FROM> element: elements) {
+			// Like add, rely on the other end to report whether it was connected
+			// already, so the storage of this association end is not searched.
+			if(element != null && element.register(this)) {
+				registerWithoutEvents(element);
+				added.add(element.getObject());
+			}
+		}
+		fireElementsAdded(added);
+	}
+
+  /**
+   * Disconnect this association end from all given association ends.
+   *
+   * The locks are checked before anything is modified. The cache of this
+   * association end is flushed once, and the listeners of this association
+   * end receive a single {@link AssociationListener#notifyElementsRemoved(List)}
+   * event. The association ends on the other side still send their own events.
+   *
+   * @param elements The association ends to be disconnected. Null elements and
+   *                 elements that are not connected are ignored.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre elements != null;
+   @
+   @ post (\forall Association a; elements.contains(a); ! contains(a));
+   @*/
+	public void removeAll(Collection<? extends Association<? extends TO,? super FROM>> elements) {
+		checkLock();
+		for(Association<? extends TO,? super FROM> element: elements) {
+			checkLock(element);
+		}
+		List<TO> removed = new ArrayList<>(elements.size());
+		for(Association<? extends TO,? super FROM> element: elements) {
+			// The connection is symmetric, so the other end can tell whether it is
+			// connected without searching the storage of this association end.
+			if(element != null && element.contains(this)) {
+				element.unregister(this);
+				unregisterWithoutEvents(element);
+				removed.add(element.getObject());
+			}
+		}
+		fireElementsRemoved(removed);
+	}
+
+  /**
+   * Replace all connections of this association end by connections to
+   * the given association ends. Association ends that are connected
+   * before and after the operation are not disconnected.
+   *
+   * The locks of all association ends that are involved are checked before anything is modified.
+   * The listeners of this association end receive at most one
+   * {@link AssociationListener#notifyElementsRemoved(List)} event followed by
+   * at most one {@link AssociationListener#notifyElementsAdded(List)} event.
+   *
+   * @param elements The association ends to which this association end must be connected.
+   *                 Null elements are ignored.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre elements != null;
+   @
+   @ post (\forall Association a; a != null; contains(a) <==> elements.contains(a));
+   @*/
+	public void replaceAll(Collection<? extends Association<? extends TO,? super FROM>> elements) {
+		checkLock();
+		List<Association<? extends TO,? super FROM>> current = getOtherAssociations();
+		Set<Association<?,?>> retained = Collections.newSetFromMap(new IdentityHashMap<>());
+		for(Association<? extends TO,? super FROM> element: elements) {
+			if(element != null) {
+				checkLock(element);
+				element.checkRegisterLocks(this);
+				retained.add(element);
+			}
+		}
+		List<Association<? extends TO,? super FROM>> obsolete = new ArrayList<>();
+		for(Association<? extends TO,? super FROM> element: current) {
+			if(! retained.contains(element)) {
+				checkLock(element);
+				obsolete.add(element);
+			}
+		}
+		removeAll(obsolete);
+		addAll(elements);
+	}
+
+	/**
+	 * Store the given association end in this association end without
+	 * sending events. The caller must make sure that the other end
+	 * is registered as well.
+	 *
+	 * @param element The association end to be stored.
+	 */
+ /*@
+   @ protected behavior
+   @
+   @ pre element != null;
+   @ pre ! contains(element);
+   @
+   @ post contains(element);
+   @*/
+	protected abstract void registerWithoutEvents(Association<? extends TO,? super FROM> element);
+
+	/**
+	 * Remove the given association end from this association end without
+	 * sending events. The caller must make sure that the other end
+	 * is unregistered as well.
+	 *
+	 * @param element The association end to be removed.
+	 */
+ /*@
+   @ protected behavior
+   @
+   @ pre element != null;
+   @
+   @ post ! contains(element);
+   @*/
+	protected abstract void unregisterWithoutEvents(Association<? extends TO,? super FROM> element);
+
 }
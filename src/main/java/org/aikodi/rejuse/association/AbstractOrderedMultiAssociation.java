@@ -3,15 +3,17 @@ package org.aikodi.rejuse.association;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.ObjIntConsumer;
 
 import org.aikodi.rejuse.action.UniversalConsumer;
 import org.aikodi.rejuse.action.Nothing;
 import org.aikodi.rejuse.predicate.AbstractPredicate;
 
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableList.Builder;
-
 public abstract class AbstractOrderedMultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO> {
 
 	//@ public invariant contains(null) == false;
@@ -70,19 +72,30 @@ public abstract class AbstractOrderedMultiAssociation<FROM,TO> extends AbstractM
   	return _initialCapacity;
   }
   
+  /**
+   * {@inheritDoc}
+   *
+   * If caching is enabled, the result is an immutable list. The cached list is
+   * kept up to date incrementally by the methods that modify this association end,
+   * so requesting the other ends after a modification does not require a rebuild.
+   * If this association end is frozen, the result is an immutable view on its storage.
+   */
   @Override
   public /*@ pure @*/ List<TO> getOtherEnds() {
+    if(isFrozen()) {
+      return isStored() ? new FrozenEnds<>(internalAssociations()) : Collections.emptyList();
+    }
     if(isCaching()) {
       if(_cache == null) {
+        AssociationMetrics.cacheMiss();
+        _cache = new SnapshotList<>(size());
         if(isStored()) {
-          Builder<TO> builder = ImmutableList.<TO>builder();
-          internalAssociations().forEach(e ->builder.add(e.getObject()));
-          _cache = builder.build();
-        } else {
-          _cache = Collections.EMPTY_LIST;
+          internalAssociations().forEach(e -> _cache.add(e.getObject()));
         }
+      } else {
+        AssociationMetrics.cacheHit();
       }
-      return _cache;
+      return _cache.snapshot();
     } else {
       return doGetOtherEnds();
     }
@@ -97,6 +110,73 @@ public abstract class AbstractOrderedMultiAssociation<FROM,TO> extends AbstractM
 
 
 
+  /**
+   * Add the given Relation to this ReferenceSet.
+   *
+   * @param element
+   *        The Relation to be added.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre element != null;
+   @
+   @ post registered(\old(getOtherRelations()), element);
+   @ post element.registered(\old(element.getOtherRelations()),this);
+   @*/  
+  public void add(Association<? extends TO,? super FROM> element) {
+    checkLock();
+    checkLock(element);
+    if(element != null) {
+      boolean added = element.register(this);
+      // Skip a redundant contains check.
+      if(added) {
+        registerPrivate(element);
+      }
+    }
+  }
+
+  
+  /**
+   * Remove the given Relation from this ReferenceSet.
+   *
+   * @param element
+   *        The Relation to be removed.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre other != null;
+   @
+   @ post unregistered(\old(getOtherRelations()), other);
+   @ post other.unregistered(\old(other.getOtherRelations()), this);
+   @*/  
+  public void remove(Association<? extends TO,? super FROM> other) {
+    checkLock();
+    checkLock(other);
+    if (contains(other)) {
+      other.unregister(this);
+      // Skip a redundant contains check.
+      unregisterInternal(other);
+    }
+  }
+
+  /**
+   * {@inheritDoc} 
+   */
+  public void clear() {
+    checkLock();
+    if(isStored()) {
+      Collection<Association<? extends TO,? super FROM>> rels = new ArrayList<>(internalAssociations());
+      for(Association<? extends TO,? super FROM> rel : rels) {
+        checkLock(rel);
+      }
+      for(Association<? extends TO,? super FROM> rel : rels) {
+        remove(rel);
+      }
+    }
+  }
+
   /**
    * {@inheritDoc}
    */  
@@ -157,6 +237,9 @@ public abstract class AbstractOrderedMultiAssociation<FROM,TO> extends AbstractM
         checkLock(oldAssociation);
         checkLock(newAssociation);
         setAssociationAt(index, newAssociation);
+        if(_cache != null) {
+          _cache.set(index, newAssociation.getObject());
+        }
         newAssociation.register(this);
         oldAssociation.unregister(this);
         fireElementReplaced(oldAssociation.getObject(), newAssociation.getObject());
@@ -233,8 +316,12 @@ public abstract class AbstractOrderedMultiAssociation<FROM,TO> extends AbstractM
 
   protected void unregisterInternal(Association<? extends TO, ? super FROM> association) {
     if(isStored()) {
+      int index = _cache != null ? indexOfAssociation(association) : -1;
       boolean removed = removeAssociation(association);
       if(removed) {
+        if(_cache != null) {
+          _cache.remove(index);
+        }
         fireElementRemoved(association.getObject());
       }
     }
@@ -252,19 +339,81 @@ public abstract class AbstractOrderedMultiAssociation<FROM,TO> extends AbstractM
 
   protected void registerPrivate(Association<? extends TO, ? super FROM> association) {
     elements().add(association);
+    if(_cache != null) {
+      _cache.add(association.getObject());
+    }
     fireElementAdded(association.getObject());
   }
 
   private void registerInFrontPrivate(Association<? extends TO, ? super FROM> association) {
     elements().add(0,association);
+    if(_cache != null) {
+      _cache.add(0, association.getObject());
+    }
     fireElementAdded(association.getObject());
   }
 
   private void registerAtIndexPrivate(Association<? extends TO, ? super FROM> association,int index) {
     elements().add(index-1,association);
+    if(_cache != null) {
+      _cache.add(index-1, association.getObject());
+    }
     fireElementAdded(association.getObject());
   }
 
+  @Override
+  protected void registerWithoutEvents(Association<? extends TO,? super FROM> association) {
+    elements().add(association);
+    if(_cache != null) {
+      _cache.add(association.getObject());
+    }
+  }
+
+  @Override
+  protected void unregisterWithoutEvents(Association<? extends TO,? super FROM> association) {
+    if(isStored()) {
+      int index = _cache != null ? indexOfAssociation(association) : -1;
+      if(removeAssociation(association) && _cache != null) {
+        _cache.remove(index);
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * After the operation, the order of the association ends is the order of
+   * the given collection.
+   */
+  @Override
+  public void replaceAll(Collection<? extends Association<? extends TO,? super FROM>> elements) {
+    super.replaceAll(elements);
+    if(isStored()) {
+      List<Association<? extends TO,? super FROM>> storage = internalAssociations();
+      storage.clear();
+      Set<Association<?,?>> stored = Collections.newSetFromMap(new IdentityHashMap<>());
+      for(Association<? extends TO,? super FROM> element: elements) {
+        if(element != null && stored.add(element)) {
+          storage.add(element);
+        }
+      }
+      modified();
+      flushCache();
+    }
+  }
+
+  @Override
+  protected void restoreConnections(List<? extends Association<? extends TO,? super FROM>> connections) {
+    if(isStored()) {
+      internalAssociations().clear();
+    }
+    if(! connections.isEmpty()) {
+      elements().addAll(connections);
+    }
+    modified();
+    flushCache();
+  }
+
   private List<Association<? extends TO,? super FROM>> elements() {
     if(! isStored()) {
       initStorage();
@@ -359,12 +508,78 @@ public abstract class AbstractOrderedMultiAssociation<FROM,TO> extends AbstractM
     }
   }
 
-  private List<TO> _cache;
+  /**
+   * {@inheritDoc}
+   *
+   * The position of each object is its index.
+   */
+  @Override
+  public void forEachEnd(ObjIntConsumer<? super TO> action) {
+    int expected = modCount();
+    int size = size();
+    for(int i = 0; i < size; i++) {
+      action.accept(associationAt(i).getObject(), i);
+      if(modCount() != expected) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The spliterator is ordered.
+   */
+  @Override
+  public Spliterator<TO> endSpliterator() {
+    return new EndSpliterator<>(this, i -> associationAt(i).getObject(), size(), Spliterator.ORDERED);
+  }
+
+  /**
+   * The objects at the other side of the binding, in the same order as the
+   * association ends. The cache is null if caching is disabled, or if it
+   * has been flushed.
+   */
+  private SnapshotList<TO> _cache;
 
   public void flushCache() {
+    AssociationMetrics.cacheFlushed();
     _cache = null;
   }
 
+  /**
+   * The cache is updated incrementally by the methods that modify the
+   * storage, so nothing has to be flushed.
+   */
+  @Override
+  protected void connectionsChanged() {
+  }
+
+  @Override
+  public void disableCache() {
+    super.disableCache();
+    flushCache();
+  }
+
+  @Override
+  protected void compact() {
+    if(isStored()) {
+      trimStorage();
+    }
+  }
+
+  /**
+   * Release the unused capacity of the storage. This method is invoked when
+   * this association end is frozen. The default implementation does nothing.
+   */
+ /*@
+   @ protected behavior
+   @
+   @ pre isStored();
+   @*/
+  protected void trimStorage() {
+  }
+
   public abstract Association<? extends TO,? super FROM> associationAt(int index);
   
   protected abstract void setAssociationAt(int index, Association<? extends TO,? super FROM> association);
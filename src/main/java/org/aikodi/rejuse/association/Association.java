@@ -1,11 +1,18 @@
 package org.aikodi.rejuse.association;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.ObjIntConsumer;
 
 /**
  * <p>A class of objects that can be used to set up bi-directional association between objects.</p>
@@ -41,6 +48,7 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
   		throw new IllegalArgumentException("The parent of an association end cannot be null.");
   	}
     _object = object;
+    AssociationMetrics.created(this);
   }
 
   /**
@@ -94,16 +102,56 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
   protected void checkLock() {
   	checkLock(this);
   }
+
+  /**
+   * Check the locks of the association ends that are modified when the given
+   * association end is registered in this association end, apart from this
+   * association end and the given association end. This allows bulk operations
+   * to check all locks before anything is modified. By default, registering an
+   * association end does not modify other association ends.
+   *
+   * @param other The association end that will be registered.
+   */
+  protected void checkRegisterLocks(Association<? extends TO,? super FROM> other) {
+  }
   
   /**
-   * Throw an exception if this association end is locked.
+   * Throw an exception if the given association end is locked. Otherwise,
+   * the given association end is enlisted in the {@link AssociationTransaction}
+   * of the current thread, if there is one. This method must therefore be
+   * invoked for every association end before it is modified.
    */
 	protected void checkLock(Association<?,?> association) {
-    if(association != null && association.isLocked()) {
-  		throw new LockException("Trying to modify locked reference. Locked object: "+association.getObject().getClass().getName());
-  	}
+    if(association != null) {
+      if(association.isLocked()) {
+        throw new LockException("Trying to modify locked reference. Locked object: "+association.getObject().getClass().getName());
+      }
+      AssociationTransaction.enlist(association);
+    }
 	}
 
+  /**
+   * Replace the connections of this association end by the given association
+   * ends. Only the storage of this association end is modified: the association
+   * ends at the other side are not updated, and no events are sent. The cache is
+   * flushed. This method is used to restore a previous state, in which case the
+   * association ends at the other side are restored as well.
+   *
+   * @param connections The association ends to which this association end must be
+   *                    connected. For an ordered association end, the order is preserved.
+   * @throws UnsupportedOperationException The association end does not support this operation.
+   */
+ /*@
+   @ protected behavior
+   @
+   @ pre connections != null;
+   @
+   @ post getOtherAssociations().equals(connections);
+   @*/
+  protected void restoreConnections(List<? extends Association<? extends TO,? super FROM>> connections) {
+  	throw new UnsupportedOperationException("The connections of a " + getClass().getName() + " cannot be restored.");
+  }
+
   /**
    * Remove the given association end as a participant in this
    * association.
@@ -231,10 +279,33 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
 	public abstract void replace(Association<? extends TO,? super FROM> element, Association<? extends TO,? super FROM> newElement);
 	
   /*
-   * True if this association end is locked.
-   * False if this association end is not locked.
+   * The flags of this association end in the lowest bits, and the number of
+   * modifications in the remaining bits. They share a single field because
+   * every object in a model has association ends.
    */
-  private boolean _locked = false;
+  private int _state;
+
+  private static final int LOCKED = 1;
+
+  private static final int FROZEN = 2;
+
+  private static final int EVENTS_BLOCKED = 4;
+
+  private static final int CACHING = 8;
+
+  private static final int FLAG_BITS = 4;
+
+  private boolean is(int flag) {
+  	return (_state & flag) != 0;
+  }
+
+  private void set(int flag, boolean value) {
+  	if(value) {
+  		_state |= flag;
+  	} else {
+  		_state &= ~flag;
+  	}
+  }
 
   /**
    * Lock this end of the association.
@@ -246,12 +317,27 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
    @*/
 //  @Override
 	public void lock() {
-  	_locked=true;
+  	set(LOCKED, true);
   }
 
+  /**
+   * Unlock this end of the association.
+   *
+   * @throws IllegalStateException This association end is frozen.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post ! isLocked();
+   @
+   @ signals (IllegalStateException) isFrozen();
+   @*/
 //  @Override
 	public void unlock() {
-  	_locked=false;
+  	if(is(FROZEN)) {
+  		throw new IllegalStateException("A frozen association end cannot be unlocked. Frozen object: "+getObject().getClass().getName());
+  	}
+  	set(LOCKED, false);
   }
 
   /**
@@ -259,7 +345,55 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
    */
 //  @Override
 	public boolean isLocked() {
-  	return _locked;
+  	return is(LOCKED);
+  }
+
+  /**
+   * <p>Freeze this association end. A frozen association end is locked permanently,
+   * so its connections can no longer change. Use this for models that are read-only
+   * once they have been built.</p>
+   *
+   * <p>Because a frozen association end never sends events, its listeners and its event
+   * queue are released, and listeners that are added later are ignored. Caching is disabled
+   * and the cache is released. The storage is compacted, and {@link #getOtherEnds()} returns
+   * an immutable view on that storage instead of a copy.
+   * The association ends at the other side are not frozen, but they cannot be connected to
+   * or disconnected from this association end anymore.</p>
+   */
+ /*@
+   @ public behavior
+   @
+   @ post isFrozen();
+   @ post isLocked();
+   @*/
+	public void freeze() {
+  	if(! is(FROZEN)) {
+  		set(FROZEN, true);
+  		set(LOCKED, true);
+  		_listeners = null;
+  		disableCache();
+  		flushCache();
+  		compact();
+  	}
+  }
+
+  /**
+   * Check if this association end is frozen.
+   */
+	public boolean isFrozen() {
+  	return is(FROZEN);
+  }
+
+  /**
+   * Compact the storage of this association end after it has been frozen. The
+   * default implementation does nothing.
+   */
+ /*@
+   @ protected behavior
+   @
+   @ pre isFrozen();
+   @*/
+  protected void compact() {
   }
   
 //  @Override
@@ -267,7 +401,7 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
   
   /**
    * Register the given association listener as an event listener to
-   * this association end.
+   * this association end. Nothing happens if this association end is frozen.
    * @param listener
    *        The listener to be registered.
    */
@@ -276,15 +410,19 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
    @
    @ pre listener != null;
    @
-   @ post listeners().contains(listener);
+   @ post ! isFrozen() ==> listeners().contains(listener);
    @*/
 //  @Override
 	public void addListener(AssociationListener<? super TO> listener) {
   	if(listener == null) {
   		throw new IllegalArgumentException("An association listener cannot be null.");
   	}
+  	if(is(FROZEN)) {
+  		// A frozen association end never sends events.
+  		return;
+  	}
   	if(_listeners == null) {
-  		_listeners = new HashSet<AssociationListener<? super TO>>();
+  		_listeners = new Listeners<TO>();
   	}
   	_listeners.add(listener);
   }
@@ -307,8 +445,8 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
 	public void removeListener(AssociationListener<? super TO> listener) {
   	if(_listeners != null) {
   		_listeners.remove(listener);
-  		// clean up if there are no listeners anymore.
-  		if(_listeners.isEmpty()) {
+  		// clean up if there are no listeners and no event queue anymore.
+  		if(_listeners.isEmpty() && _listeners._queue == null) {
   			_listeners = null;
   		}
   	}
@@ -319,48 +457,334 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
   	return new HashSet<AssociationListener<? super TO>>(_listeners);
   }
   
-  private Set<AssociationListener<? super TO>> _listeners;
+  /**
+   * Check whether events of this association end must be sent.
+   */
+  private boolean hasListeners() {
+  	return _listeners != null && ! _listeners.isEmpty();
+  }
+
+  private Listeners<TO> _listeners;
+
+  /**
+   * The listeners of an association end, together with its event queue. Most
+   * association ends have neither, so the queue is kept here instead of in a
+   * field of every association end.
+   */
+  private static class Listeners<TO> extends HashSet<AssociationListener<? super TO>> {
+
+  	private static final long serialVersionUID = 1L;
+
+  	private AssociationEventQueue _queue;
+  }
   
   public abstract void flushCache();
+
+  /**
+   * Record that the connections of this association end have changed. Traversals
+   * with {@link #forEachEnd(ObjIntConsumer)} and {@link #endSpliterator()} that
+   * are in progress fail with a {@link ConcurrentModificationException}. This
+   * method is invoked by the methods that send events. Subclasses must invoke it
+   * if they modify their storage without sending an event.
+   */
+  protected void modified() {
+  	_state += 1 << FLAG_BITS;
+  }
+
+  /**
+   * @return The number of times that this association end has been modified.
+   */
+  int modCount() {
+  	return _state >>> FLAG_BITS;
+  }
+
+  /**
+   * Perform the given action for each object at the other side of this binding.
+   * The action receives the object and its position. For ordered association
+   * ends, the position is the index of the object. For other association ends,
+   * the positions are consecutive, but have no other meaning.
+   *
+   * Single association ends, ordered association ends, and multi association
+   * ends with few connections read their internal storage directly and do not
+   * allocate anything. A {@link MultiAssociation} that has been promoted to a
+   * hash set allocates one iterator of that set. Other association ends, such as
+   * {@link WeakMultiAssociation} and {@link ConcurrentMultiAssociation}, use this
+   * default implementation, which iterates over {@link #getOtherEnds()} and
+   * therefore allocates whatever that method allocates. If this association end
+   * is modified by the action, a {@link ConcurrentModificationException} is thrown.
+   *
+   * @param action The action to be performed. The action cannot be null.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre action != null;
+   @*/
+  public void forEachEnd(ObjIntConsumer<? super TO> action) {
+  	int expected = modCount();
+  	int index = 0;
+  	for(TO end: getOtherEnds()) {
+  		action.accept(end, index++);
+  		if(modCount() != expected) {
+  			throw new ConcurrentModificationException();
+  		}
+  	}
+  }
+
+  /**
+   * Return a spliterator over the objects at the other side of this binding.
+   * The spliterator fails with a {@link ConcurrentModificationException}
+   * if this association end is modified after the spliterator was created.
+   * The association ends that override {@link #forEachEnd(ObjIntConsumer)} read
+   * their internal storage directly, and only allocate the spliterator itself.
+   * A {@link MultiAssociation} that has been promoted to a hash set wraps the
+   * spliterator of that set. This default implementation copies the result of
+   * {@link #getOtherEnds()} into a list.
+   */
+  public Spliterator<TO> endSpliterator() {
+  	List<TO> ends = new ArrayList<>(getOtherEnds());
+  	return new EndSpliterator<>(this, ends::get, ends.size(), 0);
+  }
+
+  /**
+   * This method is called after the connections of this association end have
+   * changed, before the listeners are notified. By default, the cache is flushed.
+   * Subclasses that keep their cache up to date incrementally can override this
+   * method.
+   */
+  protected void connectionsChanged() {
+  	flushCache();
+  }
   
   /**
-   * If events are enabled, send "element added" events to all listeners.
+   * If events are enabled, send "element added" events to all listeners,
+   * or put the event in the event queue if there is one.
    */
   protected void fireElementAdded(TO addedElement) {
-  	flushCache();
-  	if(! _eventsBlocked && _listeners != null) {
-  		for(AssociationListener<? super TO> listener: _listeners) {
-  			listener.notifyElementAdded(addedElement);
+  	modified();
+  	connectionsChanged();
+  	if(! is(EVENTS_BLOCKED) && hasListeners()) {
+  		if(_listeners._queue != null) {
+  			_listeners._queue.elementAdded(this, addedElement);
+  		} else {
+  			AssociationMetrics.dispatched(_listeners.size());
+  			for(AssociationListener<? super TO> listener: _listeners) {
+  				listener.notifyElementAdded(addedElement);
+  			}
   		}
   	}
   }
 
   /**
-   * If events are enabled, send "element removed" events to all listeners.
+   * If events are enabled, send "element removed" events to all listeners,
+   * or put the event in the event queue if there is one.
    */
   protected void fireElementRemoved(TO removedElement) {
-  	flushCache();
-  	if(! _eventsBlocked && _listeners != null) {
-  		for(AssociationListener<? super TO> listener: _listeners) {
-  			listener.notifyElementRemoved(removedElement);
+  	modified();
+  	connectionsChanged();
+  	if(! is(EVENTS_BLOCKED) && hasListeners()) {
+  		if(_listeners._queue != null) {
+  			_listeners._queue.elementRemoved(this, removedElement);
+  		} else {
+  			AssociationMetrics.dispatched(_listeners.size());
+  			for(AssociationListener<? super TO> listener: _listeners) {
+  				listener.notifyElementRemoved(removedElement);
+  			}
   		}
   	}
   }
 
   /**
-   * If events are enabled, send "element replaced" events to all listeners.
+   * If events are enabled, send "element replaced" events to all listeners,
+   * or put the event in the event queue if there is one.
    */
   protected void fireElementReplaced(TO oldElement, TO newElement) {
-  	flushCache();
-  	if(! _eventsBlocked && _listeners != null) {
-  		for(AssociationListener<? super TO> listener: _listeners) {
-  			listener.notifyElementReplaced(oldElement, newElement);
+  	modified();
+  	connectionsChanged();
+  	if(! is(EVENTS_BLOCKED) && hasListeners()) {
+  		if(_listeners._queue != null) {
+  			_listeners._queue.elementReplaced(this, oldElement, newElement);
+  		} else {
+  			AssociationMetrics.dispatched(_listeners.size());
+  			for(AssociationListener<? super TO> listener: _listeners) {
+  				listener.notifyElementReplaced(oldElement, newElement);
+  			}
   		}
   	}
   }
   
-  private boolean _eventsBlocked;
+  /**
+   * If events are enabled, send a single "elements added" event to all listeners,
+   * or put the event in the event queue if there is one.
+   * Nothing is sent if the given list is empty.
+   * 
+   * @param addedElements The elements that were added by a bulk operation.
+   */
+  protected void fireElementsAdded(List<TO> addedElements) {
+  	if(! addedElements.isEmpty()) {
+  		modified();
+  		connectionsChanged();
+  		if(! is(EVENTS_BLOCKED) && hasListeners()) {
+  			if(_listeners._queue != null) {
+  				_listeners._queue.elementsAdded(this, addedElements);
+  			} else {
+  				List<TO> elements = Collections.unmodifiableList(addedElements);
+  				AssociationMetrics.dispatched(_listeners.size());
+  				for(AssociationListener<? super TO> listener: _listeners) {
+  					listener.notifyElementsAdded(elements);
+  				}
+  			}
+  		}
+  	}
+  }
+
+  /**
+   * If events are enabled, send a single "elements removed" event to all listeners,
+   * or put the event in the event queue if there is one.
+   * Nothing is sent if the given list is empty.
+   * 
+   * @param removedElements The elements that were removed by a bulk operation.
+   */
+  protected void fireElementsRemoved(List<TO> removedElements) {
+  	if(! removedElements.isEmpty()) {
+  		modified();
+  		connectionsChanged();
+  		if(! is(EVENTS_BLOCKED) && hasListeners()) {
+  			if(_listeners._queue != null) {
+  				_listeners._queue.elementsRemoved(this, removedElements);
+  			} else {
+  				List<TO> elements = Collections.unmodifiableList(removedElements);
+  				AssociationMetrics.dispatched(_listeners.size());
+  				for(AssociationListener<? super TO> listener: _listeners) {
+  					listener.notifyElementsRemoved(elements);
+  				}
+  			}
+  		}
+  	}
+  }
+
+  /**
+   * If events are enabled, send an "element collected" event to all listeners.
+   * Such events are detected lazily when a weak association end is accessed,
+   * so they are always sent synchronously, even if there is an event queue.
+   */
+  protected void fireElementCollected() {
+  	modified();
+  	connectionsChanged();
+  	if(! is(EVENTS_BLOCKED) && hasListeners()) {
+  		AssociationMetrics.dispatched(_listeners.size());
+  		for(AssociationListener<? super TO> listener: _listeners) {
+  			listener.notifyElementCollected();
+  		}
+  	}
+  }
+
+  /**
+   * Set the queue in which the events of this association end are collected.
+   * If the queue is null, which is the default, the listeners are notified
+   * synchronously during each modification. Otherwise, the events are delivered
+   * by the queue. See {@link AssociationEventQueue} for the guarantees that
+   * are given about the order of the events. Events that are already pending
+   * in a previous queue are still delivered by that queue.
+   *
+   * @param queue The queue for the events of this association end.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post eventQueue() == queue;
+   @*/
+  public void setEventQueue(AssociationEventQueue queue) {
+  	if(queue != null && _listeners == null) {
+  		_listeners = new Listeners<TO>();
+  	}
+  	if(_listeners != null) {
+  		_listeners._queue = queue;
+  		if(queue == null && _listeners.isEmpty()) {
+  			_listeners = null;
+  		}
+  	}
+  }
+
+  /**
+   * @return The queue in which the events of this association end are collected.
+   *         Null if the listeners are notified synchronously.
+   */
+  public AssociationEventQueue eventQueue() {
+  	return _listeners == null ? null : _listeners._queue;
+  }
+
+  /**
+   * Deliver a queued "element added" event, or an "elements added" event
+   * if there are multiple elements.
+   */
+  void dispatchAdded(List<?> elements) {
+  	if(hasListeners()) {
+  		if(elements.size() == 1) {
+  			TO element = queued(elements.get(0));
+  			AssociationMetrics.dispatched(_listeners.size());
+  			for(AssociationListener<? super TO> listener: _listeners) {
+  				listener.notifyElementAdded(element);
+  			}
+  		} else {
+  			List<TO> copy = Collections.unmodifiableList(new ArrayList<>(Association.<TO>queued(elements)));
+  			AssociationMetrics.dispatched(_listeners.size());
+  			for(AssociationListener<? super TO> listener: _listeners) {
+  				listener.notifyElementsAdded(copy);
+  			}
+  		}
+  	}
+  }
+
+  /**
+   * Deliver a queued "element removed" event, or an "elements removed" event
+   * if there are multiple elements.
+   */
+  void dispatchRemoved(List<?> elements) {
+  	if(hasListeners()) {
+  		if(elements.size() == 1) {
+  			TO element = queued(elements.get(0));
+  			AssociationMetrics.dispatched(_listeners.size());
+  			for(AssociationListener<? super TO> listener: _listeners) {
+  				listener.notifyElementRemoved(element);
+  			}
+  		} else {
+  			List<TO> copy = Collections.unmodifiableList(new ArrayList<>(Association.<TO>queued(elements)));
+  			AssociationMetrics.dispatched(_listeners.size());
+  			for(AssociationListener<? super TO> listener: _listeners) {
+  				listener.notifyElementsRemoved(copy);
+  			}
+  		}
+  	}
+  }
+
+  /**
+   * Deliver a queued "element replaced" event.
+   */
+  void dispatchReplaced(Object oldElement, Object newElement) {
+  	if(hasListeners()) {
+  		AssociationMetrics.dispatched(_listeners.size());
+  		for(AssociationListener<? super TO> listener: _listeners) {
+  			listener.notifyElementReplaced(Association.<TO>queued(oldElement), Association.<TO>queued(newElement));
+  		}
+  	}
+  }
   
+  /**
+   * The queue stores the elements of an event without their type. They were
+   * passed to this association end by one of its modifications, so they have
+   * the element type of this association end.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T queued(Object element) {
+  	return (T) element;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> List<T> queued(List<?> elements) {
+  	return (List<T>) elements;
+  }
+
   /**
    * Disable sending of events. This can be used to prevent register and unregister methods
    * from sending events when a replace is done.
@@ -372,7 +796,7 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
    @ post eventsBlocked() == true;
    @*/
   protected void disableEvents() {
-  	_eventsBlocked = true;
+  	set(EVENTS_BLOCKED, true);
   }
   
   /**
@@ -384,7 +808,7 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
    @ post eventsBlocked() == false;
    @*/
   protected void enableEvents() {
-  	_eventsBlocked = false;
+  	set(EVENTS_BLOCKED, false);
   }
   
   /**
@@ -392,7 +816,7 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
    * @return
    */
   protected boolean eventsBlocked() {
-  	return _eventsBlocked;
+  	return is(EVENTS_BLOCKED);
   }
 
   /**
@@ -404,20 +828,119 @@ public abstract class Association<FROM,TO> implements IAssociation<FROM, TO> {
 //  @Override
 	public abstract void clear();
 
+  /**
+   * Disconnect all given association ends from all association ends to which
+   * they are connected.
+   *
+   * The locks of the given association ends and of all association ends to which
+   * they are connected are checked before anything is modified. Then the storage of
+   * every affected association end is rewritten once: the given association ends are
+   * emptied, and the other affected association ends keep only their connections to
+   * association ends that are not detached. Finally, every affected association end
+   * sends a single "elements removed" event. Links between two detached association
+   * ends are severed without looking them up in the storage of either end, so the
+   * cost is linear in the number of affected connections.
+   *
+   * All affected association ends must support {@link #restoreConnections(List)}, which
+   * is the case for all association ends in this package. The operation is not atomic
+   * with respect to other threads.
+   *
+   * @param associations The association ends to be detached. Null elements and duplicates
+   *                     are ignored.
+   * @throws LockException One of the affected association ends is locked. Nothing has
+   *                       been modified in that case.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre associations != null;
+   @
+   @ post (\forall Association a; associations.contains(a) && a != null; a.size() == 0);
+   @*/
+  public static void detachAll(Iterable<? extends Association<?,?>> associations) {
+  	Map<Association<?,?>, List<? extends Association<?,?>>> detached = new LinkedHashMap<>();
+  	for(Association<?,?> association: associations) {
+  		if(association != null && ! detached.containsKey(association)) {
+  			association.checkLock();
+  			List<? extends Association<?,?>> connections = association.getOtherAssociations();
+  			for(Association<?,?> connection: connections) {
+  				association.checkLock(connection);
+  			}
+  			detached.put(association, connections);
+  		}
+  	}
+  	// The association ends that stay attached, with the connections that they lose.
+  	Map<Association<?,?>, Set<Association<?,?>>> affected = new LinkedHashMap<>();
+  	for(Map.Entry<Association<?,?>, List<? extends Association<?,?>>> entry: detached.entrySet()) {
+  		for(Association<?,?> connection: entry.getValue()) {
+  			if(! detached.containsKey(connection)) {
+  				Set<Association<?,?>> lost = affected.get(connection);
+  				if(lost == null) {
+  					lost = Collections.newSetFromMap(new IdentityHashMap<>());
+  					affected.put(connection, lost);
+  				}
+  				lost.add(entry.getKey());
+  			}
+  		}
+  	}
+  	// The events are sent after all association ends have been rewritten.
+  	List<Runnable> events = new ArrayList<>(detached.size() + affected.size());
+  	for(Association<?,?> association: detached.keySet()) {
+  		events.add(clear(association));
+  	}
+  	for(Map.Entry<Association<?,?>, Set<Association<?,?>>> entry: affected.entrySet()) {
+  		events.add(keep(entry.getKey(), entry.getValue()));
+  	}
+  	for(Runnable event: events) {
+  		event.run();
+  	}
+  }
+
+  /**
+   * Remove all connections of the given association end.
+   *
+   * @return The "elements removed" event of the association end.
+   */
+  private static <F,T> Runnable clear(Association<F,T> association) {
+  	List<T> objects = new ArrayList<>();
+  	for(Association<? extends T,? super F> connection: association.getOtherAssociations()) {
+  		objects.add(connection.getObject());
+  	}
+  	association.restoreConnections(Collections.emptyList());
+  	return () -> association.fireElementsRemoved(objects);
+  }
+
+  /**
+   * Remove the given connections of the given association end, and keep the others.
+   *
+   * @return The "elements removed" event of the association end.
+   */
+  private static <F,T> Runnable keep(Association<F,T> association, Set<Association<?,?>> lost) {
+  	List<Association<? extends T,? super F>> remaining = new ArrayList<>();
+  	List<T> objects = new ArrayList<>(lost.size());
+  	for(Association<? extends T,? super F> connection: association.getOtherAssociations()) {
+  		if(lost.contains(connection)) {
+  			objects.add(connection.getObject());
+  		} else {
+  			remaining.add(connection);
+  		}
+  	}
+  	association.restoreConnections(remaining);
+  	return () -> association.fireElementsRemoved(objects);
+  }
+
 	public void enableCache() {
-		_isCaching = true;
+		set(CACHING, true);
 	}
 	
 	public void disableCache() {
-		_isCaching = false;
+		set(CACHING, false);
 	}
 	
 	public boolean isCaching() {
-		return _isCaching;
+		return is(CACHING);
 	}
 	
-	private boolean _isCaching;
-	
 	public boolean containsObject(TO to) {
 		if(to != null) {
 			for(TO connected: getOtherEnds()) {
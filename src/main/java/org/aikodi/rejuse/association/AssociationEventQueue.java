@@ -0,0 +1,391 @@
+package org.aikodi.rejuse.association;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A queue that collects the events of association ends and delivers them to
+ * the listeners later.</p>
+ *
+ * <p>By default, an association end notifies its listeners synchronously while
+ * it is being modified. If an event queue is set with
+ * {@link Association#setEventQueue(AssociationEventQueue)}, the events of that
+ * association end are stored in the queue instead. The cache of the association
+ * end is still flushed immediately. The events are delivered when {@link #flush()}
+ * is invoked, or by a task that is submitted to the executor of the queue if the
+ * queue was created with an executor. A single queue can be shared by many
+ * association ends.</p>
+ *
+ * <p>Events that cancel out are dropped before they are delivered. If an element
+ * is added and removed again before the events are delivered, neither event is
+ * delivered. Likewise for an element that is removed and added again. Elements
+ * are compared by identity. Consecutive additions and consecutive removals are
+ * delivered as a single bulk event if they contain more than one element.</p>
+ *
+ * <p>Ordering guarantees:</p>
+ * <ul>
+ * <li>The remaining events of a single association end are delivered in the order
+ *     in which they were generated.</li>
+ * <li>Events of different association ends are delivered per association end, in
+ *     the order in which the association ends generated their first pending event.
+ *     The events of different association ends are therefore not interleaved as
+ *     they were generated.</li>
+ * <li>Deliveries are never concurrent. Events that are generated by a listener
+ *     during a delivery are delivered after the current batch.</li>
+ * <li>Events are delivered to the listeners that are registered at the time of
+ *     delivery. Events of an association end without listeners are not queued.</li>
+ * </ul>
+ *
+ * <p>If a listener throws an exception during {@link #flush()}, the remaining
+ * events of the current batch are still delivered before the exception is
+ * propagated. A delivery task of the executor that fails does not stop the
+ * delivery of later events.
+ * Association ends are not thread-safe, so if an executor is used, the
+ * listeners must not modify the association ends of the queue unless the
+ * application synchronizes access to them.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class AssociationEventQueue {
+
+  /**
+   * Create a new event queue whose events are delivered by {@link #flush()}.
+   */
+  public AssociationEventQueue() {
+    _executor = null;
+  }
+
+  /**
+   * Create a new event queue whose events are delivered by a task
+   * that is submitted to the given executor. A task is submitted when
+   * an event is added to an empty queue. {@link #flush()} can still be
+   * used to deliver the pending events immediately.
+   *
+   * @param executor The executor that delivers the events. The executor
+   *                 cannot be null.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre executor != null;
+   @*/
+  public AssociationEventQueue(Executor executor) {
+    if(executor == null) {
+      throw new IllegalArgumentException("The executor of an event queue cannot be null.");
+    }
+    _executor = executor;
+  }
+
+  /**
+   * The executor that delivers the events. Null if events are only
+   * delivered by {@link #flush()}.
+   */
+  private final Executor _executor;
+
+  /**
+   * The pending events per association end in the order in which the association
+   * ends generated their first pending event.
+   */
+  private Map<Association<?,?>, Pending> _pending = new LinkedHashMap<>();
+
+  /**
+   * True if a delivery task has been submitted to the executor and has not
+   * yet finished.
+   */
+  private boolean _scheduled;
+
+  /**
+   * The lock that serializes deliveries.
+   */
+  private final ReentrantLock _delivery = new ReentrantLock();
+
+  /**
+   * Deliver all pending events on the current thread. Events that are generated
+   * by the listeners during the delivery are delivered as well.
+   *
+   * If a listener throws an exception, the other events of the current batch
+   * are still delivered, after which the first exception is thrown. Exceptions
+   * that are thrown by other listeners are added to it as suppressed exceptions.
+   * Events that were generated during the delivery remain pending.
+   */
+  public void flush() {
+    _delivery.lock();
+    try {
+      while(true) {
+        Map<Association<?,?>, Pending> batch;
+        synchronized(this) {
+          if(_pending.isEmpty()) {
+            return;
+          }
+          batch = _pending;
+          _pending = new LinkedHashMap<>();
+        }
+        RuntimeException failure = null;
+        for(Map.Entry<Association<?,?>, Pending> entry: batch.entrySet()) {
+          failure = entry.getValue().deliver(entry.getKey(), failure);
+        }
+        if(failure != null) {
+          throw failure;
+        }
+      }
+    } finally {
+      // A new delivery task must be submitted if events were added
+      // after the queue was found empty, or if the delivery failed
+      // and events are still pending.
+      boolean schedule;
+      synchronized(this) {
+        _scheduled = false;
+        schedule = ! _pending.isEmpty() && schedule();
+      }
+      _delivery.unlock();
+      submit(schedule);
+    }
+  }
+
+  /**
+   * Drop all pending events without delivering them.
+   */
+  synchronized void discard() {
+    _pending = new LinkedHashMap<>();
+  }
+
+  /**
+   * @return True if there are no pending events.
+   */
+  public synchronized boolean isEmpty() {
+    return _pending.isEmpty();
+  }
+
+  void elementAdded(Association<?,?> association, Object element) {
+    boolean schedule;
+    synchronized(this) {
+      pending(association).added(element);
+      schedule = schedule();
+    }
+    submit(schedule);
+  }
+
+  void elementRemoved(Association<?,?> association, Object element) {
+    boolean schedule;
+    synchronized(this) {
+      pending(association).removed(element);
+      schedule = schedule();
+    }
+    submit(schedule);
+  }
+
+  void elementReplaced(Association<?,?> association, Object oldElement, Object newElement) {
+    boolean schedule;
+    synchronized(this) {
+      pending(association).replaced(oldElement, newElement);
+      schedule = schedule();
+    }
+    submit(schedule);
+  }
+
+  void elementsAdded(Association<?,?> association, List<?> elements) {
+    boolean schedule;
+    synchronized(this) {
+      Pending pending = pending(association);
+      for(Object element: elements) {
+        pending.added(element);
+      }
+      schedule = schedule();
+    }
+    submit(schedule);
+  }
+
+  void elementsRemoved(Association<?,?> association, List<?> elements) {
+    boolean schedule;
+    synchronized(this) {
+      Pending pending = pending(association);
+      for(Object element: elements) {
+        pending.removed(element);
+      }
+      schedule = schedule();
+    }
+    submit(schedule);
+  }
+
+  private Pending pending(Association<?,?> association) {
+    Pending result = _pending.get(association);
+    if(result == null) {
+      result = new Pending();
+      _pending.put(association, result);
+    }
+    return result;
+  }
+
+  /**
+   * Check whether a delivery task must be submitted. Must be called
+   * while holding the monitor of this queue.
+   */
+  private boolean schedule() {
+    if(_executor != null && ! _scheduled) {
+      _scheduled = true;
+      return true;
+    }
+    return false;
+  }
+
+  private void submit(boolean schedule) {
+    if(schedule) {
+      _executor.execute(this::flush);
+    }
+  }
+
+  private static final int ADDED = 0;
+
+  private static final int REMOVED = 1;
+
+  private static final int REPLACED = 2;
+
+  private static final int CANCELLED = 3;
+
+  /**
+   * A pending event. A "replaced" event is the removal of the old element
+   * and the addition of the new element. If one of both is cancelled, the
+   * event becomes an "added" or "removed" event.
+   */
+  private static final class Event {
+
+    private Event(int kind, Object oldElement, Object newElement) {
+      _kind = kind;
+      _old = oldElement;
+      _new = newElement;
+    }
+
+    private int _kind;
+
+    private final Object _old;
+
+    private final Object _new;
+  }
+
+  /**
+   * The pending events of a single association end.
+   */
+  private static final class Pending {
+
+    private final List<Event> _events = new ArrayList<>();
+
+    /**
+     * The pending event that added each element.
+     */
+    private final Map<Object, Event> _added = new IdentityHashMap<>();
+
+    /**
+     * The pending event that removed each element.
+     */
+    private final Map<Object, Event> _removed = new IdentityHashMap<>();
+
+    private void added(Object element) {
+      Event removal = _removed.remove(element);
+      if(removal != null) {
+        removal._kind = removal._kind == REPLACED ? ADDED : CANCELLED;
+      } else {
+        Event event = new Event(ADDED, null, element);
+        _events.add(event);
+        _added.put(element, event);
+      }
+    }
+
+    private void removed(Object element) {
+      Event addition = _added.remove(element);
+      if(addition != null) {
+        addition._kind = addition._kind == REPLACED ? REMOVED : CANCELLED;
+      } else {
+        Event event = new Event(REMOVED, element, null);
+        _events.add(event);
+        _removed.put(element, event);
+      }
+    }
+
+    private void replaced(Object oldElement, Object newElement) {
+      if(_added.containsKey(oldElement) || _removed.containsKey(newElement)) {
+        removed(oldElement);
+        added(newElement);
+      } else {
+        Event event = new Event(REPLACED, oldElement, newElement);
+        _events.add(event);
+        _removed.put(oldElement, event);
+        _added.put(newElement, event);
+      }
+    }
+
+    /**
+     * Deliver the remaining events to the listeners of the given association end.
+     * If a listener throws an exception, the other events are still delivered.
+     *
+     * @param failure The exception that was thrown while delivering the previous
+     *                events of the batch. Null if no exception was thrown.
+     * @return The given failure if it is not null, and otherwise the first exception
+     *         that was thrown while delivering the events. Other exceptions are added
+     *         as suppressed exceptions. Null if no exception was thrown.
+     */
+    private RuntimeException deliver(Association<?,?> association, RuntimeException failure) {
+      List<Object> group = new ArrayList<>();
+      int groupKind = CANCELLED;
+      for(Event event: _events) {
+        int kind = event._kind;
+        if(kind == CANCELLED) {
+          continue;
+        }
+        if(kind != groupKind) {
+          failure = deliverGroup(association, groupKind, group, failure);
+          group.clear();
+          groupKind = kind;
+        }
+        if(kind == ADDED) {
+          group.add(event._new);
+        } else if(kind == REMOVED) {
+          group.add(event._old);
+        } else {
+          try {
+            association.dispatchReplaced(event._old, event._new);
+          } catch(RuntimeException exc) {
+            failure = failed(failure, exc);
+          }
+          groupKind = CANCELLED;
+        }
+      }
+      return deliverGroup(association, groupKind, group, failure);
+    }
+
+    private RuntimeException deliverGroup(Association<?,?> association, int kind, List<Object> group, RuntimeException failure) {
+      if(! group.isEmpty()) {
+        try {
+          if(kind == ADDED) {
+            association.dispatchAdded(group);
+          } else {
+            association.dispatchRemoved(group);
+          }
+        } catch(RuntimeException exc) {
+          failure = failed(failure, exc);
+        }
+      }
+      return failure;
+    }
+  }
+
+  /**
+   * Record that the given exception was thrown during a delivery.
+   *
+   * @return The given failure with the given exception added as a suppressed
+   *         exception, or the given exception if there was no failure yet.
+   */
+  private static RuntimeException failed(RuntimeException failure, RuntimeException exception) {
+    if(failure == null) {
+      return exception;
+    }
+    if(failure != exception) {
+      failure.addSuppressed(exception);
+    }
+    return failure;
+  }
+}
@@ -1,5 +1,7 @@
 package org.aikodi.rejuse.association;
 
+import java.util.List;
+
 /**
  * An interface for listening to changes in associations.
  *
@@ -15,4 +17,46 @@ public abstract class AssociationListener<T> {
 		notifyElementRemoved(oldElement);
 		notifyElementAdded(newElement);
 	}
+
+	/**
+	 * Notify this listener that the given elements have been added by
+	 * a single bulk operation. By default, {@link #notifyElementAdded(Object)}
+	 * is invoked for each element. Override this method if the listener
+	 * can process the batch more efficiently.
+	 * 
+	 * @param elements The elements that were added. The list is not null
+	 *                 and cannot be modified.
+	 */
+	public void notifyElementsAdded(List<? extends T> elements) {
+		for(T element: elements) {
+			notifyElementAdded(element);
+		}
+	}
+
+	/**
+	 * Notify this listener that the given elements have been removed by
+	 * a single bulk operation. By default, {@link #notifyElementRemoved(Object)}
+	 * is invoked for each element. Override this method if the listener
+	 * can process the batch more efficiently.
+	 * 
+	 * @param elements The elements that were removed. The list is not null
+	 *                 and cannot be modified.
+	 */
+	public void notifyElementsRemoved(List<? extends T> elements) {
+		for(T element: elements) {
+			notifyElementRemoved(element);
+		}
+	}
+
+	/**
+	 * Notify this listener that an element has been removed because the
+	 * association end at the other side of a weak binding has been garbage
+	 * collected. The element itself is no longer available. By default,
+	 * nothing happens.
+	 *
+	 * @see WeakMultiAssociation
+	 * @see WeakSingleAssociation
+	 */
+	public void notifyElementCollected() {
+	}
 }
@@ -0,0 +1,325 @@
+package org.aikodi.rejuse.association;
+
+import java.lang.ref.Cleaner;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+
+/**
+ * <p>Opt-in instrumentation of association ends.</p>
+ *
+ * <p>When the metrics are enabled with {@link #enable()}, the following is counted:</p>
+ * <ul>
+ * <li>the number of requests for the other ends of an association end with caching enabled
+ *     that were answered from the cache (hits) or required a rebuild of the cache (misses),</li>
+ * <li>the number of times that a cache was flushed,</li>
+ * <li>the number of notifications that were sent to association listeners,</li>
+ * <li>the number of association ends that were created, per class,</li>
+ * <li>the number of those association ends that have not been garbage collected yet, per class.</li>
+ * </ul>
+ *
+ * <p>The live counts are decremented by a {@link Cleaner} when an association end
+ * becomes phantom reachable, so they lag behind the garbage collector. Every association
+ * end that is created while the metrics are enabled is registered with that cleaner,
+ * which costs an extra object per association end. The metrics count association ends,
+ * not bytes: multiply the live counts by the size of an association end to estimate the
+ * heap that they use.</p>
+ *
+ * <p>The counters can be read individually, or as a map of named values with
+ * {@link #values()} for export to a metrics registry. While the metrics are enabled,
+ * a periodic {@value #EVENT_NAME} event with the same values is emitted to
+ * Java Flight Recorder. The event is only recorded if it is enabled in the
+ * recording settings.</p>
+ *
+ * <p>When the metrics are disabled, which is the default, every instrumentation point
+ * only reads a volatile flag. The counters use {@link LongAdder}, so they scale to many
+ * threads, but the values are not a consistent snapshot while association ends are being
+ * modified.</p>
+ *
+ * @author Marko van Dooren
+ */
+public final class AssociationMetrics {
+
+  private AssociationMetrics() {
+  }
+
+  /**
+   * The name of the Java Flight Recorder event.
+   */
+  public static final String EVENT_NAME = "org.aikodi.rejuse.AssociationStatistics";
+
+  private static volatile boolean _enabled;
+
+  private static final LongAdder CACHE_HITS = new LongAdder();
+
+  private static final LongAdder CACHE_MISSES = new LongAdder();
+
+  private static final LongAdder CACHE_FLUSHES = new LongAdder();
+
+  private static final LongAdder LISTENER_DISPATCHES = new LongAdder();
+
+  private static final Map<Class<?>, Instances> INSTANCES = new ConcurrentHashMap<>();
+
+  /**
+   * The counters of the association ends of a single class.
+   */
+  private static final class Instances {
+
+    private final LongAdder _created = new LongAdder();
+
+    private final LongAdder _live = new LongAdder();
+  }
+
+  /**
+   * The cleaner that decrements the live counts. It is only created, together
+   * with its thread, when the first association end is counted.
+   */
+  private static final class Collector {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+  }
+
+  private static final Runnable EVENT_HOOK = AssociationMetrics::emitEvent;
+
+  /**
+   * Start counting. The counters are not reset.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post isEnabled();
+   @*/
+  public static synchronized void enable() {
+    if(! _enabled) {
+      _enabled = true;
+      FlightRecorder.addPeriodicEvent(StatisticsEvent.class, EVENT_HOOK);
+    }
+  }
+
+  /**
+   * Stop counting. The counters keep their values.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post ! isEnabled();
+   @*/
+  public static synchronized void disable() {
+    if(_enabled) {
+      _enabled = false;
+      FlightRecorder.removePeriodicEvent(EVENT_HOOK);
+    }
+  }
+
+  /**
+   * @return True if the metrics are being counted.
+   */
+  public static boolean isEnabled() {
+    return _enabled;
+  }
+
+  /**
+   * Set all counters to zero.
+   */
+  public static void reset() {
+    CACHE_HITS.reset();
+    CACHE_MISSES.reset();
+    CACHE_FLUSHES.reset();
+    LISTENER_DISPATCHES.reset();
+    INSTANCES.clear();
+  }
+
+  /**
+   * @return The number of requests for the other ends that were answered from the cache.
+   */
+  public static long cacheHits() {
+    return CACHE_HITS.sum();
+  }
+
+  /**
+   * @return The number of requests for the other ends that required the cache to be rebuilt.
+   */
+  public static long cacheMisses() {
+    return CACHE_MISSES.sum();
+  }
+
+  /**
+   * @return The fraction of the requests for the other ends that were answered from the cache.
+   *         If there were no requests, the result is 0.
+   */
+  public static double cacheHitRate() {
+    long hits = cacheHits();
+    long total = hits + cacheMisses();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+
+  /**
+   * @return The number of times that the cache of an association end was flushed.
+   */
+  public static long cacheFlushes() {
+    return CACHE_FLUSHES.sum();
+  }
+
+  /**
+   * @return The number of notifications that were sent to association listeners.
+   */
+  public static long listenerDispatches() {
+    return LISTENER_DISPATCHES.sum();
+  }
+
+  /**
+   * @return The number of association ends that were created per class.
+   */
+  public static Map<Class<?>, Long> instanceCounts() {
+    Map<Class<?>, Long> result = new LinkedHashMap<>();
+    for(Map.Entry<Class<?>, Instances> entry: INSTANCES.entrySet()) {
+      result.put(entry.getKey(), entry.getValue()._created.sum());
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * @return The total number of association ends that were created.
+   */
+  public static long instanceCount() {
+    long result = 0;
+    for(Instances instances: INSTANCES.values()) {
+      result += instances._created.sum();
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of association ends per class that were counted, and
+   *         that have not been garbage collected yet.
+   */
+  public static Map<Class<?>, Long> liveCounts() {
+    Map<Class<?>, Long> result = new LinkedHashMap<>();
+    for(Map.Entry<Class<?>, Instances> entry: INSTANCES.entrySet()) {
+      result.put(entry.getKey(), entry.getValue()._live.sum());
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * @return The total number of association ends that were counted, and
+   *         that have not been garbage collected yet.
+   */
+  public static long liveCount() {
+    long result = 0;
+    for(Instances instances: INSTANCES.values()) {
+      result += instances._live.sum();
+    }
+    return result;
+  }
+
+  /**
+   * Return the values of all counters by name. The instance count of a class
+   * is named <code>association.instances.</code> followed by the name of the class,
+   * and its live count <code>association.live.</code> followed by the name of the class.
+   *
+   * @return An unmodifiable map from the names of the counters to their values.
+   */
+  public static Map<String, Long> values() {
+    Map<String, Long> result = new LinkedHashMap<>();
+    result.put("association.cache.hits", cacheHits());
+    result.put("association.cache.misses", cacheMisses());
+    result.put("association.cache.flushes", cacheFlushes());
+    result.put("association.listener.dispatches", listenerDispatches());
+    for(Map.Entry<Class<?>, Long> entry: instanceCounts().entrySet()) {
+      result.put("association.instances." + entry.getKey().getName(), entry.getValue());
+    }
+    for(Map.Entry<Class<?>, Long> entry: liveCounts().entrySet()) {
+      result.put("association.live." + entry.getKey().getName(), entry.getValue());
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  static void cacheHit() {
+    if(_enabled) {
+      CACHE_HITS.increment();
+    }
+  }
+
+  static void cacheMiss() {
+    if(_enabled) {
+      CACHE_MISSES.increment();
+    }
+  }
+
+  static void cacheFlushed() {
+    if(_enabled) {
+      CACHE_FLUSHES.increment();
+    }
+  }
+
+  static void dispatched(int listeners) {
+    if(_enabled) {
+      LISTENER_DISPATCHES.add(listeners);
+    }
+  }
+
+  static void created(Association<?,?> association) {
+    if(_enabled) {
+      Instances instances = INSTANCES.computeIfAbsent(association.getClass(), c -> new Instances());
+      instances._created.increment();
+      instances._live.increment();
+      // The action must not refer to the association end, or it would never be collected.
+      LongAdder live = instances._live;
+      Collector.CLEANER.register(association, live::decrement);
+    }
+  }
+
+  private static void emitEvent() {
+    StatisticsEvent event = new StatisticsEvent();
+    event._cacheHits = cacheHits();
+    event._cacheMisses = cacheMisses();
+    event._cacheFlushes = cacheFlushes();
+    event._listenerDispatches = listenerDispatches();
+    event._instances = instanceCount();
+    event._live = liveCount();
+    event.commit();
+  }
+
+  @Name(EVENT_NAME)
+  @Label("Association Statistics")
+  @Category({"Rejuse", "Associations"})
+  @Description("The counters of the association metrics")
+  @Period("10 s")
+  static class StatisticsEvent extends Event {
+
+    @Name("cacheHits")
+    @Label("Cache Hits")
+    long _cacheHits;
+
+    @Name("cacheMisses")
+    @Label("Cache Misses")
+    long _cacheMisses;
+
+    @Name("cacheFlushes")
+    @Label("Cache Flushes")
+    long _cacheFlushes;
+
+    @Name("listenerDispatches")
+    @Label("Listener Dispatches")
+    long _listenerDispatches;
+
+    @Name("instances")
+    @Label("Association Ends Created")
+    long _instances;
+
+    @Name("live")
+    @Label("Live Association Ends")
+    long _live;
+  }
+}
@@ -0,0 +1,257 @@
+package org.aikodi.rejuse.association;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A utility class that saves the connections between a list of association
+ * ends in a binary file, and restores them later.</p>
+ *
+ * <p>The position of an association end in the list is its identifier. The
+ * snapshot stores, for every association end, the identifiers of the association
+ * ends to which it is connected, in the order of {@link Association#getOtherAssociations()}.
+ * The objects themselves are not stored. To restore a snapshot, the application
+ * creates its objects again and passes their association ends in the same order
+ * as when the snapshot was written.</p>
+ *
+ * <p>Restoring does not connect the association ends one by one. The storage of each
+ * association end is populated directly with {@link Association#restoreConnections(List)},
+ * so no listeners are notified. Restoring a snapshot is therefore meant for association
+ * ends that have just been created.</p>
+ *
+ * <p>The format is a sequence of big-endian integers: a magic number, the format
+ * version, the number of association ends, and then for every association end the
+ * number of connections followed by the identifiers of the connected association ends.</p>
+ *
+ * @author Marko van Dooren
+ */
+public final class AssociationSnapshot {
+
+  private AssociationSnapshot() {
+  }
+
+  private static final int MAGIC = 0x524a4153;
+
+  private static final int VERSION = 1;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Write the connections between the given association ends to the given file.
+   * An existing file is overwritten.
+   *
+   * @param file The file to which the snapshot is written.
+   * @param ends The association ends whose connections are written. Every association end
+   *             to which one of them is connected must be in the list as well.
+   * @throws IOException The file could not be written.
+   * @throws IllegalArgumentException An association end is connected to an association
+   *                                  end that is not in the list, or the list contains
+   *                                  the same association end twice.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre file != null;
+   @ pre ends != null;
+   @*/
+  public static void write(Path file, List<? extends Association<?,?>> ends) throws IOException {
+    Map<Association<?,?>, Integer> identifiers = identifiers(ends);
+    // Check the connections before the file is opened, so an
+    // existing snapshot is not destroyed if the check fails.
+    for(Association<?,?> end: ends) {
+      Collection<? extends Association<?,?>> connections = end.internalAssociations();
+      if(connections != null) {
+        for(Association<?,?> connection: connections) {
+          if(! identifiers.containsKey(connection)) {
+            throw new IllegalArgumentException("An association end of " + end.getObject() + " is connected to an association end that is not in the snapshot.");
+          }
+        }
+      }
+    }
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+      buffer.putInt(MAGIC);
+      buffer.putInt(VERSION);
+      buffer.putInt(ends.size());
+      for(Association<?,?> end: ends) {
+        Collection<? extends Association<?,?>> connections = end.internalAssociations();
+        int size = connections == null ? 0 : connections.size();
+        put(channel, buffer, size);
+        if(size > 0) {
+          for(Association<?,?> connection: connections) {
+            put(channel, buffer, identifiers.get(connection));
+          }
+        }
+      }
+      buffer.flip();
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Restore the connections in the given snapshot file. The file is mapped into memory.
+   *
+   * @param file The file that contains the snapshot.
+   * @param ends The association ends whose connections must be restored, in the
+   *             same order as when the snapshot was written.
+   * @throws IOException The file could not be read or is not a valid snapshot for the given
+   *                     association ends. Nothing has been modified in that case.
+   * @throws LockException One of the association ends is locked. Nothing has been
+   *                       modified in that case.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre file != null;
+   @ pre ends != null;
+   @*/
+  public static void restore(Path file, List<? extends Association<?,?>> ends) throws IOException {
+    try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      restore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), ends);
+    }
+  }
+
+  /**
+   * Restore the connections in the given snapshot. The snapshot is read from the current
+   * position of the buffer.
+   *
+   * @param snapshot A buffer that contains the snapshot.
+   * @param ends The association ends whose connections must be restored, in the
+   *             same order as when the snapshot was written.
+   * @throws IOException The buffer does not contain a valid snapshot for the given
+   *                     association ends, for example because an association end is
+   *                     connected to an association end that is not connected to it.
+   *                     Nothing has been modified in that case.
+   * @throws LockException One of the association ends is locked. Nothing has been
+   *                       modified in that case.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre snapshot != null;
+   @ pre ends != null;
+   @*/
+  public static void restore(ByteBuffer snapshot, List<? extends Association<?,?>> ends) throws IOException {
+    for(Association<?,?> end: ends) {
+      end.checkLock();
+    }
+    List<List<Association<?,?>>> connections = new ArrayList<>(ends.size());
+    // Every connection i -> j as ((long) i << 32) | j.
+    long[] links = new long[Math.max(snapshot.remaining() / Integer.BYTES, 0)];
+    int linkCount = 0;
+    try {
+      if(snapshot.getInt() != MAGIC) {
+        throw new IOException("The data is not an association snapshot.");
+      }
+      int version = snapshot.getInt();
+      if(version != VERSION) {
+        throw new IOException("Unsupported association snapshot version: " + version);
+      }
+      int count = snapshot.getInt();
+      if(count != ends.size()) {
+        throw new IOException("The snapshot contains " + count + " association ends, but " + ends.size() + " association ends were given.");
+      }
+      for(int i = 0; i < count; i++) {
+        int size = snapshot.getInt();
+        if(size < 0 || size > count) {
+          throw new IOException("Invalid number of connections for association end " + i + ": " + size);
+        }
+        List<Association<?,?>> list = new ArrayList<>(size);
+        for(int j = 0; j < size; j++) {
+          int identifier = snapshot.getInt();
+          if(identifier < 0 || identifier >= count) {
+            throw new IOException("Invalid association end identifier: " + identifier);
+          }
+          list.add(ends.get(identifier));
+          links[linkCount++] = ((long) i << 32) | identifier;
+        }
+        connections.add(list);
+      }
+    } catch(BufferUnderflowException exc) {
+      throw new IOException("The association snapshot is truncated.", exc);
+    }
+    checkSymmetric(links, linkCount);
+    for(int i = 0; i < ends.size(); i++) {
+      restoreConnections(ends.get(i), connections.get(i));
+    }
+  }
+
+  /**
+   * Check that every connection i -> j in the given array is matched by a
+   * connection j -> i.
+   *
+   * @param links The connections as ((long) i << 32) | j.
+   * @param count The number of connections in the array.
+   * @throws IOException A connection is not matched.
+   */
+  private static void checkSymmetric(long[] links, int count) throws IOException {
+    long[] reversed = new long[count];
+    for(int k = 0; k < count; k++) {
+      reversed[k] = (links[k] << 32) | (links[k] >>> 32);
+    }
+    Arrays.sort(links, 0, count);
+    Arrays.sort(reversed);
+    for(int k = 0; k < count; k++) {
+      if(links[k] != reversed[k]) {
+        // The smaller value is a connection whose counterpart is missing.
+        long from;
+        long to;
+        if(links[k] < reversed[k]) {
+          from = links[k] >>> 32;
+          to = (int) links[k];
+        } else {
+          from = (int) reversed[k];
+          to = reversed[k] >>> 32;
+        }
+        throw new IOException("The association snapshot is not symmetric: association end " + from + " is connected to association end " + to + ", but not the other way around.");
+      }
+    }
+  }
+
+  /**
+   * Restore the connections of the given association end. The snapshot only
+   * connects association ends that were connected when it was written, so the
+   * types of the connections match.
+   */
+  @SuppressWarnings("unchecked")
+  private static <F, T> void restoreConnections(Association<F, T> end, List<Association<?,?>> connections) {
+    end.restoreConnections((List<? extends Association<? extends T, ? super F>>) (List<?>) connections);
+  }
+
+  private static Map<Association<?,?>, Integer> identifiers(List<? extends Association<?,?>> ends) {
+    Map<Association<?,?>, Integer> result = new IdentityHashMap<>(ends.size());
+    for(int i = 0; i < ends.size(); i++) {
+      if(result.put(ends.get(i), i) != null) {
+        throw new IllegalArgumentException("The association end of " + ends.get(i).getObject() + " occurs twice in the snapshot.");
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Write the given integer to the buffer. If the buffer is full,
+   * it is written to the channel first.
+   */
+  private static void put(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+    if(buffer.remaining() < Integer.BYTES) {
+      buffer.flip();
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+    buffer.putInt(value);
+  }
+}
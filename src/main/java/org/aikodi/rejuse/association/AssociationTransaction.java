@@ -0,0 +1,232 @@
+package org.aikodi.rejuse.association;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A transaction that groups modifications of association ends.</p>
+ *
+ * <p>A transaction is started with {@link #begin()} and is bound to the current
+ * thread. The first time an association end is modified inside the transaction,
+ * the transaction records its connections as a before-image, and the events of
+ * the association end are collected in an {@link AssociationEventQueue} that is
+ * owned by the transaction. Association ends are enlisted when their lock is
+ * checked, which every modification does before it changes anything.</p>
+ *
+ * <ul>
+ * <li>{@link #commit()} delivers the collected events. Events that cancel out,
+ *     such as a link that is removed and added again, are dropped, and
+ *     consecutive additions or removals are delivered as a single bulk event.
+ *     Expensive listeners, such as cache invalidators, therefore run once per
+ *     association end instead of once per modification.</li>
+ * <li>{@link #rollback()} restores the connections of all enlisted association ends
+ *     from their before-images. No events are sent, since the listeners did not
+ *     receive any event of the transaction.</li>
+ * </ul>
+ *
+ * <p>The internal caches of the association ends are still updated during the
+ * transaction, so reads inside the transaction see the modifications.</p>
+ *
+ * <p>The typical usage is:</p>
+ * <pre><code>
+ * try(AssociationTransaction transaction = AssociationTransaction.begin()) {
+ *   ...
+ *   transaction.commit();
+ * }
+ * </code></pre>
+ * <p>If the transaction is closed without being committed, for example because an
+ * exception was thrown, it is rolled back.</p>
+ *
+ * <p>Transactions cannot be nested. Modifications by other threads are not part of
+ * the transaction. Modifications that are not caused by the application, such as
+ * the collection of the other end of a {@link WeakMultiAssociation} or the loading
+ * of an element of a {@link LoadableBidiList}, are not undone. Recording the
+ * before-image of a {@link LoadableBidiList} loads all its elements.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class AssociationTransaction implements AutoCloseable {
+
+  /**
+   * The number of transactions that are active in any thread. If it is zero,
+   * modifications do not have to look up the transaction of the current thread.
+   */
+  private static volatile int _activeCount;
+
+  private static final ThreadLocal<AssociationTransaction> CURRENT = new ThreadLocal<>();
+
+  private static synchronized void changeActiveCount(int delta) {
+    _activeCount += delta;
+  }
+
+  /**
+   * Start a new transaction for the current thread.
+   *
+   * @return The new transaction.
+   * @throws IllegalStateException The current thread already has an active transaction.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post \result.isActive();
+   @ post current() == \result;
+   @
+   @ signals (IllegalStateException) current() != null;
+   @*/
+  public static AssociationTransaction begin() {
+    if(CURRENT.get() != null) {
+      throw new IllegalStateException("Association transactions cannot be nested.");
+    }
+    AssociationTransaction result = new AssociationTransaction();
+    CURRENT.set(result);
+    changeActiveCount(1);
+    return result;
+  }
+
+  /**
+   * @return The active transaction of the current thread. Null if there is none.
+   */
+  public static AssociationTransaction current() {
+    return _activeCount == 0 ? null : CURRENT.get();
+  }
+
+  /**
+   * Enlist the given association end in the transaction of the current thread,
+   * if there is one. This method must be invoked before the association end is modified.
+   */
+  static void enlist(Association<?,?> association) {
+    if(_activeCount != 0) {
+      AssociationTransaction transaction = CURRENT.get();
+      if(transaction != null) {
+        transaction.doEnlist(association);
+      }
+    }
+  }
+
+  private AssociationTransaction() {
+  }
+
+  /**
+   * The enlisted association ends, in the order in which they were enlisted.
+   */
+  private final List<Enlisted<?,?>> _enlisted = new ArrayList<>();
+
+  private final Map<Association<?,?>, Enlisted<?,?>> _index = new IdentityHashMap<>();
+
+  /**
+   * The queue in which the events of the enlisted association ends are collected.
+   */
+  private final AssociationEventQueue _events = new AssociationEventQueue();
+
+  private boolean _active = true;
+
+  /**
+   * An enlisted association end with its before-image and the event
+   * queue that it used before it was enlisted.
+   */
+  private static final class Enlisted<F,T> {
+
+    private Enlisted(Association<F,T> association) {
+      _association = association;
+      _connections = association.getOtherAssociations();
+      _queue = association.eventQueue();
+    }
+
+    private final Association<F,T> _association;
+
+    private final List<Association<? extends T,? super F>> _connections;
+
+    private final AssociationEventQueue _queue;
+
+    /**
+     * Restore the before-image of the association end.
+     */
+    private void restore() {
+      _association.restoreConnections(_connections);
+    }
+  }
+
+  private void doEnlist(Association<?,?> association) {
+    if(_active && ! _index.containsKey(association)) {
+      Enlisted<?,?> enlisted = new Enlisted<>(association);
+      _enlisted.add(enlisted);
+      _index.put(association, enlisted);
+      association.setEventQueue(_events);
+    }
+  }
+
+  /**
+   * @return True if this transaction has been neither committed nor rolled back.
+   */
+  public boolean isActive() {
+    return _active;
+  }
+
+  /**
+   * @return The number of association ends that have been enlisted in this transaction.
+   */
+  public int enlistedCount() {
+    return _enlisted.size();
+  }
+
+  /**
+   * Commit this transaction. The enlisted association ends use their
+   * original event queue again, and the events that were collected
+   * during the transaction are delivered.
+   *
+   * @throws IllegalStateException This transaction is not active.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post ! isActive();
+   @*/
+  public void commit() {
+    end();
+    _events.flush();
+  }
+
+  /**
+   * Roll back this transaction. The connections of all enlisted association
+   * ends are restored, and the events that were collected during the
+   * transaction are discarded.
+   *
+   * @throws IllegalStateException This transaction is not active.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post ! isActive();
+   @*/
+  public void rollback() {
+    end();
+    _events.discard();
+    for(Enlisted<?,?> enlisted: _enlisted) {
+      enlisted.restore();
+    }
+  }
+
+  /**
+   * Roll back this transaction if it is still active.
+   */
+  @Override
+  public void close() {
+    if(_active) {
+      rollback();
+    }
+  }
+
+  private void end() {
+    if(! _active) {
+      throw new IllegalStateException("The transaction is no longer active.");
+    }
+    _active = false;
+    CURRENT.remove();
+    changeActiveCount(-1);
+    for(Enlisted<?,?> enlisted: _enlisted) {
+      enlisted._association.setEventQueue(enlisted._queue);
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package org.aikodi.rejuse.association;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * An interface for association ends that can be modified concurrently.
+ *
+ * A modification of a binding involves several association ends: the association
+ * end that is modified, the association end that is connected or disconnected, and
+ * possibly the association end from which that one is disconnected as a side effect.
+ * {@link #modify(Supplier, Runnable)} acquires the locks of all those association
+ * ends in a global order, such that concurrent modifications cannot deadlock.
+ * The order is determined by the identity hash code of the association ends. When
+ * two of them have the same identity hash code, a global tie-breaking lock is acquired first.
+ *
+ * @author Marko van Dooren
+ */
+interface ConcurrentEnd {
+
+	/**
+	 * @return The lock that must be held when this association end is modified.
+	 */
+	ReentrantLock mutex();
+
+	/**
+	 * The lock that is acquired before the locks of association ends with the
+	 * same identity hash code.
+	 */
+	static final ReentrantLock TIE_LOCK = new ReentrantLock();
+
+	/**
+	 * Return the association ends that are affected when the given association
+	 * end is connected to another association end. A single association end is
+	 * disconnected from its current association end when it is connected to
+	 * another one.
+	 *
+	 * @param association The association end that is connected or disconnected.
+	 *                    Can be null.
+	 * @param result The collection to which the affected association ends are added.
+	 */
+	static void addParticipants(Association<?,?> association, Collection<Association<?,?>> result) {
+		if(association != null) {
+			result.add(association);
+			if(association instanceof SingleAssociation) {
+				Association<?,?> other = ((SingleAssociation<?,?>)association).getOtherRelation();
+				if(other != null) {
+					result.add(other);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Perform the given modification while holding the locks of all concurrent
+	 * association ends that are returned by the given supplier. The supplier is
+	 * evaluated again after the locks have been acquired. If the participants
+	 * have changed in the meantime, the locks are released and the procedure
+	 * is repeated.
+	 *
+	 * @param participants A supplier of the association ends that are
+	 *                     affected by the modification.
+	 * @param modification The modification to be performed.
+	 */
+	static void modify(Supplier<? extends Collection<Association<?,?>>> participants, Runnable modification) {
+		while(true) {
+			List<ConcurrentEnd> ends = ordered(participants.get());
+			boolean tie = hasTie(ends);
+			if(tie) {
+				TIE_LOCK.lock();
+			}
+			try {
+				int locked = 0;
+				try {
+					for(ConcurrentEnd end: ends) {
+						end.mutex().lock();
+						locked++;
+					}
+					if(ends.equals(ordered(participants.get()))) {
+						modification.run();
+						return;
+					}
+				} finally {
+					for(int i = locked - 1; i >= 0; i--) {
+						ends.get(i).mutex().unlock();
+					}
+				}
+			} finally {
+				if(tie) {
+					TIE_LOCK.unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the concurrent association ends in the given collection without
+	 * duplicates, in the order in which their locks must be acquired.
+	 */
+	static List<ConcurrentEnd> ordered(Collection<Association<?,?>> participants) {
+		IdentityHashMap<ConcurrentEnd, Boolean> seen = new IdentityHashMap<>();
+		List<ConcurrentEnd> result = new ArrayList<>(participants.size());
+		for(Association<?,?> participant: participants) {
+			if(participant instanceof ConcurrentEnd && seen.put((ConcurrentEnd) participant, Boolean.TRUE) == null) {
+				result.add((ConcurrentEnd) participant);
+			}
+		}
+		result.sort(Comparator.comparingInt(System::identityHashCode));
+		return result;
+	}
+
+	static boolean hasTie(List<ConcurrentEnd> ends) {
+		for(int i = 1; i < ends.size(); i++) {
+			if(System.identityHashCode(ends.get(i - 1)) == System.identityHashCode(ends.get(i))) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
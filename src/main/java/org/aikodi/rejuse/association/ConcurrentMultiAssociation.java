@@ -0,0 +1,325 @@
+package org.aikodi.rejuse.association;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.aikodi.rejuse.action.UniversalConsumer;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * <p>A {@link MultiAssociation} counterpart that can be used by multiple threads.</p>
+ *
+ * <p>Modifications acquire the locks of all concurrent association ends that are
+ * involved in a global order, such that concurrent modifications of both sides of a
+ * binding cannot deadlock. Reads do not acquire a lock. {@link #contains(Association)}
+ * and {@link #size()} read a concurrent set. {@link #getOtherEnds()} returns an immutable
+ * snapshot that is rebuilt lazily after a modification.</p>
+ *
+ * <p>Listeners are notified while the locks are held. Listeners should therefore be
+ * fast, and they should not modify other associations. Listeners must be added
+ * before the association end is shared between threads.</p>
+ *
+ * <p>Only the association ends that are concurrent themselves are locked. Connecting a
+ * concurrent association end to an association end that is not thread-safe is only
+ * safe if the latter is not used by multiple threads.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class ConcurrentMultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO> implements ConcurrentEnd {
+
+  /**
+   * Initialize an empty concurrent association end for the given object.
+   *
+   * @param object
+   *        The object on this side of the binding
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre object != null;
+   @
+   @ post getObject() == object;
+   @ post (\forall Relation r;; !contains(r));
+   @*/
+  public ConcurrentMultiAssociation(FROM object) {
+    super(object);
+  }
+
+  private final ReentrantLock _mutex = new ReentrantLock();
+
+  @Override
+  public ReentrantLock mutex() {
+    return _mutex;
+  }
+
+  /**
+   * The association ends at the other side of the binding.
+   */
+  private final Set<Association<? extends TO,? super FROM>> _elements = ConcurrentHashMap.newKeySet();
+
+  /**
+   * The version of the contents. The version is incremented after each modification.
+   */
+  private final AtomicLong _version = new AtomicLong();
+
+  /**
+   * The most recent snapshot of the objects at the other side.
+   */
+  private volatile Snapshot<TO> _snapshot;
+
+  private static class Snapshot<TO> {
+
+    private Snapshot(long version, ImmutableSet<TO> ends) {
+      _version = version;
+      _ends = ends;
+    }
+
+    private final long _version;
+
+    private final ImmutableSet<TO> _ends;
+  }
+
+  public void add(Association<? extends TO,? super FROM> element) {
+    if(element != null) {
+      ConcurrentEnd.modify(() -> participants(element), () -> {
+        checkLock();
+        checkLock(element);
+        element.register(this);
+        register(element);
+      });
+    }
+  }
+
+  public void remove(Association<? extends TO,? super FROM> element) {
+    if(element != null) {
+      ConcurrentEnd.modify(() -> participants(element), () -> {
+        checkLock();
+        checkLock(element);
+        if(contains(element)) {
+          element.unregister(this);
+          unregister(element);
+        }
+      });
+    }
+  }
+
+  @Override
+  public void addAll(Collection<? extends Association<? extends TO,? super FROM>> elements) {
+    ConcurrentEnd.modify(() -> participants(elements), () -> super.addAll(elements));
+  }
+
+  @Override
+  public void removeAll(Collection<? extends Association<? extends TO,? super FROM>> elements) {
+    ConcurrentEnd.modify(() -> participants(elements), () -> super.removeAll(elements));
+  }
+
+  @Override
+  public void replaceAll(Collection<? extends Association<? extends TO,? super FROM>> elements) {
+    ConcurrentEnd.modify(() -> {
+      List<Association<?,?>> result = participants(elements);
+      for(Association<? extends TO,? super FROM> element: _elements) {
+        ConcurrentEnd.addParticipants(element, result);
+      }
+      return result;
+    }, () -> super.replaceAll(elements));
+  }
+
+  @Override
+  public void replace(Association<? extends TO,? super FROM> element, Association<? extends TO,? super FROM> newElement) {
+    ConcurrentEnd.modify(() -> {
+      List<Association<?,?>> result = participants(element);
+      ConcurrentEnd.addParticipants(newElement, result);
+      return result;
+    }, () -> {
+      if(contains(element)) {
+        checkLock();
+        checkLock(element);
+        checkLock(newElement);
+        disableEvents();
+        try {
+          remove(element);
+          add(newElement);
+        } finally {
+          enableEvents();
+        }
+        fireElementReplaced(element.getObject(), newElement.getObject());
+      }
+    });
+  }
+
+  @Override
+  public void clear() {
+    ConcurrentEnd.modify(() -> {
+      List<Association<?,?>> result = new ArrayList<>();
+      result.add(this);
+      for(Association<? extends TO,? super FROM> element: _elements) {
+        ConcurrentEnd.addParticipants(element, result);
+      }
+      return result;
+    }, () -> removeAll(new ArrayList<>(_elements)));
+  }
+
+  private List<Association<?,?>> participants(Association<?,?> element) {
+    List<Association<?,?>> result = new ArrayList<>(3);
+    result.add(this);
+    ConcurrentEnd.addParticipants(element, result);
+    return result;
+  }
+
+  private List<Association<?,?>> participants(Collection<? extends Association<?,?>> elements) {
+    List<Association<?,?>> result = new ArrayList<>(elements.size() * 2 + 1);
+    result.add(this);
+    for(Association<?,?> element: elements) {
+      ConcurrentEnd.addParticipants(element, result);
+    }
+    return result;
+  }
+
+  @Override
+  protected boolean register(Association<? extends TO,? super FROM> element) {
+    _mutex.lock();
+    try {
+      if(_elements.add(element)) {
+        fireElementAdded(element.getObject());
+        return true;
+      }
+      return false;
+    } finally {
+      _mutex.unlock();
+    }
+  }
+
+  @Override
+  protected void unregister(Association<? extends TO,? super FROM> element) {
+    _mutex.lock();
+    try {
+      if(_elements.remove(element)) {
+        fireElementRemoved(element.getObject());
+      }
+    } finally {
+      _mutex.unlock();
+    }
+  }
+
+  @Override
+  protected void registerWithoutEvents(Association<? extends TO,? super FROM> element) {
+    _elements.add(element);
+    flushCache();
+  }
+
+  @Override
+  protected void unregisterWithoutEvents(Association<? extends TO,? super FROM> element) {
+    _elements.remove(element);
+    flushCache();
+  }
+
+  @Override
+  protected void restoreConnections(List<? extends Association<? extends TO,? super FROM>> connections) {
+    _mutex.lock();
+    try {
+      _elements.clear();
+      _elements.addAll(connections);
+      modified();
+      flushCache();
+    } finally {
+      _mutex.unlock();
+    }
+  }
+
+  @Override
+  public boolean contains(Association<? extends TO,? super FROM> element) {
+    return _elements.contains(element);
+  }
+
+  @Override
+  public int size() {
+    return _elements.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The result is an immutable snapshot.
+   */
+  @Override
+  public Set<TO> getOtherEnds() {
+    Snapshot<TO> snapshot = _snapshot;
+    long version = _version.get();
+    if(snapshot == null || snapshot._version != version) {
+      ImmutableSet.Builder<TO> builder = ImmutableSet.builder();
+      for(Association<? extends TO,? super FROM> element: _elements) {
+        builder.add(element.getObject());
+      }
+      snapshot = new Snapshot<>(version, builder.build());
+      _snapshot = snapshot;
+    }
+    return snapshot._ends;
+  }
+
+  @Override
+  public void addOtherEndsTo(Collection<? super TO> collection) {
+    collection.addAll(getOtherEnds());
+  }
+
+  @Override
+  public List<Association<? extends TO,? super FROM>> getOtherAssociations() {
+    return new ArrayList<>(_elements);
+  }
+
+  @Override
+  protected Collection<Association<? extends TO,? super FROM>> internalAssociations() {
+    return _elements;
+  }
+
+  @Override
+  public <E extends Exception> void apply(UniversalConsumer<? super TO, E> action) throws E {
+    for(TO element: getOtherEnds()) {
+      action.perform(element);
+    }
+  }
+
+  /**
+   * Invalidate the snapshot of the objects at the other side.
+   */
+  @Override
+  public void flushCache() {
+    _version.incrementAndGet();
+  }
+
+  @Override
+  public boolean registered(List<Association<? extends TO,? super FROM>> oldConnections, Association<? extends TO,? super FROM> registered) {
+    if(oldConnections == null || ! contains(registered)) {
+      return false;
+    }
+    for(Association<? extends TO,? super FROM> connection: oldConnections) {
+      if(! contains(connection)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean unregistered(List<Association<? extends TO,? super FROM>> oldConnections, Association<? extends TO,? super FROM> unregistered) {
+    if(oldConnections == null || ! oldConnections.contains(unregistered) || contains(unregistered)) {
+      return false;
+    }
+    for(Association<? extends TO,? super FROM> connection: oldConnections) {
+      if(connection != unregistered && ! contains(connection)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean isValidElement(Association<? extends TO,? super FROM> association) {
+    return association != null;
+  }
+}
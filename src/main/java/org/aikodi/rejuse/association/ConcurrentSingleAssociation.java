@@ -0,0 +1,110 @@
+package org.aikodi.rejuse.association;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>A {@link SingleAssociation} that can be used by multiple threads.</p>
+ *
+ * <p>Modifications acquire the locks of all concurrent association ends that are
+ * involved in a global order, such that concurrent modifications of both sides of a
+ * binding cannot deadlock. Reads do not acquire a lock. The association end at the
+ * other side is stored in a volatile field, so a read always sees a consistent
+ * state of this association end.</p>
+ *
+ * <p>Listeners are notified while the locks are held. Listeners should therefore be
+ * fast, and they should not modify other associations. Listeners must be added
+ * before the association end is shared between threads.</p>
+ *
+ * <p>Only the association ends that are concurrent themselves are locked. Connecting a
+ * concurrent association end to an association end that is not thread-safe is only
+ * safe if the latter is not used by multiple threads.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class ConcurrentSingleAssociation<FROM,TO> extends SingleAssociation<FROM,TO> implements ConcurrentEnd {
+
+  /**
+   * Initialize a new concurrent association end for the given object.
+   * The new association end will be unconnected.
+   *
+   * @param object
+   *        The object at this side of the binding.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre object != null;
+   @
+   @ post getObject() == object;
+   @ post getOtherRelation() == null;
+   @*/
+  public ConcurrentSingleAssociation(FROM object) {
+    super(object);
+  }
+
+  private final ReentrantLock _mutex = new ReentrantLock();
+
+  @Override
+  public ReentrantLock mutex() {
+    return _mutex;
+  }
+
+  @Override
+  public void connectTo(Association<? extends TO,? super FROM> other) {
+    ConcurrentEnd.modify(() -> {
+      List<Association<?,?>> result = new ArrayList<>(4);
+      ConcurrentEnd.addParticipants(this, result);
+      ConcurrentEnd.addParticipants(other, result);
+      return result;
+    }, () -> super.connectTo(other));
+  }
+
+  @Override
+  protected boolean register(Association<? extends TO,? super FROM> other) {
+    _mutex.lock();
+    try {
+      return super.register(other);
+    } finally {
+      _mutex.unlock();
+    }
+  }
+
+  @Override
+  protected void unregister(Association<? extends TO,? super FROM> other) {
+    _mutex.lock();
+    try {
+      super.unregister(other);
+    } finally {
+      _mutex.unlock();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The result is computed from a single read of the other end and is not cached.
+   */
+  @Override
+  public List<TO> getOtherEnds() {
+    Association<? extends TO,? super FROM> other = getOtherRelation();
+    if(other == null) {
+      return Collections.emptyList();
+    } else {
+      return Collections.singletonList(other.getObject());
+    }
+  }
+
+  @Override
+  public TO getOtherEnd() {
+    Association<? extends TO,? super FROM> other = getOtherRelation();
+    return other == null ? null : other.getObject();
+  }
+
+  @Override
+  public int size() {
+    return getOtherRelation() == null ? 0 : 1;
+  }
+}
@@ -0,0 +1,183 @@
+package org.aikodi.rejuse.association;
+
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * A spliterator over the objects at the other side of an association end that
+ * reads them directly from the internal storage of the association end. Only the
+ * spliterator itself is allocated.
+ *
+ * The spliterator binds to the association end when it is created. If the
+ * association end is modified after that, the next traversal step throws a
+ * {@link ConcurrentModificationException}.
+ *
+ * @author Marko van Dooren
+ *
+ * @param <TO> The type of the objects at the other side of the binding.
+ */
+final class EndSpliterator<TO> implements Spliterator<TO> {
+
+	/**
+	 * Create a spliterator over the ends at the given positions.
+	 *
+	 * @param association The association end whose modifications are tracked.
+	 * @param ends A function that returns the object at the other side for a position
+	 *             in the internal storage of the association end.
+	 * @param size The number of positions in the internal storage.
+	 * @param characteristics The additional characteristics of the spliterator.
+	 */
+	EndSpliterator(Association<?,?> association, IntFunction<? extends TO> ends, int size, int characteristics) {
+		this(association, ends, 0, size, association.modCount(), characteristics);
+	}
+
+	private EndSpliterator(Association<?,?> association, IntFunction<? extends TO> ends, int index, int fence, int expectedModCount, int characteristics) {
+		_association = association;
+		_ends = ends;
+		_index = index;
+		_fence = fence;
+		_expectedModCount = expectedModCount;
+		_characteristics = characteristics | SIZED | SUBSIZED | NONNULL;
+	}
+
+	private final Association<?,?> _association;
+
+	private final IntFunction<? extends TO> _ends;
+
+	private int _index;
+
+	private final int _fence;
+
+	/**
+	 * The modification count of the association end when the spliterator was created.
+	 */
+	private final int _expectedModCount;
+
+	private final int _characteristics;
+
+	@Override
+	public boolean tryAdvance(Consumer<? super TO> action) {
+		check();
+		if(_index < _fence) {
+			action.accept(_ends.apply(_index++));
+			check();
+			return true;
+		}
+		return false;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super TO> action) {
+		check();
+		while(_index < _fence) {
+			action.accept(_ends.apply(_index++));
+			check();
+		}
+	}
+
+	@Override
+	public Spliterator<TO> trySplit() {
+		int middle = (_index + _fence) >>> 1;
+		if(middle <= _index) {
+			return null;
+		}
+		EndSpliterator<TO> result = new EndSpliterator<>(_association, _ends, _index, middle, _expectedModCount, _characteristics);
+		_index = middle;
+		return result;
+	}
+
+	@Override
+	public long estimateSize() {
+		return _fence - _index;
+	}
+
+	@Override
+	public int characteristics() {
+		return _characteristics;
+	}
+
+	private void check() {
+		if(_association.modCount() != _expectedModCount) {
+			throw new ConcurrentModificationException();
+		}
+	}
+
+	/**
+	 * A spliterator over the objects at the other side of an association end that
+	 * stores its association ends in a collection. It wraps the spliterator of that
+	 * collection, and checks for modifications of the association end in the same
+	 * way as an {@link EndSpliterator}.
+	 *
+	 * @param <TO> The type of the objects at the other side of the binding.
+	 */
+	static final class Wrapped<TO> implements Spliterator<TO> {
+
+		/**
+		 * Create a spliterator over the objects of the given association ends.
+		 *
+		 * @param association The association end whose modifications are tracked.
+		 * @param ends A spliterator over the internal storage of the association end.
+		 */
+		Wrapped(Association<?,?> association, Spliterator<? extends Association<? extends TO,?>> ends) {
+			this(association, ends, association.modCount());
+		}
+
+		private Wrapped(Association<?,?> association, Spliterator<? extends Association<? extends TO,?>> ends, int expectedModCount) {
+			_association = association;
+			_ends = ends;
+			_expectedModCount = expectedModCount;
+		}
+
+		private final Association<?,?> _association;
+
+		private final Spliterator<? extends Association<? extends TO,?>> _ends;
+
+		/**
+		 * The modification count of the association end when the spliterator was created.
+		 */
+		private final int _expectedModCount;
+
+		@Override
+		public boolean tryAdvance(Consumer<? super TO> action) {
+			check();
+			boolean result = _ends.tryAdvance(end -> action.accept(end.getObject()));
+			check();
+			return result;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super TO> action) {
+			check();
+			_ends.forEachRemaining(end -> {
+				action.accept(end.getObject());
+				check();
+			});
+		}
+
+		@Override
+		public Spliterator<TO> trySplit() {
+			Spliterator<? extends Association<? extends TO,?>> split = _ends.trySplit();
+			return split == null ? null : new Wrapped<>(_association, split, _expectedModCount);
+		}
+
+		@Override
+		public long estimateSize() {
+			return _ends.estimateSize();
+		}
+
+		@Override
+		public int characteristics() {
+			// Distinct association ends have distinct objects, but the objects
+			// are not sorted by the comparator of the association ends.
+			return (_ends.characteristics() & ~SORTED) | NONNULL;
+		}
+
+		private void check() {
+			if(_association.modCount() != _expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.aikodi.rejuse.association;
+
+import java.util.AbstractList;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An immutable view on the objects at the other side of a frozen association end.
+ * The view does not copy anything: element <code>i</code> is the object of the
+ * association end at position <code>i</code> in the storage of the frozen
+ * association end. Since that storage never changes, neither does the view.
+ *
+ * @param <T> The type of the objects at the other side.
+ *
+ * @author Marko van Dooren
+ */
+final class FrozenEnds<T> extends AbstractList<T> implements RandomAccess {
+
+  /**
+   * Create a view on the objects of the given association ends.
+   *
+   * @param associations The storage of a frozen association end.
+   */
+  FrozenEnds(List<? extends Association<? extends T,?>> associations) {
+    _associations = associations;
+  }
+
+  private final List<? extends Association<? extends T,?>> _associations;
+
+  @Override
+  public T get(int index) {
+    return _associations.get(index).getObject();
+  }
+
+  @Override
+  public int size() {
+    return _associations.size();
+  }
+
+  /**
+   * An immutable set view on the objects of a collection of association ends.
+   * The association ends in the collection must be distinct. Looking up an object
+   * takes linear time.
+   *
+   * @param <T> The type of the objects at the other side.
+   */
+  static final class Distinct<T> extends AbstractSet<T> {
+
+    /**
+     * Create a view on the objects of the association ends in the given collection.
+     *
+     * @param associations The storage of a frozen association end. The collection
+     *                     is not copied, so it must not be modified.
+     */
+    Distinct(Collection<? extends Association<? extends T,?>> associations) {
+      _associations = associations;
+    }
+
+    private final Collection<? extends Association<? extends T,?>> _associations;
+
+    @Override
+    public Iterator<T> iterator() {
+      Iterator<? extends Association<? extends T,?>> associations = _associations.iterator();
+      return new Iterator<T>() {
+
+        @Override
+        public boolean hasNext() {
+          return associations.hasNext();
+        }
+
+        @Override
+        public T next() {
+          return associations.next().getObject();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return _associations.size();
+    }
+  }
+}
@@ -0,0 +1,316 @@
+package org.aikodi.rejuse.association;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * <p>An ordered association end that stores its elements in a gap buffer.</p>
+ *
+ * <p>{@link OrderedMultiAssociation} stores its elements in an array list. Every
+ * insertion or removal that is not at the end of the list shifts all elements
+ * after the point of modification. A gap buffer keeps the free space of the array
+ * at the position of the last modification instead of at the end. An insertion or
+ * removal first moves the gap to the point of modification, which only copies the
+ * elements between the old and the new position of the gap. Consecutive
+ * modifications at the same position, such as repeated calls to
+ * {@link #addInFront(Association)}, or a series of calls to
+ * {@link #addAtIndex(Association, int)} at increasing indices, therefore take
+ * amortized constant time. A modification at a distant position takes time
+ * proportional to the distance to the gap. Random access remains constant time.</p>
+ *
+ * <p>The association ends are also kept in an identity hash set, so checking
+ * whether an association end is connected takes constant time. Operations that
+ * must find the position of an association end, such as
+ * {@link #addBefore(Object, Association)}, {@link #addAfter(Object, Association)},
+ * {@link #replace(Association, Association)} and {@link #remove(Association)},
+ * still search the buffer, which takes linear time.</p>
+ *
+ * <p>Use this class instead of {@link OrderedMultiAssociation} for association
+ * ends that are frequently modified at the front or in the middle. Note that
+ * if caching is enabled, the cached list of other ends is still an array that
+ * is shifted on an insertion in the middle.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class GapBufferOrderedMultiAssociation<FROM,TO> extends AbstractOrderedMultiAssociation<FROM,TO> {
+
+  /**
+   * Initialize an empty GapBufferOrderedMultiAssociation for the given object.
+   *
+   * @param object
+   *        The object on this side of the binding
+   */
+  /*@
+   @ public behavior
+   @
+   @ pre object != null;
+   @
+   @ post getObject() == object;
+   @ post (\forall Relation r;; !contains(r));
+   @*/
+  public GapBufferOrderedMultiAssociation(FROM object) {
+    super(object);
+  }
+
+  /**
+   * Initialize an empty GapBufferOrderedMultiAssociation for the given object with the
+   * given capacity. Note that the capacity is not the size.
+   *
+   * @param object The object on this side of the binding
+   * @param initialCapacity The initial internal capacity.
+   */
+  /*@
+   @ public behavior
+   @
+   @ pre object != null;
+   @
+   @ post getObject() == object;
+   @ post (\forall Relation r;; !contains(r));
+   @*/
+  public GapBufferOrderedMultiAssociation(FROM object, int initialCapacity) {
+    super(object, initialCapacity);
+  }
+
+  /**
+   * The list containing the association ends at the other side of the binding.
+   * The list is null until the first element is added.
+   */
+  private GapList<Association<? extends TO,? super FROM>> _elements;
+
+  public Association<? extends TO,? super FROM> associationAt(int index) {
+    if(index < 0 || index >= size()) {
+      throw new IllegalArgumentException();
+    }
+    return _elements.get(index);
+  }
+
+  protected void setAssociationAt(int index, Association<? extends TO,? super FROM> association) {
+    _elements.set(index, association);
+  }
+
+  public int indexOfAssociation(Association<? extends TO,? super FROM> association) {
+    return isStored() ? _elements.indexOf(association) : -1;
+  }
+
+  protected boolean isStored() {
+    return _elements != null;
+  }
+
+  @Override
+  protected List<Association<? extends TO, ? super FROM>> internalAssociations() {
+    return _elements;
+  }
+
+  protected void initStorage() {
+    _elements = new GapList<>(initialCapacity());
+  }
+
+  protected boolean removeAssociation(Association<? extends TO,? super FROM> association) {
+    return _elements.remove(association);
+  }
+
+  @Override
+  protected void trimStorage() {
+    _elements.trim();
+  }
+
+  /**
+   * A list that stores its elements in an array with a gap at the position
+   * of the last modification.
+   *
+   * The elements are stored in <code>_buffer[0.._gapStart)</code> followed by
+   * <code>_buffer[_gapEnd.._buffer.length)</code>. The positions in the gap
+   * are always null.
+   *
+   * @param <A> The type of the elements in the list.
+   */
+  private static class GapList<A> extends AbstractList<A> implements RandomAccess {
+
+    private GapList(int initialCapacity) {
+      _buffer = new Object[Math.max(initialCapacity, 2)];
+      _gapEnd = _buffer.length;
+    }
+
+    private Object[] _buffer;
+
+    /**
+     * The elements of this list, to check membership without searching the buffer.
+     */
+    private final Set<Object> _members = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The index of the first position of the gap.
+     */
+    private int _gapStart;
+
+    /**
+     * The index of the first position after the gap.
+     */
+    private int _gapEnd;
+
+    @Override
+    public int size() {
+      return _buffer.length - (_gapEnd - _gapStart);
+    }
+
+    /**
+     * @return The element at the given position of the buffer. The position must
+     *         not be in the gap.
+     */
+    @SuppressWarnings("unchecked")
+    private A elementAt(int position) {
+      return (A) _buffer[position];
+    }
+
+    @Override
+    public A get(int index) {
+      return elementAt(position(index));
+    }
+
+    @Override
+    public A set(int index, A element) {
+      int position = position(index);
+      A old = elementAt(position);
+      _buffer[position] = element;
+      _members.remove(old);
+      _members.add(element);
+      return old;
+    }
+
+    @Override
+    public void add(int index, A element) {
+      if(index < 0 || index > size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+      }
+      if(_gapStart == _gapEnd) {
+        grow(index);
+      } else {
+        moveGap(index);
+      }
+      _buffer[_gapStart++] = element;
+      _members.add(element);
+      modCount++;
+    }
+
+    @Override
+    public A remove(int index) {
+      checkIndex(index);
+      moveGap(index);
+      A old = elementAt(_gapEnd);
+      _buffer[_gapEnd++] = null;
+      _members.remove(old);
+      modCount++;
+      return old;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+      if(! _members.contains(o)) {
+        return -1;
+      }
+      for(int i = 0; i < _gapStart; i++) {
+        if(_buffer[i].equals(o)) {
+          return i;
+        }
+      }
+      for(int i = _gapEnd; i < _buffer.length; i++) {
+        if(_buffer[i].equals(o)) {
+          return i - (_gapEnd - _gapStart);
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return _members.contains(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      int index = indexOf(o);
+      if(index >= 0) {
+        remove(index);
+        return true;
+      }
+      return false;
+    }
+
+    @Override
+    public void clear() {
+      Arrays.fill(_buffer, null);
+      _members.clear();
+      _gapStart = 0;
+      _gapEnd = _buffer.length;
+      modCount++;
+    }
+
+    /**
+     * Remove the gap, such that the buffer contains exactly the elements
+     * of this list.
+     */
+    private void trim() {
+      int size = size();
+      moveGap(size);
+      if(_buffer.length != size) {
+        _buffer = Arrays.copyOf(_buffer, size);
+        _gapStart = size;
+        _gapEnd = size;
+      }
+    }
+
+    private void checkIndex(int index) {
+      if(index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+      }
+    }
+
+    /**
+     * Return the position in the buffer of the element at the given index.
+     */
+    private int position(int index) {
+      checkIndex(index);
+      return index < _gapStart ? index : index + (_gapEnd - _gapStart);
+    }
+
+    /**
+     * Move the gap such that it starts at the given index.
+     */
+    private void moveGap(int index) {
+      if(index < _gapStart) {
+        int count = _gapStart - index;
+        System.arraycopy(_buffer, index, _buffer, _gapEnd - count, count);
+        Arrays.fill(_buffer, index, Math.min(_gapStart, _gapEnd - count), null);
+        _gapStart = index;
+        _gapEnd -= count;
+      } else if(index > _gapStart) {
+        int count = index - _gapStart;
+        System.arraycopy(_buffer, _gapEnd, _buffer, _gapStart, count);
+        Arrays.fill(_buffer, Math.max(_gapEnd, index), _gapEnd + count, null);
+        _gapStart = index;
+        _gapEnd += count;
+      }
+    }
+
+    /**
+     * Replace the buffer by a larger one with the gap at the given index.
+     * The buffer must be full.
+     */
+    private void grow(int index) {
+      int size = _buffer.length;
+      int capacity = size + (size >> 1) + 1;
+      Object[] buffer = new Object[capacity];
+      System.arraycopy(_buffer, 0, buffer, 0, index);
+      int tail = size - index;
+      System.arraycopy(_buffer, index, buffer, capacity - tail, tail);
+      _buffer = buffer;
+      _gapStart = index;
+      _gapEnd = capacity - tail;
+    }
+  }
+}
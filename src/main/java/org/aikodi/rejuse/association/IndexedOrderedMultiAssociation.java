@@ -0,0 +1,530 @@
+package org.aikodi.rejuse.association;
+
+import java.util.AbstractList;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * <p>An ordered association end that keeps its association ends in an order
+ * statistic tree together with an identity based index from each association
+ * end to its node in the tree.</p>
+ *
+ * <p>{@link OrderedMultiAssociation} stores its elements in a plain list, which
+ * makes {@link #contains(Association)}, {@link #indexOfAssociation(Association)},
+ * {@link #remove(Association)}, {@link #addBefore(Object, Association)} and
+ * {@link #addAfter(Object, Association)} linear in the size of the association.
+ * In an indexed ordered association, membership tests take constant time. Position
+ * lookups, {@link #associationAt(int)}, and insertions and removals at any position
+ * take logarithmic time. The tree is a treap, so these bounds are expected bounds.
+ * Iterating over the association ends takes linear time.</p>
+ *
+ * <p>Use this class instead of {@link OrderedMultiAssociation} for association
+ * ends that can contain many elements. For small associations, the tree and the
+ * index only cost memory and make positional access slower.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class IndexedOrderedMultiAssociation<FROM,TO> extends AbstractOrderedMultiAssociation<FROM,TO> {
+
+  /**
+   * Initialize an empty IndexedOrderedMultiAssociation for the given object.
+   *
+   * @param object
+   *        The object on this side of the binding
+   */
+  /*@
+   @ public behavior
+   @
+   @ pre object != null;
+   @
+   @ post getObject() == object;
+   @ post (\forall Relation r;; !contains(r));
+   @*/
+  public IndexedOrderedMultiAssociation(FROM object) {
+    super(object);
+  }
+
+  /**
+   * Initialize an empty IndexedOrderedMultiAssociation for the given object with the
+   * given capacity. Note that the capacity is not the size.
+   *
+   * @param object The object on this side of the binding
+   * @param initialCapacity The initial internal capacity.
+   */
+  /*@
+   @ public behavior
+   @
+   @ pre object != null;
+   @
+   @ post getObject() == object;
+   @ post (\forall Relation r;; !contains(r));
+   @*/
+  public IndexedOrderedMultiAssociation(FROM object, int initialCapacity) {
+    super(object, initialCapacity);
+  }
+
+  /**
+   * The list containing the association ends at the other side of the binding.
+   * The list is null until the first element is added.
+   */
+  private IndexedList<Association<? extends TO,? super FROM>> _elements;
+
+  public Association<? extends TO,? super FROM> associationAt(int index) {
+    if(index < 0 || index >= size()) {
+      throw new IllegalArgumentException();
+    }
+    return _elements.get(index);
+  }
+
+  protected void setAssociationAt(int index, Association<? extends TO,? super FROM> association) {
+    _elements.set(index, association);
+  }
+
+  public int indexOfAssociation(Association<? extends TO,? super FROM> association) {
+    return isStored() ? _elements.indexOf(association) : -1;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The element is first looked up by identity in logarithmic time. Only if
+   * that fails, the elements are compared using {@link Object#equals(Object)}.
+   */
+  @Override
+  public int indexOf(TO element) {
+    if(isStored()) {
+      Association<? extends TO,? super FROM> association = _elements.associationOf(element);
+      if(association != null) {
+        return _elements.indexOf(association);
+      }
+    }
+    return super.indexOf(element);
+  }
+
+  protected boolean isStored() {
+    return _elements != null;
+  }
+
+  @Override
+  protected List<Association<? extends TO, ? super FROM>> internalAssociations() {
+    return _elements;
+  }
+
+  protected void initStorage() {
+    _elements = new IndexedList<>();
+  }
+
+  protected boolean removeAssociation(Association<? extends TO,? super FROM> association) {
+    return _elements.remove(association);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The association ends are visited in order without looking up
+   * their positions.
+   */
+  @Override
+  public void forEachEnd(ObjIntConsumer<? super TO> action) {
+    if(isStored()) {
+      _elements.forEachIndexed((association, index) -> action.accept(association.getObject(), index));
+    }
+  }
+
+  /**
+   * A list of association ends that is stored in an order statistic tree. Every
+   * node of the tree knows the size of its subtree, so the node at a given position
+   * and the position of a given node are found by following a single path in the tree.
+   * An identity based index maps every association end to its node.
+   *
+   * The tree is a treap: every node has a random priority, and the priority of a
+   * node is never smaller than the priority of its children. The expected depth of
+   * the tree is therefore logarithmic in its size.
+   *
+   * @param <A> The type of the association ends in the list.
+   */
+  private static class IndexedList<A extends Association<?,?>> extends AbstractList<A> {
+
+    /**
+     * The root of the tree. Null if the list is empty.
+     */
+    private Entry<A> _root;
+
+    /**
+     * The node of every element in the list.
+     */
+    private final IdentityHashMap<A, Entry<A>> _entries = new IdentityHashMap<>();
+
+    /**
+     * The association end of every object at the other side of the binding.
+     */
+    private final Map<Object, A> _objects = new IdentityHashMap<>();
+
+    /**
+     * The state of the generator for the priorities of new nodes.
+     */
+    private int _seed = 0x2545F491;
+
+    @Override
+    public A get(int index) {
+      checkIndex(index, size());
+      return entryAt(index)._value;
+    }
+
+    @Override
+    public int size() {
+      return size(_root);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return _entries.containsKey(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+      Entry<A> entry = _entries.get(o);
+      return entry == null ? -1 : rank(entry);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+      return indexOf(o);
+    }
+
+    @Override
+    public A set(int index, A element) {
+      checkIndex(index, size());
+      Entry<A> entry = entryAt(index);
+      A old = entry._value;
+      forget(old);
+      entry._value = element;
+      remember(entry);
+      return old;
+    }
+
+    @Override
+    public boolean add(A element) {
+      add(size(), element);
+      return true;
+    }
+
+    @Override
+    public void add(int index, A element) {
+      checkIndex(index, size() + 1);
+      Entry<A> entry = new Entry<>(element, nextPriority());
+      insert(index, entry);
+      remember(entry);
+      modCount++;
+    }
+
+    @Override
+    public A remove(int index) {
+      checkIndex(index, size());
+      Entry<A> entry = entryAt(index);
+      delete(entry);
+      modCount++;
+      return entry._value;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      Entry<A> entry = _entries.get(o);
+      if(entry == null) {
+        return false;
+      }
+      delete(entry);
+      modCount++;
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      _root = null;
+      _entries.clear();
+      _objects.clear();
+      modCount++;
+    }
+
+    @Override
+    public Iterator<A> iterator() {
+      return new Iterator<A>() {
+
+        private Entry<A> _next = first();
+
+        private Entry<A> _last;
+
+        private int _expected = modCount;
+
+        @Override
+        public boolean hasNext() {
+          return _next != null;
+        }
+
+        @Override
+        public A next() {
+          if(modCount != _expected) {
+            throw new ConcurrentModificationException();
+          }
+          if(_next == null) {
+            throw new NoSuchElementException();
+          }
+          _last = _next;
+          _next = successor(_next);
+          return _last._value;
+        }
+
+        @Override
+        public void remove() {
+          if(_last == null) {
+            throw new IllegalStateException();
+          }
+          if(modCount != _expected) {
+            throw new ConcurrentModificationException();
+          }
+          delete(_last);
+          _last = null;
+          _expected = ++modCount;
+        }
+      };
+    }
+
+    @Override
+    public void forEach(Consumer<? super A> action) {
+      forEachIndexed((element, index) -> action.accept(element));
+    }
+
+    /**
+     * Apply the given action to every element and its position, in order.
+     *
+     * @throws ConcurrentModificationException The action has modified the list.
+     */
+    private void forEachIndexed(ObjIntConsumer<? super A> action) {
+      int expected = modCount;
+      int index = 0;
+      for(Entry<A> entry = first(); entry != null; entry = successor(entry)) {
+        action.accept(entry._value, index++);
+        if(modCount != expected) {
+          throw new ConcurrentModificationException();
+        }
+      }
+    }
+
+    /**
+     * Return the association end in this list of the given object
+     * at the other side of the binding. Objects are compared by identity.
+     */
+    private A associationOf(Object object) {
+      return _objects.get(object);
+    }
+
+    private void remember(Entry<A> entry) {
+      _entries.put(entry._value, entry);
+      _objects.put(entry._value.getObject(), entry._value);
+    }
+
+    private void forget(A element) {
+      _entries.remove(element);
+      Object object = element.getObject();
+      if(_objects.get(object) == element) {
+        _objects.remove(object);
+      }
+    }
+
+    private static void checkIndex(int index, int size) {
+      if(index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+      }
+    }
+
+    private static int size(Entry<?> entry) {
+      return entry == null ? 0 : entry._size;
+    }
+
+    private int nextPriority() {
+      int seed = _seed;
+      seed ^= seed << 13;
+      seed ^= seed >>> 17;
+      seed ^= seed << 5;
+      _seed = seed;
+      return seed;
+    }
+
+    private Entry<A> entryAt(int index) {
+      Entry<A> entry = _root;
+      while(true) {
+        int left = size(entry._left);
+        if(index < left) {
+          entry = entry._left;
+        } else if(index == left) {
+          return entry;
+        } else {
+          index -= left + 1;
+          entry = entry._right;
+        }
+      }
+    }
+
+    /**
+     * Return the position of the given node: the number of nodes before it.
+     */
+    private int rank(Entry<A> entry) {
+      int result = size(entry._left);
+      for(Entry<A> node = entry; node._parent != null; node = node._parent) {
+        if(node == node._parent._right) {
+          result += size(node._parent._left) + 1;
+        }
+      }
+      return result;
+    }
+
+    private Entry<A> first() {
+      Entry<A> entry = _root;
+      if(entry != null) {
+        while(entry._left != null) {
+          entry = entry._left;
+        }
+      }
+      return entry;
+    }
+
+    private Entry<A> successor(Entry<A> entry) {
+      if(entry._right != null) {
+        Entry<A> result = entry._right;
+        while(result._left != null) {
+          result = result._left;
+        }
+        return result;
+      }
+      Entry<A> node = entry;
+      while(node._parent != null && node == node._parent._right) {
+        node = node._parent;
+      }
+      return node._parent;
+    }
+
+    /**
+     * Insert the given node as a leaf at the given position, and move it up
+     * until the priority of its parent is not smaller than its own priority.
+     */
+    private void insert(int index, Entry<A> entry) {
+      if(_root == null) {
+        _root = entry;
+        return;
+      }
+      Entry<A> node = _root;
+      while(true) {
+        node._size++;
+        int left = size(node._left);
+        if(index <= left) {
+          if(node._left == null) {
+            node._left = entry;
+            break;
+          }
+          node = node._left;
+        } else {
+          index -= left + 1;
+          if(node._right == null) {
+            node._right = entry;
+            break;
+          }
+          node = node._right;
+        }
+      }
+      entry._parent = node;
+      while(entry._parent != null && entry._priority > entry._parent._priority) {
+        rotateUp(entry);
+      }
+    }
+
+    /**
+     * Remove the given node from the tree and forget its element. The node is first
+     * moved down until it has at most one child, which then takes its place.
+     */
+    private void delete(Entry<A> entry) {
+      while(entry._left != null && entry._right != null) {
+        rotateUp(entry._left._priority > entry._right._priority ? entry._left : entry._right);
+      }
+      Entry<A> child = entry._left != null ? entry._left : entry._right;
+      Entry<A> parent = entry._parent;
+      if(child != null) {
+        child._parent = parent;
+      }
+      if(parent == null) {
+        _root = child;
+      } else if(parent._left == entry) {
+        parent._left = child;
+      } else {
+        parent._right = child;
+      }
+      for(Entry<A> node = parent; node != null; node = node._parent) {
+        node._size--;
+      }
+      forget(entry._value);
+    }
+
+    /**
+     * Rotate the given node above its parent.
+     */
+    private void rotateUp(Entry<A> entry) {
+      Entry<A> parent = entry._parent;
+      Entry<A> grandParent = parent._parent;
+      if(entry == parent._left) {
+        parent._left = entry._right;
+        if(entry._right != null) {
+          entry._right._parent = parent;
+        }
+        entry._right = parent;
+      } else {
+        parent._right = entry._left;
+        if(entry._left != null) {
+          entry._left._parent = parent;
+        }
+        entry._left = parent;
+      }
+      parent._parent = entry;
+      entry._parent = grandParent;
+      if(grandParent == null) {
+        _root = entry;
+      } else if(grandParent._left == parent) {
+        grandParent._left = entry;
+      } else {
+        grandParent._right = entry;
+      }
+      entry._size = parent._size;
+      parent._size = size(parent._left) + size(parent._right) + 1;
+    }
+  }
+
+  /**
+   * A node of the tree of an indexed list.
+   */
+  private static final class Entry<A> {
+
+    private Entry(A value, int priority) {
+      _value = value;
+      _priority = priority;
+    }
+
+    private A _value;
+
+    private final int _priority;
+
+    /**
+     * The number of nodes in the subtree of this node, including this node.
+     */
+    private int _size = 1;
+
+    private Entry<A> _parent;
+
+    private Entry<A> _left;
+
+    private Entry<A> _right;
+  }
+}
@@ -1,133 +1,566 @@
 package org.aikodi.rejuse.association;
-//package be.kuleuven.cs.distrinet.rejuse.association;
-//
-//import java.util.ArrayList;
-//import java.util.List;
-//
-//import java.lang.ref.SoftReference;
-//
-//public class LoadableBidiList<FROM,TO> extends AbstractOrderedMultiAssociation<FROM, TO> {
-//
-//	public static abstract class Loader<T> {
-//
-//		private SoftReference<T> _reference;
-//
-//		public T get() {
-//			T result;
-//			SoftReference<T> reference = _reference;
-//			if(reference != null) {
-//				result = reference.get();
-//				if(result == null) {
-//					reference = null;
-//					_reference = null;
-//					_listeners.forEach(l -> l.unloaded(this));
-//				} else {
-//					return result;
-//				}
-//			} 
-//			result = load();
-//			// Just to satisfy the compiler. From this point on
-//			// result isn't modified anymore.
-//			final T loaded = result;
-//			if(result == null) {
-//				throw new IllegalStateException("Loaded a null reference.");
-//			}
-//			reference = new SoftReference<T>(result);
-//			_reference = reference;
-//			_listeners.forEach(l -> l.loaded(this, loaded));
-//			return result;
-//		}
-//
-//		protected abstract T load();
-//
-//		private List<LoadListener<T>> _listeners;
-//
-//		public void addListener(LoadListener<T> listener) {
-//			if(listener == null) {
-//				throw new IllegalArgumentException();
-//			}
-//			if(_listeners == null) {
-//				_listeners = new ArrayList<>();
-//			}
-//			_listeners.add(listener);
-//		}
-//
-//		public void removeListener(LoadListener<T> listener) {
-//			if(listener == null) {
-//				throw new IllegalArgumentException();
-//			}
-//			if(_listeners != null) {
-//				_listeners.remove(listener);
-//				if(_listeners.isEmpty()) {
-//					_listeners = null;
-//				}
-//			}
-//		}
-//	}
-//
-//	public interface LoadListener<T> {
-//		void loaded(Loader<T> loader, T object);
-//
-//		void unloaded(Loader<T> loader);
-//	}
-//
-//	public LoadableBidiList(FROM object) {
-//		super(object);
-//	}
-//
-//	public LoadableBidiList(FROM object, int initialCapacity) {
-//		super(object, initialCapacity);
-//	}
-//
-//	private List<Loader<Association<? extends TO, ? super FROM>>> _elements;
-//	
-//	@Override
-//	public Association<? extends TO, ? super FROM> associationAt(int index) {
-//		checkIndex(index);
-//		return _elements.get(index).get();
-//	}
-//	
-//	public void add(Loader<Association<? extends TO, ? super FROM>> loader) {
-//		if(loader == null) {
-//			throw new IllegalArgumentException();
-//		}
-//	}
-//
-//	protected void checkIndex(int index) {
-//		if(index < 0 || index >= size()) {
-//			throw new IllegalArgumentException("Index "+index+" is not valid. The assocation has "+size() +" elements.");
-//		}
-//	}
-//
-//	@Override
-//	protected void setAssociationAt(int index, Association<? extends TO, ? super FROM> association) {
-//		todo
-//	}
-//
-//	@Override
-//	public int indexOfAssociation(Association<? extends TO, ? super FROM> association) {
-//	}
-//
-//	@Override
-//	protected boolean isStored() {
-//	}
-//
-//	@Override
-//	protected List<Association<? extends TO, ? super FROM>> internalAssociations() {
-//	}
-//
-//	@Override
-//	protected void initStorage() {
-//		todo
-//	}
-//
-//	@Override
-//	protected boolean removeAssociation(Association<? extends TO, ? super FROM> association) {
-//	}
-//
-//	@Override
-//	public void clear() {
-//		todo
-//	}
-//
-//}
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * <p>An ordered association end whose association ends at the other side are
+ * loaded lazily.</p>
+ *
+ * <p>Each element of the list is a {@link Loader}. A loader loads its association
+ * end on first access and keeps it through a {@link SoftReference}. When memory
+ * runs low, the garbage collector can evict association ends that are not used
+ * anywhere else. The next access loads the association end again. This allows
+ * a large persisted model to be opened without loading it entirely. Only the
+ * branches that are actually navigated are loaded.</p>
+ *
+ * <p>When a loader loads an association end, this list registers itself with that
+ * association end, such that the binding is bi-directional again. A loader must
+ * therefore return an association end that is not yet connected to this list.</p>
+ *
+ * <p>Methods that need the objects at the other side of the binding, such as
+ * {@link #getOtherEnds()}, {@link #apply(org.aikodi.rejuse.action.UniversalConsumer)}
+ * and {@link #associationAt(int)}, load the association ends they visit.
+ * {@link #size()}, {@link #contains(Association)} and {@link #indexOfAssociation(Association)}
+ * do not load anything.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class LoadableBidiList<FROM,TO> extends AbstractOrderedMultiAssociation<FROM, TO> {
+
+	/**
+	 * A class of objects that load an object on demand and keep it
+	 * through a soft reference.
+	 *
+	 * @param <T> The type of the loaded object.
+	 */
+	public static abstract class Loader<T> {
+
+		private Reference<T> _reference;
+
+		/**
+		 * Return the loaded object. If the object is not loaded,
+		 * or if it has been evicted, it is loaded.
+		 *
+		 * @return The loaded object. The result is not null.
+		 */
+		public T get() {
+			T result;
+			Reference<T> reference = _reference;
+			if(reference != null) {
+				result = reference.get();
+				if(result == null) {
+					_reference = null;
+					fireUnloaded();
+				} else {
+					return result;
+				}
+			}
+			result = load();
+			if(result == null) {
+				throw new IllegalStateException("Loaded a null reference.");
+			}
+			_reference = reference(result);
+			fireLoaded(result);
+			return result;
+		}
+
+		/**
+		 * Create the reference through which the given loaded object is kept.
+		 * By default, the result is a {@link SoftReference}, so the object is
+		 * only evicted when memory runs low. Subclasses can override this method
+		 * to use a different eviction policy.
+		 *
+		 * @param object The object that has been loaded. The object is not null.
+		 * @return A reference to the given object. The result is not null.
+		 */
+		protected Reference<T> reference(T object) {
+			return new SoftReference<T>(object);
+		}
+
+		/**
+		 * Return the loaded object without loading it.
+		 *
+		 * @return The loaded object, or null if the object is not loaded
+		 *         or has been evicted.
+		 */
+		public T peek() {
+			Reference<T> reference = _reference;
+			return reference == null ? null : reference.get();
+		}
+
+		/**
+		 * Check whether the object is currently loaded. If the garbage collector has
+		 * evicted the object, the listeners are notified.
+		 */
+		public boolean isLoaded() {
+			Reference<T> reference = _reference;
+			if(reference != null && reference.get() == null) {
+				_reference = null;
+				fireUnloaded();
+			}
+			return _reference != null;
+		}
+
+		/**
+		 * Evict the loaded object. The next call to {@link #get()} loads
+		 * the object again.
+		 *
+		 * Only evict an object that is not used elsewhere. Otherwise, two
+		 * copies of the object can be in use at the same time.
+		 */
+		public void evict() {
+			if(_reference != null) {
+				_reference.clear();
+				_reference = null;
+				fireUnloaded();
+			}
+		}
+
+		/**
+		 * Load the object.
+		 *
+		 * @return The loaded object. The result cannot be null.
+		 */
+		protected abstract T load();
+
+		private List<LoadListener<? super T>> _listeners;
+
+		public void addListener(LoadListener<? super T> listener) {
+			if(listener == null) {
+				throw new IllegalArgumentException("A load listener cannot be null.");
+			}
+			if(_listeners == null) {
+				_listeners = new ArrayList<>(1);
+			}
+			_listeners.add(listener);
+		}
+
+		public void removeListener(LoadListener<? super T> listener) {
+			if(listener == null) {
+				throw new IllegalArgumentException("A load listener cannot be null.");
+			}
+			if(_listeners != null) {
+				_listeners.remove(listener);
+				if(_listeners.isEmpty()) {
+					_listeners = null;
+				}
+			}
+		}
+
+		private void fireLoaded(T object) {
+			if(_listeners != null) {
+				for(LoadListener<? super T> listener: new ArrayList<>(_listeners)) {
+					listener.loaded(this, object);
+				}
+			}
+		}
+
+		private void fireUnloaded() {
+			if(_listeners != null) {
+				for(LoadListener<? super T> listener: new ArrayList<>(_listeners)) {
+					listener.unloaded(this);
+				}
+			}
+		}
+	}
+
+	/**
+	 * An interface for listening to the loading and eviction of objects by a {@link Loader}.
+	 *
+	 * @param <T> The type of the loaded objects.
+	 */
+	public interface LoadListener<T> {
+
+		/**
+		 * Notify the listener that the given loader has loaded the given object.
+		 */
+		void loaded(Loader<? extends T> loader, T object);
+
+		/**
+		 * Notify the listener that the object of the given loader has been evicted.
+		 */
+		void unloaded(Loader<? extends T> loader);
+	}
+
+	/**
+	 * A loader for an association end that is already in memory. The
+	 * association end is held strongly and is never evicted.
+	 */
+	private static class Loaded<T> extends Loader<T> {
+
+		private final T _object;
+
+		private Loaded(T object) {
+			_object = object;
+		}
+
+		@Override
+		public T get() {
+			return _object;
+		}
+
+		@Override
+		public T peek() {
+			return _object;
+		}
+
+		@Override
+		public boolean isLoaded() {
+			return true;
+		}
+
+		@Override
+		public void evict() {
+		}
+
+		@Override
+		protected T load() {
+			return _object;
+		}
+	}
+
+	public LoadableBidiList(FROM object) {
+		super(object);
+	}
+
+	public LoadableBidiList(FROM object, int initialCapacity) {
+		super(object, initialCapacity);
+	}
+
+	/**
+	 * The loaders of the association ends at the other side of the binding.
+	 * The list is null until the first element is added.
+	 */
+	private List<Loader<Association<? extends TO, ? super FROM>>> _elements;
+
+	/**
+	 * The view on {@link #_elements} that is used by the superclass.
+	 */
+	private LoadingList _view;
+
+	/**
+	 * The number of association ends that have been loaded.
+	 */
+	private long _loads;
+
+	/**
+	 * The number of evictions of association ends that have been observed.
+	 */
+	private long _evictions;
+
+	/**
+	 * The listener that connects loaded association ends and counts loads and evictions.
+	 */
+	private final LoadListener<Association<? extends TO, ? super FROM>> _connector = new LoadListener<Association<? extends TO, ? super FROM>>() {
+
+		@Override
+		public void loaded(Loader<? extends Association<? extends TO, ? super FROM>> loader, Association<? extends TO, ? super FROM> association) {
+			_loads++;
+			association.register(LoadableBidiList.this);
+		}
+
+		@Override
+		public void unloaded(Loader<? extends Association<? extends TO, ? super FROM>> loader) {
+			_evictions++;
+		}
+	};
+
+	/**
+	 * Add the given loader at the end of this list. Nothing is loaded. If the
+	 * loader has already loaded its association end, this list is registered
+	 * with it and an "element added" event is sent. Otherwise, no event is sent
+	 * because that would require loading the association end.
+	 *
+	 * @param loader The loader to be added. The loader cannot be null.
+	 */
+	public void add(Loader<Association<? extends TO, ? super FROM>> loader) {
+		if(loader == null) {
+			throw new IllegalArgumentException("A loader cannot be null.");
+		}
+		checkLock();
+		if(! isStored()) {
+			initStorage();
+		}
+		_elements.add(loader);
+		loader.addListener(_connector);
+		Association<? extends TO, ? super FROM> loaded = loader.peek();
+		if(loaded != null) {
+			checkLock(loaded);
+			loaded.register(this);
+			fireElementAdded(loaded.getObject());
+		} else {
+			modified();
+			flushCache();
+		}
+	}
+
+	/**
+	 * Remove the given loader from this list. If the association end of the
+	 * loader is loaded, it is disconnected from this list.
+	 *
+	 * @param loader The loader to be removed.
+	 */
+	public void remove(Loader<Association<? extends TO, ? super FROM>> loader) {
+		checkLock();
+		if(isStored()) {
+			int index = _elements.indexOf(loader);
+			if(index >= 0) {
+				Association<? extends TO, ? super FROM> loaded = loader.peek();
+				if(loaded != null) {
+					remove(loaded);
+				} else {
+					_elements.remove(index);
+					loader.removeListener(_connector);
+					modified();
+					flushCache();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return the loader at the given index.
+	 *
+	 * @param index The base-0 index of the requested loader.
+	 */
+	public Loader<Association<? extends TO, ? super FROM>> loaderAt(int index) {
+		checkIndex(index);
+		return _elements.get(index);
+	}
+
+	@Override
+	public Association<? extends TO, ? super FROM> associationAt(int index) {
+		checkIndex(index);
+		return _elements.get(index).get();
+	}
+
+	protected void checkIndex(int index) {
+		if(index < 0 || index >= size()) {
+			throw new IllegalArgumentException("Index "+index+" is not valid. The assocation has "+size() +" elements.");
+		}
+	}
+
+	@Override
+	protected void setAssociationAt(int index, Association<? extends TO, ? super FROM> association) {
+		_view.set(index, association);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Nothing is loaded.
+	 */
+	@Override
+	public int indexOfAssociation(Association<? extends TO, ? super FROM> association) {
+		return isStored() ? _view.indexOf(association) : -1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The loaders of association ends that are still loaded are reused. The
+	 * other association ends are stored in loaders that keep them loaded.
+	 */
+	@Override
+	protected void restoreConnections(List<? extends Association<? extends TO, ? super FROM>> connections) {
+		Map<Association<?,?>, Loader<Association<? extends TO, ? super FROM>>> loaders = new IdentityHashMap<>();
+		if(isStored()) {
+			for(Loader<Association<? extends TO, ? super FROM>> loader: _elements) {
+				Association<? extends TO, ? super FROM> loaded = loader.peek();
+				if(loaded != null) {
+					loaders.put(loaded, loader);
+				}
+				loader.removeListener(_connector);
+			}
+			_elements.clear();
+		} else {
+			initStorage();
+		}
+		for(Association<? extends TO, ? super FROM> connection: connections) {
+			Loader<Association<? extends TO, ? super FROM>> loader = loaders.remove(connection);
+			if(loader == null) {
+				loader = new Loaded<>(connection);
+			}
+			loader.addListener(_connector);
+			_elements.add(loader);
+		}
+		modified();
+		flushCache();
+	}
+
+	/**
+	 * A loader can produce a different association end after it has been evicted,
+	 * so the cache is not kept up to date incrementally.
+	 */
+	@Override
+	protected void connectionsChanged() {
+		flushCache();
+	}
+
+	@Override
+	protected boolean isStored() {
+		return _elements != null;
+	}
+
+	@Override
+	protected List<Association<? extends TO, ? super FROM>> internalAssociations() {
+		return _view;
+	}
+
+	@Override
+	protected void initStorage() {
+		_elements = new ArrayList<>(initialCapacity());
+		_view = new LoadingList();
+	}
+
+	@Override
+	protected boolean removeAssociation(Association<? extends TO, ? super FROM> association) {
+		return _view.remove(association);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Association ends that are not loaded are simply dropped.
+	 * The association ends that are loaded are disconnected.
+	 */
+	@Override
+	public void clear() {
+		checkLock();
+		if(isStored()) {
+			List<Association<? extends TO, ? super FROM>> loaded = new ArrayList<>();
+			for(Loader<Association<? extends TO, ? super FROM>> loader: _elements) {
+				Association<? extends TO, ? super FROM> association = loader.peek();
+				if(association != null) {
+					checkLock(association);
+					loaded.add(association);
+				}
+			}
+			removeAll(loaded);
+			for(Loader<Association<? extends TO, ? super FROM>> loader: _elements) {
+				loader.removeListener(_connector);
+			}
+			_elements.clear();
+			modified();
+			flushCache();
+		}
+	}
+
+	/**
+	 * @return The number of association ends that are currently loaded.
+	 */
+	public int loadedCount() {
+		int result = 0;
+		if(isStored()) {
+			for(Loader<Association<? extends TO, ? super FROM>> loader: _elements) {
+				if(loader.isLoaded()) {
+					result++;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The number of times an association end of this list has been loaded.
+	 */
+	public long loadCount() {
+		return _loads;
+	}
+
+	/**
+	 * @return The number of evictions that have been observed. An eviction by the
+	 *         garbage collector is observed when the evicted association end is
+	 *         accessed again, or when {@link #loadedCount()} is computed.
+	 */
+	public long evictionCount() {
+		return _evictions;
+	}
+
+	/**
+	 * A list view on the loaders that presents the loaded association ends.
+	 * Reading an element loads it. Searching for an element only looks at
+	 * association ends that are loaded, because an association end that
+	 * is used elsewhere cannot have been evicted.
+	 */
+	private class LoadingList extends AbstractList<Association<? extends TO, ? super FROM>> implements RandomAccess {
+
+		@Override
+		public Association<? extends TO, ? super FROM> get(int index) {
+			return _elements.get(index).get();
+		}
+
+		@Override
+		public int size() {
+			return _elements.size();
+		}
+
+		@Override
+		public int indexOf(Object o) {
+			int size = _elements.size();
+			for(int i = 0; i < size; i++) {
+				if(_elements.get(i).peek() == o) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return indexOf(o) >= 0;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 *
+		 * Like {@link #indexOf(Object)}, this does not load any association end.
+		 */
+		@Override
+		public boolean remove(Object o) {
+			int index = indexOf(o);
+			if(index < 0) {
+				return false;
+			}
+			remove(index);
+			return true;
+		}
+
+		@Override
+		public Association<? extends TO, ? super FROM> set(int index, Association<? extends TO, ? super FROM> element) {
+			Loader<Association<? extends TO, ? super FROM>> old = _elements.set(index, new Loaded<>(element));
+			old.removeListener(_connector);
+			return old.peek();
+		}
+
+		@Override
+		public void add(int index, Association<? extends TO, ? super FROM> element) {
+			_elements.add(index, new Loaded<>(element));
+			modCount++;
+		}
+
+		@Override
+		public Association<? extends TO, ? super FROM> remove(int index) {
+			Loader<Association<? extends TO, ? super FROM>> old = _elements.remove(index);
+			old.removeListener(_connector);
+			modCount++;
+			return old.peek();
+		}
+
+		@Override
+		public void clear() {
+			for(Loader<Association<? extends TO, ? super FROM>> loader: _elements) {
+				loader.removeListener(_connector);
+			}
+			_elements.clear();
+			modCount++;
+		}
+	}
+}
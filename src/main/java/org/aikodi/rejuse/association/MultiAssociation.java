@@ -1,10 +1,14 @@
 package org.aikodi.rejuse.association;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.ObjIntConsumer;
 
 import org.aikodi.rejuse.action.UniversalConsumer;
 import org.aikodi.rejuse.predicate.SafePredicate;
@@ -70,6 +74,10 @@ import org.aikodi.rejuse.predicate.SafePredicate;
  * to a new Set (e.g. TreeSet). The general method <code>getOtherEnds()</code> must return a <code>List</code>
  * because in some bindings the order may be important.</p>
  *
+ * <p>The storage adapts to the size of the association. Nothing is allocated for an empty
+ * association. Up to eight association ends are stored inline in a small array. Larger
+ * associations use a hash set.</p>
+ *
  * @author  Marko van Dooren
  */
 public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO> {
@@ -98,7 +106,6 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
    @*/
   public MultiAssociation(FROM object) {
     super(object);
-    _elements = new HashSet<Association<? extends TO,? super FROM>>();
   }
   
   /**
@@ -126,9 +133,15 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
   }
   
   public void addOtherEndsTo(Collection<? super TO> collection) {
-	  for(Association<? extends TO,? super FROM> element: _elements) {
-          collection.add(element.getObject());
-	  }
+    if(_set != null) {
+      for(Association<? extends TO,? super FROM> element: _set) {
+        collection.add(element.getObject());
+      }
+    } else {
+      for(int i = 0; i < _size; i++) {
+        collection.add(elementAt(i).getObject());
+      }
+    }
   }
   
   /**
@@ -143,19 +156,46 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
    @ post \result != null;
    @*/
   public /*@ pure @*/ List<Association<? extends TO,? super FROM>> getOtherAssociations() {
-    return new ArrayList<Association<? extends TO,? super FROM>>(_elements);
+    return new ArrayList<Association<? extends TO,? super FROM>>(internalAssociations());
   }
   
   @Override
   protected Collection<Association<? extends TO, ? super FROM>> internalAssociations() {
-  	return _elements;
+    if(_set != null) {
+      return _set;
+    } else if(_array != null) {
+      return inlineAssociations();
+    } else {
+      return Collections.emptyList();
+    }
+  }
+
+  /**
+   * @return A view on the association ends in the inline array.
+   */
+  @SuppressWarnings("unchecked")
+  private List<Association<? extends TO, ? super FROM>> inlineAssociations() {
+    // The inline array only contains association ends of this type.
+    return (List<Association<? extends TO, ? super FROM>>) (List<?>) Arrays.asList(_array).subList(0, _size);
   }
   
+	/**
+	 * {@inheritDoc}
+	 *
+	 * If this association end is frozen, the result is an immutable view on
+	 * its storage. Looking up an object in that view takes linear time.
+	 */
 	@Override
 	public /*@ pure @*/ Set<TO> getOtherEnds() {
+		if(isFrozen()) {
+			return internalAssociations().isEmpty() ? Collections.emptySet() : new FrozenEnds.Distinct<TO>(internalAssociations());
+		}
 		if(isCaching()) {
 			if(_cache == null) {
+				AssociationMetrics.cacheMiss();
 				_cache = Collections.unmodifiableSet(doGetOtherEnds());
+			} else {
+				AssociationMetrics.cacheHit();
 			}
 			return _cache;
 		} else {
@@ -185,7 +225,7 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
    @*/
   @Override
   protected void unregister(Association<? extends TO,? super FROM> element) {
-    boolean removed = _elements.remove(element);
+    boolean removed = discard(element);
     if(removed) {
     	fireElementRemoved(element.getObject());
     }
@@ -205,7 +245,7 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
    @*/
   @Override
   protected boolean register(Association<? extends TO,? super FROM> element) {
-    boolean added = _elements.add(element);
+    boolean added = store(element);
     if(added) {
     	fireElementAdded(element.getObject());
     	return true;
@@ -213,6 +253,16 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
     return false;
   }
   
+  
+  @Override
+  protected void registerWithoutEvents(Association<? extends TO,? super FROM> element) {
+    store(element);
+  }
+
+  @Override
+  protected void unregisterWithoutEvents(Association<? extends TO,? super FROM> element) {
+    discard(element);
+  }
 
  /*@
    @ also public behavior
@@ -229,7 +279,7 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
              public boolean eval(Association<? extends TO,? super FROM> o) {
                return MultiAssociation.this.contains(o);
              }
-           }.forAll(_elements);
+           }.forAll(internalAssociations());
   }
 
  /*@
@@ -271,7 +321,7 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
 	 @ post \result == getOtherRelations().size();
 	 @*/
 	public /*@ pure @*/ int size() {
-		return _elements.size();
+		return _set != null ? _set.size() : _size;
   }
 	
   /**
@@ -283,18 +333,111 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
    *        this ReferenceSet.
    */
   public /*@ pure @*/ boolean contains(Association<? extends TO,? super FROM> element) {
-    return _elements.contains(element);
+    if(_set != null) {
+      return _set.contains(element);
+    }
+    for(int i = 0; i < _size; i++) {
+      if(_array[i] == element) {
+        return true;
+      }
+    }
+    return false;
   }
   
   /**
-   * The set containing the StructureElements at the n side of the 1-n binding.
+   * The maximum number of association ends that is stored inline in an array.
+   * A larger association uses a hash set.
+   */
+  private static final int INLINE_CAPACITY = 8;
+
+  /**
+   * The association ends at the n side of the 1-n binding while their number
+   * does not exceed {@link #INLINE_CAPACITY}. Only the first {@link #_size}
+   * positions are used. The array is null when nothing has been connected yet,
+   * and when the association ends are stored in {@link #_set}. When this association
+   * end is frozen, the array contains all association ends and has no free positions,
+   * regardless of the inline capacity.
+   */
+ /*@
+   @ private invariant _array != null ==> _set == null;
+   @ private invariant (\forall int i; i >= 0 && i < _size; _array[i] != null);
+   @*/
+  private Association<?,?>[] _array;
+
+  /**
+   * The number of association ends in {@link #_array}.
+   */
+  private int _size;
+
+  /**
+   * The set containing the association ends at the n side of the 1-n binding
+   * once their number has exceeded {@link #INLINE_CAPACITY}.
    */
  /*@
-   @ private invariant ! _elements.contains(null);
-   @ private invariant (\forall Object o; _elements.contains(o);
-   @                      o instanceof Relation);
+   @ private invariant _set != null ==> ! _set.contains(null);
    @*/
-  private HashSet<Association<? extends TO,? super FROM>> _elements;
+  private HashSet<Association<? extends TO,? super FROM>> _set;
+
+  @SuppressWarnings("unchecked")
+  private Association<? extends TO,? super FROM> elementAt(int index) {
+    return (Association<? extends TO,? super FROM>) _array[index];
+  }
+
+  /**
+   * Store the given association end.
+   *
+   * @return True if the association end was not yet stored. False otherwise.
+   */
+  private boolean store(Association<? extends TO,? super FROM> element) {
+    if(_set != null) {
+      return _set.add(element);
+    }
+    if(contains(element)) {
+      return false;
+    }
+    if(_array == null) {
+      _array = new Association<?,?>[2];
+    } else if(_size == _array.length) {
+      if(_size == INLINE_CAPACITY) {
+        _set = new HashSet<>();
+        for(int i = 0; i < _size; i++) {
+          _set.add(elementAt(i));
+        }
+        _array = null;
+        _size = 0;
+        return _set.add(element);
+      }
+      _array = Arrays.copyOf(_array, Math.min(_size * 2, INLINE_CAPACITY));
+    }
+    _array[_size++] = element;
+    return true;
+  }
+
+  /**
+   * Remove the given association end from the storage.
+   *
+   * @return True if the association end was stored. False otherwise.
+   */
+  private boolean discard(Association<? extends TO,? super FROM> element) {
+    if(_set != null) {
+      boolean removed = _set.remove(element);
+      if(_set.isEmpty()) {
+        _set = null;
+      }
+      return removed;
+    }
+    for(int i = 0; i < _size; i++) {
+      if(_array[i] == element) {
+        _array[i] = _array[--_size];
+        _array[_size] = null;
+        if(_size == 0) {
+          _array = null;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
 
 	@Override
 	public void replace(Association<? extends TO, ? super FROM> element, Association<? extends TO, ? super FROM> newElement) {
@@ -315,7 +458,7 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
    */
   public void clear() {
   	checkLock();
-  	Collection<Association<? extends TO,? super FROM>> rels = new ArrayList<Association<? extends TO,? super FROM>>(_elements);
+  	Collection<Association<? extends TO,? super FROM>> rels = getOtherAssociations();
   	for(Association<? extends TO,? super FROM> rel : rels) {
   		checkLock(rel);
   	}
@@ -326,14 +469,81 @@ public class MultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO>
   
   @Override
 	public <E extends Exception> void apply(UniversalConsumer<? super TO, E> action) throws E {
-  	for(Association<? extends TO,? super FROM> element: _elements) {
-  		action.perform(element.getObject());
-  	}
+    if(_set != null) {
+      for(Association<? extends TO,? super FROM> element: _set) {
+        action.perform(element.getObject());
+      }
+    } else {
+      for(int i = 0; i < _size; i++) {
+        action.perform(elementAt(i).getObject());
+      }
+    }
+  }
+
+  @Override
+  public void forEachEnd(ObjIntConsumer<? super TO> action) {
+    int expected = modCount();
+    int index = 0;
+    if(_set != null) {
+      for(Association<? extends TO,? super FROM> element: _set) {
+        action.accept(element.getObject(), index++);
+        if(modCount() != expected) {
+          throw new ConcurrentModificationException();
+        }
+      }
+    } else {
+      for(; index < _size; index++) {
+        action.accept(elementAt(index).getObject(), index);
+        if(modCount() != expected) {
+          throw new ConcurrentModificationException();
+        }
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * If the association end has been promoted to a hash set, the result
+   * wraps the spliterator of that set, so that spliterator is allocated
+   * as well.
+   */
+  @Override
+  public Spliterator<TO> endSpliterator() {
+    if(_set != null) {
+      return new EndSpliterator.Wrapped<>(this, _set.spliterator());
+    }
+    return new EndSpliterator<>(this, i -> elementAt(i).getObject(), _size, Spliterator.DISTINCT);
+  }
+
+  /**
+   * Trim the inline array to the exact size. An association end that has been
+   * promoted to a hash set keeps that set, so {@link #contains(Association)}
+   * does not become a linear search.
+   */
+  @Override
+  protected void compact() {
+    if(_set == null && _array != null && _array.length != _size) {
+      _array = Arrays.copyOf(_array, _size);
+    }
+  }
+
+  @Override
+  protected void restoreConnections(List<? extends Association<? extends TO,? super FROM>> connections) {
+    _array = null;
+    _size = 0;
+    _set = null;
+    for(Association<? extends TO,? super FROM> connection: connections) {
+      store(connection);
+    }
+    modified();
+    flushCache();
   }
 
   private Set<TO> _cache;
   
 	public void flushCache() {
+		AssociationMetrics.cacheFlushed();
 		_cache = null;
 	}
 	
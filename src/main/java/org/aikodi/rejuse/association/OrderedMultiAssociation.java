@@ -1,6 +1,5 @@
 package org.aikodi.rejuse.association;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
 
 /**
@@ -107,73 +106,6 @@ public class OrderedMultiAssociation<FROM,TO> extends AbstractOrderedMultiAssoci
     super(object, initialCapacity);
   }
 
-  /**
-   * Add the given Relation to this ReferenceSet.
-   *
-   * @param element
-   *        The Relation to be added.
-   */
- /*@
-   @ public behavior
-   @
-   @ pre element != null;
-   @
-   @ post registered(\old(getOtherRelations()), element);
-   @ post element.registered(\old(element.getOtherRelations()),this);
-   @*/  
-  public void add(Association<? extends TO,? super FROM> element) {
-    checkLock();
-    checkLock(element);
-    if(element != null) {
-      boolean added = element.register(this);
-      // Skip a redundant contains check.
-      if(added) {
-        registerPrivate(element);
-      }
-    }
-  }
-
-  
-  /**
-   * Remove the given Relation from this ReferenceSet.
-   *
-   * @param element
-   *        The Relation to be removed.
-   */
- /*@
-   @ public behavior
-   @
-   @ pre other != null;
-   @
-   @ post unregistered(\old(getOtherRelations()), other);
-   @ post other.unregistered(\old(other.getOtherRelations()), this);
-   @*/  
-  public void remove(Association<? extends TO,? super FROM> other) {
-    checkLock();
-    checkLock(other);
-    if (contains(other)) {
-      other.unregister(this);
-      // Skip a redundant contains check.
-      unregisterInternal(other);
-    }
-  }
-
-  /**
-   * {@inheritDoc} 
-   */
-  public void clear() {
-    checkLock();
-    if(isStored()) {
-      Collection<Association<? extends TO,? super FROM>> rels = new ArrayList<>(internalAssociations());
-      for(Association<? extends TO,? super FROM> rel : rels) {
-        checkLock(rel);
-      }
-      for(Association<? extends TO,? super FROM> rel : rels) {
-        remove(rel);
-      }
-    }
-  }
-
   /**
    * The set containing the StructureElements at the n side of the 1-n binding.
    */
@@ -215,5 +147,10 @@ public class OrderedMultiAssociation<FROM,TO> extends AbstractOrderedMultiAssoci
   protected boolean removeAssociation(Association<? extends TO,? super FROM> association) {
   	return _elements.remove(association);
   }
+
+  @Override
+  protected void trimStorage() {
+    _elements.trimToSize();
+  }
 }
 
@@ -3,6 +3,8 @@ package org.aikodi.rejuse.association;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.function.ObjIntConsumer;
 
 import org.aikodi.rejuse.action.UniversalConsumer;
 
@@ -154,7 +156,7 @@ public class SingleAssociation<FROM,TO> extends Association<FROM,TO> {
   		checkLock();
   		checkLock(getOtherRelation());
   		checkLock(other);
-  		if (other != _other) {
+  		if (other != getOtherRelation()) {
   			register(other);
   			if (other != null) {
   				other.register(this);
@@ -249,32 +251,47 @@ public class SingleAssociation<FROM,TO> extends Association<FROM,TO> {
    */
   @Override
   protected void unregister(Association<? extends TO,? super FROM> other) {
-  	if(_other != null) {
-  		TO old = _other.getObject();
-      _other = null;
+  	Association<? extends TO,? super FROM> current = getOtherRelation();
+  	if(current != null) {
+  		TO old = current.getObject();
+      setOtherRelation(null);
       fireElementRemoved(old);
   	}
   }
 
+  /**
+   * The association end to which this association end is currently connected
+   * is disconnected when another association end is registered.
+   */
+  @Override
+  protected void checkRegisterLocks(Association<? extends TO,? super FROM> other) {
+  	Association<? extends TO,? super FROM> current = getOtherRelation();
+  	if(current != other) {
+  		checkLock(current);
+  	}
+  }
+
   @Override
   protected boolean register(Association<? extends TO,? super FROM> other) {
-  	if(_other == other) {
+  	Association<? extends TO,? super FROM> current = getOtherRelation();
+  	if(current == other) {
   		return false;
   	}
-    if(_other != null) {
-  		TO old = _other.getObject();
-      _other.unregister(this);
-      _other = other;
+    if(current != null) {
+  		TO old = current.getObject();
+      checkLock(current);
+      current.unregister(this);
+      setOtherRelation(other);
       if(other != null) {
       	fireElementReplaced(old, other.getObject());
       } else {
       	fireElementRemoved(old);
       }
     }
-    // _other == null
+    // current == null
     else if(other != null){
-      _other = other;
-      fireElementAdded(_other.getObject());
+      setOtherRelation(other);
+      fireElementAdded(other.getObject());
     }
     return true;
   }
@@ -285,14 +302,32 @@ public class SingleAssociation<FROM,TO> extends Association<FROM,TO> {
   public /*@ pure @*/ Association<? extends TO,? super FROM> getOtherRelation() {
     return _other;
   }
+
+  /**
+   * Store the given association end as the other side of this binding.
+   * This method does not send events and does not modify the other
+   * association end. Subclasses can override this method together with
+   * {@link #getOtherRelation()} to store the other end differently.
+   *
+   * @param other The association end at the other side. Can be null.
+   */
+ /*@
+   @ protected behavior
+   @
+   @ post getOtherRelation() == other;
+   @*/
+  protected void setOtherRelation(Association<? extends TO,? super FROM> other) {
+    _other = other;
+  }
   
   /**
    * See superclass.
    */
   public /*@ pure @*/ List<Association<? extends TO,? super FROM>> getOtherAssociations() {
     ArrayList<Association<? extends TO,? super FROM>> result = new ArrayList<Association<? extends TO,? super FROM>>();
-    if(_other != null) {
-      result.add(_other);
+    Association<? extends TO,? super FROM> other = getOtherRelation();
+    if(other != null) {
+      result.add(other);
     }
     return result;
   }
@@ -304,13 +339,14 @@ public class SingleAssociation<FROM,TO> extends Association<FROM,TO> {
   
   @Override
   public boolean contains(Association<? extends TO, ? super FROM> association) {
-  	return association == _other;
+  	return association == getOtherRelation();
   }
   
   /**
-   * The Relation this Reference belongs to
+   * The Relation this Reference belongs to. The field is volatile so that
+   * {@link ConcurrentSingleAssociation} can read it without a lock.
    */
-  private Association<? extends TO,? super FROM> _other;
+  private volatile Association<? extends TO,? super FROM> _other;
 
 	@Override
 	public void replace(Association<? extends TO, ? super FROM> element, Association<? extends TO, ? super FROM> newElement) {
@@ -319,6 +355,13 @@ public class SingleAssociation<FROM,TO> extends Association<FROM,TO> {
 		}
 	}
 
+	@Override
+	protected void restoreConnections(List<? extends Association<? extends TO,? super FROM>> connections) {
+		setOtherRelation(connections.isEmpty() ? null : connections.get(0));
+		modified();
+		flushCache();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -334,16 +377,34 @@ public class SingleAssociation<FROM,TO> extends Association<FROM,TO> {
 	
 	@Override
 	public <E extends Exception> void apply(UniversalConsumer<? super TO, E> action) throws E {
-		if (_other != null) {
-			action.perform(_other.getObject());
+		Association<? extends TO,? super FROM> other = getOtherRelation();
+		if (other != null) {
+			action.perform(other.getObject());
 		}
 	}
 	
+	@Override
+	public void forEachEnd(ObjIntConsumer<? super TO> action) {
+		Association<? extends TO,? super FROM> other = getOtherRelation();
+		if (other != null) {
+			action.accept(other.getObject(), 0);
+		}
+	}
+
+	@Override
+	public Spliterator<TO> endSpliterator() {
+		Association<? extends TO,? super FROM> other = getOtherRelation();
+		return new EndSpliterator<>(this, i -> other.getObject(), other == null ? 0 : 1, Spliterator.DISTINCT);
+	}
+
 	@Override
 	public /*@ pure @*/ List<TO> getOtherEnds() {
 		if(isCaching()) {
 			if(_cache == null) {
+				AssociationMetrics.cacheMiss();
 				_cache = doGetOtherEnds();
+			} else {
+				AssociationMetrics.cacheHit();
 			}
 			return _cache;
 		} else {
@@ -352,6 +413,7 @@ public class SingleAssociation<FROM,TO> extends Association<FROM,TO> {
 	}
 	
 	public void flushCache() {
+		AssociationMetrics.cacheFlushed();
 		_cache = null;
 	}
 	
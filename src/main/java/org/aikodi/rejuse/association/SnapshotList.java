@@ -0,0 +1,155 @@
+package org.aikodi.rejuse.association;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * An array based list that hands out immutable snapshots of its contents in
+ * constant time.
+ *
+ * A snapshot shares the array of the list. Appending an element does not affect
+ * existing snapshots because they only see the positions that were in use when
+ * they were created. All other modifications copy the array first if it is
+ * shared with a snapshot. As a result, alternately appending an element and
+ * taking a snapshot costs amortized constant time per operation.
+ *
+ * @author Marko van Dooren
+ *
+ * @param <T> The type of the elements in the list.
+ */
+class SnapshotList<T> {
+
+	/**
+	 * Create a new snapshot list with the given initial capacity.
+	 */
+	SnapshotList(int capacity) {
+		_elements = new Object[Math.max(capacity, 4)];
+	}
+
+	/**
+	 * The array containing the elements. Only the first {@link #_size} positions are used.
+	 */
+	private Object[] _elements;
+
+	private int _size;
+
+	/**
+	 * True if {@link #_elements} is referenced by a snapshot.
+	 */
+	private boolean _shared;
+
+	/**
+	 * The most recent snapshot. It is null if the list has been modified since.
+	 */
+	private List<T> _snapshot;
+
+	/**
+	 * @return An immutable list with the current contents of this list.
+	 */
+	List<T> snapshot() {
+		if(_snapshot == null) {
+			if(_size == 0) {
+				_snapshot = Collections.emptyList();
+			} else {
+				_snapshot = new Snapshot<>(_elements, _size);
+				_shared = true;
+			}
+		}
+		return _snapshot;
+	}
+
+	int size() {
+		return _size;
+	}
+
+	void add(T element) {
+		if(_size == _elements.length) {
+			// The new array is not shared with any snapshot.
+			_elements = Arrays.copyOf(_elements, _size + (_size >> 1) + 1);
+			_shared = false;
+		}
+		_elements[_size++] = element;
+		_snapshot = null;
+	}
+
+	void add(int index, T element) {
+		if(index == _size) {
+			add(element);
+		} else {
+			checkIndex(index);
+			if(_size == _elements.length) {
+				Object[] elements = new Object[_size + (_size >> 1) + 1];
+				System.arraycopy(_elements, 0, elements, 0, index);
+				System.arraycopy(_elements, index, elements, index + 1, _size - index);
+				_elements = elements;
+				_shared = false;
+			} else {
+				unshare();
+				System.arraycopy(_elements, index, _elements, index + 1, _size - index);
+			}
+			_elements[index] = element;
+			_size++;
+			_snapshot = null;
+		}
+	}
+
+	void set(int index, T element) {
+		checkIndex(index);
+		unshare();
+		_elements[index] = element;
+		_snapshot = null;
+	}
+
+	void remove(int index) {
+		checkIndex(index);
+		unshare();
+		System.arraycopy(_elements, index + 1, _elements, index, _size - index - 1);
+		_elements[--_size] = null;
+		_snapshot = null;
+	}
+
+	private void checkIndex(int index) {
+		if(index < 0 || index >= _size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + _size);
+		}
+	}
+
+	/**
+	 * Make sure that the array is not shared with a snapshot.
+	 */
+	private void unshare() {
+		if(_shared) {
+			_elements = Arrays.copyOf(_elements, _elements.length);
+			_shared = false;
+		}
+	}
+
+	private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+
+		private Snapshot(Object[] elements, int size) {
+			_elements = elements;
+			_size = size;
+		}
+
+		private final Object[] _elements;
+
+		private final int _size;
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T get(int index) {
+			if(index < 0 || index >= _size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", size: " + _size);
+			}
+			return (T) _elements[index];
+		}
+
+		@Override
+		public int size() {
+			return _size;
+		}
+	}
+}
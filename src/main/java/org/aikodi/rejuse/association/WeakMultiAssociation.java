@@ -0,0 +1,360 @@
+package org.aikodi.rejuse.association;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.aikodi.rejuse.action.UniversalConsumer;
+
+/**
+ * <p>A {@link MultiAssociation} counterpart that refers to the association ends at
+ * the other side of the binding through weak references.</p>
+ *
+ * <p>This class is intended for registries that must know about a set of objects
+ * without keeping them alive. An object at the other side is kept alive by its own
+ * references, not by this association end. The weak references are registered with
+ * a reference queue. The entries of association ends that have been garbage
+ * collected are purged lazily when this association end is accessed. For every
+ * purged entry, the listeners receive an {@link AssociationListener#notifyElementCollected()}
+ * event. An "element removed" event cannot be sent because the element is no
+ * longer available.</p>
+ *
+ * <p>The association ends at the other side are typically stored in a field of their
+ * objects. If nothing else refers to such an association end, it must not be
+ * connected to a weak association end, since it could be collected while its object
+ * is still alive.</p>
+ *
+ * <p>The other ends are never cached, because the cache would keep the objects at the
+ * other side alive.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class WeakMultiAssociation<FROM,TO> extends AbstractMultiAssociation<FROM,TO> {
+
+  /**
+   * Initialize an empty weak association end for the given object.
+   *
+   * @param object
+   *        The object on this side of the binding
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre object != null;
+   @
+   @ post getObject() == object;
+   @ post (\forall Relation r;; !contains(r));
+   @*/
+  public WeakMultiAssociation(FROM object) {
+    super(object);
+  }
+
+  /**
+   * The weak references to the association ends at the other side, indexed
+   * by the identity of their referents. The map is null if this association
+   * end has never been connected, or if all connections have been purged.
+   */
+  private Map<Object, Entry> _entries;
+
+  /**
+   * The queue with the references whose association end has been collected.
+   */
+  private ReferenceQueue<Association<?,?>> _queue;
+
+  public void add(Association<? extends TO,? super FROM> element) {
+    checkLock();
+    checkLock(element);
+    if(element != null) {
+      element.register(this);
+      register(element);
+    }
+  }
+
+  public void remove(Association<? extends TO,? super FROM> element) {
+    checkLock();
+    checkLock(element);
+    if(contains(element)) {
+      element.unregister(this);
+      unregister(element);
+    }
+  }
+
+  @Override
+  public void replace(Association<? extends TO,? super FROM> element, Association<? extends TO,? super FROM> newElement) {
+    if(contains(element)) {
+      checkLock();
+      checkLock(element);
+      checkLock(newElement);
+      disableEvents();
+      try {
+        remove(element);
+        add(newElement);
+      } finally {
+        enableEvents();
+      }
+      fireElementReplaced(element.getObject(), newElement.getObject());
+    }
+  }
+
+  @Override
+  public void clear() {
+    removeAll(getOtherAssociations());
+  }
+
+  @Override
+  protected boolean register(Association<? extends TO,? super FROM> element) {
+    purge();
+    if(store(element)) {
+      fireElementAdded(element.getObject());
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  protected void unregister(Association<? extends TO,? super FROM> element) {
+    purge();
+    if(discard(element)) {
+      fireElementRemoved(element.getObject());
+    }
+  }
+
+  @Override
+  protected void registerWithoutEvents(Association<? extends TO,? super FROM> element) {
+    store(element);
+  }
+
+  @Override
+  protected void unregisterWithoutEvents(Association<? extends TO,? super FROM> element) {
+    discard(element);
+  }
+
+  @Override
+  protected void restoreConnections(List<? extends Association<? extends TO,? super FROM>> connections) {
+    _entries = null;
+    _queue = null;
+    for(Association<? extends TO,? super FROM> connection: connections) {
+      store(connection);
+    }
+    modified();
+  }
+
+  @Override
+  public boolean contains(Association<? extends TO,? super FROM> element) {
+    return element != null && _entries != null && _entries.containsKey(new Key(element));
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * Entries of collected association ends are purged first.
+   */
+  @Override
+  public int size() {
+    purge();
+    return _entries == null ? 0 : _entries.size();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The result is a new set. It is not cached.
+   */
+  @Override
+  public Set<TO> getOtherEnds() {
+    Set<TO> result = new HashSet<>();
+    addOtherEndsTo(result);
+    return result;
+  }
+
+  @Override
+  public void addOtherEndsTo(Collection<? super TO> collection) {
+    for(Association<? extends TO,? super FROM> element: internalAssociations()) {
+      collection.add(element.getObject());
+    }
+  }
+
+  @Override
+  public List<Association<? extends TO,? super FROM>> getOtherAssociations() {
+    return internalAssociations();
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The result is a new list with the association ends that have not been collected.
+   */
+  @Override
+  protected List<Association<? extends TO,? super FROM>> internalAssociations() {
+    purge();
+    List<Association<? extends TO,? super FROM>> result = new ArrayList<>(_entries == null ? 0 : _entries.size());
+    if(_entries != null) {
+      for(Entry entry: _entries.values()) {
+        Association<? extends TO,? super FROM> element = element(entry);
+        if(element != null) {
+          result.add(element);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return The association end that is referenced by the given entry, or null
+   *         if it has been collected. Only association ends that were connected
+   *         to this one are stored, so the association end has the right type.
+   */
+  @SuppressWarnings("unchecked")
+  private Association<? extends TO,? super FROM> element(Entry entry) {
+    return (Association<? extends TO,? super FROM>) entry.get();
+  }
+
+  @Override
+  public <E extends Exception> void apply(UniversalConsumer<? super TO, E> action) throws E {
+    for(Association<? extends TO,? super FROM> element: internalAssociations()) {
+      action.perform(element.getObject());
+    }
+  }
+
+  /**
+   * Nothing is cached.
+   */
+  @Override
+  public void flushCache() {
+  }
+
+  @Override
+  public boolean registered(List<Association<? extends TO,? super FROM>> oldConnections, Association<? extends TO,? super FROM> registered) {
+    if(oldConnections == null || ! contains(registered)) {
+      return false;
+    }
+    for(Association<? extends TO,? super FROM> connection: oldConnections) {
+      if(! contains(connection)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean unregistered(List<Association<? extends TO,? super FROM>> oldConnections, Association<? extends TO,? super FROM> unregistered) {
+    if(oldConnections == null || ! oldConnections.contains(unregistered) || contains(unregistered)) {
+      return false;
+    }
+    for(Association<? extends TO,? super FROM> connection: oldConnections) {
+      if(connection != unregistered && ! contains(connection)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  protected boolean isValidElement(Association<? extends TO,? super FROM> association) {
+    return association != null;
+  }
+
+  /**
+   * Remove the entries of the association ends that have been garbage collected,
+   * and send an "element collected" event for each of them.
+   */
+  private void purge() {
+    if(_queue != null) {
+      int collected = 0;
+      Reference<? extends Association<?,?>> reference;
+      while((reference = _queue.poll()) != null) {
+        if(_entries != null && _entries.remove(reference) != null) {
+          collected++;
+        }
+      }
+      if(_entries != null && _entries.isEmpty()) {
+        _entries = null;
+        _queue = null;
+      }
+      for(int i = 0; i < collected; i++) {
+        fireElementCollected();
+      }
+    }
+  }
+
+  private boolean store(Association<? extends TO,? super FROM> element) {
+    if(contains(element)) {
+      return false;
+    }
+    if(_entries == null) {
+      _entries = new HashMap<>();
+      _queue = new ReferenceQueue<>();
+    }
+    Entry entry = new Entry(element, _queue);
+    _entries.put(entry, entry);
+    return true;
+  }
+
+  private boolean discard(Association<? extends TO,? super FROM> element) {
+    if(_entries == null) {
+      return false;
+    }
+    Entry entry = _entries.remove(new Key(element));
+    if(entry == null) {
+      return false;
+    }
+    // A cleared reference is no longer enqueued, so it does not
+    // show up as a collected element later on.
+    entry.clear();
+    if(_entries.isEmpty()) {
+      _entries = null;
+      _queue = null;
+    }
+    return true;
+  }
+
+  /**
+   * A weak reference to an association end at the other side. The hash code
+   * is the identity hash code of the referent, so an entry can be found and
+   * removed after its referent has been collected.
+   */
+  private static final class Entry extends WeakReference<Association<?,?>> {
+
+    private Entry(Association<?,?> referent, ReferenceQueue<Association<?,?>> queue) {
+      super(referent, queue);
+      _hash = System.identityHashCode(referent);
+    }
+
+    private final int _hash;
+
+    @Override
+    public int hashCode() {
+      return _hash;
+    }
+  }
+
+  /**
+   * A key to look up the entry of a live association end without creating
+   * a weak reference.
+   */
+  private static final class Key {
+
+    private Key(Association<?,?> target) {
+      _target = target;
+    }
+
+    private final Association<?,?> _target;
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(_target);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Entry && ((Entry) other).get() == _target;
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package org.aikodi.rejuse.association;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+
+/**
+ * <p>A {@link SingleAssociation} that refers to the association end at the other
+ * side of the binding through a weak reference.</p>
+ *
+ * <p>The object at the other side is kept alive by its own references, not by this
+ * association end. When the other association end has been garbage collected, this
+ * association end becomes unconnected. This is detected lazily the next time the
+ * other end is requested, at which point the listeners receive an
+ * {@link AssociationListener#notifyElementCollected()} event. An "element removed"
+ * event cannot be sent because the element is no longer available.</p>
+ *
+ * <p>The association end at the other side is typically stored in a field of its
+ * object. If nothing else refers to that association end, it must not be connected
+ * to a weak association end, since it could be collected while its object is still
+ * alive.</p>
+ *
+ * <p>The other ends are never cached, because the cache would keep the object at the
+ * other side alive.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class WeakSingleAssociation<FROM,TO> extends SingleAssociation<FROM,TO> {
+
+  /**
+   * Initialize a new weak association end for the given object.
+   * The new association end will be unconnected.
+   *
+   * @param object
+   *        The object at this side of the binding.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre object != null;
+   @
+   @ post getObject() == object;
+   @ post getOtherRelation() == null;
+   @*/
+  public WeakSingleAssociation(FROM object) {
+    super(object);
+  }
+
+  /**
+   * A weak reference to the association end at the other side of the binding.
+   * Null if this association end is not connected.
+   */
+  private WeakReference<Association<? extends TO,? super FROM>> _reference;
+
+  @Override
+  public Association<? extends TO,? super FROM> getOtherRelation() {
+    if(_reference == null) {
+      return null;
+    }
+    Association<? extends TO,? super FROM> result = _reference.get();
+    if(result == null) {
+      _reference = null;
+      fireElementCollected();
+    }
+    return result;
+  }
+
+  @Override
+  protected void setOtherRelation(Association<? extends TO,? super FROM> other) {
+    _reference = other == null ? null : new WeakReference<>(other);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * The result is not cached.
+   */
+  @Override
+  public List<TO> getOtherEnds() {
+    return doGetOtherEnds();
+  }
+}
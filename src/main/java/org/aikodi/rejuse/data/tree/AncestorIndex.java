@@ -0,0 +1,403 @@
+package org.aikodi.rejuse.data.tree;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A precomputed index of the ancestor relation of a tree structure.</p>
+ *
+ * <p>The nodes are numbered in pre-order. The descendants of a node therefore have
+ * consecutive numbers that directly follow the number of the node (an Euler-tour
+ * interval), so checking whether a node is an ancestor of another node takes constant
+ * time. For every node, the index also stores the ancestors at distance 1, 2, 4, 8, ...
+ * (binary lifting), so the k-th ancestor and the lowest common ancestor of two nodes
+ * are found in logarithmic time.</p>
+ *
+ * <p>The index covers the subtree of the tree structure from which it was created.
+ * Nodes are compared by identity. The index does not observe the tree. If the children
+ * of a node in the subtree change, {@link #invalidate(Object)} must be invoked for that
+ * node, or for one of its ancestors. Only the invalidated subtree is traversed again.
+ * If a node moves to another place in the tree, the subtree that it has left must be
+ * invalidated before the subtree that it has joined.</p>
+ *
+ * <p>The index is not thread-safe.</p>
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <N> The type of exception that can be thrown when navigating the tree.
+ *
+ * @author Marko van Dooren
+ */
+public class AncestorIndex<T, N extends Exception> {
+
+  /**
+   * Create an index for the subtree of the given tree structure.
+   *
+   * @param tree The tree structure whose node is the root of the index.
+   * @throws N The children of a node could not be computed.
+   * @throws IllegalStateException A node occurs more than once in the tree.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @
+   @ post root() == tree.node();
+   @ post depth(root()) == 0;
+   @*/
+  public AncestorIndex(TreeStructure<T, N> tree) throws N {
+    requireNotNull(tree);
+    _tree = tree;
+    _up = new int[0][];
+    splice(tree, 0, 0, 0, -1);
+  }
+
+  /**
+   * The tree structure that is used to navigate to the children of a node.
+   */
+  private final TreeStructure<T, N> _tree;
+
+  /**
+   * The position of every node in pre-order.
+   */
+  private final Map<T, Integer> _positions = new IdentityHashMap<>();
+
+  /**
+   * The nodes in pre-order.
+   */
+  private Object[] _nodes;
+
+  /**
+   * The position of the last descendant of the node at each position. The
+   * descendants of the node at position i are at the positions
+   * i + 1, ..., _last[i].
+   */
+  private int[] _last;
+
+  /**
+   * The depth of the node at each position. The root has depth 0.
+   */
+  private int[] _depth;
+
+  /**
+   * _up[k][i] is the position of the ancestor at distance 2^k of the node
+   * at position i, or -1 if there is no such ancestor.
+   */
+  private int[][] _up;
+
+  /**
+   * The number of nodes in the index.
+   */
+  private int _size;
+
+  /**
+   * @return The number of nodes in the index.
+   */
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * @return The root of the index.
+   */
+  public T root() {
+    return node(_nodes, 0);
+  }
+
+  /**
+   * @return The node at the given position of the given array of nodes in pre-order.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T node(Object[] nodes, int position) {
+    return (T) nodes[position];
+  }
+
+  /**
+   * Check whether the given node is in the index.
+   *
+   * @param node The node to check.
+   */
+  public boolean contains(T node) {
+    return _positions.containsKey(node);
+  }
+
+  /**
+   * Return the depth of the given node relative to the root of the index.
+   *
+   * @param node A node in the index.
+   * @throws IllegalArgumentException The node is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(node);
+   @
+   @ post \result >= 0;
+   @*/
+  public int depth(T node) {
+    return _depth[position(node)];
+  }
+
+  /**
+   * Check whether the given ancestor is a strict ancestor of the given node.
+   * This takes constant time.
+   *
+   * @param ancestor A node in the index.
+   * @param node A node in the index.
+   * @throws IllegalArgumentException One of the nodes is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(ancestor);
+   @ pre contains(node);
+   @
+   @ post \result == (isAncestorOrSelf(ancestor, node) && ancestor != node);
+   @*/
+  public boolean isAncestor(T ancestor, T node) {
+    int a = position(ancestor);
+    int n = position(node);
+    return a < n && n <= _last[a];
+  }
+
+  /**
+   * Check whether the given ancestor is the given node or one of its ancestors.
+   * This takes constant time.
+   *
+   * @param ancestor A node in the index.
+   * @param node A node in the index.
+   * @throws IllegalArgumentException One of the nodes is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(ancestor);
+   @ pre contains(node);
+   @*/
+  public boolean isAncestorOrSelf(T ancestor, T node) {
+    return contains(position(ancestor), position(node));
+  }
+
+  /**
+   * Return the ancestor of the given node at the given distance. The node itself
+   * is at distance 0, its parent at distance 1. This takes logarithmic time.
+   *
+   * @param node A node in the index.
+   * @param distance The distance to the requested ancestor.
+   * @return The ancestor at the given distance. Null if the distance is larger than the
+   *         depth of the node in the index.
+   * @throws IllegalArgumentException The node is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(node);
+   @ pre distance >= 0;
+   @
+   @ post distance > depth(node) ==> \result == null;
+   @ post distance <= depth(node) ==> depth(\result) == depth(node) - distance;
+   @ post distance <= depth(node) ==> isAncestorOrSelf(\result, node);
+   @*/
+  public T ancestor(T node, int distance) {
+    if(distance < 0) {
+      throw new IllegalArgumentException("The distance to an ancestor cannot be negative: " + distance);
+    }
+    int position = position(node);
+    if(distance > _depth[position]) {
+      return null;
+    }
+    for(int k = 0; distance != 0; k++, distance >>>= 1) {
+      if((distance & 1) != 0) {
+        position = _up[k][position];
+      }
+    }
+    return node(_nodes, position);
+  }
+
+  /**
+   * Return the deepest node that is an ancestor or self of both given nodes.
+   * This takes logarithmic time.
+   *
+   * @param first A node in the index.
+   * @param second A node in the index.
+   * @throws IllegalArgumentException One of the nodes is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(first);
+   @ pre contains(second);
+   @
+   @ post isAncestorOrSelf(\result, first);
+   @ post isAncestorOrSelf(\result, second);
+   @*/
+  public T lowestCommonAncestor(T first, T second) {
+    int a = position(first);
+    int b = position(second);
+    if(contains(a, b)) {
+      return node(_nodes, a);
+    }
+    if(contains(b, a)) {
+      return node(_nodes, b);
+    }
+    for(int k = _up.length - 1; k >= 0; k--) {
+      int up = _up[k][a];
+      if(up >= 0 && ! contains(up, b)) {
+        a = up;
+      }
+    }
+    return node(_nodes, _up[0][a]);
+  }
+
+  /**
+   * Return the ancestors of the given node in the index. The parent is in front
+   * of the list, the root of the index is last.
+   *
+   * @param node A node in the index.
+   * @throws IllegalArgumentException The node is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(node);
+   @
+   @ post \result.size() == depth(node);
+   @*/
+  public List<T> ancestors(T node) {
+    int position = position(node);
+    List<T> result = new ArrayList<>(_depth[position]);
+    position = _up[0][position];
+    while(position >= 0) {
+      result.add(node(_nodes, position));
+      position = _up[0][position];
+    }
+    return result;
+  }
+
+  /**
+   * Update the index after the subtree of the given node has changed. The node
+   * itself must still be at the same place in the tree. The subtree of the node is
+   * traversed again. The other nodes keep their ancestors, so only their positions
+   * are shifted, which takes linear time but does not navigate the tree.
+   *
+   * @param node A node in the index whose subtree has changed.
+   * @throws N The children of a node could not be computed. The index is then
+   *           no longer usable.
+   * @throws IllegalArgumentException The node is not in the index.
+   * @throws IllegalStateException A node in the new subtree is also at another place
+   *                               in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(node);
+   @*/
+  public void invalidate(T node) throws N {
+    int start = position(node);
+    int end = _last[start] + 1;
+    for(int i = start; i < end; i++) {
+      _positions.remove(_nodes[i]);
+    }
+    int parent = _up[0][start];
+    splice(_tree.tree(node), start, end, _depth[start], parent);
+  }
+
+  private int position(T node) {
+    Integer result = _positions.get(node);
+    if(result == null) {
+      throw new IllegalArgumentException("The node is not in the ancestor index: " + node);
+    }
+    return result;
+  }
+
+  /**
+   * Check whether the node at the first position is the node at the second
+   * position or one of its ancestors.
+   */
+  private boolean contains(int ancestor, int node) {
+    return ancestor <= node && node <= _last[ancestor];
+  }
+
+  /**
+   * Replace the nodes at the positions start, ..., end - 1 by the subtree of the
+   * given tree structure.
+   *
+   * @param tree The tree structure of the root of the new subtree.
+   * @param start The first position to be replaced.
+   * @param end The position after the last position to be replaced.
+   * @param depth The depth of the root of the new subtree.
+   * @param parent The position of the parent of the new subtree, or -1 if it is the root.
+   */
+  private void splice(TreeStructure<T, N> tree, int start, int end, int depth, int parent) throws N {
+    SubtreeScan<T, N> scan = new SubtreeScan<>(start);
+    scan.traverse(tree, depth, parent, _positions);
+    int delta = scan._size - (end - start);
+    int size = _size + delta;
+    int levels = Math.max(1, 32 - Integer.numberOfLeadingZeros(size));
+    Object[] nodes = new Object[size];
+    int[] last = new int[size];
+    int[] depths = new int[size];
+    int[][] up = new int[levels][size];
+    int copied = Math.min(levels, _up.length);
+    // The nodes before the subtree keep their position. The intervals
+    // of the ancestors of the subtree change in size.
+    if(start > 0) {
+      System.arraycopy(_nodes, 0, nodes, 0, start);
+      System.arraycopy(_depth, 0, depths, 0, start);
+      for(int i = 0; i < start; i++) {
+        last[i] = _last[i] >= start ? _last[i] + delta : _last[i];
+      }
+      for(int k = 0; k < copied; k++) {
+        System.arraycopy(_up[k], 0, up[k], 0, start);
+      }
+    }
+    // The new subtree.
+    System.arraycopy(scan._nodes, 0, nodes, start, scan._size);
+    System.arraycopy(scan._last, 0, last, start, scan._size);
+    System.arraycopy(scan._depth, 0, depths, start, scan._size);
+    System.arraycopy(scan._parent, 0, up[0], start, scan._size);
+    // The nodes after the subtree are shifted. Their ancestors are either
+    // before the subtree, or after it.
+    int tail = _size - end;
+    if(tail > 0) {
+      System.arraycopy(_nodes, end, nodes, end + delta, tail);
+      System.arraycopy(_depth, end, depths, end + delta, tail);
+      for(int i = end; i < _size; i++) {
+        last[i + delta] = _last[i] + delta;
+      }
+      for(int k = 0; k < copied; k++) {
+        int[] from = _up[k];
+        int[] to = up[k];
+        for(int i = end; i < _size; i++) {
+          int ancestor = from[i];
+          to[i + delta] = ancestor >= end ? ancestor + delta : ancestor;
+        }
+      }
+      for(int i = end + delta; i < size; i++) {
+        _positions.put(node(nodes, i), i);
+      }
+    }
+    // The ancestors at larger distances of the new subtree, and of all
+    // nodes for the levels that did not exist yet. An ancestor always has
+    // a lower position, so it has been computed already.
+    for(int k = 1; k < levels; k++) {
+      int[] previous = up[k - 1];
+      int[] current = up[k];
+      boolean existing = k < copied;
+      int from = existing ? start : 0;
+      int to = existing ? start + scan._size : size;
+      for(int i = from; i < to; i++) {
+        int half = previous[i];
+        current[i] = half < 0 ? -1 : previous[half];
+      }
+    }
+    _nodes = nodes;
+    _last = last;
+    _depth = depths;
+    _up = up;
+    _size = size;
+  }
+}
@@ -0,0 +1,114 @@
+package org.aikodi.rejuse.data.tree;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * <p>Keeps track of the nodes of a tree whose subtree has changed since it was
+ * last analyzed. The tree does not notify the tracker: after a node has been modified,
+ * or its list of children has changed, {@link #changed(Object)} must be invoked for that
+ * node. The node and its ancestors, up to the node of the tree structure of the tracker,
+ * are then dirty. If a subtree moves, both its old and its new parent have changed.</p>
+ *
+ * <p>An ancestor of a dirty node is always dirty, so marking a node stops at the first
+ * ancestor that is already dirty. A node is cleaned by the analysis that has processed it,
+ * which must happen after its descendants have been cleaned. Since an analysis cleans the
+ * nodes that it has processed, a tracker should only be used by a single analysis.</p>
+ *
+ * <p>Nodes are compared by identity. The tracker is not thread-safe.</p>
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <N> The type of exception that can be thrown when navigating the tree.
+ *
+ * @author Marko van Dooren
+ */
+public class ChangeTracker<T, N extends Exception> {
+
+  /**
+   * Create a tracker for the subtree of the given tree structure. Initially,
+   * no node is dirty.
+   *
+   * @param tree The tree structure whose subtree is tracked.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @
+   @ post tree() == tree;
+   @ post size() == 0;
+   @*/
+  public ChangeTracker(TreeStructure<T, N> tree) {
+    requireNotNull(tree);
+    _tree = tree;
+  }
+
+  private final TreeStructure<T, N> _tree;
+
+  /**
+   * The dirty nodes.
+   */
+  private final Set<T> _dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  /**
+   * @return The tree structure whose subtree is tracked.
+   */
+  public TreeStructure<T, N> tree() {
+    return _tree;
+  }
+
+  /**
+   * Mark the given node and its ancestors as dirty.
+   *
+   * @param node The node that has changed.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre node != null;
+   @
+   @ post isDirty(node);
+   @*/
+  public void changed(T node) {
+    requireNotNull(node);
+    T root = _tree.node();
+    T current = node;
+    while(current != null && _dirty.add(current) && current != root) {
+      current = _tree.tree(current).parent();
+    }
+  }
+
+  /**
+   * Check whether the given node is dirty.
+   *
+   * @param node The node to check.
+   */
+  public boolean isDirty(T node) {
+    return _dirty.contains(node);
+  }
+
+  /**
+   * Mark the given node as clean. This must only be invoked when the
+   * descendants of the node are clean.
+   *
+   * @param node The node that has been analyzed.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post ! isDirty(node);
+   @*/
+  public void clean(T node) {
+    _dirty.remove(node);
+  }
+
+  /**
+   * @return The number of dirty nodes.
+   */
+  public int size() {
+    return _dirty.size();
+  }
+}
@@ -0,0 +1,574 @@
+package org.aikodi.rejuse.data.tree;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.aikodi.rejuse.exception.Handler;
+import org.aikodi.rejuse.exception.Handler.Executor;
+import org.aikodi.rejuse.function.Consumer;
+import org.aikodi.rejuse.predicate.Predicate;
+
+/**
+ * <p>A traversal of a tree structure whose children are expensive to compute, for
+ * example because they are read from a file system or from a remote model. The children
+ * of many nodes are requested concurrently, while the nodes are still visited one by one
+ * by the thread that started the traversal, in the same order as in a sequential traversal.</p>
+ *
+ * <p>As soon as the children of a node are known, the children of each of those children
+ * can be requested, starting with the nodes that the visitor reaches first. The number of
+ * concurrent invocations of {@link TreeStructure#childrenOf(Object)} is limited by the
+ * concurrency of the expansion. How far the expansion runs ahead of the visitor is limited
+ * by the look-ahead: at most {@link #lookAhead()} nodes whose children have been requested
+ * have not yet been reached by the visitor, apart from the node for which the visitor is
+ * waiting. A node that is not requested in advance is requested when the visitor reaches it.
+ * Besides the lists of children on the path of the visitor, a traversal therefore keeps at
+ * most <code>lookAhead() + 1</code> lists of children in memory, and has at most
+ * <code>lookAhead() + 1</code> unfinished tasks in the executor. When the traversal ends,
+ * requests that have not started yet are cancelled.</p>
+ *
+ * <p>By default, every request is executed by a virtual thread if the Java runtime
+ * supports them, and by a pool with one thread per unit of concurrency otherwise. A
+ * custom executor can be passed to the constructor.</p>
+ *
+ * <p>If the tree structure throws an exception of type I for a node, the exception is
+ * passed to the handler when the visitor reaches that node, in the thread of the visitor.
+ * The handler is therefore invoked in the same order as in a sequential traversal with a
+ * {@link GuardedTreeStructure}. If the handler does not throw an exception, the node is
+ * treated as a node without children. Unchecked exceptions are rethrown in the thread of
+ * the visitor.</p>
+ *
+ * <p>The tree structure is used concurrently by multiple threads, so it must be thread-safe.
+ * The tree must not be modified during a traversal.</p>
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <I> The type of exception that can be thrown when navigating the tree.
+ * @param <O> The type of exception that can be thrown by the handler.
+ *
+ * @author Marko van Dooren
+ */
+public class ConcurrentExpansion<T, I extends Exception, O extends Exception> {
+
+  /**
+   * Create an expansion of the given tree structure that requests the children
+   * of at most the given number of nodes at the same time.
+   *
+   * @param tree The tree structure to be traversed.
+   * @param handler The handler for the exceptions of the tree structure.
+   * @param concurrency The maximal number of concurrent requests for children.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre handler != null;
+   @ pre concurrency > 0;
+   @
+   @ post tree() == tree;
+   @ post handler() == handler;
+   @ post concurrency() == concurrency;
+   @ post lookAhead() == concurrency * LOOK_AHEAD_PER_REQUEST;
+   @*/
+  public ConcurrentExpansion(TreeStructure<T, I> tree, Handler<? super I, ? extends O> handler, int concurrency) {
+    this(tree, handler, concurrency, null);
+  }
+
+  /**
+   * The default look-ahead per concurrent request.
+   */
+  public static final int LOOK_AHEAD_PER_REQUEST = 16;
+
+  /**
+   * Create an expansion of the given tree structure that requests the children
+   * of at most the given number of nodes at the same time with the given executor.
+   * The executor is not shut down by the expansion.
+   *
+   * @param tree The tree structure to be traversed.
+   * @param handler The handler for the exceptions of the tree structure.
+   * @param concurrency The maximal number of concurrent requests for children.
+   * @param executor The executor that executes the requests. If the executor is null,
+   *                 every traversal uses a new executor.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre handler != null;
+   @ pre concurrency > 0;
+   @
+   @ post tree() == tree;
+   @ post handler() == handler;
+   @ post concurrency() == concurrency;
+   @ post lookAhead() == concurrency * LOOK_AHEAD_PER_REQUEST;
+   @*/
+  public ConcurrentExpansion(TreeStructure<T, I> tree, Handler<? super I, ? extends O> handler, int concurrency, ExecutorService executor) {
+    this(tree, handler, concurrency, concurrency * LOOK_AHEAD_PER_REQUEST, executor);
+  }
+
+  /**
+   * Create an expansion of the given tree structure that requests the children
+   * of at most the given number of nodes at the same time with the given executor,
+   * and that requests the children of at most the given number of nodes before
+   * the visitor reaches them. The executor is not shut down by the expansion.
+   *
+   * @param tree The tree structure to be traversed.
+   * @param handler The handler for the exceptions of the tree structure.
+   * @param concurrency The maximal number of concurrent requests for children.
+   * @param lookAhead The maximal number of nodes whose children are requested
+   *                  before the visitor reaches them.
+   * @param executor The executor that executes the requests. If the executor is null,
+   *                 every traversal uses a new executor.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre handler != null;
+   @ pre concurrency > 0;
+   @ pre lookAhead >= 0;
+   @
+   @ post tree() == tree;
+   @ post handler() == handler;
+   @ post concurrency() == concurrency;
+   @ post lookAhead() == lookAhead;
+   @*/
+  public ConcurrentExpansion(TreeStructure<T, I> tree, Handler<? super I, ? extends O> handler, int concurrency, int lookAhead, ExecutorService executor) {
+    requireNotNull(tree);
+    requireNotNull(handler);
+    if(concurrency <= 0) {
+      throw new IllegalArgumentException("The concurrency must be positive: " + concurrency);
+    }
+    if(lookAhead < 0) {
+      throw new IllegalArgumentException("The look-ahead cannot be negative: " + lookAhead);
+    }
+    _tree = tree;
+    _handler = handler;
+    _concurrency = concurrency;
+    _lookAhead = lookAhead;
+    _executor = executor;
+  }
+
+  private final TreeStructure<T, I> _tree;
+
+  private final Handler<? super I, ? extends O> _handler;
+
+  private final int _concurrency;
+
+  private final int _lookAhead;
+
+  /**
+   * The executor that executes the requests. Null if every traversal
+   * creates its own executor.
+   */
+  private final ExecutorService _executor;
+
+  /**
+   * @return The tree structure that is traversed.
+   */
+  public TreeStructure<T, I> tree() {
+    return _tree;
+  }
+
+  /**
+   * @return The handler for the exceptions of the tree structure.
+   */
+  public Handler<? super I, ? extends O> handler() {
+    return _handler;
+  }
+
+  /**
+   * @return The maximal number of concurrent requests for children.
+   */
+  public int concurrency() {
+    return _concurrency;
+  }
+
+  /**
+   * @return The maximal number of nodes whose children are requested before
+   *         the visitor reaches them.
+   */
+  public int lookAhead() {
+    return _lookAhead;
+  }
+
+  /**
+   * Pass the node of the tree structure and all of its descendants to the given
+   * consumer in pre-order, which is the order of {@link TreeStructure#apply(Consumer)}.
+   * The consumer is invoked by the current thread.
+   *
+   * @param consumer The consumer to which the nodes must be passed.
+   * @throws TreeTraversalException The current thread was interrupted while waiting
+   *                                for the children of a node. The cause is an
+   *                                {@link InterruptedException}.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre consumer != null;
+   @*/
+  public <E extends Exception> void apply(Consumer<? super T, E> consumer) throws E, O {
+    requireNotNull(consumer);
+    try(Run run = new Run()) {
+      Expansion root = run.start();
+      consumer.accept(root._node);
+      List<Frame> stack = new ArrayList<>();
+      stack.add(new Frame(run.children(root)));
+      while(! stack.isEmpty()) {
+        Frame top = stack.get(stack.size() - 1);
+        if(top._returned < top._children.size()) {
+          Expansion next = top._children.get(top._returned++);
+          consumer.accept(next._node);
+          stack.add(new Frame(run.children(next)));
+        } else {
+          stack.remove(stack.size() - 1);
+        }
+      }
+    }
+  }
+
+  /**
+   * Return the descendants of the node of the tree structure in the order of
+   * {@link TreeStructure#descendants()}.
+   *
+   * @throws TreeTraversalException The current thread was interrupted while waiting
+   *                                for the children of a node. The cause is an
+   *                                {@link InterruptedException}.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post \result != null;
+   @*/
+  public List<T> descendants() throws O {
+    return descendants(t -> true);
+  }
+
+  /**
+   * Return the descendants of the node of the tree structure that satisfy the given
+   * predicate, in the order of {@link TreeStructure#descendants(Predicate)}. The
+   * predicate is evaluated by the current thread.
+   *
+   * @param predicate The predicate that must be satisfied by the descendants.
+   * @throws TreeTraversalException The current thread was interrupted while waiting
+   *                                for the children of a node. The cause is an
+   *                                {@link InterruptedException}.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre predicate != null;
+   @
+   @ post \result != null;
+   @*/
+  public <E extends Exception> List<T> descendants(Predicate<? super T, E> predicate) throws E, O {
+    requireNotNull(predicate);
+    List<T> result = new ArrayList<>();
+    try(Run run = new Run()) {
+      List<Frame> stack = new ArrayList<>();
+      stack.add(new Frame(run.children(run.start())));
+      while(! stack.isEmpty()) {
+        Frame top = stack.get(stack.size() - 1);
+        int size = top._children.size();
+        if(top._returned < size) {
+          T node = top._children.get(top._returned++)._node;
+          if(predicate.eval(node)) {
+            result.add(node);
+          }
+        } else if(top._expanded < size) {
+          stack.add(new Frame(run.children(top._children.get(top._expanded++))));
+        } else {
+          stack.remove(stack.size() - 1);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Create an executor that starts a virtual thread per task if the runtime
+   * supports virtual threads, and a pool with the given number of threads
+   * otherwise.
+   */
+  private static ExecutorService newExecutor(int concurrency) {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch(ReflectiveOperationException exc) {
+      return Executors.newFixedThreadPool(concurrency, runnable -> {
+        Thread thread = new Thread(runnable, "tree-expansion");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * A node whose children are being requested.
+   */
+  private final class Expansion {
+
+    private Expansion(T node, Expansion parent, int index) {
+      _node = node;
+      _parent = parent;
+      _index = index;
+      _depth = parent == null ? 0 : parent._depth + 1;
+    }
+
+    private final T _node;
+
+    /**
+     * The expansion of the parent of the node. Null for the root.
+     */
+    private final Expansion _parent;
+
+    /**
+     * The index of the node in the list of children of its parent.
+     */
+    private final int _index;
+
+    private final int _depth;
+
+    /**
+     * The expansions of the children of the node.
+     */
+    private final CompletableFuture<List<Expansion>> _children = new CompletableFuture<>();
+
+    /**
+     * True if the children of the node have been requested. Guarded by
+     * the lock of the run.
+     */
+    private boolean _requested;
+
+    /**
+     * Compare the position of this expansion in pre-order with that of the
+     * given expansion. The cost is proportional to the distance between both
+     * nodes in the tree.
+     *
+     * @return A negative number if this expansion comes first.
+     */
+    private int compareTo(Expansion other) {
+      Expansion first = this;
+      Expansion second = other;
+      while(first._depth > second._depth) {
+        first = first._parent;
+      }
+      if(first == second) {
+        return this == other ? 0 : 1;
+      }
+      while(second._depth > first._depth) {
+        second = second._parent;
+      }
+      if(first == second) {
+        return -1;
+      }
+      while(first._parent != second._parent) {
+        first = first._parent;
+        second = second._parent;
+      }
+      return Integer.compare(first._index, second._index);
+    }
+  }
+
+  /**
+   * The children of a node, and how far they have been processed by the visitor.
+   */
+  private final class Frame {
+
+    private Frame(List<Expansion> children) {
+      _children = children;
+    }
+
+    private final List<Expansion> _children;
+
+    /**
+     * The number of children that have been visited.
+     */
+    private int _returned;
+
+    /**
+     * The number of children whose children have been pushed onto the stack.
+     */
+    private int _expanded;
+  }
+
+  /**
+   * The state of a single traversal.
+   */
+  private final class Run implements AutoCloseable {
+
+    private Run() {
+      _owned = _executor == null;
+      _runner = _owned ? newExecutor(_concurrency) : _executor;
+      _permits = new Semaphore(_concurrency);
+    }
+
+    /**
+     * True if the executor was created for this traversal.
+     */
+    private final boolean _owned;
+
+    private final ExecutorService _runner;
+
+    /**
+     * Limits the number of concurrent requests.
+     */
+    private final Semaphore _permits;
+
+    /**
+     * The number of nodes whose children have been requested, and that
+     * have not been reached by the visitor. Guarded by the lock of the run.
+     */
+    private int _outstanding;
+
+    /**
+     * The nodes whose children are known but have not been requested,
+     * in pre-order, so the nodes that the visitor reaches first are requested
+     * first. Nodes that have been requested by the visitor are removed when they
+     * reach the head of the queue. Guarded by the lock of the run.
+     */
+    private final PriorityQueue<Expansion> _candidates = new PriorityQueue<>(Expansion::compareTo);
+
+    /**
+     * Set when the traversal has ended. Requests that have not started yet
+     * are then skipped.
+     */
+    private volatile boolean _closed;
+
+    /**
+     * Start requesting the children of the node of the tree structure.
+     */
+    private Expansion start() {
+      Expansion root = new Expansion(_tree.node(), null, 0);
+      synchronized(this) {
+        root._requested = true;
+        _outstanding++;
+      }
+      submit(root);
+      return root;
+    }
+
+    /**
+     * Request the children of the candidates that come first in pre-order
+     * as long as the look-ahead permits it.
+     */
+    private void prefetch() {
+      List<Expansion> requested = new ArrayList<>();
+      synchronized(this) {
+        while(_outstanding < _lookAhead && ! _candidates.isEmpty()) {
+          Expansion candidate = _candidates.poll();
+          if(! candidate._requested) {
+            candidate._requested = true;
+            _outstanding++;
+            requested.add(candidate);
+          }
+        }
+      }
+      for(Expansion expansion: requested) {
+        submit(expansion);
+      }
+    }
+
+    /**
+     * Submit a task that requests the children of the node of the given expansion.
+     * When they are known, they become candidates for a request.
+     */
+    private void submit(Expansion expansion) {
+      try {
+        _runner.execute(() -> {
+          try {
+            if(_closed) {
+              expansion._children.cancel(false);
+              return;
+            }
+            List<T> children;
+            _permits.acquire();
+            try {
+              children = expansion._parent == null ? _tree.children() : _tree.childrenOf(expansion._node);
+            } finally {
+              _permits.release();
+            }
+            List<Expansion> result = new ArrayList<>(children.size());
+            for(T child: children) {
+              result.add(new Expansion(child, expansion, result.size()));
+            }
+            expansion._children.complete(result);
+            synchronized(this) {
+              _candidates.addAll(result);
+            }
+            prefetch();
+          } catch(Throwable exc) {
+            expansion._children.completeExceptionally(exc);
+          }
+        });
+      } catch(RejectedExecutionException exc) {
+        expansion._children.completeExceptionally(exc);
+      }
+    }
+
+    /**
+     * Wait for the children of the given expansion, which is reached by the
+     * visitor. If the children have not been requested yet, they are requested
+     * now. If the tree structure has thrown a checked exception, it is passed
+     * to the handler.
+     */
+    private List<Expansion> children(Expansion expansion) throws O {
+      boolean request;
+      synchronized(this) {
+        request = ! expansion._requested;
+        if(request) {
+          expansion._requested = true;
+          _outstanding++;
+        }
+      }
+      if(request) {
+        submit(expansion);
+      }
+      try {
+        return expansion._children.get();
+      } catch(InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        throw new TreeTraversalException(exc);
+      } catch(ExecutionException exc) {
+        Throwable cause = exc.getCause();
+        if(cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if(cause instanceof Error) {
+          throw (Error) cause;
+        }
+        if(cause instanceof InterruptedException) {
+          throw new TreeTraversalException((Exception) cause);
+        }
+        // Only the tree structure throws checked exceptions in an expansion.
+        @SuppressWarnings("unchecked")
+        I failure = (I) cause;
+        Executor<I> executor = () -> {
+          throw failure;
+        };
+        _handler.execute(executor);
+        return Collections.emptyList();
+      } finally {
+        synchronized(this) {
+          _outstanding--;
+        }
+        prefetch();
+      }
+    }
+
+    @Override
+    public void close() {
+      _closed = true;
+      if(_owned) {
+        _runner.shutdownNow();
+      }
+    }
+  }
+}
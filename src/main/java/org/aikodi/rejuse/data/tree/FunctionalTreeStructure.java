@@ -2,6 +2,7 @@ package org.aikodi.rejuse.data.tree;
 
 import java.util.List;
 
+import org.aikodi.rejuse.action.Nothing;
 import org.aikodi.rejuse.action.UniversalConsumer;
 import org.aikodi.rejuse.predicate.TypePredicate;
 import org.aikodi.rejuse.predicate.UniversalPredicate;
@@ -68,6 +69,25 @@ public abstract class FunctionalTreeStructure<T> {
 	 * @return the tree structor of the given element.
 	 */
 	public abstract FunctionalTreeStructure<T> tree(T element);
+
+	/**
+	 * Return the direct children of the given node, as computed by the tree structure
+	 * of that node. A subclass that uses the same tree structure for every node can
+	 * override this method to return <code>children(node)</code> without looking up
+	 * the tree structure. {@link #cursor(Object)} uses this method.
+	 *
+	 * @param node A node in the tree.
+	 */
+  /*@
+    @ public behavior
+    @
+    @ pre node != null;
+    @
+    @ post \result.equals(tree(node).children(node));
+    @*/
+	public List<? extends T> childrenOf(T node) {
+		return tree(node).children(node);
+	}
 	
 	public <X extends T, E extends Exception> X nearestAncestor(T element, UniversalPredicate<X,E> predicate) throws E {
 		T el = parent(element);
@@ -113,13 +133,27 @@ public abstract class FunctionalTreeStructure<T> {
 		return new TypePredicate<X>(c).downCastedList(children(element));
 	}
 
+	/**
+	 * Return a cursor that starts at the given element.
+	 *
+	 * @param element The element at which the cursor starts.
+	 */
+  /*@
+    @ public behavior
+    @
+    @ pre element != null;
+    @
+    @ post \result.node() == element;
+    @*/
+	public TreeCursor<T, Nothing> cursor(T element) {
+		return TreeCursor.of(this, element);
+	}
+
 	public <X extends T, E extends Exception>  void apply(T element, UniversalConsumer<X,E> action) throws E {
-		if(action.type().isInstance(element)) {
-			action.perform((T)element);
-		}
-		for (T e : children(element)) {
-			tree(e).apply(e,action);
-		}
+		TreeCursor<T, Nothing> cursor = cursor(element);
+		do {
+			action.perform(cursor.node());
+		} while(cursor.moveToNext());
 	}
 
 
@@ -1,6 +1,7 @@
 package org.aikodi.rejuse.data.tree;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.aikodi.rejuse.exception.Handler;
@@ -34,6 +35,42 @@ public class GuardedTreeStructure<T, I extends Exception, O extends Exception> i
 		return result;
 	}
 
+	/**
+	 * Return the children of the given node without creating a guarded
+	 * tree structure for it, and without copying the list of children.
+	 * The only object that is created is the executor that is passed to
+	 * the handler. If the handler absorbs an exception, the result is empty.
+	 */
+	@Override
+	public List<T> childrenOf(T node) throws O {
+		Children<T, I> children = new Children<>(_original, node);
+		_handler.execute(children);
+		return children._list;
+	}
+
+	/**
+	 * The executor that computes the children of a node, and keeps them
+	 * so they can be returned after the handler has run it.
+	 */
+	private static class Children<T, I extends Exception> implements Executor<I> {
+
+		private Children(TreeStructure<T, I> tree, T node) {
+			_tree = tree;
+			_node = node;
+		}
+
+		private final TreeStructure<T, I> _tree;
+
+		private final T _node;
+
+		private List<T> _list = Collections.emptyList();
+
+		@Override
+		public void execute() throws I {
+			_list = _tree.childrenOf(_node);
+		}
+	}
+
 	@Override
 	public TreeStructure<T, O> tree(T node) {
 		return new GuardedTreeStructure<>(_original.tree(node), _handler);
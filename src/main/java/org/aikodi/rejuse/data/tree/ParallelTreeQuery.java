@@ -0,0 +1,369 @@
+package org.aikodi.rejuse.data.tree;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.function.Consumer;
+import org.aikodi.rejuse.predicate.Predicate;
+
+/**
+ * <p>Parallel versions of the queries of {@link TreeStructure}. The work is split
+ * at subtrees: the subtree of every node that is less deep than the sequential
+ * depth is processed by a separate task in a {@link ForkJoinPool}. A subtree whose
+ * root has reached the sequential depth is processed by a single task with a
+ * {@link TreeIterator}. The depth is relative to the node at which the query starts.</p>
+ *
+ * <p>The tree structure, the predicates and the consumers are used concurrently by
+ * multiple threads, so they must be thread-safe. The tree must not be modified
+ * during a query.</p>
+ *
+ * <p>If the tree structure, a predicate or a consumer throws an exception, the query
+ * throws that exception. Other tasks of the query may still be running at that time,
+ * and may throw exceptions that are ignored.</p>
+ *
+ * @author Marko van Dooren
+ */
+public class ParallelTreeQuery {
+
+  /**
+   * The default sequential depth.
+   */
+  public static final int DEFAULT_SEQUENTIAL_DEPTH = 8;
+
+  /**
+   * Create a query object that uses the common pool and the default sequential depth.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post pool() == ForkJoinPool.commonPool();
+   @ post sequentialDepth() == DEFAULT_SEQUENTIAL_DEPTH;
+   @*/
+  public ParallelTreeQuery() {
+    this(ForkJoinPool.commonPool(), DEFAULT_SEQUENTIAL_DEPTH);
+  }
+
+  /**
+   * Create a query object that uses the given pool and sequential depth.
+   *
+   * @param pool The pool that executes the tasks.
+   * @param sequentialDepth The depth from which subtrees are processed sequentially.
+   *                        If the depth is 0, the entire query is executed by a single task.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre pool != null;
+   @ pre sequentialDepth >= 0;
+   @
+   @ post pool() == pool;
+   @ post sequentialDepth() == sequentialDepth;
+   @*/
+  public ParallelTreeQuery(ForkJoinPool pool, int sequentialDepth) {
+    requireNotNull(pool);
+    if(sequentialDepth < 0) {
+      throw new IllegalArgumentException("The sequential depth cannot be negative: " + sequentialDepth);
+    }
+    _pool = pool;
+    _sequentialDepth = sequentialDepth;
+  }
+
+  private final ForkJoinPool _pool;
+
+  private final int _sequentialDepth;
+
+  /**
+   * @return The pool that executes the tasks.
+   */
+  public ForkJoinPool pool() {
+    return _pool;
+  }
+
+  /**
+   * @return The depth from which subtrees are processed sequentially.
+   */
+  public int sequentialDepth() {
+    return _sequentialDepth;
+  }
+
+  /**
+   * Return the descendants of the given tree that are of the given type, in the
+   * same order as {@link TreeStructure#descendants(Class)}.
+   *
+   * @param tree The tree whose descendants must be returned.
+   * @param type The type of the requested descendants.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre type != null;
+   @
+   @ post \result.equals(tree.descendants(type));
+   @*/
+  public <T, N extends Exception, X> List<X> descendants(TreeStructure<T, N> tree, Class<X> type) throws N {
+    requireNotNull(type);
+    List<T> descendants = descendants(tree, (Predicate<T, Nothing>) type::isInstance);
+    List<X> result = new ArrayList<>(descendants.size());
+    for(T descendant: descendants) {
+      result.add(type.cast(descendant));
+    }
+    return result;
+  }
+
+  /**
+   * Return the descendants of the given tree that satisfy the given predicate, in
+   * the same order as {@link TreeStructure#descendants(Predicate)}.
+   *
+   * @param tree The tree whose descendants must be returned.
+   * @param predicate The predicate that the descendants must satisfy.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre predicate != null;
+   @
+   @ post \result.equals(tree.descendants(predicate));
+   @*/
+  public <T, N extends Exception, E extends Exception> List<T> descendants(TreeStructure<T, N> tree, Predicate<? super T, E> predicate) throws E, N {
+    requireNotNull(tree);
+    requireNotNull(predicate);
+    return invoke(new Collect<>(tree, predicate, 0));
+  }
+
+  /**
+   * Check whether the given tree has a descendant of the given type. The query
+   * stops as soon as such a descendant is found.
+   *
+   * @param tree The tree whose descendants must be checked.
+   * @param type The type of the requested descendant.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre type != null;
+   @
+   @ post \result == tree.hasDescendant(type);
+   @*/
+  public <T, N extends Exception> boolean hasDescendant(TreeStructure<T, N> tree, Class<?> type) throws N {
+    requireNotNull(type);
+    return hasDescendant(tree, (Predicate<T, Nothing>) type::isInstance);
+  }
+
+  /**
+   * Check whether the given tree has a descendant that satisfies the given
+   * predicate. The query stops as soon as such a descendant is found.
+   *
+   * @param tree The tree whose descendants must be checked.
+   * @param predicate The predicate that must be satisfied by a descendant.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre predicate != null;
+   @
+   @ post \result == ! tree.descendants(predicate).isEmpty();
+   @*/
+  public <T, N extends Exception, E extends Exception> boolean hasDescendant(TreeStructure<T, N> tree, Predicate<? super T, E> predicate) throws E, N {
+    requireNotNull(tree);
+    requireNotNull(predicate);
+    AtomicBoolean found = new AtomicBoolean();
+    invoke(new Search<>(tree, predicate, 0, found));
+    return found.get();
+  }
+
+  /**
+   * Pass the node of the given tree and all of its descendants to the given consumer.
+   * The nodes are passed concurrently and in no particular order.
+   *
+   * @param tree The tree whose nodes must be passed to the consumer.
+   * @param consumer The consumer to which the nodes must be passed.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre consumer != null;
+   @*/
+  public <T, N extends Exception, E extends Exception> void apply(TreeStructure<T, N> tree, Consumer<? super T, E> consumer) throws E, N {
+    requireNotNull(tree);
+    requireNotNull(consumer);
+    invoke(new Apply<>(tree, consumer, 0));
+  }
+
+  /**
+   * Execute the given task in the pool, and rethrow the original exception
+   * if a task has failed.
+   */
+  private <R, E extends Exception> R invoke(ForkJoinTask<R> task) throws E {
+    try {
+      return _pool.invoke(task);
+    } catch(TreeTraversalException exc) {
+      throw exc.<E>rethrowCause();
+    }
+  }
+
+  /**
+   * Wrap the given exception such that it can be thrown by a task.
+   */
+  private static RuntimeException wrap(Exception exception) {
+    if(exception instanceof RuntimeException) {
+      return (RuntimeException) exception;
+    }
+    return new TreeTraversalException(exception);
+  }
+
+  /**
+   * A task that collects the descendants of a node that satisfy a predicate.
+   */
+  private class Collect<T, N extends Exception> extends RecursiveTask<List<T>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Collect(TreeStructure<T, N> tree, Predicate<? super T, ?> predicate, int depth) {
+      _tree = tree;
+      _predicate = predicate;
+      _depth = depth;
+    }
+
+    private final TreeStructure<T, N> _tree;
+
+    private final Predicate<? super T, ?> _predicate;
+
+    private final int _depth;
+
+    @Override
+    protected List<T> compute() {
+      try {
+        if(_depth >= _sequentialDepth) {
+          return _tree.descendants(_predicate);
+        }
+        List<T> children = _tree.children();
+        List<T> result = new ArrayList<>();
+        List<Collect<T, N>> tasks = new ArrayList<>(children.size());
+        for(T child: children) {
+          if(_predicate.eval(child)) {
+            result.add(child);
+          }
+          tasks.add(new Collect<>(_tree.tree(child), _predicate, _depth + 1));
+        }
+        invokeAll(tasks);
+        for(Collect<T, N> task: tasks) {
+          result.addAll(task.join());
+        }
+        return result;
+      } catch(Exception exc) {
+        throw wrap(exc);
+      }
+    }
+  }
+
+  /**
+   * A task that searches a descendant of a node that satisfies a predicate.
+   */
+  private class Search<T, N extends Exception> extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private Search(TreeStructure<T, N> tree, Predicate<? super T, ?> predicate, int depth, AtomicBoolean found) {
+      _tree = tree;
+      _predicate = predicate;
+      _depth = depth;
+      _found = found;
+    }
+
+    private final TreeStructure<T, N> _tree;
+
+    private final Predicate<? super T, ?> _predicate;
+
+    private final int _depth;
+
+    /**
+     * Shared by all tasks of a query. Once it is set, the remaining
+     * tasks stop.
+     */
+    private final AtomicBoolean _found;
+
+    @Override
+    protected void compute() {
+      try {
+        if(_found.get()) {
+          return;
+        }
+        if(_depth >= _sequentialDepth) {
+          TreeIterator<T, N> iterator = _tree.descendantIterator();
+          while(! _found.get() && iterator.hasNext()) {
+            if(_predicate.eval(iterator.next())) {
+              _found.set(true);
+            }
+          }
+          return;
+        }
+        List<T> children = _tree.children();
+        for(T child: children) {
+          if(_predicate.eval(child)) {
+            _found.set(true);
+            return;
+          }
+        }
+        List<Search<T, N>> tasks = new ArrayList<>(children.size());
+        for(T child: children) {
+          tasks.add(new Search<>(_tree.tree(child), _predicate, _depth + 1, _found));
+        }
+        invokeAll(tasks);
+      } catch(Exception exc) {
+        throw wrap(exc);
+      }
+    }
+  }
+
+  /**
+   * A task that passes a node and its descendants to a consumer.
+   */
+  private class Apply<T, N extends Exception> extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private Apply(TreeStructure<T, N> tree, Consumer<? super T, ?> consumer, int depth) {
+      _tree = tree;
+      _consumer = consumer;
+      _depth = depth;
+    }
+
+    private final TreeStructure<T, N> _tree;
+
+    private final Consumer<? super T, ?> _consumer;
+
+    private final int _depth;
+
+    @Override
+    protected void compute() {
+      try {
+        if(_depth >= _sequentialDepth) {
+          _tree.apply(_consumer);
+          return;
+        }
+        _consumer.accept(_tree.node());
+        List<T> children = _tree.children();
+        List<Apply<T, N>> tasks = new ArrayList<>(children.size());
+        for(T child: children) {
+          tasks.add(new Apply<>(_tree.tree(child), _consumer, _depth + 1));
+        }
+        invokeAll(tasks);
+      } catch(Exception exc) {
+        throw wrap(exc);
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package org.aikodi.rejuse.data.tree;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Queries on the descendants of a tree structure that use a {@link TreePredicate}
+ * to avoid traversing subtrees in which no match can be found. The descendants of a
+ * node are only traversed if {@link TreePredicate#canSucceedBeyond(Object)} returns true
+ * for that node. The node itself is still checked. Predicates that are combined with
+ * {@link TreePredicate#and(TreePredicate)} and {@link TreePredicate#orTree(TreePredicate)}
+ * prune the subtrees that either or both of their operands, respectively, would prune.</p>
+ *
+ * <p>If the predicate is consistent, which means that {@link TreePredicate#canSucceedBeyond(Object)}
+ * only returns false for a node if no descendant of that node satisfies the predicate, the
+ * results are the same as those of the corresponding methods of {@link TreeStructure}, and
+ * are in the same order.</p>
+ *
+ * <p>A query object keeps statistics about its last query: the number of nodes that were
+ * checked against the predicate, and the number of nodes whose descendants were skipped.
+ * The number of skipped descendants is not known, since they are not traversed.</p>
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <N> The type of exception that can be thrown when navigating the tree.
+ * @param <E> The type of exception that can be thrown by the predicate.
+ *
+ * @author Marko van Dooren
+ */
+public class PrunedQuery<T, N extends Exception, E extends Exception> {
+
+  /**
+   * Create a query for the descendants of the given tree structure that
+   * satisfy the given predicate.
+   *
+   * @param tree The tree structure whose descendants are searched.
+   * @param predicate The predicate that must be satisfied by the descendants.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre predicate != null;
+   @
+   @ post tree() == tree;
+   @ post predicate() == predicate;
+   @ post visited() == 0;
+   @ post pruned() == 0;
+   @*/
+  public PrunedQuery(TreeStructure<T, N> tree, TreePredicate<? super T, E> predicate) {
+    requireNotNull(tree);
+    requireNotNull(predicate);
+    _tree = tree;
+    _predicate = predicate;
+  }
+
+  private final TreeStructure<T, N> _tree;
+
+  private final TreePredicate<? super T, E> _predicate;
+
+  /**
+   * The number of nodes that were checked against the predicate during the last query.
+   */
+  private int _visited;
+
+  /**
+   * The number of nodes whose descendants were skipped during the last query.
+   */
+  private int _pruned;
+
+  /**
+   * @return The tree structure whose descendants are searched.
+   */
+  public TreeStructure<T, N> tree() {
+    return _tree;
+  }
+
+  /**
+   * @return The predicate that must be satisfied by the descendants.
+   */
+  public TreePredicate<? super T, E> predicate() {
+    return _predicate;
+  }
+
+  /**
+   * @return The number of nodes that were checked against the predicate
+   *         during the last query.
+   */
+  public int visited() {
+    return _visited;
+  }
+
+  /**
+   * @return The number of nodes whose descendants were skipped during the last
+   *         query because the predicate cannot succeed beyond them.
+   */
+  public int pruned() {
+    return _pruned;
+  }
+
+  /**
+   * Return the descendants that satisfy the predicate, in the same order
+   * as {@link TreeStructure#descendants(org.aikodi.rejuse.predicate.Predicate)}.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post \result != null;
+   @ post (\forall T t; \result.contains(t); predicate().eval(t));
+   @*/
+  public List<T> descendants() throws E, N {
+    List<T> result = new ArrayList<>();
+    search(result, false, false);
+    return result;
+  }
+
+  /**
+   * Return the descendants that satisfy the predicate, but not the descendants of those
+   * descendants, in the same order as
+   * {@link TreeStructure#nearestDescendants(org.aikodi.rejuse.predicate.Predicate)}.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post \result != null;
+   @ post (\forall T t; \result.contains(t); predicate().eval(t));
+   @*/
+  public List<T> nearestDescendants() throws E, N {
+    List<T> result = new ArrayList<>();
+    search(result, true, false);
+    return result;
+  }
+
+  /**
+   * Check whether a descendant satisfies the predicate. The search stops
+   * at the first match.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post \result == ! descendants().isEmpty();
+   @*/
+  public boolean hasDescendant() throws E, N {
+    List<T> result = new ArrayList<>(1);
+    search(result, false, true);
+    return ! result.isEmpty();
+  }
+
+  /**
+   * Search the descendants in the same order as {@link TreeStructure#descendants()}:
+   * all children of a node are checked before the subtrees of the children are searched.
+   *
+   * @param result The list to which the matches are added.
+   * @param nearest Whether the descendants of a match must be skipped.
+   * @param first Whether the search must stop at the first match.
+   */
+  private void search(List<T> result, boolean nearest, boolean first) throws E, N {
+    _visited = 0;
+    _pruned = 0;
+    if(! _predicate.canSucceedBeyond(_tree.node())) {
+      _pruned++;
+      return;
+    }
+    List<Frame<T>> stack = new ArrayList<>();
+    stack.add(new Frame<>(_tree.children()));
+    while(! stack.isEmpty()) {
+      Frame<T> top = stack.get(stack.size() - 1);
+      if(! top._checked) {
+        top._checked = true;
+        top._matches = new boolean[top._children.size()];
+        for(int i = 0; i < top._children.size(); i++) {
+          T child = top._children.get(i);
+          _visited++;
+          if(_predicate.eval(child)) {
+            result.add(child);
+            if(first) {
+              return;
+            }
+            top._matches[i] = true;
+          }
+        }
+      }
+      if(top._index < top._children.size()) {
+        int index = top._index++;
+        T child = top._children.get(index);
+        if(! (nearest && top._matches[index])) {
+          if(_predicate.canSucceedBeyond(child)) {
+            stack.add(new Frame<>(_tree.childrenOf(child)));
+          } else {
+            _pruned++;
+          }
+        }
+      } else {
+        stack.remove(stack.size() - 1);
+      }
+    }
+  }
+
+  /**
+   * The children of a node whose subtree is being searched.
+   */
+  private static class Frame<T> {
+
+    private Frame(List<? extends T> children) {
+      _children = children;
+    }
+
+    private final List<? extends T> _children;
+
+    /**
+     * Whether the children have been checked against the predicate.
+     */
+    private boolean _checked;
+
+    /**
+     * Which children satisfy the predicate.
+     */
+    private boolean[] _matches;
+
+    private int _index;
+  }
+}
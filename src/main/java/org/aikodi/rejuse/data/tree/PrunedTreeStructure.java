@@ -86,6 +86,21 @@ public class PrunedTreeStructure<T, N extends Exception> implements TreeStructur
 		}
 	}
 
+	/**
+	 * @return The children of the given node that satisfy the predicate if the
+	 *         predicate can succeed for children of the node, and an empty list
+	 *         otherwise. No pruned tree structure is created for the node.
+	 * @throws N
+	 */
+	@Override
+	public List<T> childrenOf(T node) throws N {
+		if (_predicate.canSucceedBeyond(node)) {
+			return _predicate.filteredList(_underLying.childrenOf(node));
+		} else {
+			return Collections.emptyList();
+		}
+	}
+
 	/**
 	 * @return A pruned tree structure for the given element.
 	 *         that uses the same predicate as this pruned tree structure.
@@ -0,0 +1,118 @@
+package org.aikodi.rejuse.data.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An iterative pre-order traversal of a subtree that records, for every node, its
+ * position, its depth, the position of its parent, and the position of its last
+ * descendant. The positions are absolute: the root of the subtree gets the base
+ * position that is given to the constructor. This class is used by the indexes
+ * of tree structures to build and rebuild the numbering of a subtree.
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <N> The type of exception that can be thrown when navigating the tree.
+ *
+ * @author Marko van Dooren
+ */
+final class SubtreeScan<T, N extends Exception> {
+
+  /**
+   * Create a scan whose root will be at the given position.
+   */
+  SubtreeScan(int base) {
+    _base = base;
+  }
+
+  /**
+   * The position of the root of the subtree.
+   */
+  private final int _base;
+
+  Object[] _nodes = new Object[16];
+
+  /**
+   * The position of the last descendant of each node.
+   */
+  int[] _last = new int[16];
+
+  int[] _depth = new int[16];
+
+  /**
+   * The position of the parent of each node. The parent of the root
+   * is the parent that was given to {@link #traverse(TreeStructure, int, int, Map)}.
+   */
+  int[] _parent = new int[16];
+
+  /**
+   * The number of nodes in the subtree.
+   */
+  int _size;
+
+  /**
+   * Traverse the subtree of the given tree structure.
+   *
+   * @param tree The tree structure of the root of the subtree.
+   * @param depth The depth of the root of the subtree.
+   * @param parent The position of the parent of the root, or -1 if there is none.
+   * @param positions The map to which the position of every node is added.
+   * @throws IllegalStateException A node is already in the map.
+   */
+  void traverse(TreeStructure<T, N> tree, int depth, int parent, Map<T, Integer> positions) throws N {
+    List<Frame<T>> stack = new ArrayList<>();
+    add(tree.node(), depth, parent, positions);
+    stack.add(new Frame<>(tree.children(), _base));
+    while(! stack.isEmpty()) {
+      Frame<T> top = stack.get(stack.size() - 1);
+      if(top._index < top._children.size()) {
+        T child = top._children.get(top._index++);
+        int position = add(child, _depth[top._position - _base] + 1, top._position, positions);
+        stack.add(new Frame<>(tree.childrenOf(child), position));
+      } else {
+        _last[top._position - _base] = _base + _size - 1;
+        stack.remove(stack.size() - 1);
+      }
+    }
+  }
+
+  private int add(T node, int depth, int parent, Map<T, Integer> positions) {
+    int position = _base + _size;
+    if(positions.putIfAbsent(node, position) != null) {
+      throw new IllegalStateException("The node occurs more than once in the index: " + node);
+    }
+    if(_size == _nodes.length) {
+      int capacity = _size * 2;
+      _nodes = Arrays.copyOf(_nodes, capacity);
+      _last = Arrays.copyOf(_last, capacity);
+      _depth = Arrays.copyOf(_depth, capacity);
+      _parent = Arrays.copyOf(_parent, capacity);
+    }
+    _nodes[_size] = node;
+    _depth[_size] = depth;
+    _parent[_size] = parent;
+    _size++;
+    return position;
+  }
+
+  /**
+   * The children of a node during the traversal.
+   */
+  private static final class Frame<T> {
+
+    private Frame(List<? extends T> children, int position) {
+      _children = children;
+      _position = position;
+    }
+
+    private final List<? extends T> _children;
+
+    /**
+     * The position of the node.
+     */
+    private final int _position;
+
+    private int _index;
+  }
+}
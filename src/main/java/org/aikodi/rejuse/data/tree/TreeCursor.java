@@ -0,0 +1,280 @@
+package org.aikodi.rejuse.data.tree;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.aikodi.rejuse.action.Nothing;
+
+/**
+ * <p>A mutable position in a tree. A cursor starts at a node, and can move through
+ * the subtree of that node. The cursor itself does not create an object per visited
+ * node, but the tree structure may allocate when it computes the children of a node.
+ * The cursor cannot move above the node at which it started.</p>
+ *
+ * <p>The cursor keeps the list of siblings and the index of every node on the path
+ * from the start node to the current node. These are stored in arrays that only grow
+ * when the cursor reaches a depth that it has not reached before. The children of a
+ * node are requested every time the cursor moves to its first child.</p>
+ *
+ * <p>A cursor for a {@link TreeStructure} is created with {@link #of(TreeStructure)}, and
+ * a cursor for a {@link FunctionalTreeStructure} with {@link #of(FunctionalTreeStructure, Object)}.
+ * Subclasses only have to define how the children of a node are computed.</p>
+ *
+ * <p>A typical pre-order walk looks as follows:</p>
+ * <pre>
+ * TreeCursor&lt;T,N&gt; cursor = TreeCursor.of(tree);
+ * do {
+ *   process(cursor.node());
+ * } while(cursor.moveToNext());
+ * </pre>
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <N> The type of exception that can be thrown when navigating the tree.
+ *
+ * @author Marko van Dooren
+ */
+public abstract class TreeCursor<T, N extends Exception> {
+
+  /**
+   * Create a cursor for the node of the given tree structure. The children of
+   * a node are computed with {@link TreeStructure#childrenOf(Object)}.
+   *
+   * @param tree The tree structure whose node is the start node of the cursor.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @
+   @ post \result.node() == tree.node();
+   @ post \result.depth() == 0;
+   @*/
+  public static <T, N extends Exception> TreeCursor<T, N> of(TreeStructure<T, N> tree) {
+    requireNotNull(tree);
+    return new TreeCursor<T, N>(tree.node()) {
+      @Override
+      protected List<? extends T> children(T node) throws N {
+        return tree.childrenOf(node);
+      }
+    };
+  }
+
+  /**
+   * Create a cursor for the given node of the given functional tree structure.
+   * The children of a node are computed with {@link FunctionalTreeStructure#childrenOf(Object)}.
+   *
+   * @param tree The tree structure that is used to compute the children of the nodes.
+   * @param node The start node of the cursor.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @ pre node != null;
+   @
+   @ post \result.node() == node;
+   @ post \result.depth() == 0;
+   @*/
+  public static <T> TreeCursor<T, Nothing> of(FunctionalTreeStructure<T> tree, T node) {
+    requireNotNull(tree);
+    return new TreeCursor<T, Nothing>(node) {
+      @Override
+      protected List<? extends T> children(T node) {
+        return tree.childrenOf(node);
+      }
+    };
+  }
+
+  /**
+   * Create a cursor that starts at the given node.
+   *
+   * @param node The start node of the cursor.
+   */
+ /*@
+   @ protected behavior
+   @
+   @ pre node != null;
+   @
+   @ post node() == node;
+   @ post depth() == 0;
+   @*/
+  protected TreeCursor(T node) {
+    requireNotNull(node);
+    _start = node;
+    _node = node;
+  }
+
+  /**
+   * Return the children of the given node.
+   *
+   * @param node A node in the subtree of the start node.
+   */
+ /*@
+   @ protected behavior
+   @
+   @ post \result != null;
+   @*/
+  protected abstract List<? extends T> children(T node) throws N;
+
+  /**
+   * The node at which the cursor started.
+   */
+  private final T _start;
+
+  /**
+   * The node at the current position.
+   */
+  private T _node;
+
+  /**
+   * _siblings[i] contains the node at depth i + 1 on the path to the
+   * current node, and its siblings.
+   */
+  private Object[] _siblings = new Object[8];
+
+  /**
+   * _index[i] is the index of the node at depth i + 1 on the path to the
+   * current node in _siblings[i].
+   */
+  private int[] _index = new int[8];
+
+  /**
+   * The depth of the current node relative to the start node.
+   */
+  private int _depth;
+
+  /**
+   * @return The node at the current position. The result is not null.
+   */
+  public T node() {
+    return _node;
+  }
+
+  /**
+   * @return The depth of the current node relative to the start node.
+   *         The start node has depth 0.
+   */
+  public int depth() {
+    return _depth;
+  }
+
+  /**
+   * Move to the first child of the current node.
+   *
+   * @return True if the current node has children. False if it has none,
+   *         in which case the cursor does not move.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post \result ==> depth() == \old(depth()) + 1;
+   @ post ! \result ==> node() == \old(node());
+   @*/
+  public boolean moveToFirstChild() throws N {
+    List<? extends T> children = children(_node);
+    if(children.isEmpty()) {
+      return false;
+    }
+    if(_depth == _siblings.length) {
+      _siblings = Arrays.copyOf(_siblings, _depth * 2);
+      _index = Arrays.copyOf(_index, _depth * 2);
+    }
+    _siblings[_depth] = children;
+    _index[_depth] = 0;
+    _depth++;
+    _node = children.get(0);
+    return true;
+  }
+
+  /**
+   * Move to the next sibling of the current node.
+   *
+   * @return True if the current node has a next sibling. False if it is the
+   *         last child of its parent, or the start node. In that case, the
+   *         cursor does not move.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post depth() == \old(depth());
+   @ post ! \result ==> node() == \old(node());
+   @*/
+  public boolean moveToNextSibling() {
+    if(_depth == 0) {
+      return false;
+    }
+    List<? extends T> siblings = siblings();
+    int index = _index[_depth - 1] + 1;
+    if(index >= siblings.size()) {
+      return false;
+    }
+    _index[_depth - 1] = index;
+    _node = siblings.get(index);
+    return true;
+  }
+
+  /**
+   * Move to the parent of the current node.
+   *
+   * @return True if the cursor has moved. False if the current node is the
+   *         start node, in which case the cursor does not move.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post \result == (\old(depth()) > 0);
+   @ post \result ==> depth() == \old(depth()) - 1;
+   @*/
+  public boolean moveToParent() {
+    if(_depth == 0) {
+      return false;
+    }
+    _siblings[--_depth] = null;
+    if(_depth == 0) {
+      _node = _start;
+    } else {
+      _node = siblings().get(_index[_depth - 1]);
+    }
+    return true;
+  }
+
+  /**
+   * Move to the next node in pre-order in the subtree of the start node: the
+   * first child of the current node if it has children, and otherwise the next
+   * sibling of the nearest node on the path from the current node to the start
+   * node that has a next sibling.
+   *
+   * @return True if there is such a node. False if the walk is done, in which
+   *         case the cursor is back at the start node.
+   */
+  public boolean moveToNext() throws N {
+    return moveToFirstChild() || skipSubtree();
+  }
+
+  /**
+   * Move to the next node in pre-order that is not in the subtree of the
+   * current node.
+   *
+   * @return True if there is such a node. False if the walk is done, in which
+   *         case the cursor is back at the start node.
+   */
+  public boolean skipSubtree() {
+    while(! moveToNextSibling()) {
+      if(! moveToParent()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The children of the parent of the current node. Only lists of
+   *         children of this tree are stored in {@link #_siblings}.
+   */
+  @SuppressWarnings("unchecked")
+  private List<? extends T> siblings() {
+    return (List<? extends T>) _siblings[_depth - 1];
+  }
+}
@@ -0,0 +1,238 @@
+package org.aikodi.rejuse.data.tree;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>A lazy iterator over the nodes of a tree structure. The iterator uses an
+ * explicit stack instead of recursion, so deep trees do not overflow the call
+ * stack. The stack contains one frame per level, so the memory that is used by
+ * the iterator is proportional to the depth of the tree and not to its size.</p>
+ *
+ * <p>The children of a node are requested only when the iteration reaches them,
+ * so a traversal that stops early does not visit the rest of the tree. The children
+ * of each node are requested exactly once.</p>
+ *
+ * <p>The methods of the iterator can throw the exception of the tree structure,
+ * so this class does not implement {@link java.util.Iterator}. Use {@link #stream()}
+ * to obtain a stream, which wraps the exceptions in a {@link TreeTraversalException}.</p>
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <N> The type of exception that can be thrown when navigating the tree.
+ *
+ * @author Marko van Dooren
+ */
+public final class TreeIterator<T, N extends Exception> {
+
+  /**
+   * Create an iterator over the descendants of the node of the given tree
+   * structure, in the order of {@link TreeStructure#descendants()}: first the
+   * children of a node, and then the descendants of each of those children.
+   * The node of the tree structure itself is not included.
+   *
+   * @param tree The tree structure whose descendants must be iterated.
+   * @return A new iterator.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @
+   @ post \result != null;
+   @*/
+  public static <T, N extends Exception> TreeIterator<T, N> descendants(TreeStructure<T, N> tree) {
+    requireNotNull(tree);
+    return new TreeIterator<>(tree, false);
+  }
+
+  /**
+   * Create an iterator over the node of the given tree structure and its
+   * descendants in pre-order: every node is followed by the descendants of its
+   * first child, then the descendants of its second child, and so on.
+   * This is the order in which {@link TreeStructure#apply(org.aikodi.rejuse.function.Consumer)}
+   * visits the nodes.
+   *
+   * @param tree The tree structure whose nodes must be iterated.
+   * @return A new iterator.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @
+   @ post \result != null;
+   @*/
+  public static <T, N extends Exception> TreeIterator<T, N> preOrder(TreeStructure<T, N> tree) {
+    requireNotNull(tree);
+    TreeIterator<T, N> result = new TreeIterator<>(tree, true);
+    result._next = tree.node();
+    return result;
+  }
+
+  private TreeIterator(TreeStructure<T, N> tree, boolean preOrder) {
+    _tree = tree;
+    _preOrder = preOrder;
+    _expandRoot = true;
+  }
+
+  /**
+   * The tree structure that is used to navigate to the children of a node.
+   */
+  private final TreeStructure<T, N> _tree;
+
+  /**
+   * True if the nodes are returned in pre-order. False if they are returned
+   * in the order of {@link TreeStructure#descendants()}.
+   */
+  private final boolean _preOrder;
+
+  /**
+   * The frames of the nodes whose children are being iterated. The last
+   * frame belongs to the deepest node.
+   */
+  private final List<Frame<T>> _stack = new ArrayList<>();
+
+  /**
+   * The next node to be returned. Null if it has not been computed yet.
+   */
+  private T _next;
+
+  /**
+   * The node whose children must be pushed onto the stack before the
+   * iteration can continue. Null if there is no such node.
+   */
+  private T _expand;
+
+  /**
+   * True if the children of the node of the tree structure must be
+   * pushed onto the stack before the iteration can continue.
+   */
+  private boolean _expandRoot;
+
+  /**
+   * The children of a node, and how far they have been processed.
+   */
+  private static final class Frame<T> {
+
+    private Frame(List<? extends T> children) {
+      _children = children;
+    }
+
+    private final List<? extends T> _children;
+
+    /**
+     * The number of children that have been returned.
+     */
+    private int _returned;
+
+    /**
+     * The number of children whose children have been pushed onto the stack.
+     */
+    private int _expanded;
+  }
+
+  /**
+   * @return True if there are more nodes.
+   * @throws N The children of a node could not be computed.
+   */
+  public boolean hasNext() throws N {
+    advance();
+    return _next != null;
+  }
+
+  /**
+   * @return The next node.
+   * @throws N The children of a node could not be computed.
+   * @throws NoSuchElementException There are no more nodes.
+   */
+  public T next() throws N {
+    advance();
+    if(_next == null) {
+      throw new NoSuchElementException();
+    }
+    T result = _next;
+    _next = null;
+    return result;
+  }
+
+  /**
+   * Return a sequential stream with the remaining nodes of this iterator.
+   * Exceptions that are thrown when navigating the tree are wrapped in a
+   * {@link TreeTraversalException}. The iterator must not be used directly
+   * anymore after calling this method.
+   *
+   * @return A lazy stream with the remaining nodes.
+   */
+ /*@
+   @ public behavior
+   @
+   @ post \result != null;
+   @*/
+  public Stream<T> stream() {
+    return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+      @Override
+      public boolean tryAdvance(java.util.function.Consumer<? super T> action) {
+        try {
+          if(hasNext()) {
+            action.accept(next());
+            return true;
+          }
+          return false;
+        } catch(RuntimeException exc) {
+          throw exc;
+        } catch(Exception exc) {
+          throw new TreeTraversalException(exc);
+        }
+      }
+    }, false);
+  }
+
+  /**
+   * Compute the next node if it has not been computed yet. Afterwards,
+   * {@link #_next} is null if and only if there are no more nodes.
+   */
+  private void advance() throws N {
+    while(_next == null) {
+      if(_expandRoot || _expand != null) {
+        List<? extends T> children = _expandRoot ? _tree.children() : _tree.childrenOf(_expand);
+        _expandRoot = false;
+        _expand = null;
+        if(! children.isEmpty()) {
+          _stack.add(new Frame<>(children));
+        }
+        continue;
+      }
+      int depth = _stack.size();
+      if(depth == 0) {
+        return;
+      }
+      Frame<T> top = _stack.get(depth - 1);
+      int size = top._children.size();
+      if(_preOrder) {
+        if(top._returned < size) {
+          _next = top._children.get(top._returned++);
+          // The children of the node are only requested when the
+          // iteration continues after the node has been returned.
+          _expand = _next;
+        } else {
+          _stack.remove(depth - 1);
+        }
+      } else {
+        if(top._returned < size) {
+          _next = top._children.get(top._returned++);
+        } else if(top._expanded < size) {
+          _expand = top._children.get(top._expanded++);
+        } else {
+          _stack.remove(depth - 1);
+        }
+      }
+    }
+  }
+}
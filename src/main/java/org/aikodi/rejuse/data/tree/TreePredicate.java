@@ -70,6 +70,44 @@ public abstract class TreePredicate<D, E extends Exception> extends UniversalPre
 		};
 	}
 	
+	/**
+	 * Return a tree predicate that is satisfied if both this predicate and the
+	 * given predicate are satisfied. The given predicate has no information about
+	 * the descendants of a node, so the result can succeed beyond a node if this
+	 * predicate can succeed beyond it.
+	 */
+	@Override
+	public TreePredicate<D, E> and(final UniversalPredicate<? super D, ? extends E> other) {
+		return and((Predicate<Object, ? extends E>) other);
+	}
+
+	/**
+	 * Return a tree predicate that is satisfied if both this predicate and the
+	 * given predicate are satisfied. The given predicate has no information about
+	 * the descendants of a node, so the result can succeed beyond a node if this
+	 * predicate can succeed beyond it.
+	 */
+	@Override
+	public TreePredicate<D, E> and(final Predicate<? super Object, ? extends E> other) {
+		return new TreePredicate<D, E>(type()) {
+
+			@Override
+			public boolean canSucceedBeyond(D node) throws E {
+				return TreePredicate.this.canSucceedBeyond(node);
+			}
+
+			@Override
+			public boolean uncheckedEval(D t) throws E {
+				return TreePredicate.this.eval(t) && other.eval(t);
+			}
+
+			@Override
+			public String toString() {
+				return "("+TreePredicate.this.toString() + " & " + other.toString()+")";
+			}
+		};
+	}
+
 	public static TreePredicate<Object,Nothing> False() {
 		return new TreePredicate<Object, Nothing>(Object.class) {
 			@Override 
@@ -88,7 +126,7 @@ public abstract class TreePredicate<D, E extends Exception> extends UniversalPre
 			}
 			
 			@Override
-			public Predicate<Object, Nothing> and(
+			public TreePredicate<Object, Nothing> and(
 					Predicate<? super Object, ? extends Nothing> other) {
 				return this;
 			}
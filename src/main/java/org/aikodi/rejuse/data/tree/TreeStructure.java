@@ -1,13 +1,13 @@
 package org.aikodi.rejuse.data.tree;
 
 import static java.util.stream.Collectors.toList;
-import static org.aikodi.rejuse.collection.CollectionOperations.exists;
 import static org.aikodi.rejuse.collection.CollectionOperations.filter;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.aikodi.rejuse.action.UniversalConsumer;
 import org.aikodi.rejuse.function.Consumer;
@@ -54,6 +54,41 @@ public interface TreeStructure<T, N extends Exception> {
     @*/
   List<T> children() throws N;
 
+  /**
+   * Return the direct children of the given node. This is equivalent to
+   * <code>tree(node).children()</code>, but implementations can override it
+   * to avoid creating a tree structure for the node. The traversals of this
+   * interface use this method. The default implementation creates a tree
+   * structure for every node whose children are requested, so a traversal
+   * only avoids that if this method is overridden. Unlike the result of {@link #children()}, the
+   * result may be a view on the tree, so it must not be modified.
+   *
+   * @param node A node in the tree.
+   */
+  /*@
+    @ default behavior
+    @
+    @ pre node != null;
+    @
+    @ post \result.equals(tree(node).children());
+    @*/
+  default List<T> childrenOf(T node) throws N {
+    return tree(node).children();
+  }
+
+  /**
+   * Return a cursor that starts at the node of this tree structure.
+   */
+  /*@
+    @ default behavior
+    @
+    @ post \result != null;
+    @ post \result.node() == node();
+    @*/
+  default TreeCursor<T,N> cursor() {
+    return TreeCursor.of(this);
+  }
+
   /**
    * Return the branches of this node.
    * 
@@ -295,7 +330,8 @@ public interface TreeStructure<T, N extends Exception> {
   
   /**
    * Return a list of all ancestors. The direct parent is in front of the list, the
-   * furthest ancestor is last.
+   * furthest ancestor is last. For repeated ancestor queries on a tree that rarely
+   * changes, use an {@link AncestorIndex}.
    */
   /*@
      @ default behavior
@@ -306,13 +342,13 @@ public interface TreeStructure<T, N extends Exception> {
      @ post parent() != null ==> \result.subList(1,\result.size()).equals(parent().ancestors());
      @*/
   default List<T> ancestors() {
-		if (parent()!=null) {
-			List<T> result = tree(parent()).ancestors();
-			result.add(0, parent());
-			return result;
-		} else {
-			return new ArrayList<>();
+		List<T> result = new ArrayList<>();
+		T el = parent();
+		while(el != null) {
+			result.add(el);
+			el = tree(el).parent();
 		}
+		return result;
   }
 
   /**
@@ -395,12 +431,13 @@ public interface TreeStructure<T, N extends Exception> {
      @ post parent() != null ==> \result == parent().furthestAncestor();
      @*/
   default T farthestAncestor() {
+		T el = node();
 		T parent = parent();
-		if(parent == null) {
-			return node();
-		} else {
-			return tree(parent).farthestAncestor();
+		while(parent != null) {
+			el = parent;
+			parent = tree(el).parent();
 		}
+		return el;
   }
 
   /**
@@ -584,16 +621,48 @@ public interface TreeStructure<T, N extends Exception> {
    @          (\exists T c; children().contains(c); tree(c).descendants().contains(e)));
    @*/ 
   default List<T> descendants() throws N {
-    List<T> result = children();
-    for (T e : children()) {
-      result.addAll(tree(e).descendants());
+    List<T> result = new ArrayList<>();
+    TreeIterator<T,N> iterator = descendantIterator();
+    while(iterator.hasNext()) {
+      result.add(iterator.next());
     }
     return result;
   }
 
+  /**
+   * Return a lazy iterator over the descendants of this element, in the same order
+   * as {@link #descendants()}. The iterator uses an explicit stack, so it does not
+   * overflow the call stack for deep trees, and its memory use is proportional to
+   * the depth of the tree.
+   */
+ /*@
+   @ default behavior
+   @
+   @ post \result != null;
+   @*/
+  default TreeIterator<T,N> descendantIterator() {
+    return TreeIterator.descendants(this);
+  }
+
+  /**
+   * Return a lazy sequential stream of the descendants of this element, in the same
+   * order as {@link #descendants()}. Short-circuiting operations such as
+   * {@link Stream#findFirst()} only visit the part of the tree that they need.
+   * An exception of type N is wrapped in a {@link TreeTraversalException}.
+   */
+ /*@
+   @ default behavior
+   @
+   @ post \result != null;
+   @*/
+  default Stream<T> descendantStream() {
+    return descendantIterator().stream();
+  }
+
   
   /**
-   * Return all descendants of a given type.
+   * Return all descendants of a given type. For repeated type queries on a tree
+   * that rarely changes, use a {@link TypeIndex}.
    * 
    * @param type The type of the requested descendants.
    * 
@@ -607,9 +676,13 @@ public interface TreeStructure<T, N extends Exception> {
    @ post (\forall Element e; ; \result.contains(e) <==> descendants().contains(e) && type.isInstance(e));
    @*/
   default <X> List<X> descendants(Class<X> type) throws N {
-    List<X> result = children(type);
-    for (T e : children()) {
-      result.addAll(tree(e).descendants(type));
+    List<X> result = new ArrayList<>();
+    TreeIterator<T,N> iterator = descendantIterator();
+    while(iterator.hasNext()) {
+      T descendant = iterator.next();
+      if(type.isInstance(descendant)) {
+        result.add(type.cast(descendant));
+      }
     }
     return result;
   }
@@ -628,10 +701,13 @@ public interface TreeStructure<T, N extends Exception> {
    @ post (\forall Element e; ; \result.contains(e) <==> descendants().contains(e) && predicate.eval(e));
    @*/
 	default <X extends T, E extends Exception> List<X> descendants(UniversalPredicate<X,E> predicate) throws E, N {
-		List<X> result = children(predicate);
-		predicate.filter(result);
-		for (T e : children()) {
-			result.addAll(tree(e).descendants(predicate));
+		List<X> result = new ArrayList<>();
+		TreeIterator<T,N> iterator = descendantIterator();
+		while(iterator.hasNext()) {
+			T descendant = iterator.next();
+			if(predicate.eval(descendant)) {
+				result.add(predicate.type().cast(descendant));
+			}
 		}
 		return result;
 	}
@@ -652,11 +728,13 @@ public interface TreeStructure<T, N extends Exception> {
   default <E extends Exception> List<T> descendants(Predicate<? super T,E> predicate) throws E, N {
 		// Do not compute all descendants, and apply predicate afterwards.
 		// That is way too expensive.
-		List<T> tmp = children();
-		predicate.filter(tmp);
-		List<T> result = (List<T>)tmp;
-		for (T child : children()) {
-			result.addAll(tree(child).descendants(predicate));
+		List<T> result = new ArrayList<>();
+		TreeIterator<T,N> iterator = descendantIterator();
+		while(iterator.hasNext()) {
+			T descendant = iterator.next();
+			if(predicate.eval(descendant)) {
+				result.add(descendant);
+			}
 		}
 		return result;
 	}
@@ -673,14 +751,64 @@ public interface TreeStructure<T, N extends Exception> {
    @ post (\forall Element e; ; \result.contains(e) <==> descendants().contains(e) && c.isInstance(e) && predicate.eval(e));
    @*/
   default <X extends T, E extends Exception> List<X> descendants(Class<X> c, Predicate<X,E> predicate) throws E, N {
-		List<X> result = children(c);
-		predicate.filter(result);
-		for (T e : children()) {
-			result.addAll(tree(e).descendants(c, predicate));
+		List<X> result = new ArrayList<>();
+		TreeIterator<T,N> iterator = descendantIterator();
+		while(iterator.hasNext()) {
+			T descendant = iterator.next();
+			if(c.isInstance(descendant)) {
+				X candidate = c.cast(descendant);
+				if(predicate.eval(candidate)) {
+					result.add(candidate);
+				}
+			}
 		}
 		return result;
   }
 
+  /**
+   * Return all descendants of the given type, in the same order as {@link #descendants(Class)}.
+   * The subtrees are processed in parallel with {@link ParallelTreeQuery} using the common pool.
+   * The tree structure must be thread-safe.
+   *
+   * @param type The type of the requested descendants.
+   */
+ /*@
+   @ default behavior
+   @
+   @ post \result.equals(descendants(type));
+   @*/
+  default <X> List<X> parallelDescendants(Class<X> type) throws N {
+    return new ParallelTreeQuery().descendants(this, type);
+  }
+
+  /**
+   * Check in parallel whether this element has a descendant of the given type.
+   * The search stops as soon as such a descendant has been found. The subtrees are
+   * processed with {@link ParallelTreeQuery} using the common pool. The tree structure
+   * must be thread-safe.
+   *
+   * @param type The type of the requested descendant.
+   */
+ /*@
+   @ default behavior
+   @
+   @ post \result == hasDescendant(type);
+   @*/
+  default boolean parallelHasDescendant(Class<? extends T> type) throws N {
+    return new ParallelTreeQuery().hasDescendant(this, type);
+  }
+
+  /**
+   * Pass this element and all of its descendants to the given consumer in parallel,
+   * using {@link ParallelTreeQuery} with the common pool. The elements are passed in
+   * no particular order. The tree structure and the consumer must be thread-safe.
+   *
+   * @param consumer The consumer to which the elements must be provided.
+   */
+  default <E extends Exception> void parallelApply(Consumer<? super T, E> consumer) throws E, N {
+    new ParallelTreeQuery().apply(this, consumer);
+  }
+
   /**
    * Check whether this element has a descendant of the given type.
    * 
@@ -694,12 +822,9 @@ public interface TreeStructure<T, N extends Exception> {
    @ post \result == ! descendants(type).isEmpty();
    @*/
 	default <X extends T> boolean hasDescendant(Class<X> type) throws N {
-		List<T> children = children();
-		if(children.stream().anyMatch(child -> type.isInstance(child))) {
-			return true;
-		}
-		for(T child: children) {
-			if(tree(child).hasDescendant(type)) {
+		TreeIterator<T,N> iterator = descendantIterator();
+		while(iterator.hasNext()) {
+			if(type.isInstance(iterator.next())) {
 				return true;
 			}
 		}
@@ -721,7 +846,13 @@ public interface TreeStructure<T, N extends Exception> {
    @ post \result == (\exists T t; descendants().contains(t); predicate.eval(t));
    @*/
   default <X extends T, E extends Exception> boolean hasDescendant(UniversalPredicate<X,E> predicate) throws Exception {
-    return (! children(predicate).isEmpty()) || exists(children(), c -> tree(c).hasDescendant(predicate));
+    TreeIterator<T,N> iterator = descendantIterator();
+    while(iterator.hasNext()) {
+      if(predicate.eval(iterator.next())) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
@@ -739,17 +870,33 @@ public interface TreeStructure<T, N extends Exception> {
    @ post \result == ! descendants(type, predicate).isEmpty();
    @*/
   default <X extends T, E extends Exception> boolean hasDescendant(Class<X> type, Predicate<X,E> predicate) throws E, N {
-    List<X> result = children(type, predicate);
-    if (!result.isEmpty()) {
-      return true;
-    }
-    for (T e : children()) {
-      if (tree(e).hasDescendant(type, predicate)) {
+    TreeIterator<T,N> iterator = descendantIterator();
+    while(iterator.hasNext()) {
+      T descendant = iterator.next();
+      if(type.isInstance(descendant) && predicate.eval(type.cast(descendant))) {
         return true;
       }
     }
     return false;
   }
+
+  /**
+   * Return a query for the descendants that satisfy the given tree predicate. The query
+   * skips the descendants of a node if the predicate cannot succeed beyond that node.
+   *
+   * @param predicate The predicate that must be satisfied by the descendants.
+   */
+ /*@
+   @ default behavior
+   @
+   @ pre predicate != null;
+   @
+   @ post \result.tree() == this;
+   @ post \result.predicate() == predicate;
+   @*/
+  default <E extends Exception> PrunedQuery<T,N,E> prunedQuery(TreePredicate<? super T,E> predicate) {
+    return new PrunedQuery<>(this, predicate);
+  }
   
   /**
    * Recursively apply the given action to this element and all of its 
@@ -758,14 +905,10 @@ public interface TreeStructure<T, N extends Exception> {
    * @param action The action to apply.
    */
   default <X, E extends Exception> void apply(UniversalConsumer<X,E> action) throws E, N {
-    T node = node();
-    if(action.type().isInstance(node)) {
-      action.perform((T)node);
-    }
-    for (T e : children()) {
-      TreeStructure<? extends T,N> tree = tree(e);
-      tree.apply(action);
-    }
+    TreeCursor<T,N> cursor = cursor();
+    do {
+      action.perform(cursor.node());
+    } while(cursor.moveToNext());
   }
 
   /**
@@ -777,12 +920,13 @@ public interface TreeStructure<T, N extends Exception> {
    * @param consumer The consumer to which the elements must be provided.
    */
   default <X extends T, E extends Exception> void apply(Class<X> kind, Consumer<X,E> consumer) throws E, N {
-	  if(kind.isInstance(node())) {
-	     consumer.accept((X)node());
-	  }
-    for (T e : children()) {
-       tree(e).apply(kind, consumer);
-    }
+    TreeCursor<T,N> cursor = cursor();
+    do {
+      T node = cursor.node();
+      if(kind.isInstance(node)) {
+        consumer.accept(kind.cast(node));
+      }
+    } while(cursor.moveToNext());
   }
 
 	/**
@@ -796,10 +940,10 @@ public interface TreeStructure<T, N extends Exception> {
 	 *            The consumer to which the elements must be provided.
 	 */
 	default <E extends Exception> void apply(Consumer<? super T, E> consumer) throws E, N {
-		consumer.accept(node());
-		for (T e : children()) {
-			tree(e).apply(consumer);
-		}
+		TreeCursor<T,N> cursor = cursor();
+		do {
+			consumer.accept(cursor.node());
+		} while(cursor.moveToNext());
 	}
 
 }
\ No newline at end of file
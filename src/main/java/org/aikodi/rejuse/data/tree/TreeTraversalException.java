@@ -0,0 +1,61 @@
+package org.aikodi.rejuse.data.tree;
+
+/**
+ * An unchecked exception that wraps a checked exception that was thrown while
+ * navigating a tree structure, in places where checked exceptions cannot be
+ * thrown, such as the stream returned by {@link TreeStructure#descendantStream()}.
+ *
+ * @author Marko van Dooren
+ */
+public class TreeTraversalException extends RuntimeException {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Create a new exception that wraps the given exception.
+   *
+   * @param cause The exception that was thrown while navigating the tree.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre cause != null;
+   @
+   @ post getCause() == cause;
+   @*/
+  public TreeTraversalException(Exception cause) {
+    super(cause);
+  }
+
+  /**
+   * @return The exception that was thrown while navigating the tree.
+   */
+  @Override
+  public synchronized Exception getCause() {
+    return (Exception) super.getCause();
+  }
+
+  /**
+   * Throw the exception that was originally thrown while navigating the tree.
+   * If the cause of this exception is itself a tree traversal exception, for
+   * example because it was wrapped again by another task, the innermost
+   * cause is thrown.
+   *
+   * The exception is thrown without being checked against the type parameter.
+   * It must therefore only be used when the original exception is known to
+   * be of type E, for example because it was thrown by code that declares E.
+   *
+   * @param <E> The type of the original exception.
+   * @return Nothing, the method always throws an exception. The return type
+   *         allows callers to write {@code throw exc.rethrowCause()} so that
+   *         the compiler knows that the statement does not complete normally.
+   */
+  @SuppressWarnings("unchecked")
+  public <E extends Exception> RuntimeException rethrowCause() throws E {
+    Exception cause = getCause();
+    while(cause instanceof TreeTraversalException) {
+      cause = ((TreeTraversalException) cause).getCause();
+    }
+    throw (E) cause;
+  }
+}
@@ -0,0 +1,403 @@
+package org.aikodi.rejuse.data.tree;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A precomputed index of the types of the nodes of a tree structure.</p>
+ *
+ * <p>The nodes are numbered in pre-order, so the descendants of a node have consecutive
+ * numbers that directly follow the number of the node. For every class of which a node
+ * is a direct instance, the index keeps the sorted numbers of those nodes. The numbers
+ * for a type that is queried are the merge of the numbers of all classes that are
+ * subtypes of it. They are computed when the type is queried for the first time, and
+ * are then reused until the index is invalidated. Finding the descendants of a given
+ * type in the subtree of a node then consists of two binary searches, so the cost of a
+ * query is proportional to the size of its result instead of the size of the subtree.</p>
+ *
+ * <p>The results are in pre-order. This is different from
+ * {@link TreeStructure#descendants(Class)}, which returns the children of a node before
+ * the descendants of those children.</p>
+ *
+ * <p>The index covers the subtree of the tree structure from which it was created.
+ * Nodes are compared by identity. The index does not observe the tree. If the children
+ * of a node in the subtree change, {@link #invalidate(Object)} must be invoked for that
+ * node, or for one of its ancestors. Only the invalidated subtree is traversed again.
+ * If a node moves to another place in the tree, the subtree that it has left must be
+ * invalidated before the subtree that it has joined.</p>
+ *
+ * <p>The index is not thread-safe.</p>
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <N> The type of exception that can be thrown when navigating the tree.
+ *
+ * @author Marko van Dooren
+ */
+public class TypeIndex<T, N extends Exception> {
+
+  /**
+   * Create an index for the subtree of the given tree structure.
+   *
+   * @param tree The tree structure whose node is the root of the index.
+   * @throws N The children of a node could not be computed.
+   * @throws IllegalStateException A node occurs more than once in the tree.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre tree != null;
+   @
+   @ post root() == tree.node();
+   @*/
+  public TypeIndex(TreeStructure<T, N> tree) throws N {
+    requireNotNull(tree);
+    _tree = tree;
+    _nodes = new Object[0];
+    _last = new int[0];
+    splice(tree, 0, 0);
+  }
+
+  /**
+   * The tree structure that is used to navigate to the children of a node.
+   */
+  private final TreeStructure<T, N> _tree;
+
+  /**
+   * The position of every node in pre-order.
+   */
+  private final Map<T, Integer> _positions = new IdentityHashMap<>();
+
+  /**
+   * The nodes in pre-order.
+   */
+  private Object[] _nodes;
+
+  /**
+   * The position of the last descendant of the node at each position. The
+   * descendants of the node at position i are at the positions
+   * i + 1, ..., _last[i].
+   */
+  private int[] _last;
+
+  /**
+   * The number of nodes in the index.
+   */
+  private int _size;
+
+  /**
+   * The sorted positions of the direct instances of each class.
+   */
+  private final Map<Class<?>, int[]> _byClass = new HashMap<>();
+
+  /**
+   * The sorted positions of the instances of each type that has been queried
+   * since the last modification of the index.
+   */
+  private final Map<Class<?>, int[]> _byType = new HashMap<>();
+
+  /**
+   * @return The number of nodes in the index.
+   */
+  public int size() {
+    return _size;
+  }
+
+  /**
+   * @return The root of the index.
+   */
+  public T root() {
+    return node(_nodes, 0);
+  }
+
+  /**
+   * @return The node at the given position. The array only contains nodes of the tree.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T node(Object[] nodes, int position) {
+    return (T) nodes[position];
+  }
+
+  /**
+   * Check whether the given node is in the index.
+   *
+   * @param node The node to check.
+   */
+  public boolean contains(T node) {
+    return _positions.containsKey(node);
+  }
+
+  /**
+   * Return the descendants of the given node that are of the given type, in pre-order.
+   *
+   * @param node A node in the index.
+   * @param type The type of the requested descendants.
+   * @throws IllegalArgumentException The node is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(node);
+   @ pre type != null;
+   @
+   @ post \result != null;
+   @ post (\forall Object e; ; \result.contains(e) <==> _tree.tree(node).descendants().contains(e) && type.isInstance(e));
+   @*/
+  public <X> List<X> descendants(T node, Class<X> type) {
+    int position = position(node);
+    int[] positions = positions(type);
+    int from = lowerBound(positions, position + 1);
+    int to = lowerBound(positions, _last[position] + 1);
+    List<X> result = new ArrayList<>(to - from);
+    for(int i = from; i < to; i++) {
+      result.add(type.cast(_nodes[positions[i]]));
+    }
+    return result;
+  }
+
+  /**
+   * Return the descendants of the given node that are of the given type, but do
+   * not include the descendants of a node that is of the given type. The result is
+   * in pre-order.
+   *
+   * @param node A node in the index.
+   * @param type The type of the requested descendants.
+   * @throws IllegalArgumentException The node is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(node);
+   @ pre type != null;
+   @
+   @ post \result != null;
+   @ post descendants(node, type).containsAll(\result);
+   @*/
+  public <X> List<X> nearestDescendants(T node, Class<X> type) {
+    int position = position(node);
+    int[] positions = positions(type);
+    int last = _last[position];
+    List<X> result = new ArrayList<>();
+    int i = lowerBound(positions, position + 1);
+    while(i < positions.length && positions[i] <= last) {
+      int match = positions[i];
+      result.add(type.cast(_nodes[match]));
+      // Skip the descendants of the match.
+      i = lowerBound(positions, _last[match] + 1);
+    }
+    return result;
+  }
+
+  /**
+   * Check whether the given node has a descendant of the given type.
+   *
+   * @param node A node in the index.
+   * @param type The type of the requested descendant.
+   * @throws IllegalArgumentException The node is not in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(node);
+   @ pre type != null;
+   @
+   @ post \result == ! descendants(node, type).isEmpty();
+   @*/
+  public boolean hasDescendant(T node, Class<?> type) {
+    int position = position(node);
+    int[] positions = positions(type);
+    int i = lowerBound(positions, position + 1);
+    return i < positions.length && positions[i] <= _last[position];
+  }
+
+  /**
+   * Update the index after the subtree of the given node has changed. The node
+   * itself must still be at the same place in the tree. The subtree of the node is
+   * traversed again. The positions of the other nodes are only shifted, which takes
+   * linear time but does not navigate the tree.
+   *
+   * @param node A node in the index whose subtree has changed.
+   * @throws N The children of a node could not be computed. The index is then
+   *           no longer usable.
+   * @throws IllegalArgumentException The node is not in the index.
+   * @throws IllegalStateException A node in the new subtree is also at another place
+   *                               in the index.
+   */
+ /*@
+   @ public behavior
+   @
+   @ pre contains(node);
+   @*/
+  public void invalidate(T node) throws N {
+    int start = position(node);
+    int end = _last[start] + 1;
+    for(int i = start; i < end; i++) {
+      _positions.remove(_nodes[i]);
+    }
+    splice(_tree.tree(node), start, end);
+  }
+
+  private int position(T node) {
+    Integer result = _positions.get(node);
+    if(result == null) {
+      throw new IllegalArgumentException("The node is not in the type index: " + node);
+    }
+    return result;
+  }
+
+  /**
+   * Return the sorted positions of the instances of the given type.
+   */
+  private int[] positions(Class<?> type) {
+    requireNotNull(type);
+    int[] result = _byType.get(type);
+    if(result == null) {
+      int count = 0;
+      List<int[]> matches = new ArrayList<>();
+      for(Map.Entry<Class<?>, int[]> entry: _byClass.entrySet()) {
+        if(type.isAssignableFrom(entry.getKey())) {
+          matches.add(entry.getValue());
+          count += entry.getValue().length;
+        }
+      }
+      if(matches.size() == 1) {
+        result = matches.get(0);
+      } else {
+        result = new int[count];
+        int offset = 0;
+        for(int[] match: matches) {
+          System.arraycopy(match, 0, result, offset, match.length);
+          offset += match.length;
+        }
+        Arrays.sort(result);
+      }
+      _byType.put(type, result);
+    }
+    return result;
+  }
+
+  /**
+   * Return the index of the first element of the given sorted array that is
+   * not smaller than the given value.
+   */
+  private static int lowerBound(int[] positions, int value) {
+    int low = 0;
+    int high = positions.length;
+    while(low < high) {
+      int middle = (low + high) >>> 1;
+      if(positions[middle] < value) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Replace the nodes at the positions start, ..., end - 1 by the subtree of the
+   * given tree structure.
+   *
+   * @param tree The tree structure of the root of the new subtree.
+   * @param start The first position to be replaced.
+   * @param end The position after the last position to be replaced.
+   */
+  private void splice(TreeStructure<T, N> tree, int start, int end) throws N {
+    SubtreeScan<T, N> scan = new SubtreeScan<>(start);
+    scan.traverse(tree, 0, -1, _positions);
+    int delta = scan._size - (end - start);
+    int size = _size + delta;
+    Object[] nodes = new Object[size];
+    int[] last = new int[size];
+    System.arraycopy(_nodes, 0, nodes, 0, start);
+    for(int i = 0; i < start; i++) {
+      last[i] = _last[i] >= start ? _last[i] + delta : _last[i];
+    }
+    System.arraycopy(scan._nodes, 0, nodes, start, scan._size);
+    System.arraycopy(scan._last, 0, last, start, scan._size);
+    int tail = _size - end;
+    if(tail > 0) {
+      System.arraycopy(_nodes, end, nodes, end + delta, tail);
+      for(int i = end; i < _size; i++) {
+        last[i + delta] = _last[i] + delta;
+      }
+      if(delta != 0) {
+        for(int i = end + delta; i < size; i++) {
+          _positions.put(node(nodes, i), i);
+        }
+      }
+    }
+    // The positions of the new subtree, per class.
+    Map<Class<?>, Positions> added = new HashMap<>();
+    for(int i = 0; i < scan._size; i++) {
+      added.computeIfAbsent(scan._nodes[i].getClass(), c -> new Positions()).add(start + i);
+    }
+    // Replace the positions in the old subtree of every class, and shift the
+    // positions after it.
+    Map<Class<?>, int[]> byClass = new HashMap<>();
+    for(Map.Entry<Class<?>, int[]> entry: _byClass.entrySet()) {
+      int[] old = entry.getValue();
+      Positions replacement = added.remove(entry.getKey());
+      int[] result = replace(old, start, end, delta, replacement);
+      if(result.length > 0) {
+        byClass.put(entry.getKey(), result);
+      }
+    }
+    for(Map.Entry<Class<?>, Positions> entry: added.entrySet()) {
+      byClass.put(entry.getKey(), entry.getValue().toArray());
+    }
+    _byClass.clear();
+    _byClass.putAll(byClass);
+    _byType.clear();
+    _nodes = nodes;
+    _last = last;
+    _size = size;
+  }
+
+  /**
+   * Replace the positions in the interval [start, end) of the given sorted
+   * array by the given positions, and add delta to the positions after
+   * the interval.
+   */
+  private static int[] replace(int[] positions, int start, int end, int delta, Positions replacement) {
+    int from = lowerBound(positions, start);
+    int to = lowerBound(positions, end);
+    int added = replacement == null ? 0 : replacement._size;
+    int[] result = new int[positions.length - (to - from) + added];
+    System.arraycopy(positions, 0, result, 0, from);
+    if(added > 0) {
+      System.arraycopy(replacement._positions, 0, result, from, added);
+    }
+    int offset = from + added - to;
+    for(int i = to; i < positions.length; i++) {
+      result[i + offset] = positions[i] + delta;
+    }
+    return result;
+  }
+
+  /**
+   * A growable array of positions.
+   */
+  private static final class Positions {
+
+    private int[] _positions = new int[4];
+
+    private int _size;
+
+    private void add(int position) {
+      if(_size == _positions.length) {
+        _positions = Arrays.copyOf(_positions, _size * 2);
+      }
+      _positions[_size++] = position;
+    }
+
+    private int[] toArray() {
+      return Arrays.copyOf(_positions, _size);
+    }
+  }
+}
@@ -0,0 +1,221 @@
+package org.aikodi.rejuse.data.tree.walker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.aikodi.rejuse.data.tree.TreeStructure;
+
+/**
+ * <p>A walker for breadth first tree traversal. All nodes at depth k are processed
+ * before the nodes at depth k + 1, and the nodes of a level are processed from left
+ * to right. For every node, the given walker enters, traverses and exits the node.
+ * The walker should only process the node of the tree that it traverses, like
+ * {@link Consume} does. A {@link LevelListener} is notified at the start and the end
+ * of every level.</p>
+ *
+ * <p>The nodes of the next level are collected while a level is processed. To bound
+ * the memory that is used, the number of nodes that is collected can be limited. If a
+ * level has more nodes than the limit, it is not stored. Its nodes are instead generated
+ * when it is processed, by a depth-limited traversal that starts from the last level that
+ * was stored. This trades memory for time: the levels in between are traversed again,
+ * and the children of their nodes are requested again.</p>
+ *
+ * @author Marko van Dooren
+ *
+ * @param <T> The type of the elements in the tree.
+ * @param <E> The type of exceptions that can be thrown by this walker.
+ */
+public class BreadthFirst<T, E extends Exception> implements TreeWalker<T, E> {
+
+  /**
+   * Create a new breadth first walker for the given walker without a level
+   * listener and without a limit on the size of the stored levels.
+   *
+   * @param walker The walker to be executed for every node.
+   *               The walker cannot be null.
+   */
+  public BreadthFirst(TreeWalker<T, ? extends E> walker) {
+    this(walker, new LevelListener<E>() {}, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create a new breadth first walker.
+   *
+   * @param walker The walker to be executed for every node.
+   *               The walker cannot be null.
+   * @param listener The listener that is notified at the start and the end of
+   *                 each level. The listener cannot be null.
+   * @param maxFrontier The maximal number of nodes of a level that is stored.
+   *                    The limit must be positive.
+   */
+  public BreadthFirst(TreeWalker<T, ? extends E> walker, LevelListener<? extends E> listener, int maxFrontier) {
+    if (walker == null) {
+      throw new IllegalArgumentException("The walker cannot be null.");
+    }
+    if (listener == null) {
+      throw new IllegalArgumentException("The level listener cannot be null.");
+    }
+    if (maxFrontier <= 0) {
+      throw new IllegalArgumentException("The maximal size of the frontier must be positive: " + maxFrontier);
+    }
+    _walker = walker;
+    _listener = listener;
+    _maxFrontier = maxFrontier;
+  }
+
+  /**
+   * The walker that is executed for every node.
+   * The walker is not null.
+   */
+  private final TreeWalker<T, ? extends E> _walker;
+
+  /**
+   * The listener that is notified at the start and the end of each level.
+   * The listener is not null.
+   */
+  private final LevelListener<? extends E> _listener;
+
+  private final int _maxFrontier;
+
+  /**
+   * @return The walker that is executed for every node.
+   *         The result is not null.
+   */
+  public TreeWalker<T, ? extends E> walker() {
+    return _walker;
+  }
+
+  /**
+   * @return The listener that is notified at the start and the end of each level.
+   *         The result is not null.
+   */
+  public LevelListener<? extends E> listener() {
+    return _listener;
+  }
+
+  /**
+   * @return The maximal number of nodes of a level that is stored.
+   */
+  public int maxFrontier() {
+    return _maxFrontier;
+  }
+
+  /**
+   * Apply the walker to all nodes of the given tree in level order.
+   */
+  @Override
+  public <X extends T, N extends Exception> void traverse(TreeStructure<X, N> tree) throws E, N {
+    if (tree == null) {
+      throw new IllegalArgumentException("The tree cannot be null.");
+    }
+    // The last level that was stored, and the distance from that
+    // level to the current level.
+    List<TreeStructure<? extends X, N>> anchors = Collections.singletonList(tree);
+    int distance = 0;
+    for(int depth = 0; ; depth++) {
+      _listener.startLevel(depth);
+      Result<X, N> result = process(anchors, distance);
+      _listener.endLevel(depth, result._size);
+      if(result._next == null) {
+        distance++;
+      } else if(result._next.isEmpty()) {
+        return;
+      } else {
+        anchors = result._next;
+        distance = 0;
+      }
+    }
+  }
+
+  /**
+   * Process all nodes at the given distance below the given anchors, and
+   * collect the nodes of the next level if there are not too many of them.
+   *
+   * @param anchors The nodes of the last level that was stored.
+   * @param distance The distance from the anchors to the level to be processed.
+   */
+  <X extends T, N extends Exception> Result<X, N> process(List<TreeStructure<? extends X, N>> anchors, int distance) throws E, N {
+    Result<X, N> result = new Result<>();
+    forEach(anchors, distance, node -> {
+      visit(node);
+      result._size++;
+      if(result._next != null) {
+        List<? extends TreeStructure<? extends X, N>> branches = node.branches();
+        if(result._next.size() + branches.size() > _maxFrontier) {
+          result._next = null;
+        } else {
+          result._next.addAll(branches);
+        }
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Let the walker enter, traverse and exit the given node.
+   */
+  <X extends T, N extends Exception> void visit(TreeStructure<? extends X, N> node) throws E, N {
+    _walker.enter(node);
+    _walker.traverse(node);
+    _walker.exit(node);
+  }
+
+  /**
+   * Apply the given action to the nodes at the given distance below the given
+   * anchors, from left to right.
+   */
+  static <X, N extends Exception, F extends Exception> void forEach(List<TreeStructure<? extends X, N>> anchors, int distance, Action<X, N, F> action) throws F, N {
+    if(distance == 0) {
+      for(TreeStructure<? extends X, N> anchor: anchors) {
+        action.apply(anchor);
+      }
+      return;
+    }
+    // stack.get(i) contains the branches at distance i + 1 below an anchor.
+    List<List<? extends TreeStructure<? extends X, N>>> stack = new ArrayList<>(distance);
+    int[] index = new int[distance];
+    for(TreeStructure<? extends X, N> anchor: anchors) {
+      stack.add(anchor.branches());
+      index[0] = 0;
+      while(! stack.isEmpty()) {
+        int top = stack.size() - 1;
+        List<? extends TreeStructure<? extends X, N>> branches = stack.get(top);
+        if(index[top] < branches.size()) {
+          TreeStructure<? extends X, N> branch = branches.get(index[top]++);
+          if(top == distance - 1) {
+            action.apply(branch);
+          } else {
+            stack.add(branch.branches());
+            index[top + 1] = 0;
+          }
+        } else {
+          stack.remove(top);
+        }
+      }
+    }
+  }
+
+  /**
+   * An action on a node of a tree.
+   */
+  interface Action<X, N extends Exception, F extends Exception> {
+    void apply(TreeStructure<? extends X, N> node) throws F, N;
+  }
+
+  /**
+   * The result of processing a level.
+   */
+  static class Result<X, N extends Exception> {
+
+    /**
+     * The number of nodes in the level.
+     */
+    int _size;
+
+    /**
+     * The nodes of the next level. Null if there were too many to be stored.
+     */
+    List<TreeStructure<? extends X, N>> _next = new ArrayList<>();
+  }
+}
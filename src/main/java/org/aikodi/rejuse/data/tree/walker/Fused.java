@@ -0,0 +1,164 @@
+package org.aikodi.rejuse.data.tree.walker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.aikodi.rejuse.data.tree.TreeStructure;
+
+/**
+ * <p>A walker that applies multiple walkers to a tree in a single traversal.
+ * Each node is visited once, and the children of a node are computed once.</p>
+ *
+ * <p>The top down walkers are applied to the tree as if each of them were wrapped in
+ * a {@link TopDown} walker: when a node is reached, each top down walker enters the
+ * node and traverses it. After the subtree of the node has been processed, the top down
+ * walkers exit the node in reverse order. The depth first walkers are applied as if
+ * each of them were wrapped in a {@link DepthFirst} walker: after the subtree of a node
+ * has been processed, each depth first walker enters, traverses and exits the node.</p>
+ *
+ * <p>For each walker, the calls are therefore the same as when the walkers traverse
+ * the tree one after the other, but the calls for different walkers are interleaved.
+ * The walkers must not depend on each other, and each walker should only process
+ * the node of the tree that it traverses, like {@link Consume} does. The tree is
+ * traversed with an explicit stack, so the depth of the tree is not limited by the
+ * size of the call stack.</p>
+ *
+ * @author Marko van Dooren
+ *
+ * @param <T> The type of the elements in the tree.
+ * @param <E> The type of exceptions that can be thrown by the walkers.
+ */
+public class Fused<T, E extends Exception> implements TreeWalker<T, E> {
+
+  /**
+   * Create a new fused walker that applies the given walkers top down.
+   *
+   * @param walkers The walkers that are applied top down.
+   *                The walkers cannot be null.
+   */
+  @SafeVarargs
+  public Fused(TreeWalker<T, ? extends E>... walkers) {
+    // The elements are copied so that the varargs array does not escape.
+    List<TreeWalker<T, ? extends E>> topDown = new ArrayList<>(walkers.length);
+    for(TreeWalker<T, ? extends E> walker: walkers) {
+      topDown.add(walker);
+    }
+    _topDown = copy(topDown);
+    _depthFirst = Collections.emptyList();
+  }
+
+  /**
+   * Create a new fused walker with the given top down and depth first walkers.
+   *
+   * @param topDown The walkers that are applied top down, in the given order.
+   *                The list and its elements cannot be null.
+   * @param depthFirst The walkers that are applied depth first, in the given order.
+   *                   The list and its elements cannot be null.
+   */
+  public Fused(List<? extends TreeWalker<T, ? extends E>> topDown, List<? extends TreeWalker<T, ? extends E>> depthFirst) {
+    _topDown = copy(topDown);
+    _depthFirst = copy(depthFirst);
+  }
+
+  private List<TreeWalker<T, ? extends E>> copy(List<? extends TreeWalker<T, ? extends E>> walkers) {
+    if(walkers == null) {
+      throw new IllegalArgumentException("The list of walkers cannot be null.");
+    }
+    List<TreeWalker<T, ? extends E>> result = new ArrayList<>(walkers);
+    if(result.contains(null)) {
+      throw new IllegalArgumentException("A walker cannot be null.");
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * The walkers that are applied top down.
+   */
+  private final List<TreeWalker<T, ? extends E>> _topDown;
+
+  /**
+   * The walkers that are applied depth first.
+   */
+  private final List<TreeWalker<T, ? extends E>> _depthFirst;
+
+  /**
+   * @return The walkers that are applied top down.
+   *         The result is not null.
+   */
+  public List<TreeWalker<T, ? extends E>> topDown() {
+    return _topDown;
+  }
+
+  /**
+   * @return The walkers that are applied depth first.
+   *         The result is not null.
+   */
+  public List<TreeWalker<T, ? extends E>> depthFirst() {
+    return _depthFirst;
+  }
+
+  /**
+   * Apply all walkers to the given tree in a single traversal.
+   */
+  @Override
+  public <X extends T, N extends Exception> void traverse(TreeStructure<X, N> tree) throws E, N {
+    if (tree == null) {
+      throw new IllegalArgumentException("The tree cannot be null.");
+    }
+    List<Frame<X, N>> stack = new ArrayList<>();
+    stack.add(arrive(tree));
+    while(! stack.isEmpty()) {
+      Frame<X, N> top = stack.get(stack.size() - 1);
+      if(top._index < top._branches.size()) {
+        stack.add(arrive(top._branches.get(top._index++)));
+      } else {
+        stack.remove(stack.size() - 1);
+        leave(top._tree);
+      }
+    }
+  }
+
+  /**
+   * Apply the top down walkers to the given tree and compute its branches.
+   */
+  private <X extends T, N extends Exception> Frame<X, N> arrive(TreeStructure<? extends X, N> tree) throws E, N {
+    for(TreeWalker<T, ? extends E> walker: _topDown) {
+      walker.enter(tree);
+      walker.traverse(tree);
+    }
+    return new Frame<>(tree, tree.branches());
+  }
+
+  /**
+   * Apply the depth first walkers to the given tree, and let the top
+   * down walkers exit it.
+   */
+  private <X extends T, N extends Exception> void leave(TreeStructure<? extends X, N> tree) throws E, N {
+    for(TreeWalker<T, ? extends E> walker: _depthFirst) {
+      walker.enter(tree);
+      walker.traverse(tree);
+      walker.exit(tree);
+    }
+    for(int i = _topDown.size() - 1; i >= 0; i--) {
+      _topDown.get(i).exit(tree);
+    }
+  }
+
+  /**
+   * A node of the tree whose subtree is being processed.
+   */
+  private static class Frame<X, N extends Exception> {
+
+    private Frame(TreeStructure<? extends X, N> tree, List<? extends TreeStructure<? extends X, N>> branches) {
+      _tree = tree;
+      _branches = branches;
+    }
+
+    private final TreeStructure<? extends X, N> _tree;
+
+    private final List<? extends TreeStructure<? extends X, N>> _branches;
+
+    private int _index;
+  }
+}
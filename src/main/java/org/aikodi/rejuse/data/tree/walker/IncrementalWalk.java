@@ -0,0 +1,222 @@
+package org.aikodi.rejuse.data.tree.walker;
+
+import static org.aikodi.contract.Contract.requireNotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.aikodi.rejuse.data.tree.ChangeTracker;
+import org.aikodi.rejuse.data.tree.TreeStructure;
+
+/**
+ * <p>Applies a {@link SubtreeLocalWalker} to a tree, and reuses the results of the
+ * subtrees that have not changed since the previous walk. The changes are recorded by
+ * a {@link ChangeTracker}. A walk only descends into dirty nodes and into nodes for
+ * which no result is known yet, so after a change to a single node, a walk processes
+ * the path from the root to that node, and looks up the results of the siblings of the
+ * nodes on that path.</p>
+ *
+ * <p>The walk uses an explicit stack, so the depth of the tree is not limited by the
+ * size of the call stack. After a walk, the nodes that it has processed are clean.
+ * The results of subtrees that are no longer in the tree are forgotten at the end of
+ * the walk that processes their former parent. A subtree that has moved to another
+ * parent is reached by the walk through its new parent, so its results are kept and
+ * reused.</p>
+ *
+ * @author Marko van Dooren
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <N> The type of exception that can be thrown when navigating the tree.
+ * @param <R> The type of the results of the walker.
+ * @param <E> The type of exceptions that can be thrown by the walker.
+ */
+public class IncrementalWalk<T, N extends Exception, R, E extends Exception> {
+
+  /**
+   * Create an incremental walk of the tree of the given tracker with the given walker.
+   *
+   * @param tracker The tracker that records the changes to the tree.
+   *                The tracker cannot be null.
+   * @param walker The walker that computes the results.
+   *               The walker cannot be null.
+   */
+  public IncrementalWalk(ChangeTracker<T, N> tracker, SubtreeLocalWalker<T, R, ? extends E> walker) {
+    requireNotNull(tracker);
+    requireNotNull(walker);
+    _tracker = tracker;
+    _walker = walker;
+  }
+
+  private final ChangeTracker<T, N> _tracker;
+
+  private final SubtreeLocalWalker<T, R, ? extends E> _walker;
+
+  /**
+   * The result and the children of every node that has been processed.
+   */
+  private final Map<T, Entry<R>> _results = new IdentityHashMap<>();
+
+  /**
+   * The number of nodes that were processed by the last walk.
+   */
+  private int _processed;
+
+  /**
+   * @return The tracker that records the changes to the tree.
+   */
+  public ChangeTracker<T, N> tracker() {
+    return _tracker;
+  }
+
+  /**
+   * @return The walker that computes the results.
+   */
+  public SubtreeLocalWalker<T, R, ? extends E> walker() {
+    return _walker;
+  }
+
+  /**
+   * @return The number of nodes for which the walker was invoked during the last walk.
+   */
+  public int processed() {
+    return _processed;
+  }
+
+  /**
+   * Return the result of the last walk for the subtree of the given node.
+   *
+   * @param node A node of the tree.
+   * @return The result for the subtree of the given node. Null if the node
+   *         has not been processed, or has been removed from the tree.
+   */
+  public R result(T node) {
+    Entry<R> entry = _results.get(node);
+    return entry == null ? null : entry._result;
+  }
+
+  /**
+   * Compute the result for the tree of the tracker. Only the dirty nodes and the
+   * nodes without a result are processed.
+   *
+   * @return The result for the subtree of the node of the tree structure of the tracker.
+   */
+  public R walk() throws E, N {
+    _processed = 0;
+    TreeStructure<T, N> tree = _tracker.tree();
+    T root = tree.node();
+    if(current(root)) {
+      return _results.get(root)._result;
+    }
+    // The nodes whose results are reused or computed by this walk,
+    // and the former children of processed nodes.
+    Set<Object> reached = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<Object> removed = new ArrayList<>();
+    List<Frame<T, R>> stack = new ArrayList<>();
+    stack.add(new Frame<>(root, tree.children()));
+    while(true) {
+      Frame<T, R> top = stack.get(stack.size() - 1);
+      if(top._results.size() < top._children.size()) {
+        T child = top._children.get(top._results.size());
+        if(current(child)) {
+          reached.add(child);
+          top._results.add(_results.get(child)._result);
+        } else {
+          stack.add(new Frame<>(child, tree.childrenOf(child)));
+        }
+      } else {
+        stack.remove(stack.size() - 1);
+        R result = _walker.analyze(top._node, Collections.unmodifiableList(top._results));
+        _processed++;
+        reached.add(top._node);
+        Entry<R> old = _results.put(top._node, new Entry<>(result, top._children.toArray()));
+        if(old != null) {
+          collectRemoved(old._children, top._children, removed);
+        }
+        _tracker.clean(top._node);
+        if(stack.isEmpty()) {
+          forget(removed, reached);
+          return result;
+        }
+        stack.get(stack.size() - 1)._results.add(result);
+      }
+    }
+  }
+
+  /**
+   * Check whether the result of the given node can be reused.
+   */
+  private boolean current(T node) {
+    return ! _tracker.isDirty(node) && _results.containsKey(node);
+  }
+
+  /**
+   * Add the old children that are not among the new children to the given list.
+   */
+  private void collectRemoved(Object[] oldChildren, List<? extends T> newChildren, List<Object> removed) {
+    Set<Object> remaining = Collections.newSetFromMap(new IdentityHashMap<>());
+    remaining.addAll(newChildren);
+    for(Object child: oldChildren) {
+      if(! remaining.contains(child)) {
+        removed.add(child);
+      }
+    }
+  }
+
+  /**
+   * Forget the results of the subtrees of the given nodes, except for the
+   * subtrees of nodes that have been reached by the current walk. Those are
+   * still in the tree.
+   */
+  private void forget(List<Object> removed, Set<Object> reached) {
+    while(! removed.isEmpty()) {
+      Object node = removed.remove(removed.size() - 1);
+      if(! reached.contains(node)) {
+        Entry<R> entry = _results.remove(node);
+        if(entry != null) {
+          Collections.addAll(removed, entry._children);
+        }
+      }
+    }
+  }
+
+  /**
+   * The result of a subtree, and the children of its node at the time
+   * the result was computed.
+   */
+  private static class Entry<R> {
+
+    private Entry(R result, Object[] children) {
+      _result = result;
+      _children = children;
+    }
+
+    private final R _result;
+
+    private final Object[] _children;
+  }
+
+  /**
+   * A node that is being processed.
+   */
+  private static class Frame<T, R> {
+
+    private Frame(T node, List<? extends T> children) {
+      _node = node;
+      _children = children;
+      _results = new ArrayList<>(children.size());
+    }
+
+    private final T _node;
+
+    private final List<? extends T> _children;
+
+    /**
+     * The results of the children that have been processed.
+     */
+    private final List<R> _results;
+  }
+}
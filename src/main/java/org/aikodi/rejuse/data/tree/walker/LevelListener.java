@@ -0,0 +1,31 @@
+package org.aikodi.rejuse.data.tree.walker;
+
+/**
+ * A listener that is notified when a level-order traversal starts and ends a level
+ * of the tree. All nodes of a level have been processed before the level ends, and
+ * no node of the next level is processed before the next level starts, so the
+ * notifications act as barriers between the levels.
+ *
+ * @author Marko van Dooren
+ *
+ * @param <E> The type of exceptions that can be thrown by this listener.
+ */
+public interface LevelListener<E extends Exception> {
+
+  /**
+   * This method is called before the first node at the given depth is processed.
+   *
+   * @param depth The depth of the level. The root of the traversal has depth 0.
+   */
+  default void startLevel(int depth) throws E {
+  }
+
+  /**
+   * This method is called after the last node at the given depth has been processed.
+   *
+   * @param depth The depth of the level. The root of the traversal has depth 0.
+   * @param size The number of nodes at the given depth.
+   */
+  default void endLevel(int depth, int size) throws E {
+  }
+}
@@ -0,0 +1,191 @@
+package org.aikodi.rejuse.data.tree.walker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aikodi.rejuse.data.tree.TreeStructure;
+import org.aikodi.rejuse.data.tree.TreeTraversalException;
+
+/**
+ * <p>A breadth first walker that processes the nodes of each level in parallel. The
+ * levels are still processed one after the other: the level listener is notified in the
+ * thread that started the traversal, after all nodes of the previous level have been
+ * processed and before any node of the next level is processed.</p>
+ *
+ * <p>A level is split into chunks of nodes that are processed by separate tasks in a
+ * {@link ForkJoinPool}. If a level was not stored because it was too large, the nodes
+ * of the last stored level are split instead, and each task generates the nodes below
+ * its part of that level.</p>
+ *
+ * <p>The walker, the tree structure and the level listener are used concurrently
+ * by multiple threads, so they must be thread-safe. If the walker or the tree structure
+ * throws an exception, the traversal throws that exception, and the next level is not
+ * processed. Other tasks of the current level may still be running at that time.</p>
+ *
+ * @author Marko van Dooren
+ *
+ * @param <T> The type of the elements in the tree.
+ * @param <E> The type of exceptions that can be thrown by this walker.
+ */
+public class LevelParallel<T, E extends Exception> extends BreadthFirst<T, E> {
+
+  /**
+   * The default number of nodes that is processed by a single task.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 256;
+
+  /**
+   * Create a new level parallel walker that uses the common pool, the default chunk
+   * size, no level listener, and no limit on the size of the stored levels.
+   *
+   * @param walker The walker to be executed for every node.
+   *               The walker cannot be null.
+   */
+  public LevelParallel(TreeWalker<T, ? extends E> walker) {
+    this(walker, new LevelListener<E>() {}, Integer.MAX_VALUE, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Create a new level parallel walker.
+   *
+   * @param walker The walker to be executed for every node.
+   *               The walker cannot be null.
+   * @param listener The listener that is notified at the start and the end of
+   *                 each level. The listener cannot be null.
+   * @param maxFrontier The maximal number of nodes of a level that is stored.
+   *                    The limit must be positive.
+   * @param pool The pool that executes the tasks. The pool cannot be null.
+   * @param chunkSize The number of nodes that is processed by a single task.
+   *                  The chunk size must be positive.
+   */
+  public LevelParallel(TreeWalker<T, ? extends E> walker, LevelListener<? extends E> listener, int maxFrontier, ForkJoinPool pool, int chunkSize) {
+    super(walker, listener, maxFrontier);
+    if (pool == null) {
+      throw new IllegalArgumentException("The pool cannot be null.");
+    }
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("The chunk size must be positive: " + chunkSize);
+    }
+    _pool = pool;
+    _chunkSize = chunkSize;
+  }
+
+  private final ForkJoinPool _pool;
+
+  private final int _chunkSize;
+
+  /**
+   * @return The pool that executes the tasks.
+   */
+  public ForkJoinPool pool() {
+    return _pool;
+  }
+
+  /**
+   * @return The number of nodes that is processed by a single task.
+   */
+  public int chunkSize() {
+    return _chunkSize;
+  }
+
+  @Override
+  <X extends T, N extends Exception> Result<X, N> process(List<TreeStructure<? extends X, N>> anchors, int distance) throws E, N {
+    // If the level is generated, every anchor can have many nodes
+    // below it, so every anchor gets its own task.
+    int chunk = distance == 0 ? _chunkSize : 1;
+    Level<X, N> task = new Level<>(anchors, distance, chunk, new AtomicInteger(), new AtomicBoolean());
+    Result<X, N> result;
+    try {
+      result = _pool.invoke(task);
+    } catch(TreeTraversalException exc) {
+      throw exc.<E>rethrowCause();
+    }
+    if(task._spilled.get()) {
+      result._next = null;
+    }
+    return result;
+  }
+
+  /**
+   * A task that processes the nodes below a range of anchors.
+   */
+  private class Level<X extends T, N extends Exception> extends RecursiveTask<Result<X, N>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private Level(List<TreeStructure<? extends X, N>> anchors, int distance, int chunk, AtomicInteger collected, AtomicBoolean spilled) {
+      _anchors = anchors;
+      _distance = distance;
+      _chunk = chunk;
+      _collected = collected;
+      _spilled = spilled;
+    }
+
+    private final List<TreeStructure<? extends X, N>> _anchors;
+
+    private final int _distance;
+
+    private final int _chunk;
+
+    /**
+     * The number of nodes of the next level that have been collected by
+     * all tasks of the level.
+     */
+    private final AtomicInteger _collected;
+
+    /**
+     * Set when the next level is too large to be stored. The tasks
+     * then stop collecting nodes.
+     */
+    private final AtomicBoolean _spilled;
+
+    @Override
+    protected Result<X, N> compute() {
+      int size = _anchors.size();
+      if(size > _chunk) {
+        int middle = size / 2;
+        Level<X, N> left = new Level<>(_anchors.subList(0, middle), _distance, _chunk, _collected, _spilled);
+        Level<X, N> right = new Level<>(_anchors.subList(middle, size), _distance, _chunk, _collected, _spilled);
+        right.fork();
+        Result<X, N> result = left.compute();
+        Result<X, N> other = right.join();
+        result._size += other._size;
+        if(result._next != null && other._next != null && ! _spilled.get()) {
+          result._next.addAll(other._next);
+        } else {
+          result._next = null;
+        }
+        return result;
+      }
+      try {
+        Result<X, N> result = new Result<>();
+        forEach(_anchors, _distance, node -> {
+          visit(node);
+          result._size++;
+          if(result._next != null) {
+            if(_spilled.get()) {
+              result._next = null;
+            } else {
+              List<? extends TreeStructure<? extends X, N>> branches = node.branches();
+              if(_collected.addAndGet(branches.size()) > maxFrontier()) {
+                _spilled.set(true);
+                result._next = null;
+              } else {
+                result._next.addAll(branches);
+              }
+            }
+          }
+        });
+        return result;
+      } catch(RuntimeException exc) {
+        throw exc;
+      } catch(Exception exc) {
+        throw new TreeTraversalException(exc);
+      }
+    }
+  }
+}
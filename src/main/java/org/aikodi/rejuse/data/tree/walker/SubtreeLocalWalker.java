@@ -0,0 +1,27 @@
+package org.aikodi.rejuse.data.tree.walker;
+
+import java.util.List;
+
+/**
+ * A walker that computes a result for every subtree, and whose result for a subtree
+ * depends only on the node of that subtree and the results for the subtrees of its
+ * children. Since the result of an unchanged subtree does not change, it can be reused
+ * by an {@link IncrementalWalk}.
+ *
+ * @author Marko van Dooren
+ *
+ * @param <T> The type of the nodes in the tree.
+ * @param <R> The type of the results.
+ * @param <E> The type of exceptions that can be thrown by this walker.
+ */
+public interface SubtreeLocalWalker<T, R, E extends Exception> {
+
+  /**
+   * Compute the result for the subtree of the given node.
+   *
+   * @param node The root of the subtree.
+   * @param children The results for the subtrees of the children of the node,
+   *                 in the order of the children. The list must not be modified.
+   */
+  public R analyze(T node, List<R> children) throws E;
+}
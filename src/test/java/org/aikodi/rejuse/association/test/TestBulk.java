@@ -0,0 +1,136 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aikodi.rejuse.association.AssociationListener;
+import org.aikodi.rejuse.association.LockException;
+import org.aikodi.rejuse.association.MultiAssociation;
+import org.aikodi.rejuse.association.OrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestBulk extends TestCase {
+
+  public TestBulk(String name) {
+    super(name);
+  }
+
+  public void testOrdered() {
+    OrderedMultiAssociation<String, String> parent = new OrderedMultiAssociation<>("parent");
+    SingleAssociation<String, String> c1 = new SingleAssociation<>("c1");
+    SingleAssociation<String, String> c2 = new SingleAssociation<>("c2");
+    SingleAssociation<String, String> c3 = new SingleAssociation<>("c3");
+    Recorder recorder = new Recorder();
+    parent.addListener(recorder);
+
+    parent.addAll(Arrays.asList(c1, c2, null, c1));
+    assertEquals(Arrays.asList("c1", "c2"), parent.getOtherEnds());
+    assertEquals("parent", c1.getOtherEnd());
+    assertEquals("parent", c2.getOtherEnd());
+    assertEquals(1, recorder._batches);
+    assertEquals(Arrays.asList("c1", "c2"), recorder._added);
+
+    parent.replaceAll(Arrays.asList(c3, c1));
+    assertEquals(Arrays.asList("c3", "c1"), parent.getOtherEnds());
+    assertNull(c2.getOtherEnd());
+    assertEquals("parent", c3.getOtherEnd());
+    assertEquals(Arrays.asList("c2"), recorder._removed);
+
+    c3.lock();
+    try {
+      parent.removeAll(Arrays.asList(c1, c3));
+      fail();
+    } catch(LockException exc) {
+    }
+    assertEquals(Arrays.asList("c3", "c1"), parent.getOtherEnds());
+    c3.unlock();
+
+    parent.removeAll(Arrays.asList(c1, c3));
+    assertEquals(0, parent.size());
+    assertNull(c1.getOtherEnd());
+    assertNull(c3.getOtherEnd());
+    assertEquals(Arrays.asList("c2", "c1", "c3"), recorder._removed);
+  }
+
+  public void testUnordered() {
+    MultiAssociation<String, String> a = new MultiAssociation<>("a");
+    MultiAssociation<String, String> b1 = new MultiAssociation<>("b1");
+    MultiAssociation<String, String> b2 = new MultiAssociation<>("b2");
+    Recorder recorder = new Recorder();
+    a.addListener(recorder);
+
+    a.addAll(Arrays.asList(b1, b2));
+    assertEquals(2, a.size());
+    assertTrue(b1.getOtherEnds().contains("a"));
+    assertTrue(b2.getOtherEnds().contains("a"));
+    assertEquals(1, recorder._batches);
+
+    a.replaceAll(Arrays.asList(b2));
+    assertEquals(1, a.size());
+    assertTrue(a.contains(b2));
+    assertEquals(0, b1.size());
+    assertEquals(Arrays.asList("b1"), recorder._removed);
+  }
+
+  public void testLockedPeer() {
+    OrderedMultiAssociation<String, String> parent = new OrderedMultiAssociation<>("parent");
+    OrderedMultiAssociation<String, String> other = new OrderedMultiAssociation<>("other");
+    SingleAssociation<String, String> c1 = new SingleAssociation<>("c1");
+    SingleAssociation<String, String> c3 = new SingleAssociation<>("c3");
+    c3.connectTo(other);
+    other.lock();
+    Recorder recorder = new Recorder();
+    parent.addListener(recorder);
+
+    // Adding c3 would disconnect it from the locked association end.
+    try {
+      parent.addAll(Arrays.asList(c1, c3));
+      fail();
+    } catch(LockException exc) {
+    }
+    assertEquals(0, parent.size());
+    assertNull(c1.getOtherEnd());
+    assertEquals("other", c3.getOtherEnd());
+    assertEquals(0, recorder._batches);
+
+    parent.add(c1);
+    try {
+      parent.replaceAll(Arrays.asList(c3));
+      fail();
+    } catch(LockException exc) {
+    }
+    assertEquals(Arrays.asList("c1"), parent.getOtherEnds());
+    assertEquals("parent", c1.getOtherEnd());
+    assertEquals("other", c3.getOtherEnd());
+
+    other.unlock();
+    parent.addAll(Arrays.asList(c1, c3));
+    assertEquals(Arrays.asList("c1", "c3"), parent.getOtherEnds());
+    assertEquals(0, other.size());
+  }
+
+  private static class Recorder extends AssociationListener<String> {
+
+    private List<String> _added = new ArrayList<>();
+    private List<String> _removed = new ArrayList<>();
+    private int _batches;
+
+    @Override
+    public void notifyElementAdded(String element) {
+      _added.add(element);
+    }
+
+    @Override
+    public void notifyElementRemoved(String element) {
+      _removed.add(element);
+    }
+
+    @Override
+    public void notifyElementsAdded(List<? extends String> elements) {
+      _batches++;
+      super.notifyElementsAdded(elements);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.aikodi.rejuse.association.ConcurrentMultiAssociation;
+import org.aikodi.rejuse.association.ConcurrentSingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestConcurrent extends TestCase {
+
+  private static final int THREADS = 8;
+
+  private static final int OPERATIONS = 20000;
+
+  public TestConcurrent(String name) {
+    super(name);
+  }
+
+  /**
+   * Many threads connect children to parents, some from the side of the parent and
+   * some from the side of the child. Afterwards, both sides of every binding must agree.
+   */
+  public void testOneToMany() throws Exception {
+    List<ConcurrentMultiAssociation<String, String>> parents = new ArrayList<>();
+    List<ConcurrentSingleAssociation<String, String>> children = new ArrayList<>();
+    for(int i = 0; i < 10; i++) {
+      parents.add(new ConcurrentMultiAssociation<>("p" + i));
+    }
+    for(int i = 0; i < 200; i++) {
+      children.add(new ConcurrentSingleAssociation<>("c" + i));
+    }
+    run(random -> {
+      ConcurrentMultiAssociation<String, String> parent = parents.get(random.nextInt(parents.size()));
+      ConcurrentSingleAssociation<String, String> child = children.get(random.nextInt(children.size()));
+      switch(random.nextInt(4)) {
+        case 0: parent.add(child); break;
+        case 1: parent.remove(child); break;
+        case 2: child.connectTo(parent); break;
+        default: child.connectTo(null);
+      }
+    });
+    int connected = 0;
+    for(ConcurrentSingleAssociation<String, String> child: children) {
+      if(child.getOtherRelation() != null) {
+        connected++;
+        assertTrue(child.getOtherRelation().contains(child));
+      }
+    }
+    int total = 0;
+    for(ConcurrentMultiAssociation<String, String> parent: parents) {
+      total += parent.size();
+      assertEquals(parent.size(), parent.getOtherEnds().size());
+      for(ConcurrentSingleAssociation<String, String> child: children) {
+        assertEquals(parent.contains(child), child.getOtherRelation() == parent);
+      }
+    }
+    assertEquals(connected, total);
+  }
+
+  /**
+   * Threads connect and disconnect many-to-many bindings from both sides
+   * at the same time. This would deadlock without a global lock order.
+   */
+  public void testManyToMany() throws Exception {
+    List<ConcurrentMultiAssociation<String, String>> left = new ArrayList<>();
+    List<ConcurrentMultiAssociation<String, String>> right = new ArrayList<>();
+    for(int i = 0; i < 5; i++) {
+      left.add(new ConcurrentMultiAssociation<>("l" + i));
+      right.add(new ConcurrentMultiAssociation<>("r" + i));
+    }
+    run(random -> {
+      ConcurrentMultiAssociation<String, String> l = left.get(random.nextInt(left.size()));
+      ConcurrentMultiAssociation<String, String> r = right.get(random.nextInt(right.size()));
+      switch(random.nextInt(4)) {
+        case 0: l.add(r); break;
+        case 1: r.add(l); break;
+        case 2: l.remove(r); break;
+        default: r.remove(l);
+      }
+    });
+    for(ConcurrentMultiAssociation<String, String> l: left) {
+      for(ConcurrentMultiAssociation<String, String> r: right) {
+        assertEquals(l.contains(r), r.contains(l));
+        assertEquals(l.contains(r), l.getOtherEnds().contains(r.getObject()));
+      }
+    }
+  }
+
+  private interface Operation {
+    void perform(Random random);
+  }
+
+  private void run(Operation operation) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    List<Throwable> failures = new ArrayList<>();
+    for(int t = 0; t < THREADS; t++) {
+      final long seed = t;
+      Thread thread = new Thread(() -> {
+        Random random = new Random(seed);
+        try {
+          start.await();
+          for(int i = 0; i < OPERATIONS; i++) {
+            operation.perform(random);
+          }
+        } catch(Throwable exc) {
+          synchronized(failures) {
+            failures.add(exc);
+          }
+        }
+      });
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+    start.countDown();
+    for(Thread thread: threads) {
+      thread.join(60000);
+      assertFalse("Deadlock detected", thread.isAlive());
+    }
+    if(! failures.isEmpty()) {
+      throw new AssertionError(failures.get(0));
+    }
+  }
+}
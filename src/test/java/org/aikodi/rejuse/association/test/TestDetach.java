@@ -0,0 +1,106 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aikodi.rejuse.association.Association;
+import org.aikodi.rejuse.association.AssociationListener;
+import org.aikodi.rejuse.association.LockException;
+import org.aikodi.rejuse.association.MultiAssociation;
+import org.aikodi.rejuse.association.OrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestDetach extends TestCase {
+
+  public TestDetach(String name) {
+    super(name);
+  }
+
+  /**
+   * A registry refers to all nodes. The children of one node are detached
+   * together with the links of that node.
+   */
+  public void testDetach() {
+    MultiAssociation<String, String> registry = new MultiAssociation<>("registry");
+    OrderedMultiAssociation<String, String> root = new OrderedMultiAssociation<>("root");
+    List<SingleAssociation<String, String>> parents = new ArrayList<>();
+    List<MultiAssociation<String, String>> registrations = new ArrayList<>();
+    for(int i = 0; i < 100; i++) {
+      SingleAssociation<String, String> parent = new SingleAssociation<>("n" + i);
+      parent.connectTo(root);
+      parents.add(parent);
+      MultiAssociation<String, String> registration = new MultiAssociation<>("n" + i);
+      registry.add(registration);
+      registrations.add(registration);
+    }
+    Counter rootCounter = new Counter();
+    root.addListener(rootCounter);
+    Counter registryCounter = new Counter();
+    registry.addListener(registryCounter);
+
+    List<Association<?,?>> detached = new ArrayList<>();
+    for(int i = 0; i < 100; i += 2) {
+      detached.add(parents.get(i));
+      detached.add(registrations.get(i));
+    }
+    detached.add(null);
+    detached.add(parents.get(0));
+    Association.detachAll(detached);
+
+    assertEquals(50, root.size());
+    assertEquals(50, registry.size());
+    for(int i = 0; i < 100; i++) {
+      boolean kept = i % 2 == 1;
+      assertEquals(kept ? "root" : null, parents.get(i).getOtherEnd());
+      assertEquals(kept, root.contains(parents.get(i)));
+      assertEquals(kept, registry.contains(registrations.get(i)));
+      assertEquals(kept ? 1 : 0, registrations.get(i).size());
+    }
+    assertEquals("n1", root.getOtherEnds().get(0));
+    assertEquals(1, rootCounter._events);
+    assertEquals(50, rootCounter._removed);
+    assertEquals(1, registryCounter._events);
+  }
+
+  public void testLocked() {
+    OrderedMultiAssociation<String, String> root = new OrderedMultiAssociation<>("root");
+    SingleAssociation<String, String> a = new SingleAssociation<>("a");
+    SingleAssociation<String, String> b = new SingleAssociation<>("b");
+    a.connectTo(root);
+    b.connectTo(root);
+    root.lock();
+    try {
+      Association.detachAll(Arrays.asList(a, b));
+      fail();
+    } catch(LockException exc) {
+    }
+    assertEquals(2, root.size());
+    assertEquals("root", a.getOtherEnd());
+  }
+
+  private static class Counter extends AssociationListener<Object> {
+
+    private int _events;
+
+    private int _removed;
+
+    @Override
+    public void notifyElementAdded(Object element) {
+      _events++;
+    }
+
+    @Override
+    public void notifyElementRemoved(Object element) {
+      _events++;
+      _removed++;
+    }
+
+    @Override
+    public void notifyElementsRemoved(List<? extends Object> elements) {
+      _events++;
+      _removed += elements.size();
+    }
+  }
+}
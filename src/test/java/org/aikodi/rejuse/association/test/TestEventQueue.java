@@ -0,0 +1,208 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.aikodi.rejuse.association.AssociationEventQueue;
+import org.aikodi.rejuse.association.AssociationListener;
+import org.aikodi.rejuse.association.OrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestEventQueue extends TestCase {
+
+  public TestEventQueue(String name) {
+    super(name);
+  }
+
+  public void testCoalescing() {
+    AssociationEventQueue queue = new AssociationEventQueue();
+    OrderedMultiAssociation<String, String> parent = new OrderedMultiAssociation<>("p");
+    Recorder recorder = new Recorder();
+    parent.addListener(recorder);
+    parent.setEventQueue(queue);
+    SingleAssociation<String, String> c1 = new SingleAssociation<>("c1");
+    SingleAssociation<String, String> c2 = new SingleAssociation<>("c2");
+    SingleAssociation<String, String> c3 = new SingleAssociation<>("c3");
+
+    parent.add(c1);
+    parent.add(c2);
+    parent.remove(c1);
+    parent.add(c3);
+    // The cache is flushed immediately, only the events are deferred.
+    assertEquals(Arrays.asList("c2", "c3"), parent.getOtherEnds());
+    assertTrue(recorder._events.isEmpty());
+    assertFalse(queue.isEmpty());
+
+    queue.flush();
+    assertTrue(queue.isEmpty());
+    assertEquals(Arrays.asList("added [c2, c3]"), recorder._events);
+
+    recorder._events.clear();
+    parent.remove(c2);
+    parent.add(c2);
+    parent.replace(c3, c1);
+    parent.replace(c1, c3);
+    queue.flush();
+    assertTrue(recorder._events.isEmpty());
+
+    SingleAssociation<String, String> c4 = new SingleAssociation<>("c4");
+    parent.replace(c3, c1);
+    parent.remove(c2);
+    parent.add(c4);
+    parent.remove(c1);
+    queue.flush();
+    assertEquals(Arrays.asList("removed [c3, c2]", "added c4"), recorder._events);
+
+    recorder._events.clear();
+    parent.setEventQueue(null);
+    parent.remove(c4);
+    assertEquals(Arrays.asList("removed c4"), recorder._events);
+  }
+
+  public void testQueueWithoutListeners() {
+    AssociationEventQueue queue = new AssociationEventQueue();
+    OrderedMultiAssociation<String, String> parent = new OrderedMultiAssociation<>("p");
+    parent.setEventQueue(queue);
+    assertSame(queue, parent.eventQueue());
+    parent.add(new SingleAssociation<String, String>("c1"));
+    assertTrue(queue.isEmpty());
+
+    Recorder recorder = new Recorder();
+    parent.addListener(recorder);
+    parent.removeListener(recorder);
+    assertSame(queue, parent.eventQueue());
+    parent.addListener(recorder);
+    parent.add(new SingleAssociation<String, String>("c2"));
+    assertFalse(queue.isEmpty());
+    queue.flush();
+    assertEquals(Arrays.asList("added c2"), recorder._events);
+
+    parent.setEventQueue(null);
+    assertNull(parent.eventQueue());
+    parent.freeze();
+    assertNull(parent.eventQueue());
+  }
+
+  public void testExecutor() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      AssociationEventQueue queue = new AssociationEventQueue(executor);
+      OrderedMultiAssociation<String, String> parent = new OrderedMultiAssociation<>("p");
+      Recorder recorder = new Recorder();
+      parent.addListener(recorder);
+      parent.setEventQueue(queue);
+      for(int i = 0; i < 100; i++) {
+        parent.add(new SingleAssociation<>("c" + i));
+      }
+      executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+      assertTrue(queue.isEmpty());
+      List<String> added = new ArrayList<>();
+      synchronized(recorder) {
+        for(String event: recorder._elements) {
+          added.add(event);
+        }
+      }
+      assertEquals(parent.getOtherEnds(), added);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testFailingListener() throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // The exception of the failing delivery task is expected.
+      AssociationEventQueue queue = new AssociationEventQueue(task -> executor.execute(() -> {
+        try {
+          task.run();
+        } catch(IllegalStateException exc) {
+        }
+      }));
+      OrderedMultiAssociation<String, String> failing = new OrderedMultiAssociation<>("f");
+      OrderedMultiAssociation<String, String> parent = new OrderedMultiAssociation<>("p");
+      Recorder recorder = new Recorder();
+      failing.addListener(new Failing());
+      parent.addListener(recorder);
+      failing.setEventQueue(queue);
+      parent.setEventQueue(queue);
+      // Both events are in the same batch. The event of the second
+      // association end is delivered even though the first one fails.
+      failing.add(new SingleAssociation<>("x"));
+      parent.add(new SingleAssociation<>("c1"));
+      executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+      assertTrue(queue.isEmpty());
+      synchronized(recorder) {
+        assertEquals(Arrays.asList("c1"), recorder._elements);
+      }
+
+      // The failed delivery task does not stop the delivery of later events.
+      parent.add(new SingleAssociation<>("c2"));
+      executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+      assertTrue(queue.isEmpty());
+      synchronized(recorder) {
+        assertEquals(Arrays.asList("c1", "c2"), recorder._elements);
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    AssociationEventQueue queue = new AssociationEventQueue();
+    OrderedMultiAssociation<String, String> failing = new OrderedMultiAssociation<>("f");
+    failing.addListener(new Failing());
+    failing.setEventQueue(queue);
+    failing.add(new SingleAssociation<>("x"));
+    try {
+      queue.flush();
+      fail();
+    } catch(IllegalStateException exc) {
+    }
+    assertTrue(queue.isEmpty());
+  }
+
+  private static class Failing extends AssociationListener<String> {
+
+    @Override
+    public void notifyElementAdded(String element) {
+      throw new IllegalStateException(element);
+    }
+
+    @Override
+    public void notifyElementRemoved(String element) {
+      throw new IllegalStateException(element);
+    }
+  }
+
+  private static class Recorder extends AssociationListener<String> {
+
+    private final List<String> _events = new ArrayList<>();
+
+    private final List<String> _elements = new ArrayList<>();
+
+    @Override
+    public synchronized void notifyElementAdded(String element) {
+      _events.add("added " + element);
+      _elements.add(element);
+    }
+
+    @Override
+    public synchronized void notifyElementRemoved(String element) {
+      _events.add("removed " + element);
+    }
+
+    @Override
+    public synchronized void notifyElementsAdded(List<? extends String> elements) {
+      _events.add("added " + elements);
+      _elements.addAll(elements);
+    }
+
+    @Override
+    public synchronized void notifyElementsRemoved(List<? extends String> elements) {
+      _events.add("removed " + elements);
+    }
+  }
+}
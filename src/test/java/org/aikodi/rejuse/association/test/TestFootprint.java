@@ -0,0 +1,131 @@
+package org.aikodi.rejuse.association.test;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.aikodi.rejuse.association.MultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+/**
+ * Measures the number of bytes that are allocated per {@link MultiAssociation}
+ * with a small number of elements. The compact storage is compared with the
+ * hash set that was allocated for every association end before.
+ *
+ * The measurement uses the allocation counter of the current thread, so it
+ * is not disturbed by the garbage collector. If the virtual machine does not
+ * support that counter, the test does nothing.
+ */
+public class TestFootprint extends TestCase {
+
+  private static final int COUNT = 10000;
+
+  public TestFootprint(String name) {
+    super(name);
+  }
+
+  public void testSmallAssociations() {
+    if(! supported()) {
+      return;
+    }
+    // Warm up so class loading and interpretation do not show up in the numbers.
+    measureCompact(3);
+    measureHashSet(3);
+    long empty = measureCompact(0);
+    for(int elements = 0; elements <= 3; elements++) {
+      long compact = measureCompact(elements) - empty;
+      long hashSet = measureHashSet(elements) - empty;
+      // A small inline array, at most twice the size of its elements.
+      assertTrue(compact <= 96);
+      // Even an empty hash set allocates more than the inline storage.
+      assertTrue(hashSet > 0);
+      assertTrue(2 * compact <= hashSet);
+    }
+  }
+
+  public void testPromotion() {
+    MultiAssociation<String, String> parent = new MultiAssociation<>("parent");
+    List<SingleAssociation<String, String>> children = new ArrayList<>();
+    for(int i = 0; i < 20; i++) {
+      children.add(new SingleAssociation<>("c" + i));
+      parent.add(children.get(i));
+      assertEquals(i + 1, parent.size());
+      assertEquals(i + 1, parent.getOtherEnds().size());
+    }
+    for(SingleAssociation<String, String> child: children) {
+      assertTrue(parent.contains(child));
+      assertEquals("parent", child.getOtherEnd());
+    }
+    for(int i = 0; i < children.size(); i += 2) {
+      parent.remove(children.get(i));
+    }
+    assertEquals(children.size() / 2, parent.size());
+    parent.clear();
+    assertEquals(0, parent.size());
+    assertTrue(parent.getOtherEnds().isEmpty());
+    parent.add(children.get(0));
+    assertTrue(parent.contains(children.get(0)));
+  }
+
+  /**
+   * @return the number of bytes allocated per association end when creating associations
+   *         with the given number of elements.
+   */
+  private long measureCompact(int elements) {
+    List<List<SingleAssociation<String, String>>> others = others(elements);
+    List<MultiAssociation<String, String>> result = new ArrayList<>(COUNT);
+    long before = allocatedBytes();
+    for(int i = 0; i < COUNT; i++) {
+      MultiAssociation<String, String> association = new MultiAssociation<>("parent");
+      for(int j = 0; j < elements; j++) {
+        association.add(others.get(i).get(j));
+      }
+      result.add(association);
+    }
+    return (allocatedBytes() - before) / COUNT;
+  }
+
+  /**
+   * @return the number of bytes allocated per association end with the hash set
+   *         based storage. The shallow size of an association end is measured with
+   *         an empty compact association end.
+   */
+  private long measureHashSet(int elements) {
+    List<List<SingleAssociation<String, String>>> others = others(elements);
+    Object[] result = new Object[COUNT * 2];
+    long before = allocatedBytes();
+    for(int i = 0; i < COUNT; i++) {
+      result[2 * i] = new MultiAssociation<String, String>("parent");
+      Set<Object> set = new HashSet<>();
+      for(int j = 0; j < elements; j++) {
+        set.add(others.get(i).get(j));
+      }
+      result[2 * i + 1] = set;
+    }
+    return (allocatedBytes() - before) / COUNT;
+  }
+
+  private List<List<SingleAssociation<String, String>>> others(int elements) {
+    List<List<SingleAssociation<String, String>>> result = new ArrayList<>(COUNT);
+    for(int i = 0; i < COUNT; i++) {
+      List<SingleAssociation<String, String>> children = new ArrayList<>(elements);
+      for(int j = 0; j < elements; j++) {
+        children.add(new SingleAssociation<>("child"));
+      }
+      result.add(children);
+    }
+    return result;
+  }
+
+  private boolean supported() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    return bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported();
+  }
+
+  private long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
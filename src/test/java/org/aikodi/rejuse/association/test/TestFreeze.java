@@ -0,0 +1,155 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.aikodi.rejuse.association.AbstractOrderedMultiAssociation;
+import org.aikodi.rejuse.association.AssociationListener;
+import org.aikodi.rejuse.association.GapBufferOrderedMultiAssociation;
+import org.aikodi.rejuse.association.IndexedOrderedMultiAssociation;
+import org.aikodi.rejuse.association.LockException;
+import org.aikodi.rejuse.association.MultiAssociation;
+import org.aikodi.rejuse.association.OrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestFreeze extends TestCase {
+
+  public TestFreeze(String name) {
+    super(name);
+  }
+
+  public void testMulti() {
+    for(int count: new int[]{0, 3, 8, 20}) {
+      MultiAssociation<String, String> registry = new MultiAssociation<>("registry");
+      registry.enableCache();
+      List<SingleAssociation<String, String>> children = new ArrayList<>();
+      Set<String> expected = new HashSet<>();
+      for(int i = 0; i < count; i++) {
+        SingleAssociation<String, String> child = new SingleAssociation<>("c" + i);
+        child.connectTo(registry);
+        children.add(child);
+        expected.add("c" + i);
+      }
+      registry.getOtherEnds();
+      registry.freeze();
+
+      assertTrue(registry.isFrozen());
+      assertTrue(registry.isLocked());
+      assertFalse(registry.isCaching());
+      assertEquals(count, registry.size());
+      assertEquals(expected, registry.getOtherEnds());
+      assertEquals(expected, new HashSet<>(registry.getOtherEnds()));
+      for(SingleAssociation<String, String> child: children) {
+        assertTrue(registry.contains(child));
+        assertTrue(registry.getOtherEnds().contains(child.getObject()));
+        assertFalse(child.isFrozen());
+        try {
+          child.clear();
+          fail();
+        } catch(LockException exc) {
+        }
+      }
+      try {
+        registry.getOtherEnds().add("x");
+        fail();
+      } catch(UnsupportedOperationException exc) {
+      }
+      try {
+        new SingleAssociation<String, String>("new").connectTo(registry);
+        fail();
+      } catch(LockException exc) {
+      }
+      assertEquals(count, registry.size());
+    }
+  }
+
+  public void testOrdered() {
+    List<AbstractOrderedMultiAssociation<String, String>> parents = Arrays.asList(
+        new OrderedMultiAssociation<String, String>("parent"),
+        new IndexedOrderedMultiAssociation<String, String>("parent"),
+        new GapBufferOrderedMultiAssociation<String, String>("parent"));
+    for(AbstractOrderedMultiAssociation<String, String> parent: parents) {
+      List<String> expected = new ArrayList<>();
+      for(int i = 0; i < 50; i++) {
+        SingleAssociation<String, String> child = new SingleAssociation<>("c" + i);
+        parent.addAtIndex(child, i / 2 + 1);
+        expected.add(i / 2, "c" + i);
+      }
+      parent.freeze();
+      assertEquals(expected, parent.getOtherEnds());
+      for(int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i), parent.elementAt(i));
+        assertEquals(i, parent.indexOf(expected.get(i)));
+      }
+      try {
+        parent.getOtherEnds().set(0, "x");
+        fail();
+      } catch(UnsupportedOperationException exc) {
+      }
+      try {
+        parent.clear();
+        fail();
+      } catch(LockException exc) {
+      }
+      assertEquals(expected, parent.getOtherEnds());
+    }
+    OrderedMultiAssociation<String, String> empty = new OrderedMultiAssociation<>("empty");
+    empty.freeze();
+    assertTrue(empty.getOtherEnds().isEmpty());
+  }
+
+  public void testSingle() {
+    SingleAssociation<String, String> child = new SingleAssociation<>("child");
+    MultiAssociation<String, String> parent = new MultiAssociation<>("parent");
+    child.connectTo(parent);
+    child.freeze();
+    assertEquals("parent", child.getOtherEnd());
+    assertEquals(Arrays.asList("parent"), child.getOtherEnds());
+    try {
+      parent.remove(child);
+      fail();
+    } catch(LockException exc) {
+    }
+    assertTrue(parent.contains(child));
+  }
+
+  public void testUnlockAndListeners() {
+    MultiAssociation<String, String> registry = new MultiAssociation<>("registry");
+    Counter counter = new Counter();
+    registry.addListener(counter);
+    registry.freeze();
+    registry.freeze();
+    registry.addListener(counter);
+    try {
+      registry.unlock();
+      fail();
+    } catch(IllegalStateException exc) {
+    }
+    assertTrue(registry.isLocked());
+    assertEquals(0, counter._events);
+  }
+
+  private static class Counter extends AssociationListener<String> {
+
+    private int _events;
+
+    @Override
+    public void notifyElementAdded(String element) {
+      _events++;
+    }
+
+    @Override
+    public void notifyElementRemoved(String element) {
+      _events++;
+    }
+
+    @Override
+    public void notifyElementReplaced(String oldElement, String newElement) {
+      _events++;
+    }
+  }
+}
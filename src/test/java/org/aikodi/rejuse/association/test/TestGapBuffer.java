@@ -0,0 +1,85 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.aikodi.rejuse.association.GapBufferOrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestGapBuffer extends TestCase {
+
+  public TestGapBuffer(String name) {
+    super(name);
+  }
+
+  public void testFront() {
+    GapBufferOrderedMultiAssociation<String, String> parent = new GapBufferOrderedMultiAssociation<>("p");
+    int size = 20000;
+    List<SingleAssociation<String, String>> children = new ArrayList<>();
+    for(int i = 0; i < size; i++) {
+      SingleAssociation<String, String> child = new SingleAssociation<>("c" + i);
+      children.add(child);
+      parent.addInFront(child);
+    }
+    assertEquals(size, parent.size());
+    for(int i = 0; i < size; i++) {
+      assertSame(children.get(size - 1 - i), parent.associationAt(i));
+      assertSame(parent, children.get(i).getOtherRelation());
+    }
+    parent.add(children.get(0));
+    assertSame(children.get(0), parent.associationAt(size - 1));
+  }
+
+  /**
+   * Perform random modifications on a gap buffer association and compare
+   * the result with the list of the expected elements.
+   */
+  public void testRandom() {
+    Random random = new Random(42);
+    GapBufferOrderedMultiAssociation<String, String> parent = new GapBufferOrderedMultiAssociation<>("p", 0);
+    parent.enableCache();
+    List<SingleAssociation<String, String>> expected = new ArrayList<>();
+    for(int i = 0; i < 5000; i++) {
+      int size = expected.size();
+      SingleAssociation<String, String> child = new SingleAssociation<>("c" + i);
+      switch(size == 0 ? 0 : random.nextInt(5)) {
+        case 0:
+          int index = random.nextInt(size + 1);
+          parent.addAtIndex(child, index + 1);
+          expected.add(index, child);
+          break;
+        case 1:
+          parent.addInFront(child);
+          expected.add(0, child);
+          break;
+        case 2:
+          SingleAssociation<String, String> removed = expected.remove(random.nextInt(size));
+          removed.connectTo(null);
+          break;
+        case 3:
+          int replaced = random.nextInt(size);
+          parent.replace(expected.get(replaced), child);
+          expected.set(replaced, child);
+          break;
+        default:
+          parent.add(child);
+          expected.add(child);
+      }
+      assertEquals(expected, parent.getOtherAssociations());
+      if(i % 100 == 0) {
+        List<String> objects = new ArrayList<>();
+        for(SingleAssociation<String, String> e: expected) {
+          objects.add(e.getObject());
+        }
+        assertEquals(objects, parent.getOtherEnds());
+      }
+    }
+    parent.clear();
+    assertEquals(0, parent.size());
+    for(SingleAssociation<String, String> child: expected) {
+      assertNull(child.getOtherRelation());
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.aikodi.rejuse.association.IndexedOrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestIndexedOrdered extends TestCase {
+
+  public TestIndexedOrdered(String name) {
+    super(name);
+  }
+
+  public void test() {
+    A a1 = new A("a1");
+    A a2 = new A("a2");
+    A a3 = new A("a3");
+    A a4 = new A("a4");
+    B b1 = new B("b1");
+    B b2 = new B("b2");
+
+    b1.addA(a1);
+    b1.addA(a3);
+    assertEquals(Arrays.asList(a1, a3), b1.link().getOtherEnds());
+    assertEquals(1, b1.link().indexOfAssociation(a3.link()));
+
+    b1.link().addInFront(a4.link());
+    assertEquals(Arrays.asList(a4, a1, a3), b1.link().getOtherEnds());
+    assertEquals(0, b1.link().indexOf(a4));
+    assertEquals(1, b1.link().indexOf(a1));
+    assertEquals(2, b1.link().indexOf(a3));
+    assertTrue(a4.getB() == b1);
+
+    b1.link().addAtIndex(a2.link(), 3);
+    assertEquals(Arrays.asList(a4, a1, a2, a3), b1.link().getOtherEnds());
+    assertEquals(2, b1.link().indexOfAssociation(a2.link()));
+    assertEquals(3, b1.link().indexOfAssociation(a3.link()));
+
+    b2.addA(a1);
+    assertTrue(a1.getB() == b2);
+    assertFalse(b1.link().contains(a1.link()));
+    assertEquals(-1, b1.link().indexOf(a1));
+    assertEquals(Arrays.asList(a4, a2, a3), b1.link().getOtherEnds());
+    assertEquals(1, b1.link().indexOf(a2));
+    assertEquals(2, b1.link().indexOf(a3));
+
+    b1.link().replace(a2.link(), a1.link());
+    assertEquals(Arrays.asList(a4, a1, a3), b1.link().getOtherEnds());
+    assertTrue(a1.getB() == b1);
+    assertTrue(a2.getB() == null);
+    assertEquals(0, b2.link().size());
+    assertEquals(1, b1.link().indexOf(a1));
+
+    b1.link().clear();
+    assertEquals(0, b1.link().size());
+    assertTrue(a4.getB() == null);
+    assertEquals(-1, b1.link().indexOf(a4));
+  }
+
+  public void testLarge() {
+    B b = new B("b");
+    int size = 20000;
+    A[] as = new A[size];
+    for(int i = 0; i < size; i++) {
+      as[i] = new A("a" + i);
+      b.link().addInFront(as[i].link());
+    }
+    for(int i = 0; i < size; i++) {
+      assertEquals(size - 1 - i, b.link().indexOf(as[i]));
+      assertTrue(b.link().contains(as[i].link()));
+    }
+    for(int i = 0; i < size; i += 2) {
+      b.link().remove(as[i].link());
+    }
+    assertEquals(size / 2, b.link().size());
+    for(int i = 1; i < size; i += 2) {
+      assertEquals((size - 1 - i) / 2, b.link().indexOfAssociation(as[i].link()));
+    }
+  }
+
+  /**
+   * Interleave insertions at random positions, removals and lookups, and compare
+   * the result with a plain list.
+   */
+  public void testRandomPositions() {
+    Random random = new Random(7);
+    B b = new B("b");
+    List<A> expected = new ArrayList<>();
+    for(int round = 0; round < 5000; round++) {
+      int size = expected.size();
+      if(size > 0 && random.nextInt(4) == 0) {
+        A removed = expected.remove(random.nextInt(size));
+        b.link().remove(removed.link());
+      } else {
+        A a = new A("a" + round);
+        int index = random.nextInt(size + 1);
+        if(index == 0) {
+          b.link().addInFront(a.link());
+        } else {
+          // addAtIndex uses base-1 indices.
+          b.link().addAtIndex(a.link(), index + 1);
+        }
+        expected.add(index, a);
+      }
+      A probe = expected.isEmpty() ? null : expected.get(random.nextInt(expected.size()));
+      if(probe != null) {
+        assertEquals(expected.indexOf(probe), b.link().indexOf(probe));
+        assertSame(probe, b.link().elementAt(expected.indexOf(probe)));
+      }
+    }
+    assertEquals(expected, b.link().getOtherEnds());
+    List<A> visited = new ArrayList<>();
+    b.link().forEachEnd((a, index) -> {
+      assertEquals(visited.size(), index);
+      visited.add(a);
+    });
+    assertEquals(expected, visited);
+  }
+
+private class A {
+  public A(String name) {
+    _a = new SingleAssociation<>(this);
+    _name = name;
+  }
+
+  public B getB() {
+    return _a.getOtherEnd();
+  }
+
+  SingleAssociation<A, B> link() {
+    return _a;
+  }
+
+  public String toString() {
+    return _name;
+  }
+
+  private SingleAssociation<A, B> _a;
+  private String _name;
+}
+
+private class B {
+  public B(String name) {
+    _b = new IndexedOrderedMultiAssociation<>(this);
+    _name = name;
+  }
+
+  public void addA(A other) {
+    _b.add(other.link());
+  }
+
+  IndexedOrderedMultiAssociation<B, A> link() {
+    return _b;
+  }
+
+  public String toString() {
+    return _name;
+  }
+
+  private IndexedOrderedMultiAssociation<B, A> _b;
+  private String _name;
+}
+}
@@ -0,0 +1,174 @@
+package org.aikodi.rejuse.association.test;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import org.aikodi.rejuse.association.Association;
+import org.aikodi.rejuse.association.MultiAssociation;
+import org.aikodi.rejuse.association.OrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests {@link Association#forEachEnd(ObjIntConsumer)} and {@link Association#endSpliterator()},
+ * and compares the allocation rate of {@link Association#forEachEnd(ObjIntConsumer)} with that
+ * of {@link Association#getOtherAssociations()}. The allocation rate is measured with the
+ * allocation counter of the current thread. If the virtual machine does not support that
+ * counter, the benchmark does nothing.
+ */
+public class TestIteration extends TestCase {
+
+  private static final int ITERATIONS = 100000;
+
+  public TestIteration(String name) {
+    super(name);
+  }
+
+  public void testOrdered() {
+    OrderedMultiAssociation<String, String> parent = new OrderedMultiAssociation<>("p");
+    connect(parent, 5);
+    List<String> ends = new ArrayList<>();
+    parent.forEachEnd((end, index) -> {
+      assertEquals(ends.size(), index);
+      ends.add(end);
+    });
+    assertEquals(parent.getOtherEnds(), ends);
+    Spliterator<String> spliterator = parent.endSpliterator();
+    assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED));
+    assertEquals(5, spliterator.estimateSize());
+    assertEquals(ends, StreamSupport.stream(spliterator, true).collect(Collectors.toList()));
+  }
+
+  public void testUnordered() {
+    for(int size: new int[]{0, 3, 20}) {
+      MultiAssociation<String, String> parent = new MultiAssociation<>("p");
+      connect(parent, size);
+      List<String> ends = new ArrayList<>();
+      parent.forEachEnd((end, index) -> ends.add(end));
+      assertEquals(size, ends.size());
+      assertTrue(parent.getOtherEnds().containsAll(ends));
+      assertEquals(size, StreamSupport.stream(parent.endSpliterator(), false).distinct().count());
+    }
+    SingleAssociation<String, String> child = new SingleAssociation<>("c");
+    List<String> ends = new ArrayList<>();
+    child.forEachEnd((end, index) -> ends.add(end));
+    assertTrue(ends.isEmpty());
+    assertEquals(0, child.endSpliterator().estimateSize());
+    child.connectTo(new MultiAssociation<>("p"));
+    child.forEachEnd((end, index) -> ends.add(end));
+    assertEquals(1, ends.size());
+    assertEquals(ends, StreamSupport.stream(child.endSpliterator(), false).collect(Collectors.toList()));
+  }
+
+  public void testFailFast() {
+    OrderedMultiAssociation<String, String> parent = new OrderedMultiAssociation<>("p");
+    connect(parent, 3);
+    try {
+      parent.forEachEnd((end, index) -> parent.add(new SingleAssociation<>("x")));
+      fail();
+    } catch(ConcurrentModificationException exc) {
+    }
+    Spliterator<String> spliterator = parent.endSpliterator();
+    parent.clear();
+    try {
+      spliterator.tryAdvance(end -> {});
+      fail();
+    } catch(ConcurrentModificationException exc) {
+    }
+    MultiAssociation<String, String> unordered = new MultiAssociation<>("p");
+    connect(unordered, 3);
+    try {
+      unordered.forEachEnd((end, index) -> unordered.add(new SingleAssociation<>("x")));
+      fail();
+    } catch(ConcurrentModificationException exc) {
+    }
+    // The association ends are no longer stored inline.
+    MultiAssociation<String, String> large = new MultiAssociation<>("p");
+    connect(large, 20);
+    spliterator = large.endSpliterator();
+    assertTrue(spliterator.hasCharacteristics(Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED));
+    assertEquals(20, spliterator.estimateSize());
+    assertTrue(spliterator.tryAdvance(end -> {}));
+    large.add(new SingleAssociation<>("x"));
+    try {
+      spliterator.tryAdvance(end -> {});
+      fail();
+    } catch(ConcurrentModificationException exc) {
+    }
+  }
+
+  public void testAllocationRate() {
+    if(! supported()) {
+      return;
+    }
+    MultiAssociation<String, String> unordered = new MultiAssociation<>("p");
+    connect(unordered, 5);
+    OrderedMultiAssociation<String, String> ordered = new OrderedMultiAssociation<>("p");
+    connect(ordered, 5);
+    Counter counter = new Counter();
+    for(Association<String, String> association: Arrays.<Association<String, String>>asList(unordered, ordered)) {
+      // Warm up so class loading and compilation do not show up in the numbers.
+      measureForEach(association, counter);
+      measureCopy(association, counter);
+      long forEach = measureForEach(association, counter);
+      long copy = measureCopy(association, counter);
+      assertTrue(forEach < 1000);
+      assertTrue(forEach * 10 < copy);
+    }
+  }
+
+  private long measureForEach(Association<String, String> association, Counter counter) {
+    long before = allocatedBytes();
+    for(int i = 0; i < ITERATIONS; i++) {
+      association.forEachEnd(counter);
+    }
+    return (allocatedBytes() - before) * 1000 / ITERATIONS;
+  }
+
+  private long measureCopy(Association<String, String> association, Counter counter) {
+    long before = allocatedBytes();
+    for(int i = 0; i < ITERATIONS; i++) {
+      List<Association<? extends String, ? super String>> others = association.getOtherAssociations();
+      for(int j = 0; j < others.size(); j++) {
+        counter.accept(others.get(j).getObject(), j);
+      }
+    }
+    return (allocatedBytes() - before) * 1000 / ITERATIONS;
+  }
+
+  private static class Counter implements ObjIntConsumer<String> {
+
+    private long _count;
+
+    @Override
+    public void accept(String end, int index) {
+      _count += index;
+    }
+  }
+
+  private void connect(Association<String, String> parent, int size) {
+    List<SingleAssociation<String, String>> children = new ArrayList<>();
+    for(int i = 0; i < size; i++) {
+      children.add(new SingleAssociation<>("c" + i));
+    }
+    for(SingleAssociation<String, String> child: children) {
+      child.connectTo(parent);
+    }
+  }
+
+  private boolean supported() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    return bean instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported();
+  }
+
+  private long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
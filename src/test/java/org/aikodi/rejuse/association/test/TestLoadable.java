@@ -0,0 +1,147 @@
+package org.aikodi.rejuse.association.test;
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aikodi.rejuse.association.Association;
+import org.aikodi.rejuse.association.LoadableBidiList;
+import org.aikodi.rejuse.association.LoadableBidiList.Loader;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestLoadable extends TestCase {
+
+  public TestLoadable(String name) {
+    super(name);
+  }
+
+  public void testLoading() {
+    LoadableBidiList<String, String> parent = new LoadableBidiList<>("parent");
+    ChildLoader c1 = new ChildLoader("c1");
+    ChildLoader c2 = new ChildLoader("c2");
+    parent.add(c1);
+    parent.add(c2);
+    assertEquals(2, parent.size());
+    assertEquals(0, parent.loadedCount());
+    assertEquals(0, c1._loads);
+
+    Association<? extends String, ? super String> first = parent.associationAt(0);
+    assertEquals("c1", first.getObject());
+    assertEquals(1, c1._loads);
+    assertEquals(0, c2._loads);
+    assertEquals(1, parent.loadedCount());
+    assertTrue(first.contains(parent));
+    assertTrue(parent.contains(first));
+
+    assertEquals(Arrays.asList("c1", "c2"), parent.getOtherEnds());
+    assertEquals(2, parent.loadCount());
+  }
+
+  public void testEvictionAndReload() {
+    LoadableBidiList<String, String> parent = new LoadableBidiList<>("parent");
+    ChildLoader c1 = new ChildLoader("c1");
+    parent.add(c1);
+    assertEquals("c1", parent.elementAt(0));
+    first(parent).evict();
+    assertEquals(1, parent.evictionCount());
+    assertEquals(0, parent.loadedCount());
+
+    SingleAssociation<String, String> reloaded = (SingleAssociation<String, String>) parent.associationAt(0);
+    assertEquals(2, c1._loads);
+    assertEquals(2, parent.loadCount());
+    assertEquals("parent", reloaded.getOtherEnd());
+
+    parent.remove(reloaded);
+    assertEquals(0, parent.size());
+    assertNull(reloaded.getOtherEnd());
+  }
+
+  public void testRemoveDoesNotLoad() {
+    LoadableBidiList<String, String> parent = new LoadableBidiList<>("parent");
+    for(int i = 0; i < 100; i++) {
+      parent.add(new ChildLoader("c" + i));
+    }
+    Association<? extends String, ? super String> loaded = parent.associationAt(50);
+    assertEquals(1, parent.loadCount());
+    parent.remove(loaded);
+    assertEquals(99, parent.size());
+    assertEquals(1, parent.loadCount());
+    assertFalse(loaded.contains(parent));
+  }
+
+  public void testStrongElements() {
+    LoadableBidiList<String, String> parent = new LoadableBidiList<>("parent");
+    SingleAssociation<String, String> child = new SingleAssociation<>("child");
+    parent.add(new ChildLoader("lazy"));
+    parent.add(child);
+    assertEquals("parent", child.getOtherEnd());
+    assertEquals(1, parent.indexOfAssociation(child));
+    parent.clear();
+    assertEquals(0, parent.size());
+    assertNull(child.getOtherEnd());
+  }
+
+  /**
+   * Clear the references to the loaded association ends as the garbage collector
+   * does when memory runs low. The evictions are observed, and the association
+   * ends are loaded again on access.
+   */
+  public void testCollectedReferences() {
+    LoadableBidiList<String, String> parent = new LoadableBidiList<>("parent");
+    int count = 100;
+    List<ChildLoader> loaders = new ArrayList<>();
+    for(int i = 0; i < count; i++) {
+      ChildLoader loader = new ChildLoader("c" + i);
+      loaders.add(loader);
+      parent.add(loader);
+    }
+    parent.getOtherEnds();
+    parent.flushCache();
+    assertEquals(count, parent.loadedCount());
+    for(ChildLoader loader: loaders) {
+      assertTrue(loader._reference instanceof SoftReference);
+      loader._reference.clear();
+    }
+    assertEquals(0, parent.loadedCount());
+    assertEquals(count, parent.evictionCount());
+    assertEquals("c7", parent.elementAt(7));
+    assertEquals(count + 1, parent.loadCount());
+    assertEquals(2, loaders.get(7)._loads);
+    assertEquals(1, parent.loadedCount());
+  }
+
+  private Loader<Association<? extends String, ? super String>> first(LoadableBidiList<String, String> list) {
+    return list.loaderAt(0);
+  }
+
+  private static class ChildLoader extends Loader<Association<? extends String, ? super String>> {
+
+    private ChildLoader(String name) {
+      _name = name;
+    }
+
+    private String _name;
+
+    private int _loads;
+
+    /**
+     * The reference to the last loaded association end.
+     */
+    private Reference<Association<? extends String, ? super String>> _reference;
+
+    @Override
+    protected Association<? extends String, ? super String> load() {
+      _loads++;
+      return new SingleAssociation<String, String>(_name);
+    }
+
+    @Override
+    protected Reference<Association<? extends String, ? super String>> reference(Association<? extends String, ? super String> object) {
+      _reference = super.reference(object);
+      return _reference;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package org.aikodi.rejuse.association.test;
+import java.util.Map;
+
+import org.aikodi.rejuse.association.AssociationListener;
+import org.aikodi.rejuse.association.AssociationMetrics;
+import org.aikodi.rejuse.association.MultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestMetrics extends TestCase {
+
+  public TestMetrics(String name) {
+    super(name);
+  }
+
+  @Override
+  protected void tearDown() {
+    AssociationMetrics.disable();
+    AssociationMetrics.reset();
+  }
+
+  public void testCounters() {
+    AssociationMetrics.reset();
+    AssociationMetrics.enable();
+    assertTrue(AssociationMetrics.isEnabled());
+
+    MultiAssociation<String, String> registry = new MultiAssociation<>("registry");
+    registry.enableCache();
+    SingleAssociation<String, String> first = new SingleAssociation<>("first");
+    SingleAssociation<String, String> second = new SingleAssociation<>("second");
+    Map<Class<?>, Long> instances = AssociationMetrics.instanceCounts();
+    assertEquals(Long.valueOf(1), instances.get(MultiAssociation.class));
+    assertEquals(Long.valueOf(2), instances.get(SingleAssociation.class));
+    assertEquals(3, AssociationMetrics.instanceCount());
+    assertEquals(Long.valueOf(2), AssociationMetrics.liveCounts().get(SingleAssociation.class));
+
+    registry.getOtherEnds();
+    registry.getOtherEnds();
+    registry.getOtherEnds();
+    assertEquals(1, AssociationMetrics.cacheMisses());
+    assertEquals(2, AssociationMetrics.cacheHits());
+    assertEquals(2.0 / 3, AssociationMetrics.cacheHitRate(), 1e-9);
+
+    registry.addListener(new Ignore());
+    registry.addListener(new Ignore());
+    long flushes = AssociationMetrics.cacheFlushes();
+    first.connectTo(registry);
+    second.connectTo(registry);
+    assertEquals(4, AssociationMetrics.listenerDispatches());
+    assertTrue(AssociationMetrics.cacheFlushes() >= flushes + 2);
+    assertEquals(2, registry.getOtherEnds().size());
+    assertEquals(2, AssociationMetrics.cacheMisses());
+
+    Map<String, Long> values = AssociationMetrics.values();
+    assertEquals(Long.valueOf(2), values.get("association.cache.hits"));
+    assertEquals(Long.valueOf(2), values.get("association.cache.misses"));
+    assertEquals(Long.valueOf(4), values.get("association.listener.dispatches"));
+    assertEquals(Long.valueOf(2), values.get("association.instances." + SingleAssociation.class.getName()));
+    assertEquals(Long.valueOf(1), values.get("association.live." + MultiAssociation.class.getName()));
+
+    AssociationMetrics.reset();
+    assertEquals(0, AssociationMetrics.cacheHits());
+    assertEquals(0, AssociationMetrics.listenerDispatches());
+    assertEquals(0, AssociationMetrics.instanceCount());
+    assertEquals(0.0, AssociationMetrics.cacheHitRate());
+  }
+
+  public void testLiveCounts() throws InterruptedException {
+    AssociationMetrics.reset();
+    AssociationMetrics.enable();
+    MultiAssociation<String, String> registry = new MultiAssociation<>("registry");
+    for(int i = 0; i < 100; i++) {
+      new SingleAssociation<String, String>("child" + i).connectTo(registry);
+    }
+    assertEquals(101, AssociationMetrics.liveCount());
+    registry = null;
+    // The cleaner runs after a garbage collection, so poll until the ends are gone.
+    for(int i = 0; i < 100 && AssociationMetrics.liveCount() > 0; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    assertEquals(0, AssociationMetrics.liveCount());
+    assertEquals(101, AssociationMetrics.instanceCount());
+  }
+
+  public void testDisabled() {
+    AssociationMetrics.reset();
+    assertFalse(AssociationMetrics.isEnabled());
+    MultiAssociation<String, String> registry = new MultiAssociation<>("registry");
+    registry.enableCache();
+    registry.addListener(new Ignore());
+    new SingleAssociation<String, String>("first").connectTo(registry);
+    registry.getOtherEnds();
+    registry.getOtherEnds();
+    assertEquals(0, AssociationMetrics.cacheHits());
+    assertEquals(0, AssociationMetrics.cacheMisses());
+    assertEquals(0, AssociationMetrics.cacheFlushes());
+    assertEquals(0, AssociationMetrics.listenerDispatches());
+    assertTrue(AssociationMetrics.instanceCounts().isEmpty());
+  }
+
+  private static class Ignore extends AssociationListener<String> {
+
+    @Override
+    public void notifyElementAdded(String element) {
+    }
+
+    @Override
+    public void notifyElementRemoved(String element) {
+    }
+
+    @Override
+    public void notifyElementReplaced(String oldElement, String newElement) {
+    }
+  }
+}
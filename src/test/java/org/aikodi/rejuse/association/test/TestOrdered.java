@@ -1,4 +1,5 @@
 package org.aikodi.rejuse.association.test;
+import java.util.Arrays;
 import java.util.List;
 
 import org.aikodi.rejuse.association.OrderedMultiAssociation;
@@ -49,6 +50,45 @@ public class TestOrdered extends TestCase {
 
   }
 
+  /**
+   * With caching enabled, the list of other ends is updated incrementally.
+   * Lists that were returned earlier must not change.
+   */
+  public void testCache() {
+    A a1 = new A("a1");
+    A a2 = new A("a2");
+    A a3 = new A("a3");
+    A a4 = new A("a4");
+    B b1 = new B("b1");
+    OrderedMultiAssociation<B, A> link = b1.getALink();
+    link.enableCache();
+
+    List<A> empty = b1.getA();
+    b1.addA(a1);
+    b1.addA(a2);
+    List<A> two = b1.getA();
+    assertSame(two, b1.getA());
+    link.addInFront(a3.getBLink());
+    link.addAtIndex(a4.getBLink(), 2);
+    List<A> four = b1.getA();
+    a1.setB(null);
+    A a5 = new A("a5");
+    link.replace(a2.getBLink(), a5.getBLink());
+    List<A> last = b1.getA();
+
+    assertTrue(empty.isEmpty());
+    assertEquals(Arrays.asList(a1, a2), two);
+    assertEquals(Arrays.asList(a3, a4, a1, a2), four);
+    assertEquals(Arrays.asList(a3, a4, a5), last);
+    link.flushCache();
+    assertEquals(last, b1.getA());
+    try {
+      last.add(a1);
+      fail();
+    } catch(UnsupportedOperationException exc) {
+    }
+  }
+
 private class A {
   public A(String name) {
     _a = new SingleAssociation<>(this);
@@ -0,0 +1,148 @@
+package org.aikodi.rejuse.association.test;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aikodi.rejuse.association.Association;
+import org.aikodi.rejuse.association.AssociationSnapshot;
+import org.aikodi.rejuse.association.MultiAssociation;
+import org.aikodi.rejuse.association.OrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestSnapshot extends TestCase {
+
+  public TestSnapshot(String name) {
+    super(name);
+  }
+
+  /**
+   * The model consists of nodes with a parent, ordered children, and
+   * an unordered set of references to other nodes.
+   */
+  private static class Node {
+
+    private Node(String name) {
+      _name = name;
+      _parent = new SingleAssociation<>(this);
+      _children = new OrderedMultiAssociation<>(this);
+      _references = new MultiAssociation<>(this);
+    }
+
+    private final String _name;
+
+    private final SingleAssociation<Node, Node> _parent;
+
+    private final OrderedMultiAssociation<Node, Node> _children;
+
+    private final MultiAssociation<Node, Node> _references;
+
+    @Override
+    public String toString() {
+      return _name;
+    }
+  }
+
+  private List<Node> nodes(int count) {
+    List<Node> result = new ArrayList<>();
+    for(int i = 0; i < count; i++) {
+      result.add(new Node("n" + i));
+    }
+    return result;
+  }
+
+  private List<Association<?,?>> ends(List<Node> nodes) {
+    List<Association<?,?>> result = new ArrayList<>();
+    for(Node node: nodes) {
+      result.add(node._parent);
+      result.add(node._children);
+      result.add(node._references);
+    }
+    return result;
+  }
+
+  public void testRoundTrip() throws IOException {
+    List<Node> original = nodes(200);
+    for(int i = 1; i < original.size(); i++) {
+      Node parent = original.get((i - 1) / 3);
+      if(i % 2 == 0) {
+        parent._children.addInFront(original.get(i)._parent);
+      } else {
+        parent._children.add(original.get(i)._parent);
+      }
+      original.get(i)._references.add(original.get(i / 2)._references);
+    }
+    Path file = Files.createTempFile("associations", ".snapshot");
+    try {
+      AssociationSnapshot.write(file, ends(original));
+      List<Node> restored = nodes(original.size());
+      AssociationSnapshot.restore(file, ends(restored));
+      for(int i = 0; i < original.size(); i++) {
+        Node before = original.get(i);
+        Node after = restored.get(i);
+        assertEquals(String.valueOf(before._parent.getOtherEnd()), String.valueOf(after._parent.getOtherEnd()));
+        assertEquals(before._children.getOtherEnds().toString(), after._children.getOtherEnds().toString());
+        assertEquals(before._references.size(), after._references.size());
+        for(Node reference: before._references.getOtherEnds()) {
+          assertTrue(after._references.getOtherEnds().contains(restored.get(original.indexOf(reference))));
+        }
+      }
+      // The restored association ends can be modified as usual.
+      Node child = restored.get(1);
+      child._parent.connectTo(null);
+      assertFalse(restored.get(0)._children.getOtherEnds().contains(child));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  public void testInvalid() throws IOException {
+    List<Node> original = nodes(3);
+    original.get(0)._children.add(original.get(1)._parent);
+    Path file = Files.createTempFile("associations", ".snapshot");
+    try {
+      AssociationSnapshot.write(file, ends(original));
+      try {
+        AssociationSnapshot.restore(file, ends(nodes(2)));
+        fail();
+      } catch(IOException exc) {
+      }
+      byte[] bytes = Files.readAllBytes(file);
+      List<Node> restored = nodes(3);
+      try {
+        AssociationSnapshot.restore(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 4)), ends(restored));
+        fail();
+      } catch(IOException exc) {
+      }
+      assertEquals(0, restored.get(0)._children.size());
+
+      // The connection of the parent end of n1 (end 3) is at byte 32: after the header,
+      // the empty end 0, end 1 with its connection, and the empty end 2. Let it point
+      // to the children end of n1 instead of the children end of n0.
+      byte[] asymmetric = bytes.clone();
+      ByteBuffer.wrap(asymmetric).putInt(32, 4);
+      try {
+        AssociationSnapshot.restore(ByteBuffer.wrap(asymmetric), ends(restored));
+        fail();
+      } catch(IOException exc) {
+      }
+      assertEquals(0, restored.get(0)._children.size());
+      assertNull(restored.get(1)._parent.getOtherEnd());
+
+      // An invalid list of association ends does not destroy an existing snapshot.
+      try {
+        AssociationSnapshot.write(file, ends(original).subList(0, 3));
+        fail();
+      } catch(IllegalArgumentException exc) {
+      }
+      assertTrue(Arrays.equals(bytes, Files.readAllBytes(file)));
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aikodi.rejuse.association.AssociationListener;
+import org.aikodi.rejuse.association.AssociationTransaction;
+import org.aikodi.rejuse.association.MultiAssociation;
+import org.aikodi.rejuse.association.OrderedMultiAssociation;
+import org.aikodi.rejuse.association.SingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestTransaction extends TestCase {
+
+  public TestTransaction(String name) {
+    super(name);
+  }
+
+  private OrderedMultiAssociation<String, String> _p1;
+  private MultiAssociation<String, String> _p2;
+  private List<SingleAssociation<String, String>> _children;
+  private List<String> _events;
+
+  @Override
+  protected void setUp() {
+    _p1 = new OrderedMultiAssociation<>("p1");
+    _p2 = new MultiAssociation<>("p2");
+    _children = new ArrayList<>();
+    for(int i = 0; i < 4; i++) {
+      _children.add(new SingleAssociation<>("c" + i));
+    }
+    _p1.add(child(0));
+    _p1.add(child(1));
+    _p1.add(child(2));
+    _p2.add(child(3));
+    _events = new ArrayList<>();
+    _p1.addListener(new Recorder("p1", _events));
+    _p2.addListener(new Recorder("p2", _events));
+  }
+
+  private SingleAssociation<String, String> child(int index) {
+    return _children.get(index);
+  }
+
+  public void testRollback() {
+    try(AssociationTransaction transaction = AssociationTransaction.begin()) {
+      assertSame(transaction, AssociationTransaction.current());
+      child(0).connectTo(_p2);
+      _p1.addInFront(child(3));
+      _p1.remove(child(2));
+      _p2.add(child(2));
+      _p1.addAtIndex(child(2), 2);
+      assertEquals(Arrays.asList("c3", "c2", "c1"), _p1.getOtherEnds());
+      assertTrue(_events.isEmpty());
+      transaction.rollback();
+      assertFalse(transaction.isActive());
+    }
+    assertNull(AssociationTransaction.current());
+    assertEquals(Arrays.asList("c0", "c1", "c2"), _p1.getOtherEnds());
+    assertEquals(Arrays.asList(child(0), child(1), child(2)), _p1.getOtherAssociations());
+    assertEquals(1, _p2.size());
+    assertTrue(_p2.contains(child(3)));
+    for(int i = 0; i < 3; i++) {
+      assertEquals("p1", child(i).getOtherEnd());
+    }
+    assertEquals("p2", child(3).getOtherEnd());
+    assertTrue(_events.isEmpty());
+
+    // The association ends still work normally after the rollback.
+    _p1.remove(child(0));
+    assertEquals(Arrays.asList("p1 removed c0"), _events);
+  }
+
+  public void testRollbackOnException() {
+    try(AssociationTransaction transaction = AssociationTransaction.begin()) {
+      _p2.add(child(0));
+      _p2.add(child(1));
+      throw new IllegalStateException();
+    } catch(IllegalStateException exc) {
+    }
+    assertEquals(Arrays.asList("c0", "c1", "c2"), _p1.getOtherEnds());
+    assertEquals(1, _p2.size());
+  }
+
+  public void testCommit() {
+    try(AssociationTransaction transaction = AssociationTransaction.begin()) {
+      _p2.add(child(0));
+      _p1.add(child(0));
+      _p2.add(child(1));
+      _p2.add(child(2));
+      _p1.add(child(2));
+      assertTrue(_events.isEmpty());
+      assertEquals(5, transaction.enlistedCount());
+      transaction.commit();
+    }
+    assertEquals(Arrays.asList("c0", "c2"), _p1.getOtherEnds());
+    assertEquals(2, _p2.size());
+    assertEquals(Arrays.asList("p1 removed c1", "p2 added c1"), _events);
+  }
+
+  public void testNesting() {
+    try(AssociationTransaction transaction = AssociationTransaction.begin()) {
+      try {
+        AssociationTransaction.begin();
+        fail();
+      } catch(IllegalStateException exc) {
+      }
+      transaction.commit();
+      try {
+        transaction.commit();
+        fail();
+      } catch(IllegalStateException exc) {
+      }
+    }
+  }
+
+  private static class Recorder extends AssociationListener<String> {
+
+    private Recorder(String name, List<String> events) {
+      _name = name;
+      _events = events;
+    }
+
+    private final String _name;
+
+    private final List<String> _events;
+
+    @Override
+    public void notifyElementAdded(String element) {
+      _events.add(_name + " added " + element);
+    }
+
+    @Override
+    public void notifyElementRemoved(String element) {
+      _events.add(_name + " removed " + element);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package org.aikodi.rejuse.association.test;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aikodi.rejuse.association.AssociationListener;
+import org.aikodi.rejuse.association.SingleAssociation;
+import org.aikodi.rejuse.association.WeakMultiAssociation;
+import org.aikodi.rejuse.association.WeakSingleAssociation;
+
+import junit.framework.TestCase;
+
+public class TestWeak extends TestCase {
+
+  public TestWeak(String name) {
+    super(name);
+  }
+
+  public void testMulti() {
+    WeakMultiAssociation<String, Fragment> registry = new WeakMultiAssociation<>("registry");
+    Counter counter = new Counter();
+    registry.addListener(counter);
+    List<Fragment> kept = new ArrayList<>();
+    for(int i = 0; i < 100; i++) {
+      Fragment fragment = new Fragment();
+      registry.add(fragment._link);
+      if(i % 10 == 0) {
+        kept.add(fragment);
+      }
+    }
+    assertEquals(100, registry.size());
+    assertEquals(100, counter._added);
+
+    registry.remove(kept.get(0)._link);
+    assertFalse(registry.contains(kept.get(0)._link));
+    assertEquals(1, counter._removed);
+
+    collectUntil(() -> registry.size() == kept.size() - 1);
+    assertEquals(kept.size() - 1, registry.size());
+    assertEquals(100 - kept.size(), counter._collected);
+    assertEquals(1, counter._removed);
+    for(int i = 1; i < kept.size(); i++) {
+      Fragment fragment = kept.get(i);
+      assertTrue(registry.contains(fragment._link));
+      assertTrue(registry.getOtherEnds().contains(fragment));
+      assertEquals("registry", fragment._link.getOtherEnd());
+    }
+    registry.clear();
+    assertEquals(0, registry.size());
+    assertNull(kept.get(1)._link.getOtherEnd());
+  }
+
+  public void testSingle() {
+    Fragment fragment = new Fragment();
+    WeakSingleAssociation<String, Fragment> observer = new WeakSingleAssociation<>("observer");
+    Counter counter = new Counter();
+    observer.addListener(counter);
+    observer.connectTo(fragment._link);
+    assertSame(fragment, observer.getOtherEnd());
+    fragment = null;
+    collectUntil(() -> observer.getOtherRelation() == null);
+    assertNull(observer.getOtherEnd());
+    assertEquals(0, observer.size());
+    assertEquals(1, counter._collected);
+  }
+
+  private interface Condition {
+    boolean holds();
+  }
+
+  private void collectUntil(Condition condition) {
+    for(int i = 0; i < 50 && ! condition.holds(); i++) {
+      System.gc();
+      try {
+        Thread.sleep(10);
+      } catch(InterruptedException exc) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private static class Fragment {
+    private final SingleAssociation<Fragment, String> _link = new SingleAssociation<>(this);
+  }
+
+  private static class Counter extends AssociationListener<Object> {
+
+    private int _added;
+
+    private int _removed;
+
+    private int _collected;
+
+    @Override
+    public void notifyElementAdded(Object element) {
+      _added++;
+    }
+
+    @Override
+    public void notifyElementRemoved(Object element) {
+      _removed++;
+    }
+
+    @Override
+    public void notifyElementCollected() {
+      _collected++;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package org.aikodi.rejuse.data.tree.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.data.tree.TreeStructure;
+
+/**
+ * A simple tree node for testing tree structures. The node counts how
+ * often its children are requested through its tree structure.
+ */
+public class Node {
+
+  public Node(String name) {
+    _name = name;
+  }
+
+  private final String _name;
+
+  private Node _parent;
+
+  private final List<Node> _children = new ArrayList<>();
+
+  private int _requests;
+
+  public String name() {
+    return _name;
+  }
+
+  public Node parent() {
+    return _parent;
+  }
+
+  public List<Node> children() {
+    return _children;
+  }
+
+  public int requests() {
+    return _requests;
+  }
+
+  /**
+   * Add a child with the given name.
+   *
+   * @return The new child.
+   */
+  public Node add(String name) {
+    return add(new Node(name));
+  }
+
+  public <N extends Node> N add(N child) {
+    Node node = child;
+    node._parent = this;
+    _children.add(node);
+    return child;
+  }
+
+  public void remove(Node child) {
+    if(_children.remove(child)) {
+      child._parent = null;
+    }
+  }
+
+  public TreeStructure<Node, Nothing> tree() {
+    return new Structure(this);
+  }
+
+  /**
+   * Return a tree structure that throws an {@link IOException} when the
+   * children of the node with the given name are requested.
+   */
+  public TreeStructure<Node, IOException> failingTree(String failingName) {
+    return new Failing(this, failingName);
+  }
+
+  /**
+   * Create a complete tree with the given depth and branching factor.
+   * The names of the nodes encode their path from the root.
+   */
+  public static Node complete(int depth, int branching) {
+    Node root = new Node("r");
+    grow(root, depth, branching);
+    return root;
+  }
+
+  private static void grow(Node node, int depth, int branching) {
+    if(depth > 0) {
+      for(int i = 0; i < branching; i++) {
+        grow(node.add(node.name() + i), depth - 1, branching);
+      }
+    }
+  }
+
+  /**
+   * Create a path with the given number of nodes below the root.
+   *
+   * @return The root of the path.
+   */
+  public static Node path(int length) {
+    Node root = new Node("r");
+    Node current = root;
+    for(int i = 0; i < length; i++) {
+      current = current.add("n" + i);
+    }
+    return root;
+  }
+
+  @Override
+  public String toString() {
+    return _name;
+  }
+
+  private static class Structure implements TreeStructure<Node, Nothing> {
+
+    private Structure(Node node) {
+      _node = node;
+    }
+
+    private final Node _node;
+
+    @Override
+    public Node node() {
+      return _node;
+    }
+
+    @Override
+    public Node parent() {
+      return _node._parent;
+    }
+
+    @Override
+    public List<Node> children() {
+      _node._requests++;
+      return new ArrayList<>(_node._children);
+    }
+
+    @Override
+    public TreeStructure<Node, Nothing> tree(Node node) {
+      return node.tree();
+    }
+  }
+
+  private static class Failing implements TreeStructure<Node, IOException> {
+
+    private Failing(Node node, String failingName) {
+      _node = node;
+      _failingName = failingName;
+    }
+
+    private final Node _node;
+
+    private final String _failingName;
+
+    @Override
+    public Node node() {
+      return _node;
+    }
+
+    @Override
+    public Node parent() {
+      return _node._parent;
+    }
+
+    @Override
+    public List<Node> children() throws IOException {
+      if(_node._name.equals(_failingName)) {
+        throw new IOException("Cannot compute the children of " + _failingName);
+      }
+      return new ArrayList<>(_node._children);
+    }
+
+    @Override
+    public TreeStructure<Node, IOException> tree(Node node) {
+      return new Failing(node, _failingName);
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.data.tree.AncestorIndex;
+
+import junit.framework.TestCase;
+
+public class TestAncestorIndex extends TestCase {
+
+  public TestAncestorIndex(String name) {
+    super(name);
+  }
+
+  private static List<Node> nodes(Node root) {
+    List<Node> result = new ArrayList<>();
+    result.add(root);
+    result.addAll(root.tree().descendants());
+    return result;
+  }
+
+  /**
+   * Compare every query of the index with the result of walking the parent pointers.
+   */
+  private static void check(AncestorIndex<Node, Nothing> index, Node root, Random random) {
+    List<Node> nodes = nodes(root);
+    assertEquals(nodes.size(), index.size());
+    assertSame(root, index.root());
+    for(int i = 0; i < 300; i++) {
+      Node first = nodes.get(random.nextInt(nodes.size()));
+      Node second = nodes.get(random.nextInt(nodes.size()));
+      List<Node> ancestors = first.tree().ancestors();
+      assertEquals(ancestors, index.ancestors(first));
+      assertEquals(ancestors.size(), index.depth(first));
+      assertEquals(ancestors.contains(second), index.isAncestor(second, first));
+      assertEquals(second == first || ancestors.contains(second), index.isAncestorOrSelf(second, first));
+      int distance = random.nextInt(ancestors.size() + 2);
+      Node expected = distance == 0 ? first : (distance <= ancestors.size() ? ancestors.get(distance - 1) : null);
+      assertSame(expected, index.ancestor(first, distance));
+      assertSame(lowestCommonAncestor(first, second), index.lowestCommonAncestor(first, second));
+    }
+  }
+
+  private static Node lowestCommonAncestor(Node first, Node second) {
+    List<Node> firstPath = first.tree().ancestors();
+    firstPath.add(0, first);
+    Node current = second;
+    while(! firstPath.contains(current)) {
+      current = current.parent();
+    }
+    return current;
+  }
+
+  public void testQueries() {
+    Random random = new Random(18);
+    Node root = Node.complete(5, 3);
+    check(new AncestorIndex<>(root.tree()), root, random);
+    Node single = new Node("single");
+    AncestorIndex<Node, Nothing> index = new AncestorIndex<>(single.tree());
+    assertEquals(1, index.size());
+    assertEquals(0, index.depth(single));
+    assertSame(single, index.lowestCommonAncestor(single, single));
+    assertNull(index.ancestor(single, 1));
+    assertTrue(index.ancestors(single).isEmpty());
+    try {
+      index.depth(root);
+      fail();
+    } catch(IllegalArgumentException exc) {
+    }
+  }
+
+  public void testDeepTree() {
+    int depth = 100000;
+    Node root = Node.path(depth);
+    AncestorIndex<Node, Nothing> index = new AncestorIndex<>(root.tree());
+    Node leaf = root;
+    while(! leaf.children().isEmpty()) {
+      leaf = leaf.children().get(0);
+    }
+    assertEquals(depth, index.depth(leaf));
+    assertSame(root, index.ancestor(leaf, depth));
+    assertSame(root.children().get(0), index.ancestor(leaf, depth - 1));
+    assertTrue(index.isAncestor(root, leaf));
+    assertSame(leaf.parent(), index.lowestCommonAncestor(leaf, leaf.parent()));
+    assertEquals(depth, leaf.tree().ancestors().size());
+    assertSame(root, leaf.tree().farthestAncestor());
+  }
+
+  public void testInvalidate() {
+    Random random = new Random(42);
+    Node root = Node.complete(4, 3);
+    AncestorIndex<Node, Nothing> index = new AncestorIndex<>(root.tree());
+    for(int round = 0; round < 30; round++) {
+      List<Node> nodes = nodes(root);
+      Node target = nodes.get(random.nextInt(nodes.size()));
+      switch(random.nextInt(3)) {
+        case 0:
+          // Grow a new subtree below the target.
+          Node added = target.add(target.name() + "+" + round);
+          for(int i = 0; i < random.nextInt(20); i++) {
+            added = added.add(added.name() + i);
+          }
+          index.invalidate(target);
+          break;
+        case 1:
+          // Remove a subtree.
+          if(target != root) {
+            Node parent = target.parent();
+            parent.remove(target);
+            index.invalidate(parent);
+            assertFalse(index.contains(target));
+          }
+          break;
+        default:
+          // Move a subtree to a node outside of it.
+          Node destination = nodes.get(random.nextInt(nodes.size()));
+          if(target != root && ! destination.tree().hasAncestorOrSelf(target)) {
+            Node parent = target.parent();
+            parent.remove(target);
+            index.invalidate(parent);
+            destination.add(target);
+            index.invalidate(destination);
+          }
+      }
+      check(index, root, random);
+    }
+  }
+}
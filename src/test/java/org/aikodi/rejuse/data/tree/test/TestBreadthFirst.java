@@ -0,0 +1,151 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.action.UniversalConsumer;
+import org.aikodi.rejuse.data.tree.walker.BreadthFirst;
+import org.aikodi.rejuse.data.tree.walker.Consume;
+import org.aikodi.rejuse.data.tree.walker.LevelListener;
+import org.aikodi.rejuse.data.tree.walker.LevelParallel;
+
+import junit.framework.TestCase;
+
+public class TestBreadthFirst extends TestCase {
+
+  public TestBreadthFirst(String name) {
+    super(name);
+  }
+
+  private ForkJoinPool _pool;
+
+  @Override
+  protected void setUp() {
+    _pool = new ForkJoinPool(4);
+  }
+
+  @Override
+  protected void tearDown() {
+    _pool.shutdown();
+  }
+
+  /**
+   * The nodes of the given tree in level order.
+   */
+  private static List<Node> levelOrder(Node root) {
+    List<Node> result = new ArrayList<>();
+    result.add(root);
+    for(int i = 0; i < result.size(); i++) {
+      result.addAll(result.get(i).children());
+    }
+    return result;
+  }
+
+  /**
+   * The depth of a node of a complete tree, which is encoded in its name.
+   */
+  private static int depth(Node node) {
+    return node.name().length() - 1;
+  }
+
+  /**
+   * A listener that checks that the levels are processed one after the other.
+   */
+  private static class Barrier implements LevelListener<Nothing> {
+
+    private Barrier(List<Node> visited) {
+      _visited = visited;
+    }
+
+    private final List<Node> _visited;
+
+    private final List<Integer> _sizes = new ArrayList<>();
+
+    private int _start;
+
+    @Override
+    public void startLevel(int depth) {
+      assertEquals(_sizes.size(), depth);
+      synchronized(_visited) {
+        _start = _visited.size();
+      }
+    }
+
+    @Override
+    public void endLevel(int depth, int size) {
+      synchronized(_visited) {
+        List<Node> level = _visited.subList(_start, _visited.size());
+        assertEquals(size, level.size());
+        for(Node node: level) {
+          assertEquals(depth, depth(node));
+        }
+      }
+      _sizes.add(size);
+    }
+  }
+
+  public void testLevelOrder() {
+    Node root = Node.complete(5, 3);
+    List<Node> expected = levelOrder(root);
+    for(int limit: new int[]{Integer.MAX_VALUE, 100, 10, 1}) {
+      List<Node> visited = new ArrayList<>();
+      Barrier barrier = new Barrier(visited);
+      new BreadthFirst<Node, Nothing>(new Consume<Node, Nothing>(new Collector(visited)), barrier, limit).traverse(root.tree());
+      assertEquals(expected, visited);
+      assertEquals(Arrays.asList(1, 3, 9, 27, 81, 243), barrier._sizes);
+    }
+    List<Node> visited = new ArrayList<>();
+    new BreadthFirst<Node, Nothing>(new Consume<Node, Nothing>(new Collector(visited))).traverse(root.tree());
+    assertEquals(expected, visited);
+  }
+
+  public void testParallel() {
+    Node root = Node.complete(6, 4);
+    List<Node> expected = levelOrder(root);
+    for(int limit: new int[]{Integer.MAX_VALUE, 100, 3}) {
+      for(int chunk: new int[]{1, 7, 1000}) {
+        List<Node> visited = Collections.synchronizedList(new ArrayList<>());
+        Barrier barrier = new Barrier(visited);
+        new LevelParallel<Node, Nothing>(new Consume<Node, Nothing>(new Collector(visited)), barrier, limit, _pool, chunk).traverse(root.tree());
+        assertEquals(expected.size(), visited.size());
+        assertEquals(new HashSet<>(expected), new HashSet<>(visited));
+        assertEquals(Arrays.asList(1, 4, 16, 64, 256, 1024, 4096), barrier._sizes);
+      }
+    }
+  }
+
+  public void testException() {
+    Node root = Node.complete(4, 3);
+    try {
+      new LevelParallel<Node, Nothing>(new Consume<Node, Nothing>(new Collector(new ArrayList<>())), new LevelListener<Nothing>() {}, 5, _pool, 2)
+        .traverse(root.failingTree("r21"));
+      fail();
+    } catch(IOException exc) {
+    }
+    try {
+      new BreadthFirst<Node, Nothing>(new Consume<Node, Nothing>(new Collector(new ArrayList<>())), new LevelListener<Nothing>() {}, 0);
+      fail();
+    } catch(IllegalArgumentException exc) {
+    }
+  }
+
+  private static class Collector extends UniversalConsumer<Node, Nothing> {
+
+    private Collector(List<Node> nodes) {
+      super(Node.class);
+      _nodes = nodes;
+    }
+
+    private final List<Node> _nodes;
+
+    @Override
+    public void accept(Node node) {
+      _nodes.add(node);
+    }
+  }
+}
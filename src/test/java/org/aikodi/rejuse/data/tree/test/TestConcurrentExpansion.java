@@ -0,0 +1,168 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.data.tree.ConcurrentExpansion;
+import org.aikodi.rejuse.data.tree.TreeStructure;
+import org.aikodi.rejuse.exception.Handler;
+
+import junit.framework.TestCase;
+
+public class TestConcurrentExpansion extends TestCase {
+
+  public TestConcurrentExpansion(String name) {
+    super(name);
+  }
+
+  /**
+   * A tree structure that waits before it returns the children of a node,
+   * and keeps track of the number of concurrent requests.
+   */
+  private static class Slow implements TreeStructure<Node, Nothing> {
+
+    private Slow(Node node, AtomicInteger active, AtomicInteger maximum) {
+      this(node, active, maximum, new AtomicInteger());
+    }
+
+    private Slow(Node node, AtomicInteger active, AtomicInteger maximum, AtomicInteger requests) {
+      _node = node;
+      _active = active;
+      _maximum = maximum;
+      _requests = requests;
+    }
+
+    private final Node _node;
+
+    private final AtomicInteger _active;
+
+    private final AtomicInteger _maximum;
+
+    /**
+     * The number of requests for children that have started.
+     */
+    private final AtomicInteger _requests;
+
+    @Override
+    public Node node() {
+      return _node;
+    }
+
+    @Override
+    public Node parent() {
+      return _node.parent();
+    }
+
+    @Override
+    public List<Node> children() {
+      _requests.incrementAndGet();
+      int active = _active.incrementAndGet();
+      _maximum.accumulateAndGet(active, Math::max);
+      try {
+        Thread.sleep(2);
+      } catch(InterruptedException exc) {
+        Thread.currentThread().interrupt();
+      } finally {
+        _active.decrementAndGet();
+      }
+      return new ArrayList<>(_node.children());
+    }
+
+    @Override
+    public TreeStructure<Node, Nothing> tree(Node node) {
+      return new Slow(node, _active, _maximum, _requests);
+    }
+  }
+
+  public void testSameOrderAsSequentialTraversal() {
+    Node root = Node.complete(4, 4);
+    AtomicInteger maximum = new AtomicInteger();
+    Slow slow = new Slow(root, new AtomicInteger(), maximum);
+    ConcurrentExpansion<Node, Nothing, Nothing> expansion = new ConcurrentExpansion<>(slow, Handler.<Nothing>propagate(), 8);
+    List<Node> expected = new ArrayList<>();
+    root.tree().apply(expected::add);
+    List<Node> visited = new ArrayList<>();
+    expansion.apply(visited::add);
+    assertEquals(expected, visited);
+    assertEquals(root.tree().descendants(), expansion.descendants());
+    assertEquals(root.tree().descendants(n -> n.name().endsWith("3")), expansion.descendants(n -> n.name().endsWith("3")));
+    assertTrue(maximum.get() <= 8);
+    assertTrue(maximum.get() > 1);
+  }
+
+  public void testLookAhead() {
+    Node root = Node.complete(5, 4);
+    AtomicInteger requests = new AtomicInteger();
+    Slow counting = new Slow(root, new AtomicInteger(), new AtomicInteger(), requests);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      ConcurrentExpansion<Node, Nothing, Nothing> expansion = new ConcurrentExpansion<>(counting, Handler.<Nothing>propagate(), 4, 10, executor);
+      assertEquals(10, expansion.lookAhead());
+      AtomicInteger visited = new AtomicInteger();
+      AtomicInteger ahead = new AtomicInteger();
+      List<Node> nodes = new ArrayList<>();
+      expansion.apply(n -> {
+        nodes.add(n);
+        // The children of the nodes before the current one have been taken by
+        // the visitor. At most 10 other requests and the request for the
+        // children of the current node can have started.
+        ahead.accumulateAndGet(requests.get() - visited.getAndIncrement(), Math::max);
+      });
+      List<Node> expected = new ArrayList<>();
+      root.tree().apply(expected::add);
+      assertEquals(expected, nodes);
+      assertTrue(ahead.get() <= 11);
+      assertTrue(ahead.get() > 1);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testCustomExecutor() {
+    Node root = Node.complete(3, 3);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      AtomicInteger maximum = new AtomicInteger();
+      Slow slow = new Slow(root, new AtomicInteger(), maximum);
+      ConcurrentExpansion<Node, Nothing, Nothing> expansion = new ConcurrentExpansion<>(slow, Handler.<Nothing>propagate(), 2, executor);
+      assertEquals(root.tree().descendants(), expansion.descendants());
+      assertTrue(maximum.get() <= 2);
+      assertFalse(executor.isShutdown());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testHandler() {
+    Node root = Node.complete(3, 3);
+    try {
+      new ConcurrentExpansion<>(root.failingTree("r12"), Handler.<IOException>propagate(), 4).descendants();
+      fail();
+    } catch(IOException exc) {
+    }
+    // If the handler resumes, the failing node has no children.
+    List<Node> visited = new ArrayList<>();
+    new ConcurrentExpansion<>(root.failingTree("r1"), Handler.<IOException>resume(), 4).apply(visited::add);
+    List<Node> expected = new ArrayList<>();
+    root.tree().apply(expected::add);
+    expected.removeIf(n -> n.name().startsWith("r1") && n.name().length() > 2);
+    assertEquals(expected, visited);
+  }
+
+  public void testConsumerException() {
+    Node root = Node.complete(3, 3);
+    try {
+      new ConcurrentExpansion<>(root.tree(), Handler.<Nothing>propagate(), 4).apply(n -> {
+        if(n.name().equals("r21")) {
+          throw new IOException();
+        }
+      });
+      fail();
+    } catch(IOException exc) {
+    }
+  }
+}
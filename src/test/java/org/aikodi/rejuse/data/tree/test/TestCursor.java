@@ -0,0 +1,200 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.data.tree.FunctionalTreeStructure;
+import org.aikodi.rejuse.data.tree.GuardedTreeStructure;
+import org.aikodi.rejuse.data.tree.TreeCursor;
+import org.aikodi.rejuse.data.tree.TreeStructure;
+import org.aikodi.rejuse.exception.Handler;
+
+import junit.framework.TestCase;
+
+public class TestCursor extends TestCase {
+
+  public TestCursor(String name) {
+    super(name);
+  }
+
+  /**
+   * A tree structure that cannot create tree structures for other nodes,
+   * so it can only be traversed with childrenOf.
+   */
+  private static class Flat implements TreeStructure<Node, Nothing> {
+
+    private Flat(Node node) {
+      _node = node;
+    }
+
+    private final Node _node;
+
+    @Override
+    public Node node() {
+      return _node;
+    }
+
+    @Override
+    public Node parent() {
+      return _node.parent();
+    }
+
+    @Override
+    public List<Node> children() {
+      return _node.children();
+    }
+
+    @Override
+    public List<Node> childrenOf(Node node) {
+      return node.children();
+    }
+
+    @Override
+    public TreeStructure<Node, Nothing> tree(Node node) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  /**
+   * A tree structure whose children() returns the list of children of the node itself.
+   */
+  private static class Backed implements TreeStructure<Node, Nothing> {
+
+    private Backed(Node node) {
+      _node = node;
+    }
+
+    private final Node _node;
+
+    @Override
+    public Node node() {
+      return _node;
+    }
+
+    @Override
+    public Node parent() {
+      return _node.parent();
+    }
+
+    @Override
+    public List<Node> children() {
+      return _node.children();
+    }
+
+    @Override
+    public TreeStructure<Node, Nothing> tree(Node node) {
+      return new Backed(node);
+    }
+  }
+
+  private static class Functional extends FunctionalTreeStructure<Node> {
+
+    @Override
+    public Node parent(Node node) {
+      return node.parent();
+    }
+
+    @Override
+    public List<? extends Node> children(Node element) {
+      return element.children();
+    }
+
+    @Override
+    public FunctionalTreeStructure<Node> tree(Node element) {
+      return this;
+    }
+  }
+
+  /**
+   * A functional tree structure without a tree structure per node, so its
+   * nodes can only be traversed with childrenOf.
+   */
+  private static class FlatFunctional extends Functional {
+
+    @Override
+    public FunctionalTreeStructure<Node> tree(Node element) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<? extends Node> childrenOf(Node node) {
+      return children(node);
+    }
+  }
+
+  private static List<String> walk(TreeCursor<Node, Nothing> cursor) {
+    List<String> result = new ArrayList<>();
+    do {
+      result.add(cursor.node().name());
+    } while(cursor.moveToNext());
+    return result;
+  }
+
+  public void testMoves() {
+    Node root = Node.complete(2, 2);
+    TreeCursor<Node, Nothing> cursor = root.tree().cursor();
+    assertSame(root, cursor.node());
+    assertFalse(cursor.moveToNextSibling());
+    assertFalse(cursor.moveToParent());
+    assertTrue(cursor.moveToFirstChild());
+    assertEquals("r0", cursor.node().name());
+    assertEquals(1, cursor.depth());
+    assertTrue(cursor.moveToFirstChild());
+    assertEquals("r00", cursor.node().name());
+    assertFalse(cursor.moveToFirstChild());
+    assertTrue(cursor.moveToNextSibling());
+    assertEquals("r01", cursor.node().name());
+    assertFalse(cursor.moveToNextSibling());
+    assertTrue(cursor.moveToParent());
+    assertEquals("r0", cursor.node().name());
+    assertTrue(cursor.moveToNextSibling());
+    assertEquals("r1", cursor.node().name());
+    assertTrue(cursor.moveToParent());
+    assertSame(root, cursor.node());
+    assertEquals(0, cursor.depth());
+  }
+
+  public void testWalk() {
+    Node root = Node.complete(4, 3);
+    List<String> expected = new ArrayList<>();
+    root.tree().apply(n -> expected.add(n.name()));
+    assertEquals(expected, walk(root.tree().cursor()));
+    assertEquals(expected, walk(new Flat(root).cursor()));
+    assertEquals(expected, walk(new Functional().cursor(root)));
+    TreeStructure<Node, Nothing> guarded = new GuardedTreeStructure<>(root.tree(), Handler.<Nothing>propagate());
+    assertEquals(expected, walk(guarded.cursor()));
+    // A cursor does not leave the subtree in which it started.
+    Node start = root.children().get(1);
+    List<String> subtree = new ArrayList<>();
+    start.tree().apply(n -> subtree.add(n.name()));
+    assertEquals(subtree, walk(root.tree().tree(start).cursor()));
+  }
+
+  public void testTraversalsUseChildrenOf() {
+    Node root = Node.complete(3, 3);
+    Flat flat = new Flat(root);
+    List<Node> nodes = new ArrayList<>();
+    flat.apply(nodes::add);
+    assertEquals(1 + 3 + 9 + 27, nodes.size());
+    assertEquals(root.tree().descendants(), flat.descendants());
+    List<String> expected = new ArrayList<>();
+    root.tree().apply(n -> expected.add(n.name()));
+    assertEquals(expected, walk(new FlatFunctional().cursor(root)));
+  }
+
+  public void testGuardedChildrenAreCopied() {
+    Node root = Node.complete(2, 3);
+    TreeStructure<Node, Nothing> guarded = new GuardedTreeStructure<>(new Backed(root), Handler.<Nothing>propagate());
+    // Both queries modify the list that is returned by children().
+    assertEquals(root.children(), guarded.nearestDescendants(Node.class));
+    assertEquals(1, guarded.children(n -> n.name().equals("r1")).size());
+    assertEquals(3, root.children().size());
+    assertEquals(3, root.children().get(1).children().size());
+    assertEquals(root.tree().descendants(), guarded.descendants());
+  }
+
+  public void testDeepTree() {
+    Node root = Node.path(100000);
+    assertEquals(100001, walk(root.tree().cursor()).size());
+  }
+}
@@ -0,0 +1,104 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import org.aikodi.rejuse.data.tree.TreeIterator;
+import org.aikodi.rejuse.data.tree.TreeStructure;
+import org.aikodi.rejuse.data.tree.TreeTraversalException;
+
+import junit.framework.TestCase;
+
+public class TestDescendants extends TestCase {
+
+  public TestDescendants(String name) {
+    super(name);
+  }
+
+  /**
+   * The order of the recursive implementation: the children of a node,
+   * followed by the descendants of each child.
+   */
+  private static void descendants(Node node, List<Node> result) {
+    result.addAll(node.children());
+    for(Node child: node.children()) {
+      descendants(child, result);
+    }
+  }
+
+  private static void preOrder(Node node, List<Node> result) {
+    result.add(node);
+    for(Node child: node.children()) {
+      preOrder(child, result);
+    }
+  }
+
+  public void testOrder() {
+    Node root = Node.complete(4, 3);
+    List<Node> expected = new ArrayList<>();
+    descendants(root, expected);
+    assertEquals(expected, root.tree().descendants());
+    assertEquals(expected, root.tree().descendantStream().collect(Collectors.toList()));
+    assertEquals(expected, root.tree().descendants(Node.class));
+    List<Node> leaves = expected.stream().filter(n -> n.children().isEmpty()).collect(Collectors.toList());
+    assertEquals(leaves, root.tree().descendants(n -> n.children().isEmpty()));
+
+    List<Node> preOrder = new ArrayList<>();
+    preOrder(root, preOrder);
+    List<Node> applied = new ArrayList<>();
+    root.tree().apply(applied::add);
+    assertEquals(preOrder, applied);
+  }
+
+  public void testEveryNodeExpandedOnce() {
+    Node root = Node.complete(3, 4);
+    List<Node> descendants = root.tree().descendants();
+    root.tree().apply(n -> {});
+    for(Node node: descendants) {
+      assertEquals(2, node.requests());
+    }
+  }
+
+  public void testShortCircuit() {
+    Node root = Node.complete(5, 4);
+    Optional<Node> found = root.tree().descendantStream().filter(n -> n.name().equals("r2")).findFirst();
+    assertEquals("r2", found.get().name());
+    assertEquals(1, root.requests());
+    for(Node child: root.children()) {
+      assertEquals(0, child.requests());
+    }
+    assertTrue(root.tree().hasDescendant(Node.class));
+    assertEquals(0, root.children().get(0).requests());
+  }
+
+  public void testDeepTree() {
+    int depth = 200000;
+    Node root = Node.path(depth);
+    assertEquals(depth, root.tree().descendants().size());
+    assertEquals(depth, root.tree().descendantStream().count());
+    int[] count = new int[1];
+    root.tree().apply(n -> count[0]++);
+    assertEquals(depth + 1, count[0]);
+  }
+
+  public void testException() {
+    Node root = Node.complete(2, 2);
+    TreeStructure<Node, IOException> failing = root.failingTree("r1");
+    TreeIterator<Node, IOException> iterator = failing.descendantIterator();
+    try {
+      while(iterator.hasNext()) {
+        iterator.next();
+      }
+      fail();
+    } catch(IOException exc) {
+    }
+    try {
+      failing.descendantStream().count();
+      fail();
+    } catch(TreeTraversalException exc) {
+      assertTrue(exc.getCause() instanceof IOException);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.data.tree.TreeStructure;
+import org.aikodi.rejuse.data.tree.walker.DepthFirst;
+import org.aikodi.rejuse.data.tree.walker.Fused;
+import org.aikodi.rejuse.data.tree.walker.TopDown;
+import org.aikodi.rejuse.data.tree.walker.TreeWalker;
+
+import junit.framework.TestCase;
+
+public class TestFused extends TestCase {
+
+  public TestFused(String name) {
+    super(name);
+  }
+
+  /**
+   * A walker that records the calls that it receives.
+   */
+  private static class Recorder implements TreeWalker<Node, Nothing> {
+
+    private final List<String> _calls = new ArrayList<>();
+
+    @Override
+    public <X extends Node, N extends Exception> void traverse(TreeStructure<X, N> tree) {
+      _calls.add("traverse " + tree.node().name());
+    }
+
+    @Override
+    public <N extends Exception> void enter(TreeStructure<?, N> node) {
+      _calls.add("enter " + ((Node) node.node()).name());
+    }
+
+    @Override
+    public <N extends Exception> void exit(TreeStructure<?, N> node) {
+      _calls.add("exit " + ((Node) node.node()).name());
+    }
+  }
+
+  public void testSameCallsAsSeparateWalkers() {
+    Node root = Node.complete(4, 3);
+    List<Recorder> expected = new ArrayList<>();
+    List<Recorder> topDown = new ArrayList<>();
+    List<Recorder> depthFirst = new ArrayList<>();
+    for(int i = 0; i < 3; i++) {
+      Recorder separateTopDown = new Recorder();
+      new TopDown<Node, Nothing>(separateTopDown).traverse(root.tree());
+      Recorder separateDepthFirst = new Recorder();
+      new DepthFirst<Node, Nothing>(separateDepthFirst).traverse(root.tree());
+      expected.add(separateTopDown);
+      expected.add(separateDepthFirst);
+      topDown.add(new Recorder());
+      depthFirst.add(new Recorder());
+    }
+    int before = root.requests();
+    new Fused<Node, Nothing>(topDown, depthFirst).traverse(root.tree());
+    assertEquals(before + 1, root.requests());
+    for(int i = 0; i < 3; i++) {
+      assertEquals(expected.get(2 * i)._calls, topDown.get(i)._calls);
+      assertEquals(expected.get(2 * i + 1)._calls, depthFirst.get(i)._calls);
+    }
+  }
+
+  public void testInterleaving() {
+    Node root = new Node("r");
+    root.add("a");
+    Recorder first = new Recorder();
+    Recorder second = new Recorder();
+    new Fused<Node, Nothing>(first, second).traverse(root.tree());
+    assertEquals(Arrays.asList("enter r", "traverse r", "enter a", "traverse a", "exit a", "exit r"), first._calls);
+    assertEquals(first._calls, second._calls);
+    assertTrue(new Fused<Node, Nothing>().topDown().isEmpty());
+    try {
+      new Fused<Node, Nothing>(Collections.singletonList(null), Collections.emptyList());
+      fail();
+    } catch(IllegalArgumentException exc) {
+    }
+  }
+
+  public void testDeepTree() {
+    Node root = Node.path(100000);
+    Recorder walker = new Recorder();
+    new Fused<Node, Nothing>(walker).traverse(root.tree());
+    assertEquals(3 * 100001, walker._calls.size());
+  }
+}
@@ -0,0 +1,131 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.util.List;
+import java.util.Random;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.data.tree.ChangeTracker;
+import org.aikodi.rejuse.data.tree.walker.IncrementalWalk;
+import org.aikodi.rejuse.data.tree.walker.SubtreeLocalWalker;
+
+import junit.framework.TestCase;
+
+public class TestIncrementalWalk extends TestCase {
+
+  public TestIncrementalWalk(String name) {
+    super(name);
+  }
+
+  /**
+   * Computes a description of a subtree that contains the names of all nodes.
+   */
+  private static class Describe implements SubtreeLocalWalker<Node, String, Nothing> {
+
+    @Override
+    public String analyze(Node node, List<String> children) {
+      return node.name() + children;
+    }
+  }
+
+  private static String describe(Node node) {
+    return new IncrementalWalk<>(new ChangeTracker<>(node.tree()), new Describe()).walk();
+  }
+
+  public void testSingleChange() {
+    Node root = Node.complete(6, 3);
+    ChangeTracker<Node, Nothing> tracker = new ChangeTracker<>(root.tree());
+    IncrementalWalk<Node, Nothing, String, Nothing> walk = new IncrementalWalk<>(tracker, new Describe());
+    assertEquals(describe(root), walk.walk());
+    assertEquals(root.tree().descendants().size() + 1, walk.processed());
+    assertEquals(0, tracker.size());
+
+    // Nothing has changed.
+    assertEquals(describe(root), walk.walk());
+    assertEquals(0, walk.processed());
+
+    // Add a leaf below a node at depth 6. Only the leaf and its ancestors are processed.
+    Node parent = root.children().get(2).children().get(1).children().get(0).children().get(2).children().get(1);
+    parent.children().get(0).add("new");
+    tracker.changed(parent.children().get(0));
+    assertEquals(7, tracker.size());
+    assertEquals(describe(root), walk.walk());
+    assertEquals(8, walk.processed());
+    assertEquals(0, tracker.size());
+    assertEquals(describe(parent), walk.result(parent));
+  }
+
+  public void testRandomChanges() {
+    Random random = new Random(24);
+    Node root = Node.complete(4, 3);
+    ChangeTracker<Node, Nothing> tracker = new ChangeTracker<>(root.tree());
+    IncrementalWalk<Node, Nothing, String, Nothing> walk = new IncrementalWalk<>(tracker, new Describe());
+    walk.walk();
+    for(int round = 0; round < 50; round++) {
+      List<Node> nodes = root.tree().descendants();
+      nodes.add(root);
+      Node target = nodes.get(random.nextInt(nodes.size()));
+      // The changed node, its ancestors and a new leaf.
+      int bound = target.tree().ancestors().size() + 2;
+      if(target != root && random.nextBoolean()) {
+        Node parent = target.parent();
+        parent.remove(target);
+        tracker.changed(parent);
+        assertEquals(describe(root), walk.walk());
+        assertNull(walk.result(target));
+      } else {
+        target.add(target.name() + "+" + round);
+        tracker.changed(target);
+        assertEquals(describe(root), walk.walk());
+      }
+      assertTrue(walk.processed() <= bound);
+    }
+  }
+
+  public void testMove() {
+    Node root = Node.complete(4, 3);
+    ChangeTracker<Node, Nothing> tracker = new ChangeTracker<>(root.tree());
+    IncrementalWalk<Node, Nothing, String, Nothing> walk = new IncrementalWalk<>(tracker, new Describe());
+    walk.walk();
+    // Move a subtree to a parent that comes earlier in pre-order, and one
+    // to a parent that comes later. Both subtrees are reused.
+    Node r0 = root.children().get(0);
+    Node r2 = root.children().get(2);
+    Node early = r2.children().get(0);
+    Node late = r0.children().get(1);
+    r2.remove(early);
+    r0.add(early);
+    r0.remove(late);
+    r2.add(late);
+    tracker.changed(r0);
+    tracker.changed(r2);
+    assertEquals(describe(root), walk.walk());
+    assertEquals(3, walk.processed());
+    for(Node moved: new Node[]{early, late}) {
+      List<Node> nodes = moved.tree().descendants();
+      nodes.add(moved);
+      for(Node node: nodes) {
+        assertEquals(describe(node), walk.result(node));
+      }
+    }
+
+    // A change in a moved subtree only processes the path to the change.
+    Node leaf = early.children().get(0).children().get(0);
+    leaf.add("new");
+    tracker.changed(leaf);
+    assertEquals(describe(root), walk.walk());
+    assertEquals(leaf.tree().ancestors().size() + 2, walk.processed());
+  }
+
+  public void testDeepTree() {
+    Node root = Node.path(100000);
+    ChangeTracker<Node, Nothing> tracker = new ChangeTracker<>(root.tree());
+    IncrementalWalk<Node, Nothing, Integer, Nothing> walk = new IncrementalWalk<>(tracker, (node, children) -> 1 + children.stream().mapToInt(Integer::intValue).sum());
+    assertEquals(Integer.valueOf(100001), walk.walk());
+    Node leaf = root;
+    while(! leaf.children().isEmpty()) {
+      leaf = leaf.children().get(0);
+    }
+    leaf.add("extra");
+    tracker.changed(leaf);
+    assertEquals(Integer.valueOf(100002), walk.walk());
+  }
+}
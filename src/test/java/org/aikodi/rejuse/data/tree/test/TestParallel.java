@@ -0,0 +1,94 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.aikodi.rejuse.data.tree.ParallelTreeQuery;
+
+import junit.framework.TestCase;
+
+public class TestParallel extends TestCase {
+
+  public TestParallel(String name) {
+    super(name);
+  }
+
+  private ForkJoinPool _pool;
+
+  @Override
+  protected void setUp() {
+    _pool = new ForkJoinPool(4);
+  }
+
+  @Override
+  protected void tearDown() {
+    _pool.shutdown();
+  }
+
+  public void testDescendants() throws IOException {
+    Node root = Node.complete(6, 4);
+    List<Node> expected = root.tree().descendants();
+    List<Node> leaves = root.tree().descendants(n -> n.children().isEmpty());
+    for(int depth: new int[]{0, 1, 3, 10}) {
+      ParallelTreeQuery query = new ParallelTreeQuery(_pool, depth);
+      assertEquals(expected, query.descendants(root.tree(), Node.class));
+      assertEquals(leaves, query.descendants(root.tree(), n -> n.children().isEmpty()));
+      assertEquals(expected, query.descendants(root.failingTree("none"), Node.class));
+    }
+    assertEquals(expected, root.tree().parallelDescendants(Node.class));
+  }
+
+  public void testHasDescendant() {
+    Node root = Node.complete(6, 4);
+    ParallelTreeQuery query = new ParallelTreeQuery(_pool, 3);
+    assertTrue(query.hasDescendant(root.tree(), n -> n.name().equals("r3210")));
+    assertFalse(query.hasDescendant(root.tree(), n -> n.name().equals("r")));
+    assertFalse(query.hasDescendant(root.tree(), String.class));
+    assertTrue(root.tree().parallelHasDescendant(Node.class));
+  }
+
+  public void testHasDescendantStopsEarly() {
+    Node root = Node.complete(6, 4);
+    ParallelTreeQuery query = new ParallelTreeQuery(_pool, 3);
+    assertTrue(query.hasDescendant(root.tree(), n -> n.name().equals("r1")));
+    assertEquals(1, root.requests());
+    for(Node child: root.children()) {
+      assertEquals(0, child.requests());
+    }
+  }
+
+  public void testApply() {
+    Node root = Node.complete(6, 4);
+    for(int depth: new int[]{0, 2, 10}) {
+      Set<Node> visited = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+      new ParallelTreeQuery(_pool, depth).apply(root.tree(), visited::add);
+      assertEquals(root.tree().descendants().size() + 1, visited.size());
+      assertTrue(visited.contains(root));
+    }
+  }
+
+  public void testException() {
+    Node root = Node.complete(4, 3);
+    ParallelTreeQuery query = new ParallelTreeQuery(_pool, 2);
+    try {
+      query.descendants(root.failingTree("r12"), Node.class);
+      fail();
+    } catch(IOException exc) {
+    }
+    try {
+      query.apply(root.failingTree("r0"), n -> {});
+      fail();
+    } catch(IOException exc) {
+    }
+    try {
+      query.descendants(root.tree(), n -> {
+        throw new IllegalStateException();
+      });
+      fail();
+    } catch(IllegalStateException exc) {
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.data.tree.PrunedQuery;
+import org.aikodi.rejuse.data.tree.TreePredicate;
+import org.aikodi.rejuse.predicate.Predicate;
+
+import junit.framework.TestCase;
+
+public class TestPrunedQuery extends TestCase {
+
+  public TestPrunedQuery(String name) {
+    super(name);
+  }
+
+  /**
+   * A predicate that is satisfied by the nodes whose name starts with the
+   * given prefix. Since the names of the nodes of a complete tree encode
+   * their path, it can only succeed below the nodes on the path to the prefix.
+   */
+  private static TreePredicate<Node, Nothing> below(String prefix) {
+    return new TreePredicate<Node, Nothing>(Node.class) {
+
+      @Override
+      public boolean canSucceedBeyond(Node node) {
+        return prefix.startsWith(node.name()) || node.name().startsWith(prefix);
+      }
+
+      @Override
+      public boolean uncheckedEval(Node node) {
+        return node.name().startsWith(prefix);
+      }
+    };
+  }
+
+  private static void check(Node root, TreePredicate<Node, Nothing> predicate) {
+    PrunedQuery<Node, Nothing, Nothing> query = root.tree().prunedQuery(predicate);
+    assertEquals(root.tree().descendants(predicate), query.descendants());
+    assertEquals(root.tree().nearestDescendants((Predicate<Node, Nothing>) predicate::eval), query.nearestDescendants());
+    assertEquals(! root.tree().descendants(predicate).isEmpty(), query.hasDescendant());
+  }
+
+  public void testSameResults() {
+    Node root = Node.complete(4, 3);
+    check(root, below("r1"));
+    check(root, below("r12"));
+    check(root, below("r1").and(below("r12")));
+    check(root, below("r1").orTree(below("r20")));
+    check(root, below("r1").and(n -> ((Node) n).name().endsWith("0")));
+    check(root, below("x"));
+  }
+
+  public void testStatistics() {
+    Node root = Node.complete(4, 3);
+    int total = root.tree().descendants().size();
+    PrunedQuery<Node, Nothing, Nothing> query = root.tree().prunedQuery(below("r12"));
+    assertEquals(13, query.descendants().size());
+    // The children of r, r1, r12, r120, r121 and r122 are checked.
+    assertEquals(18, query.visited());
+    // The subtrees of r0, r2, r10 and r11 are skipped.
+    assertEquals(4, query.pruned());
+    assertTrue(query.visited() < total);
+
+    query = root.tree().prunedQuery(below("r1").and(below("r2")));
+    assertTrue(query.descendants().isEmpty());
+    assertEquals(3, query.visited());
+    assertEquals(3, query.pruned());
+
+    query = root.tree().prunedQuery(below("r1").orTree(below("r2")));
+    query.descendants();
+    assertEquals(3 + 2 * (3 + 9 + 27), query.visited());
+
+    query = root.tree().prunedQuery(below("r12").and(n -> true));
+    assertEquals(Arrays.asList("r12", "r120", "r121", "r122"), names(query.descendants()).subList(0, 4));
+    assertEquals(18, query.visited());
+
+    query = root.tree().prunedQuery(below("r1"));
+    assertTrue(query.hasDescendant());
+    assertEquals(2, query.visited());
+  }
+
+  private static List<String> names(List<Node> nodes) {
+    List<String> result = new ArrayList<>();
+    for(Node node: nodes) {
+      result.add(node.name());
+    }
+    return result;
+  }
+}
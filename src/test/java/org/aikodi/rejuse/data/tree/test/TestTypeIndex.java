@@ -0,0 +1,154 @@
+package org.aikodi.rejuse.data.tree.test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.aikodi.rejuse.action.Nothing;
+import org.aikodi.rejuse.data.tree.TypeIndex;
+
+import junit.framework.TestCase;
+
+public class TestTypeIndex extends TestCase {
+
+  public TestTypeIndex(String name) {
+    super(name);
+  }
+
+  private static interface Marked {
+  }
+
+  private static class Branch extends Node {
+    private Branch(String name) {
+      super(name);
+    }
+  }
+
+  private static class Leaf extends Branch implements Marked {
+    private Leaf(String name) {
+      super(name);
+    }
+  }
+
+  private static class Other extends Node implements Marked {
+    private Other(String name) {
+      super(name);
+    }
+  }
+
+  private static final Class<?>[] TYPES = {Object.class, Node.class, Branch.class, Leaf.class, Other.class, Marked.class, String.class};
+
+  private static Node random(Random random, String name) {
+    switch(random.nextInt(4)) {
+      case 0: return new Node(name);
+      case 1: return new Branch(name);
+      case 2: return new Leaf(name);
+      default: return new Other(name);
+    }
+  }
+
+  private static Node tree(Random random, int size) {
+    Node root = new Node("r");
+    List<Node> nodes = new ArrayList<>();
+    nodes.add(root);
+    for(int i = 0; i < size; i++) {
+      nodes.add(nodes.get(random.nextInt(nodes.size())).add(random(random, "n" + i)));
+    }
+    return root;
+  }
+
+  private static List<Node> preOrder(Node node) {
+    List<Node> result = new ArrayList<>();
+    node.tree().apply(result::add);
+    return result;
+  }
+
+  /**
+   * Compare the queries of the index with a pre-order traversal of the tree.
+   */
+  private static void check(TypeIndex<Node, Nothing> index, Node root) {
+    List<Node> nodes = preOrder(root);
+    assertEquals(nodes.size(), index.size());
+    assertSame(root, index.root());
+    for(Node node: nodes) {
+      List<Node> descendants = preOrder(node);
+      descendants.remove(0);
+      for(Class<?> type: TYPES) {
+        List<Object> expected = new ArrayList<>();
+        for(Node descendant: descendants) {
+          if(type.isInstance(descendant)) {
+            expected.add(descendant);
+          }
+        }
+        assertEquals(expected, index.descendants(node, type));
+        assertEquals(! expected.isEmpty(), index.hasDescendant(node, type));
+        List<Object> nearest = new ArrayList<>();
+        for(Object match: expected) {
+          if(! nearest.contains(((Node) match).parent()) && ! hasAncestorIn((Node) match, node, nearest)) {
+            nearest.add(match);
+          }
+        }
+        assertEquals(nearest, index.nearestDescendants(node, type));
+      }
+    }
+  }
+
+  private static boolean hasAncestorIn(Node node, Node stop, List<Object> candidates) {
+    Node current = node.parent();
+    while(current != stop) {
+      if(candidates.contains(current)) {
+        return true;
+      }
+      current = current.parent();
+    }
+    return false;
+  }
+
+  public void testQueries() {
+    Node root = tree(new Random(19), 60);
+    TypeIndex<Node, Nothing> index = new TypeIndex<>(root.tree());
+    check(index, root);
+    assertEquals(root.tree().descendants(Leaf.class).size(), index.descendants(root, Leaf.class).size());
+    try {
+      index.descendants(new Node("x"), Node.class);
+      fail();
+    } catch(IllegalArgumentException exc) {
+    }
+  }
+
+  public void testInvalidate() {
+    Random random = new Random(7);
+    Node root = tree(random, 40);
+    TypeIndex<Node, Nothing> index = new TypeIndex<>(root.tree());
+    for(int round = 0; round < 30; round++) {
+      List<Node> nodes = preOrder(root);
+      Node target = nodes.get(random.nextInt(nodes.size()));
+      switch(random.nextInt(3)) {
+        case 0:
+          Node added = target.add(random(random, target.name() + "+" + round));
+          for(int i = 0; i < random.nextInt(10); i++) {
+            added = added.add(random(random, added.name() + i));
+          }
+          index.invalidate(target);
+          break;
+        case 1:
+          if(target != root) {
+            Node parent = target.parent();
+            parent.remove(target);
+            index.invalidate(parent);
+            assertFalse(index.contains(target));
+          }
+          break;
+        default:
+          Node destination = nodes.get(random.nextInt(nodes.size()));
+          if(target != root && ! destination.tree().hasAncestorOrSelf(target)) {
+            Node parent = target.parent();
+            parent.remove(target);
+            index.invalidate(parent);
+            destination.add(target);
+            index.invalidate(destination);
+          }
+      }
+      check(index, root);
+    }
+  }
+}